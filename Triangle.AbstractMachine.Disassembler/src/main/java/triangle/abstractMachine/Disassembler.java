@@ -18,7 +18,6 @@
 
 package triangle.abstractMachine;
 
-import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -62,7 +61,7 @@ public class Disassembler {
 	}
 
 	private static void writeR(char leftBracket, int r, char rightBracket) {
-		var register = Register.values()[r];
+		var register = Register.of(r);
 		writeR(leftBracket, register, rightBracket);
 	}
 
@@ -103,7 +102,7 @@ public class Disassembler {
 	 * @param d the displacement of the primitive routine.
 	 */
 	private static void writePrimitive(int d) {
-		var primitive = Primitive.values()[d];
+		var primitive = Primitive.of(d);
 		switch (primitive) {
 		case ID:
 			System.out.print("id      ");
@@ -314,21 +313,8 @@ public class Disassembler {
 	 * @param objectName the name of the file containing the program.
 	 */
 	static void loadObjectProgram(String objectName) {
-
-		var finished = false;
-
 		try (var objectFile = new FileInputStream(objectName)) {
-			var objectStream = new DataInputStream(objectFile);
-			var addr = Machine.CB;
-			while (!finished) {
-				Machine.code[addr] = Instruction.read(objectStream);
-				if (Machine.code[addr] == null) {
-					finished = true;
-				} else {
-					addr = addr + 1;
-				}
-			}
-			CT = addr;
+			CT = Machine.CB + ObjectFile.read(objectFile.getChannel());
 		} catch (FileNotFoundException s) {
 			CT = Machine.CB;
 			System.err.println("Error opening object file: " + s);
@@ -0,0 +1,370 @@
+/*
+ * @(#)ClassFileWriter.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal writer for JVM class files, just big enough for the JIT backend.
+ *
+ * <p>
+ * Classes are written with class file version 49, which predates the
+ * StackMapTable attribute, so the JVM verifies them by type inference and no
+ * stack map frames have to be computed here. Max stack and max locals are
+ * supplied by the caller. Branches use 16-bit offsets, so a method must stay
+ * under 32K of bytecode.
+ * </p>
+ */
+final class ClassFileWriter {
+
+	// access flags
+	static final int ACC_PUBLIC = 0x0001, ACC_STATIC = 0x0008, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+	// the opcodes used by the JIT backend
+	static final int ICONST_M1 = 0x02, ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13, ILOAD = 0x15,
+			ALOAD = 0x19, IALOAD = 0x2e, ISTORE = 0x36, ASTORE = 0x3a, IASTORE = 0x4f, POP = 0x57, IADD = 0x60,
+			LADD = 0x61, ISUB = 0x64, LSUB = 0x65, LMUL = 0x69, ISHL = 0x78, IUSHR = 0x7c, IINC = 0x84, I2L = 0x85,
+			IFEQ = 0x99, IFNE = 0x9a, IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1, IF_ICMPGE = 0xa2,
+			IF_ICMPGT = 0xa3, IF_ICMPLE = 0xa4, GOTO = 0xa7, TABLESWITCH = 0xaa, IRETURN = 0xac, RETURN = 0xb1,
+			GETSTATIC = 0xb2, PUTSTATIC = 0xb3, GETFIELD = 0xb4, PUTFIELD = 0xb5, INVOKEVIRTUAL = 0xb6,
+			INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+
+	private static final int CONSTANT_Utf8 = 1, CONSTANT_Integer = 3, CONSTANT_Class = 7, CONSTANT_Fieldref = 9,
+			CONSTANT_Methodref = 10, CONSTANT_NameAndType = 12;
+
+	private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private final DataOutputStream poolOut = new DataOutputStream(pool);
+	private final Map<String, Integer> poolIndex = new HashMap<>();
+	private int poolCount = 1;
+
+	// the constant pool count is a u2, and integer constants stop being added
+	// to the pool when it is half full, leaving room for method references
+	private static final int maxPoolCount = 0xFFFF, maxIntegerPoolCount = 0x8000;
+
+	private final int thisClass, superClass;
+	private final int[] interfaces;
+	private final List<MethodWriter> methods = new ArrayList<>();
+
+	/**
+	 * @param name       the internal name of the class, e.g. "a/b/C".
+	 * @param superName  the internal name of the superclass.
+	 * @param interfaces the internal names of the interfaces implemented.
+	 */
+	ClassFileWriter(String name, String superName, String... interfaces) {
+		thisClass = classRef(name);
+		superClass = classRef(superName);
+		this.interfaces = new int[interfaces.length];
+		for (var i = 0; i < interfaces.length; i++) {
+			this.interfaces[i] = classRef(interfaces[i]);
+		}
+	}
+
+	// CONSTANT POOL
+
+	private int entry(String key, int tag, Object... parts) {
+		var index = poolIndex.get(key);
+		if (index != null) {
+			return index;
+		}
+		if (poolCount == maxPoolCount) {
+			throw new ClassFormatError("constant pool is full");
+		}
+		try {
+			poolOut.writeByte(tag);
+			for (var part : parts) {
+				if (part instanceof String s) {
+					poolOut.writeUTF(s);
+				} else if (tag == CONSTANT_Integer) {
+					poolOut.writeInt((Integer) part);
+				} else {
+					poolOut.writeShort((Integer) part);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		poolIndex.put(key, poolCount);
+		return poolCount++;
+	}
+
+	int utf8(String s) {
+		return entry("U" + s, CONSTANT_Utf8, s);
+	}
+
+	int classRef(String name) {
+		return entry("C" + name, CONSTANT_Class, utf8(name));
+	}
+
+	int integer(int value) {
+		return entry("I" + value, CONSTANT_Integer, value);
+	}
+
+	private int nameAndType(String name, String descriptor) {
+		return entry("N" + name + ":" + descriptor, CONSTANT_NameAndType, utf8(name), utf8(descriptor));
+	}
+
+	int fieldRef(String owner, String name, String descriptor) {
+		return entry("F" + owner + "." + name + ":" + descriptor, CONSTANT_Fieldref, classRef(owner),
+				nameAndType(name, descriptor));
+	}
+
+	int methodRef(String owner, String name, String descriptor) {
+		return entry("M" + owner + "." + name + ":" + descriptor, CONSTANT_Methodref, classRef(owner),
+				nameAndType(name, descriptor));
+	}
+
+	// METHODS
+
+	/**
+	 * Starts a new method. Its code is appended through the returned writer.
+	 */
+	MethodWriter method(int access, String name, String descriptor, int maxStack, int maxLocals) {
+		var method = new MethodWriter(access, utf8(name), utf8(descriptor), maxStack, maxLocals);
+		methods.add(method);
+		return method;
+	}
+
+	/**
+	 * @return the complete class file.
+	 */
+	byte[] toByteArray() {
+		var code = utf8("Code");
+		var bytes = new ByteArrayOutputStream();
+		var out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0); // minor version
+			out.writeShort(49); // major version, Java 5
+			out.writeShort(poolCount);
+			pool.writeTo(out);
+			out.writeShort(ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(interfaces.length);
+			for (var i : interfaces) {
+				out.writeShort(i);
+			}
+			out.writeShort(0); // fields
+			out.writeShort(methods.size());
+			for (var method : methods) {
+				method.write(out, code);
+			}
+			out.writeShort(0); // attributes
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * A position in the code of a method, which may be used before it is marked.
+	 */
+	static final class Label {
+		private int position = -1;
+		private final List<int[]> fixups = new ArrayList<>(); // {instruction, site, width}
+	}
+
+	/**
+	 * Accumulates the bytecode of a single method.
+	 */
+	final class MethodWriter {
+
+		private final int access, name, descriptor, maxStack, maxLocals;
+		private byte[] code = new byte[256];
+		private int length;
+
+		private MethodWriter(int access, int name, int descriptor, int maxStack, int maxLocals) {
+			this.access = access;
+			this.name = name;
+			this.descriptor = descriptor;
+			this.maxStack = maxStack;
+			this.maxLocals = maxLocals;
+		}
+
+		/**
+		 * @return the number of bytes of code written so far.
+		 */
+		int length() {
+			return length;
+		}
+
+		private void u1(int b) {
+			if (length == code.length) {
+				code = java.util.Arrays.copyOf(code, code.length * 2);
+			}
+			code[length++] = (byte) b;
+		}
+
+		private void u2(int s) {
+			u1(s >> 8);
+			u1(s);
+		}
+
+		private void u4(int i) {
+			u2(i >> 16);
+			u2(i);
+		}
+
+		private void put(int at, int value, int width) {
+			for (var i = width - 1; i >= 0; i--) {
+				code[at++] = (byte) (value >> (8 * i));
+			}
+		}
+
+		void op(int opcode) {
+			u1(opcode);
+		}
+
+		/** Pushes an int constant, using the shortest form available. */
+		void iconst(int value) {
+			if (value >= -1 && value <= 5) {
+				u1(ICONST_0 + value);
+			} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				u1(BIPUSH);
+				u1(value);
+			} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				u1(SIPUSH);
+				u2(value);
+			} else if (poolCount < maxIntegerPoolCount || poolIndex.containsKey("I" + value)) {
+				u1(LDC_W);
+				u2(integer(value));
+			} else {
+				// (high << 16) + low, where low is a signed short
+				var high = (value + 0x8000) >> 16;
+				iconst(high);
+				iconst(16);
+				u1(ISHL);
+				iconst(value - (high << 16));
+				u1(IADD);
+			}
+		}
+
+		void iload(int local) {
+			u1(ILOAD);
+			u1(local);
+		}
+
+		void istore(int local) {
+			u1(ISTORE);
+			u1(local);
+		}
+
+		void aload(int local) {
+			u1(ALOAD);
+			u1(local);
+		}
+
+		void astore(int local) {
+			u1(ASTORE);
+			u1(local);
+		}
+
+		/** Adds a signed constant to an int local. */
+		void iinc(int local, int increment) {
+			if (increment >= Byte.MIN_VALUE && increment <= Byte.MAX_VALUE) {
+				u1(IINC);
+				u1(local);
+				u1(increment);
+			} else {
+				iload(local);
+				iconst(increment);
+				u1(IADD);
+				istore(local);
+			}
+		}
+
+		void field(int opcode, String owner, String name, String descriptor) {
+			u1(opcode);
+			u2(fieldRef(owner, name, descriptor));
+		}
+
+		void invoke(int opcode, String owner, String name, String descriptor) {
+			u1(opcode);
+			u2(methodRef(owner, name, descriptor));
+		}
+
+		/** Marks the current position as the target of the label. */
+		void mark(Label label) {
+			label.position = length;
+			for (var fixup : label.fixups) {
+				put(fixup[1], length - fixup[0], fixup[2]);
+			}
+			label.fixups.clear();
+		}
+
+		private void offset(Label label, int instruction, int width) {
+			if (label.position >= 0) {
+				var site = length;
+				for (var i = 0; i < width; i++) {
+					u1(0);
+				}
+				put(site, label.position - instruction, width);
+			} else {
+				label.fixups.add(new int[] { instruction, length, width });
+				for (var i = 0; i < width; i++) {
+					u1(0);
+				}
+			}
+		}
+
+		/** Writes a goto or conditional branch to the label. */
+		void jump(int opcode, Label label) {
+			var instruction = length;
+			u1(opcode);
+			offset(label, instruction, 2);
+		}
+
+		/** Writes a tableswitch over low..low+targets.length-1. */
+		void tableswitch(int low, Label dflt, Label[] targets) {
+			var instruction = length;
+			u1(TABLESWITCH);
+			while (length % 4 != 0) {
+				u1(0);
+			}
+			offset(dflt, instruction, 4);
+			u4(low);
+			u4(low + targets.length - 1);
+			for (var target : targets) {
+				offset(target, instruction, 4);
+			}
+		}
+
+		private void write(DataOutputStream out, int codeAttribute) throws IOException {
+			out.writeShort(access);
+			out.writeShort(name);
+			out.writeShort(descriptor);
+			out.writeShort(1); // attributes
+			out.writeShort(codeAttribute);
+			out.writeInt(12 + length);
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(length);
+			out.write(code, 0, length);
+			out.writeShort(0); // exception table
+			out.writeShort(0); // attributes
+		}
+	}
+}
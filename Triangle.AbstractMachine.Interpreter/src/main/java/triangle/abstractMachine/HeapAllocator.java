@@ -0,0 +1,206 @@
+/*
+ * @(#)HeapAllocator.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import java.util.TreeMap;
+
+/**
+ * The heap allocator behind the NEW and DISPOSE primitives of a machine.
+ *
+ * <p>
+ * The heap grows down from HB, with HT marking its lowest word. Disposed
+ * blocks are merged with any free neighbours; a free block that reaches HT
+ * is handed back to the stack by raising HT, and the rest are kept on
+ * segregated free lists. Blocks of up to {@link #exactClasses} words have a
+ * list per size, and larger blocks a list per power of two. NEW takes a block
+ * of exactly the right size if there is one, otherwise it splits the first
+ * larger block it finds, and only when no free block is big enough does it
+ * lower HT as before.
+ * </p>
+ *
+ * <p>
+ * The free lists are kept outside the data store, so disposing of a block
+ * does not change its contents. Each list is a stack of block addresses from
+ * which stale entries (blocks since merged or reused) are dropped as they are
+ * found, checked against the map of free blocks.
+ * </p>
+ */
+final class HeapAllocator {
+
+	// sizes 1..exactClasses each have a class of their own
+	static final int exactClasses = 32;
+
+	private static final int classes = exactClasses + 32;
+
+	private final TamVm vm;
+
+	// free blocks, from address to size
+	private final TreeMap<Integer, Integer> free = new TreeMap<>();
+
+	private int[][] lists = new int[classes][];
+
+	private int[] listSizes = new int[classes];
+
+	// counters for showStatus()
+	long allocations, reused, disposals, invalidDisposals;
+
+	int freeWords, lowestHT;
+
+	HeapAllocator(TamVm vm) {
+		this.vm = vm;
+	}
+
+	/**
+	 * Empties the heap, at the start of a program.
+	 */
+	void reset() {
+		free.clear();
+		lists = new int[classes][16];
+		listSizes = new int[classes];
+		allocations = 0;
+		reused = 0;
+		disposals = 0;
+		invalidDisposals = 0;
+		freeWords = 0;
+		lowestHT = vm.HB;
+	}
+
+	// Returns the free list for blocks of the given size.
+	private int classOf(int size) {
+		if (size <= exactClasses) {
+			return size - 1;
+		}
+		// 33..64 -> exactClasses, 65..128 -> exactClasses + 1, ...
+		return exactClasses + (31 - Integer.numberOfLeadingZeros((size - 1) / exactClasses));
+	}
+
+	private void push(int addr, int size) {
+		var c = classOf(size);
+		if (listSizes[c] == lists[c].length) {
+			lists[c] = java.util.Arrays.copyOf(lists[c], lists[c].length * 2);
+		}
+		lists[c][listSizes[c]++] = addr;
+	}
+
+	private void addFree(int addr, int size) {
+		free.put(addr, size);
+		freeWords = freeWords + size;
+		push(addr, size);
+	}
+
+	private void removeFree(int addr, int size) {
+		free.remove(addr);
+		freeWords = freeWords - size;
+	}
+
+	// Returns true iff the list entry refers to a free block in class c.
+	private boolean isLive(int addr, int c) {
+		var size = free.get(addr);
+		return size != null && classOf(size) == c;
+	}
+
+	/**
+	 * Allocates a block of the given size.
+	 *
+	 * @return the address of the block, or -1 if no free block is big enough,
+	 *         in which case the caller extends the heap as before.
+	 */
+	int allocate(int size) {
+		allocations = allocations + 1;
+		if (size <= 0) {
+			return -1;
+		}
+		for (var c = classOf(size); c < classes; c++) {
+			var list = lists[c];
+			// in the exact classes, and above the first class, any live block
+			// is big enough
+			var anyFits = c < exactClasses || c > classOf(size);
+			for (var i = listSizes[c] - 1; i >= 0; i--) {
+				var addr = list[i];
+				if (!isLive(addr, c)) {
+					list[i] = list[--listSizes[c]];
+					continue;
+				}
+				var blockSize = free.get(addr);
+				if (anyFits || blockSize >= size) {
+					list[i] = list[--listSizes[c]];
+					removeFree(addr, blockSize);
+					if (blockSize > size) {
+						addFree(addr + size, blockSize - size);
+					}
+					reused = reused + 1;
+					return addr;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Records that the heap has been extended down to HT.
+	 */
+	void extended() {
+		if (vm.HT < lowestHT) {
+			lowestHT = vm.HT;
+		}
+	}
+
+	/**
+	 * Returns a block to the heap. Blocks that do not lie wholly within the
+	 * allocated heap, or that overlap a free block, are ignored.
+	 */
+	void dispose(int addr, int size) {
+		if (size <= 0 || addr < vm.HT || addr > vm.HB - size) {
+			invalidDisposals = invalidDisposals + 1;
+			return;
+		}
+		var below = free.floorEntry(addr + size - 1);
+		if (below != null && below.getKey() + below.getValue() > addr) {
+			invalidDisposals = invalidDisposals + 1;
+			return;
+		}
+		disposals = disposals + 1;
+
+		// merge with free neighbours
+		var before = free.lowerEntry(addr);
+		if (before != null && before.getKey() + before.getValue() == addr) {
+			removeFree(before.getKey(), before.getValue());
+			addr = before.getKey();
+			size = size + before.getValue();
+		}
+		var after = free.get(addr + size);
+		if (after != null) {
+			removeFree(addr + size, after);
+			size = size + after;
+		}
+
+		if (addr == vm.HT) {
+			vm.HT = vm.HT + size;
+		} else {
+			addFree(addr, size);
+		}
+	}
+
+	/**
+	 * @return the number of free blocks in the heap.
+	 */
+	int freeBlocks() {
+		return free.size();
+	}
+}
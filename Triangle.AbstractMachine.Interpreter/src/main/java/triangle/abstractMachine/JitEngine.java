@@ -0,0 +1,635 @@
+/*
+ * @(#)JitEngine.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import static triangle.abstractMachine.ClassFileWriter.*;
+import static triangle.abstractMachine.TamVm.*;
+
+import java.lang.invoke.MethodHandles;
+
+import triangle.abstractMachine.ClassFileWriter.Label;
+import triangle.abstractMachine.ClassFileWriter.MethodWriter;
+
+/**
+ * An execution engine that translates the decoded code store into JVM
+ * bytecode, so that the program is run by the JVM's own JIT compiler.
+ *
+ * <p>
+ * The code store is cut into regions, starting at CB, at every routine entry
+ * and at least every {@link #regionSize} instructions. Each region becomes a
+ * static method of a hidden class, which is passed the machine. The method
+ * keeps the data store, ST and LB in locals, and enters the region through a tableswitch on the code address, so control can
+ * come in at any instruction. Jumps within a region become gotos; any other
+ * transfer of control writes ST and LB back and returns the next code address
+ * to {@link #run}, which checks it and dispatches again.
+ * </p>
+ *
+ * <p>
+ * Only the common instructions are translated inline, and only on their fast
+ * path. Anything else - including a stack that is about to overflow - is
+ * handed to the handler compiled for that instruction by
+ * {@link ThreadedEngine}, so registers, data store, status codes and
+ * overflow checking behave exactly as in the other engines.
+ * </p>
+ */
+final class JitEngine {
+
+	/**
+	 * A TAM program translated to bytecode.
+	 */
+	interface CompiledProgram {
+		/**
+		 * Runs the machine from code address cp, which lies in the given
+		 * region, until control leaves the region.
+		 *
+		 * @return the next code address.
+		 */
+		int step(TamVm vm, int region, int cp);
+	}
+
+	// the largest number of instructions in one region, which keeps each
+	// method well under the size that HotSpot is prepared to compile
+	static final int regionSize = 64;
+
+	private static final String tamVm = "triangle/abstractMachine/TamVm", jit = "triangle/abstractMachine/JitEngine",
+			compiledClass = "triangle/abstractMachine/CompiledTamProgram";
+
+	// locals of a region method
+	private static final int vmVar = 0, cpVar = 1, dataVar = 2, stVar = 3, lbVar = 4, tmpVar = 5;
+
+	private JitEngine() {
+	}
+
+	/**
+	 * Runs the compiled program, starting from CB.
+	 */
+	static void run(TamVm vm, CompiledProgram program) {
+		var regionOf = vm.regionOf;
+
+		// Initialize registers ...
+		vm.ST = SB;
+		vm.HT = vm.HB;
+		vm.heap.reset();
+		vm.LB = SB;
+		vm.CP = CB;
+		vm.status = running;
+		vm.resetDisplay();
+		do {
+			vm.CP = program.step(vm, regionOf[vm.CP], vm.CP);
+			if (vm.CP < CB || vm.CP >= vm.CT) {
+				vm.status = failedInvalidCodeAddress;
+			}
+		} while (vm.status == running);
+	}
+
+	/**
+	 * Executes the single instruction at addr through its threaded handler.
+	 * Called from the generated code, with ST and LB already written back.
+	 *
+	 * @return the new value of CP.
+	 */
+	static int interpretOne(TamVm vm, int addr) {
+		vm.CP = addr;
+		vm.handlers[addr].exec();
+		return vm.CP;
+	}
+
+	/**
+	 * Translates the machine's decoded code store into a hidden class.
+	 *
+	 * @throws ReflectiveOperationException if the class cannot be defined.
+	 */
+	static CompiledProgram compile(TamVm vm) throws ReflectiveOperationException {
+		vm.handlers = ThreadedEngine.compile(vm);
+		var CT = vm.CT;
+
+		// find the region boundaries
+		var entry = new boolean[CT + 1];
+		entry[CB] = true;
+		for (var addr = CB; addr < CT; addr++) {
+			if ((vm.codeOp[addr] == CALLop || vm.codeOp[addr] == LOADAop) && vm.codeR[addr] == CBr) {
+				var target = vm.codeD[addr] + CB;
+				if (target >= CB && target < CT) {
+					entry[target] = true;
+				}
+			}
+		}
+		var regionOf = new int[CT];
+		var regions = 0;
+		var start = new int[CT + 1];
+		for (var addr = CB; addr < CT; addr++) {
+			if (entry[addr] || addr - start[regions - 1] >= regionSize) {
+				start[regions++] = addr;
+			}
+			regionOf[addr] = regions - 1;
+		}
+		start[regions] = CT;
+		vm.regionOf = regionOf;
+
+		var cw = new ClassFileWriter(compiledClass, "java/lang/Object",
+				"triangle/abstractMachine/JitEngine$CompiledProgram");
+
+		var init = cw.method(ACC_PUBLIC, "<init>", "()V", 1, 1);
+		init.aload(0);
+		init.invoke(INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+		init.op(RETURN);
+
+		for (var region = 0; region < regions; region++) {
+			region(vm, cw, region, start[region], start[region + 1]);
+		}
+		dispatch(cw, regions);
+
+		var lookup = MethodHandles.lookup().defineHiddenClass(cw.toByteArray(), true);
+		return (CompiledProgram) lookup.lookupClass().getDeclaredConstructor().newInstance();
+	}
+
+	// Writes step(region, cp), which switches on the region number. Regions are
+	// grouped 256 at a time so that no switch grows too large.
+	private static void dispatch(ClassFileWriter cw, int regions) {
+		var groups = (regions + 255) / 256;
+		for (var group = 0; group < groups; group++) {
+			var first = group * 256;
+			var count = Math.min(256, regions - first);
+			var mw = cw.method(ACC_STATIC, "d" + group, "(L" + tamVm + ";II)I", 2, 3);
+			var targets = labels(count);
+			var dflt = new Label();
+			mw.iload(1);
+			mw.tableswitch(first, dflt, targets);
+			for (var i = 0; i < count; i++) {
+				mw.mark(targets[i]);
+				mw.aload(0);
+				mw.iload(2);
+				mw.invoke(INVOKESTATIC, compiledClass, "r" + (first + i), "(L" + tamVm + ";I)I");
+				mw.op(IRETURN);
+			}
+			mw.mark(dflt);
+			mw.iload(2);
+			mw.op(IRETURN);
+		}
+
+		var mw = cw.method(ACC_PUBLIC, "step", "(L" + tamVm + ";II)I", 3, 4);
+		var targets = labels(groups);
+		var dflt = new Label();
+		mw.iload(2);
+		mw.iconst(8);
+		mw.op(IUSHR);
+		mw.tableswitch(0, dflt, targets);
+		for (var group = 0; group < groups; group++) {
+			mw.mark(targets[group]);
+			mw.aload(1);
+			mw.iload(2);
+			mw.iload(3);
+			mw.invoke(INVOKESTATIC, compiledClass, "d" + group, "(L" + tamVm + ";II)I");
+			mw.op(IRETURN);
+		}
+		mw.mark(dflt);
+		mw.iload(3);
+		mw.op(IRETURN);
+	}
+
+	private static Label[] labels(int count) {
+		var labels = new Label[count];
+		for (var i = 0; i < count; i++) {
+			labels[i] = new Label();
+		}
+		return labels;
+	}
+
+	// Writes the method for the instructions in [first, last).
+	private static void region(TamVm vm, ClassFileWriter cw, int region, int first, int last) {
+		var mw = cw.method(ACC_STATIC, "r" + region, "(L" + tamVm + ";I)I", 9, 6);
+		var at = labels(last - first);
+		var end = new Label();
+		var dflt = new Label();
+
+		mw.aload(vmVar);
+		mw.field(GETFIELD, tamVm, "data", "[I");
+		mw.astore(dataVar);
+		reload(mw);
+		mw.iload(cpVar);
+		mw.tableswitch(first, dflt, at);
+
+		for (var addr = first; addr < last; addr++) {
+			mw.mark(at[addr - first]);
+			new Translator(vm, mw, at, end, first, last, addr).translate();
+		}
+
+		// falling off the end of the region
+		mw.mark(end);
+		exit(mw, last);
+		mw.mark(dflt);
+		mw.iload(cpVar);
+		mw.op(IRETURN);
+	}
+
+	private static void sync(MethodWriter mw) {
+		mw.aload(vmVar);
+		mw.iload(stVar);
+		mw.field(PUTFIELD, tamVm, "ST", "I");
+		mw.aload(vmVar);
+		mw.iload(lbVar);
+		mw.field(PUTFIELD, tamVm, "LB", "I");
+	}
+
+	private static void reload(MethodWriter mw) {
+		getField(mw, "ST");
+		mw.istore(stVar);
+		getField(mw, "LB");
+		mw.istore(lbVar);
+	}
+
+	// Pushes the given int field of the machine.
+	private static void getField(MethodWriter mw, String name) {
+		mw.aload(vmVar);
+		mw.field(GETFIELD, tamVm, name, "I");
+	}
+
+	// Leaves the region, continuing at the given code address.
+	private static void exit(MethodWriter mw, int next) {
+		sync(mw);
+		mw.iconst(next);
+		mw.op(IRETURN);
+	}
+
+	/**
+	 * Translates a single instruction of a region.
+	 */
+	private static final class Translator {
+
+		private final TamVm vm;
+		private final MethodWriter mw;
+		private final Label[] at;
+		private final Label end;
+		private final int first, last, addr, r, n, d;
+
+		Translator(TamVm vm, MethodWriter mw, Label[] at, Label end, int first, int last, int addr) {
+			this.vm = vm;
+			this.mw = mw;
+			this.at = at;
+			this.end = end;
+			this.first = first;
+			this.last = last;
+			this.addr = addr;
+			this.r = vm.codeR[addr];
+			this.n = vm.codeN[addr];
+			this.d = vm.codeD[addr];
+		}
+
+		void translate() {
+			switch (vm.codeOp[addr]) {
+			case LOADop:
+				if (n == 1 && address()) {
+					mw.istore(tmpVar);
+					checkSpace(1);
+					push(() -> {
+						mw.aload(dataVar);
+						mw.iload(tmpVar);
+						mw.op(IALOAD);
+					});
+					return;
+				}
+				break;
+			case LOADAop:
+				if (address()) {
+					mw.istore(tmpVar);
+					checkSpace(1);
+					push(() -> mw.iload(tmpVar));
+					return;
+				}
+				break;
+			case LOADIop:
+				if (n == 1) {
+					// data[ST - 1] = data[data[ST - 1]]
+					checkSpace(0);
+					mw.aload(dataVar);
+					stackAddress(-1);
+					mw.aload(dataVar);
+					mw.aload(dataVar);
+					stackAddress(-1);
+					mw.op(IALOAD);
+					mw.op(IALOAD);
+					mw.op(IASTORE);
+					return;
+				}
+				break;
+			case LOADLop:
+				checkSpace(1);
+				push(() -> mw.iconst(d));
+				return;
+			case STOREop:
+				if (n == 1 && address()) {
+					mw.istore(tmpVar);
+					mw.iinc(stVar, -1);
+					mw.aload(dataVar);
+					mw.iload(tmpVar);
+					top(0);
+					mw.op(IASTORE);
+					return;
+				}
+				break;
+			case STOREIop:
+				if (n == 1) {
+					// data[data[ST - 1]] = data[ST - 2]
+					mw.iinc(stVar, -2);
+					mw.aload(dataVar);
+					top(1);
+					top(0);
+					mw.op(IASTORE);
+					return;
+				}
+				break;
+			case CALLop:
+				if (isFixed(r)) {
+					var target = d + vm.content(r);
+					if (target >= vm.PB) {
+						if (primitive(target - vm.PB)) {
+							return;
+						}
+					} else if (call(target)) {
+						return;
+					}
+				}
+				break;
+			case PUSHop:
+				checkSpace(d);
+				mw.iinc(stVar, d);
+				return;
+			case POPop:
+				if (n == 0) {
+					mw.iinc(stVar, -d);
+					return;
+				}
+				if (n == 1) {
+					// data[ST - 1 - d] = data[ST - 1]; ST = ST - d
+					mw.aload(dataVar);
+					stackAddress(-1 - d);
+					top(-1);
+					mw.op(IASTORE);
+					mw.iinc(stVar, -d);
+					return;
+				}
+				break;
+			case JUMPop:
+				if (isFixed(r)) {
+					jump(d + vm.content(r));
+					return;
+				}
+				break;
+			case JUMPIFop:
+				if (isFixed(r)) {
+					var taken = new Label();
+					mw.iinc(stVar, -1);
+					top(0);
+					mw.iconst(n);
+					mw.jump(IF_ICMPEQ, taken);
+					jump(addr + 1);
+					mw.mark(taken);
+					jump(d + vm.content(r));
+					return;
+				}
+				break;
+			case HALTop:
+				sync(mw);
+				mw.aload(vmVar);
+				mw.iconst(halted);
+				mw.field(PUTFIELD, tamVm, "status", "I");
+				mw.iconst(addr);
+				mw.op(IRETURN);
+				return;
+			default:
+				break;
+			}
+			interpret();
+		}
+
+		private static boolean isFixed(int r) {
+			return r == CBr || r == SBr || r == PBr || r == PTr || r == HBr;
+		}
+
+		// Pushes d + content(r), if the register is fixed or LB.
+		private boolean address() {
+			if (isFixed(r)) {
+				mw.iconst(d + vm.content(r));
+				return true;
+			}
+			if (r == LBr) {
+				mw.iload(lbVar);
+				mw.iconst(d);
+				mw.op(IADD);
+				return true;
+			}
+			return false;
+		}
+
+		// Pushes ST + offset.
+		private void stackAddress(int offset) {
+			mw.iload(stVar);
+			if (offset != 0) {
+				mw.iconst(offset);
+				mw.op(IADD);
+			}
+		}
+
+		// Pushes data[ST + offset].
+		private void top(int offset) {
+			mw.aload(dataVar);
+			stackAddress(offset);
+			mw.op(IALOAD);
+		}
+
+		// data[ST] = value; ST = ST + 1
+		private void push(Runnable value) {
+			mw.aload(dataVar);
+			mw.iload(stVar);
+			value.run();
+			mw.op(IASTORE);
+			mw.iinc(stVar, 1);
+		}
+
+		// If there is not enough room for the stack to grow by spaceNeeded, hands
+		// the whole instruction over to its handler, which will record the
+		// failure.
+		private void checkSpace(int spaceNeeded) {
+			var ok = new Label();
+			getField(mw, "HT");
+			mw.iload(stVar);
+			mw.op(ISUB);
+			mw.iconst(spaceNeeded);
+			mw.jump(IF_ICMPGE, ok);
+			interpret();
+			mw.mark(ok);
+		}
+
+		// Continues at the given code address: a goto if it lies in this region,
+		// otherwise an exit.
+		private void jump(int target) {
+			if (target >= first && target < last) {
+				mw.jump(GOTO, at[target - first]);
+			} else {
+				exit(mw, target);
+			}
+		}
+
+		// Leaves the region if status is no longer running.
+		private void exitUnlessRunning() {
+			var ok = new Label();
+			getField(mw, "status");
+			mw.jump(IFEQ, ok);
+			exit(mw, addr + 1);
+			mw.mark(ok);
+		}
+
+		// Calls the routine at target, if the static link is easy to find.
+		private boolean call(int target) {
+			if (n != SBr && n != LBr && n != L1r) {
+				return false;
+			}
+			checkSpace(3);
+			mw.aload(dataVar);
+			mw.iload(stVar);
+			switch (n) {
+			case SBr:
+				mw.iconst(SB);
+				break;
+			case LBr:
+				mw.iload(lbVar);
+				break;
+			default:
+				mw.aload(dataVar);
+				mw.iload(lbVar);
+				mw.op(IALOAD);
+				break;
+			}
+			mw.op(IASTORE); // static link
+			mw.aload(dataVar);
+			stackAddress(1);
+			mw.iload(lbVar);
+			mw.op(IASTORE); // dynamic link
+			mw.aload(dataVar);
+			stackAddress(2);
+			mw.iconst(addr + 1);
+			mw.op(IASTORE); // return address
+			mw.aload(vmVar);
+			mw.iconst(n);
+			top(0);
+			mw.invoke(INVOKEVIRTUAL, tamVm, "enterFrame", "(II)V");
+			mw.iload(stVar);
+			mw.istore(lbVar);
+			mw.iinc(stVar, 3);
+			jump(target);
+			return true;
+		}
+
+		private boolean primitive(int displacement) {
+			if (displacement < 0 || displacement >= Primitive.count) {
+				return false;
+			}
+			switch (Primitive.of(displacement)) {
+			case ADD:
+				arithmetic(LADD);
+				return true;
+			case SUB:
+				arithmetic(LSUB);
+				return true;
+			case MULT:
+				arithmetic(LMUL);
+				return true;
+			case LT:
+				comparison(IF_ICMPLT);
+				return true;
+			case LE:
+				comparison(IF_ICMPLE);
+				return true;
+			case GE:
+				comparison(IF_ICMPGE);
+				return true;
+			case GT:
+				comparison(IF_ICMPGT);
+				return true;
+			default:
+				sync(mw);
+				mw.aload(vmVar);
+				mw.iconst(displacement);
+				mw.invoke(INVOKEVIRTUAL, tamVm, "callPrimitive", "(I)V");
+				reload(mw);
+				exitUnlessRunning();
+				return true;
+			}
+		}
+
+		// ST = ST - 1; data[ST - 1] = overflowChecked(data[ST - 1] op data[ST])
+		private void arithmetic(int op) {
+			mw.iinc(stVar, -1);
+			mw.aload(dataVar);
+			stackAddress(-1);
+			mw.aload(vmVar);
+			top(-1);
+			mw.op(I2L);
+			top(0);
+			mw.op(I2L);
+			mw.op(op);
+			mw.invoke(INVOKEVIRTUAL, tamVm, "overflowChecked", "(J)I");
+			mw.op(IASTORE);
+			exitUnlessRunning();
+		}
+
+		// ST = ST - 1; data[ST - 1] = toInt(data[ST - 1] cmp data[ST])
+		private void comparison(int branch) {
+			var isTrue = new Label();
+			var done = new Label();
+			mw.iinc(stVar, -1);
+			mw.aload(dataVar);
+			stackAddress(-1);
+			top(-1);
+			top(0);
+			mw.jump(branch, isTrue);
+			mw.iconst(Machine.falseRep);
+			mw.jump(GOTO, done);
+			mw.mark(isTrue);
+			mw.iconst(Machine.trueRep);
+			mw.mark(done);
+			mw.op(IASTORE);
+		}
+
+		// Runs the instruction through its handler, then carries on inline if
+		// it simply fell through to the next instruction.
+		private void interpret() {
+			var leave = new Label();
+			sync(mw);
+			mw.aload(vmVar);
+			mw.iconst(addr);
+			mw.invoke(INVOKESTATIC, jit, "interpretOne", "(L" + tamVm + ";I)I");
+			mw.istore(tmpVar);
+			reload(mw);
+			getField(mw, "status");
+			mw.jump(IFNE, leave);
+			mw.iload(tmpVar);
+			mw.iconst(addr + 1);
+			mw.jump(IF_ICMPNE, leave);
+			mw.jump(GOTO, next());
+			mw.mark(leave);
+			mw.iload(tmpVar);
+			mw.op(IRETURN);
+		}
+
+		private Label next() {
+			return addr + 1 < last ? at[addr + 1 - first] : end;
+		}
+	}
+}
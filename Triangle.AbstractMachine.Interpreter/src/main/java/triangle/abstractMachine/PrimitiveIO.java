@@ -0,0 +1,236 @@
+/*
+ * @(#)PrimitiveIO.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The buffered channels behind the I/O primitives of a machine: GET, GETEOL
+ * and GETINT read from the input channel, and PUT, PUTEOL and PUTINT write to
+ * the output channel.
+ *
+ * <p>
+ * The interpreter uses the process's standard input and output, opened
+ * directly on their file descriptors rather than through System.in and
+ * System.out, or files named with {@link #open}. Output is kept in the buffer
+ * until it is full, until the program is about to block reading input (so
+ * that a prompt is seen before the read), and when the program stops, by
+ * halting or by failing. Characters are written in the platform's default
+ * charset, as System.out would.
+ * </p>
+ */
+final class PrimitiveIO {
+
+	final static int defaultBufferSize = 8192, minBufferSize = 16, maxBufferSize = 1 << 24;
+
+	private final static Charset charset = System.out.charset();
+
+	// true iff characters 0..127 are written as the same single byte, as they
+	// are in every charset in common use
+	private final static boolean asciiCompatible = isAsciiCompatible(charset);
+
+	private final static byte[] lineSeparator = System.lineSeparator().getBytes(charset);
+
+	// the standard input and output, opened when first needed
+	private static volatile FileChannel stdin, stdout;
+
+	private final ReadableByteChannel in;
+
+	private final WritableByteChannel out;
+
+	private final ByteBuffer inBuffer;
+
+	private final ByteBuffer outBuffer;
+
+	PrimitiveIO(ReadableByteChannel in, WritableByteChannel out, int inSize, int outSize) {
+		this.in = in;
+		this.out = out;
+		inBuffer = ByteBuffer.allocate(inSize).flip();
+		outBuffer = ByteBuffer.allocate(outSize);
+	}
+
+	private static boolean isAsciiCompatible(Charset charset) {
+		var ascii = new char[128];
+		for (var c = 0; c < ascii.length; c++) {
+			ascii[c] = (char) c;
+		}
+		var text = new String(ascii);
+		return Arrays.equals(text.getBytes(charset), text.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Opens input and output on files or on the standard streams, with the
+	 * given buffer sizes.
+	 *
+	 * @param inputName  the file to read from, or null for standard input.
+	 * @param outputName the file to write to, or null for standard output.
+	 */
+	static PrimitiveIO open(String inputName, String outputName, int inSize, int outSize) throws IOException {
+		ReadableByteChannel in;
+		if (inputName == null) {
+			synchronized (PrimitiveIO.class) {
+				if (stdin == null) {
+					stdin = new FileInputStream(FileDescriptor.in).getChannel();
+				}
+				in = stdin;
+			}
+		} else {
+			in = FileChannel.open(Path.of(inputName), StandardOpenOption.READ);
+		}
+		WritableByteChannel out;
+		if (outputName == null) {
+			synchronized (PrimitiveIO.class) {
+				if (stdout == null) {
+					stdout = new FileOutputStream(FileDescriptor.out).getChannel();
+				}
+				out = stdout;
+			}
+		} else {
+			try {
+				out = FileChannel.open(Path.of(outputName), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+			} catch (IOException e) {
+				if (in != stdin) {
+					in.close();
+				}
+				throw e;
+			}
+		}
+		return new PrimitiveIO(in, out, inSize, outSize);
+	}
+
+	/**
+	 * Flushes the output and closes any files opened by {@link #open}. The
+	 * standard input and output are left open.
+	 */
+	void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			if (in != stdin) {
+				in.close();
+			}
+			if (out != stdout) {
+				out.close();
+			}
+		}
+	}
+
+	// OUTPUT
+
+	/**
+	 * Writes everything in the output buffer to the output channel.
+	 */
+	void flush() throws IOException {
+		if (outBuffer.position() == 0) {
+			return;
+		}
+		if (out == stdout) {
+			// anything the interpreter itself has printed comes first
+			System.out.flush();
+		}
+		outBuffer.flip();
+		while (outBuffer.hasRemaining()) {
+			out.write(outBuffer);
+		}
+		outBuffer.clear();
+	}
+
+	private void put(byte b) throws IOException {
+		if (!outBuffer.hasRemaining()) {
+			flush();
+		}
+		outBuffer.put(b);
+	}
+
+	private void put(byte[] bytes) throws IOException {
+		for (var b : bytes) {
+			put(b);
+		}
+	}
+
+	/**
+	 * Writes a character, as PUT.
+	 */
+	void putChar(char c) throws IOException {
+		if (c < 128 && asciiCompatible) {
+			put((byte) c);
+		} else {
+			put(String.valueOf(c).getBytes(charset));
+		}
+	}
+
+	/**
+	 * Writes the end of a line, as PUTEOL.
+	 */
+	void putEOL() throws IOException {
+		put(lineSeparator);
+	}
+
+	/**
+	 * Writes an integer in decimal, as PUTINT.
+	 */
+	void putInt(long value) throws IOException {
+		if (value >= 0 && value < 10 && asciiCompatible) {
+			put((byte) ('0' + value));
+		} else {
+			put(Long.toString(value).getBytes(charset));
+		}
+	}
+
+	/**
+	 * Writes a string, such as the prompt for GETINT.
+	 */
+	void putString(String s) throws IOException {
+		put(s.getBytes(charset));
+	}
+
+	// INPUT
+
+	/**
+	 * Reads the next byte of input, flushing the output first if the read has
+	 * to wait for more input.
+	 *
+	 * @return the byte, or -1 at the end of the input.
+	 */
+	int read() throws IOException {
+		if (!inBuffer.hasRemaining()) {
+			flush();
+			inBuffer.clear();
+			var count = in.read(inBuffer);
+			inBuffer.flip();
+			if (count <= 0) {
+				return -1;
+			}
+		}
+		return inBuffer.get() & 0xFF;
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * @(#)Superinstructions.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import static triangle.abstractMachine.TamVm.*;
+
+/**
+ * A load-time peephole pass that fuses common instruction sequences in the
+ * decoded code store into superinstructions.
+ *
+ * <p>
+ * The Encoder produces the same few sequences over and over, for example
+ * </p>
+ *
+ * <pre>
+ *   LOAD (1) a          LOAD (1) i
+ *   LOADL    1          LOADL    10
+ *   CALL     add        CALL     lt
+ *   STORE(1) a          JUMPIF(1) loop[CB]
+ * </pre>
+ *
+ * <p>
+ * for {@code a := a + 1} and for a loop test. Each such sequence is replaced
+ * by one superinstruction at the address of its first instruction. A
+ * sequence that a jump, call or LOADA in the program goes into the middle of
+ * is not fused. The instructions after the first are left as they were, so
+ * that a jump computed at run time into the middle of a sequence still finds
+ * the original code. A superinstruction reads its operands from the original
+ * instructions, writes the same scratch values above the stack top, and fails
+ * in the same state. When there is not enough room on the stack, it runs just
+ * its first instruction instead, which then records the failure exactly as
+ * before.
+ * </p>
+ */
+final class Superinstructions {
+
+	// LOADL k; STORE(1) z
+	final static int LITSTOREop = 16;
+	// LOAD(1) x; LOADL k; CALL prim; STORE(1) z
+	final static int VARLITSTOREop = 17;
+	// LOAD(1) x; LOAD(1) y; CALL prim; STORE(1) z
+	final static int VARVARSTOREop = 18;
+	// LOAD(1) x; LOADL k; CALL prim; JUMPIF(n) t
+	final static int VARLITJUMPIFop = 19;
+	// LOAD(1) x; LOAD(1) y; CALL prim; JUMPIF(n) t
+	final static int VARVARJUMPIFop = 20;
+
+	private final static int add = 0, sub = 1, mult = 2, lt = 3, le = 4, ge = 5, gt = 6;
+
+	private Superinstructions() {
+	}
+
+	/**
+	 * Replaces the first instruction of each recognised sequence in the decoded
+	 * code store with a superinstruction.
+	 *
+	 * @return the number of superinstructions created.
+	 */
+	static int fuse(TamVm vm) {
+		// Match against the original opcodes before rewriting any of them.
+		var targets = targets(vm);
+		var fusedOp = new int[vm.CT];
+		for (var addr = CB; addr < vm.CT; addr++) {
+			var op = match(vm, addr);
+			if (op != 0 && !entered(targets, addr, op == LITSTOREop ? 2 : 4)) {
+				fusedOp[addr] = op;
+			}
+		}
+
+		vm.codeBaseOp = vm.codeOp.clone();
+		vm.codePrim = new int[vm.CT];
+		var fused = 0;
+		for (var addr = CB; addr < vm.CT; addr++) {
+			if (fusedOp[addr] != 0) {
+				if (fusedOp[addr] != LITSTOREop) {
+					vm.codePrim[addr] = operation(primitive(vm, addr + 2));
+				}
+				vm.codeOp[addr] = fusedOp[addr];
+				fused++;
+			}
+		}
+		return fused;
+	}
+
+	// Marks the code addresses that instructions jump to, call or take.
+	private static boolean[] targets(TamVm vm) {
+		var targets = new boolean[vm.CT];
+		for (var addr = CB; addr < vm.CT; addr++) {
+			var op = vm.codeOp[addr];
+			var d = vm.codeD[addr];
+			if ((op == JUMPop || op == JUMPIFop || op == CALLop || op == LOADAop) && vm.codeR[addr] == CBr
+					&& d >= CB && d < vm.CT) {
+				targets[d] = true;
+			}
+		}
+		return targets;
+	}
+
+	// Returns true iff some instruction of the sequence of the given length
+	// starting at addr, other than the first, is a target.
+	private static boolean entered(boolean[] targets, int addr, int length) {
+		for (var next = addr + 1; next < addr + length && next < targets.length; next++) {
+			if (targets[next]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Returns the superinstruction that can replace the sequence starting at
+	// addr, or 0 if there is none.
+	private static int match(TamVm vm, int addr) {
+		if (is(vm, addr, LOADLop) && isWord(vm, addr + 1, STOREop)) {
+			return LITSTOREop;
+		}
+		if (!isWord(vm, addr, LOADop) || addr + 3 >= vm.CT) {
+			return 0;
+		}
+		var literal = is(vm, addr + 1, LOADLop);
+		if (!literal && !isWord(vm, addr + 1, LOADop)) {
+			return 0;
+		}
+		var prim = primitive(vm, addr + 2);
+		if (prim < 0) {
+			return 0;
+		}
+		if (isWord(vm, addr + 3, STOREop)) {
+			return literal ? VARLITSTOREop : VARVARSTOREop;
+		}
+		if (is(vm, addr + 3, JUMPIFop) && isStable(vm.codeR[addr + 3])) {
+			return literal ? VARLITJUMPIFop : VARVARJUMPIFop;
+		}
+		return 0;
+	}
+
+	private static boolean is(TamVm vm, int addr, int op) {
+		return addr < vm.CT && vm.codeOp[addr] == op;
+	}
+
+	// Returns true iff addr holds a one-word LOAD or STORE whose address does
+	// not depend on ST or CP, which the fused instruction leaves untouched
+	// until it completes.
+	private static boolean isWord(TamVm vm, int addr, int op) {
+		return is(vm, addr, op) && vm.codeN[addr] == 1 && isStable(vm.codeR[addr]);
+	}
+
+	private static boolean isStable(int r) {
+		return r != STr && r != CPr;
+	}
+
+	// Returns the displacement of the primitive called at addr, if it is one
+	// that the superinstructions implement, otherwise -1.
+	private static int primitive(TamVm vm, int addr) {
+		var r = vm.codeR[addr];
+		if (vm.codeOp[addr] != CALLop || !(r == PBr || r == CBr || r == PTr)) {
+			return -1;
+		}
+		var displacement = vm.codeD[addr] + vm.content(r) - vm.PB;
+		if (displacement == Primitive.ADD.ordinal() || displacement == Primitive.SUB.ordinal()
+				|| displacement == Primitive.MULT.ordinal() || displacement == Primitive.LT.ordinal()
+				|| displacement == Primitive.LE.ordinal() || displacement == Primitive.GE.ordinal()
+				|| displacement == Primitive.GT.ordinal()) {
+			return displacement;
+		}
+		return -1;
+	}
+
+	private static int operation(int displacement) {
+		switch (Primitive.of(displacement)) {
+		case ADD:
+			return add;
+		case SUB:
+			return sub;
+		case MULT:
+			return mult;
+		case LT:
+			return lt;
+		case LE:
+			return le;
+		case GE:
+			return ge;
+		default:
+			return gt;
+		}
+	}
+
+	/**
+	 * Executes the superinstruction op at CP.
+	 *
+	 * @return false, having done nothing, if the first instruction of the
+	 *         sequence must be executed on its own instead.
+	 */
+	static boolean execute(TamVm vm, int op) {
+		var addr = vm.CP;
+		if (op == LITSTOREop) {
+			if (vm.HT - vm.ST < 1) {
+				return false;
+			}
+			var value = vm.codeD[addr];
+			vm.data[vm.ST] = value;
+			vm.data[vm.codeD[addr + 1] + vm.content(vm.codeR[addr + 1])] = value;
+			vm.CP = addr + 2;
+			return true;
+		}
+
+		if (vm.HT - vm.ST < 2) {
+			return false;
+		}
+		var x = vm.data[vm.codeD[addr] + vm.content(vm.codeR[addr])];
+		vm.data[vm.ST] = x;
+		int y;
+		if (op == VARLITSTOREop || op == VARLITJUMPIFop) {
+			y = vm.codeD[addr + 1];
+		} else {
+			y = vm.data[vm.codeD[addr + 1] + vm.content(vm.codeR[addr + 1])];
+		}
+		vm.data[vm.ST + 1] = y;
+		var result = apply(vm, vm.codePrim[addr], x, y);
+		vm.data[vm.ST] = result;
+		if (vm.status != running) {
+			// overflow in the primitive
+			vm.ST = vm.ST + 1;
+			vm.CP = addr + 3;
+			return true;
+		}
+
+		if (op == VARLITSTOREop || op == VARVARSTOREop) {
+			vm.data[vm.codeD[addr + 3] + vm.content(vm.codeR[addr + 3])] = result;
+			vm.CP = addr + 4;
+		} else if (result == vm.codeN[addr + 3]) {
+			vm.CP = vm.codeD[addr + 3] + vm.content(vm.codeR[addr + 3]);
+		} else {
+			vm.CP = addr + 4;
+		}
+		return true;
+	}
+
+	private static int apply(TamVm vm, int operation, int x, int y) {
+		switch (operation) {
+		case add:
+			return vm.overflowChecked((long) x + y);
+		case sub:
+			return vm.overflowChecked((long) x - y);
+		case mult:
+			return vm.overflowChecked((long) x * y);
+		case lt:
+			return toInt(x < y);
+		case le:
+			return toInt(x <= y);
+		case ge:
+			return toInt(x >= y);
+		default:
+			return toInt(x > y);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * @(#)TamExecutor.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs TAM programs in parallel, each on a {@link TamVm} of its own.
+ *
+ * <p>
+ * A machine owns its code store, data store and I/O streams, so the programs
+ * cannot see one another; several machines may share the same program. The
+ * JIT engine compiles a program for each machine that runs it, which is worth
+ * doing only for long-running programs.
+ * </p>
+ */
+public final class TamExecutor implements AutoCloseable {
+
+	private final ExecutorService executor;
+
+	/**
+	 * Creates an executor that runs machines on the given executor service,
+	 * which is shut down by {@link #close}.
+	 */
+	public TamExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * @return an executor that runs each machine on a virtual thread of its
+	 *         own; a program blocked reading its input then holds no platform
+	 *         thread.
+	 */
+	public static TamExecutor withVirtualThreads() {
+		return new TamExecutor(Executors.newVirtualThreadPerTaskExecutor());
+	}
+
+	/**
+	 * @return an executor that runs machines on a pool of the given number of
+	 *         platform threads.
+	 */
+	public static TamExecutor withThreads(int threads) {
+		return new TamExecutor(Executors.newFixedThreadPool(threads));
+	}
+
+	/**
+	 * Runs the machine's program.
+	 *
+	 * @return the machine, once its program has halted or failed.
+	 */
+	public Future<TamVm> submit(TamVm vm) {
+		return executor.submit(() -> {
+			vm.run();
+			return vm;
+		});
+	}
+
+	/**
+	 * Runs the programs of all the machines, and waits for them to finish.
+	 *
+	 * @return the machines, in the same order.
+	 * @throws ExecutionException if a machine threw an exception, which is
+	 *                            the cause.
+	 */
+	public List<TamVm> runAll(List<TamVm> machines) throws InterruptedException, ExecutionException {
+		var runs = new ArrayList<Future<TamVm>>(machines.size());
+		for (var vm : machines) {
+			runs.add(submit(vm));
+		}
+		var finished = new ArrayList<TamVm>(runs.size());
+		for (var run : runs) {
+			finished.add(run.get());
+		}
+		return finished;
+	}
+
+	/**
+	 * Waits for the machines already submitted to finish, then shuts down the
+	 * executor service.
+	 */
+	@Override
+	public void close() {
+		executor.close();
+	}
+}
@@ -0,0 +1,1128 @@
+/*
+ * @(#)TamVm.java
+ * 
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ * 
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+
+/**
+ * A Triangle Abstract Machine, with its own code store, data store, registers
+ * and I/O.
+ *
+ * <p>
+ * Nothing is shared between machines, so any number of them can run at once
+ * on different threads; {@link TamExecutor} runs them on a thread pool. A
+ * machine is not itself thread-safe, and should be run by one thread at a
+ * time. The program it is given is only read, so the same program may be
+ * given to many machines.
+ * </p>
+ */
+public final class TamVm {
+
+	// DATA STORE
+
+	// the number of words in the data store, which may be set with
+	// --datastore=<words>, up to maxDataStoreSize
+	public final static int defaultDataStoreSize = 1024, maxDataStoreSize = 1 << 24;
+
+	final int[] data;
+
+	// DATA STORE REGISTERS AND OTHER REGISTERS
+
+	final static int CB = 0, SB = 0;
+
+	final int HB; // = upper bound of data array + 1
+
+	final int CT; // = CB + the length of the program
+
+	int CP, ST, HT, LB, status;
+
+	// status values
+	public final static int running = 0, halted = 1, failedDataStoreFull = 2, failedInvalidCodeAddress = 3,
+			failedInvalidInstruction = 4, failedOverflow = 5, failedZeroDivide = 6, failedIOError = 7;
+
+	long accumulator;
+
+	// CODE STORE
+
+	// the program, from CB to CT; the primitive routines sit above it, from
+	// PB to PT
+	final Instruction[] code;
+
+	final int PB, PT;
+
+	// DECODED CODE STORE
+
+	// decodeProgram() flattens the code store into these parallel arrays, so
+	// that interpretDecodedProgram() works on plain ints rather than fetching
+	// Instruction objects and switching on enum references. codeOp holds
+	// OpCode ordinals, or superinstructions once Superinstructions.fuse() has
+	// run, and codeR holds Register ordinals.
+
+	int[] codeOp, codeR, codeN, codeD;
+
+	// set by Superinstructions.fuse(): the original opcode of each fused
+	// instruction, and the operation done by the primitive it calls
+	int[] codeBaseOp, codePrim;
+
+	// opcode numbers, matching the ordinals of OpCode
+	final static int LOADop = 0, LOADAop = 1, LOADIop = 2, LOADLop = 3, STOREop = 4, STOREIop = 5, CALLop = 6,
+			CALLIop = 7, RETURNop = 8, NOPop = 9, PUSHop = 10, POPop = 11, JUMPop = 12, JUMPIop = 13, JUMPIFop = 14,
+			HALTop = 15;
+
+	// register numbers, matching the ordinals of Register
+	final static int CBr = 0, CTr = 1, PBr = 2, PTr = 3, SBr = 4, STr = 5, HBr = 6, HTr = 7, LBr = 8, L1r = 9,
+			L2r = 10, L3r = 11, L4r = 12, L5r = 13, L6r = 14, CPr = 15;
+
+	// execution engines
+	public final static int instructionEngine = 0, decodedEngine = 1, threadedEngine = 2, jitEngine = 3;
+
+	int engine = decodedEngine;
+
+	// whether the decoded engine fuses common sequences into superinstructions
+	boolean fuse = true;
+
+	// the compiled forms of the program, for the threaded and JIT engines
+	ThreadedEngine.Handler[] handlers;
+
+	int[] regionOf;
+
+	final HeapAllocator heap = new HeapAllocator(this);
+
+	final PrimitiveIO io;
+
+	long startTimeNanos;
+
+	// the number of instructions the instruction engine has dispatched, which
+	// counts the work a program does whatever the speed of the host
+	long dispatches;
+
+	// DISPLAY
+
+	// display[k] holds the content of Lk for the current frame, so that
+	// content(int) need not follow the static chain, or unknown when Lk
+	// cannot be found from frame link words alone (e.g. at the top level,
+	// where data[LB] is a global variable); content(int) then follows the
+	// chain as before. display[1] is kept only to derive the others, as L1 is
+	// always data[LB]. CALL and CALLI save the caller's display on
+	// displayStack and RETURN restores it.
+
+	final static int unknown = -1;
+
+	boolean useDisplay = true;
+
+	int[] display = new int[7];
+
+	int[] displayStack = new int[7 * 64];
+
+	int displayDepth;
+
+	/**
+	 * Creates a machine for the given program, with a data store of the default
+	 * size, reading and writing the given streams.
+	 *
+	 * @param program the instructions of the program, from CB.
+	 * @param input   the program's input, read by GET, GETEOL and GETINT.
+	 * @param output  the program's output, written by PUT, PUTEOL and PUTINT.
+	 */
+	public TamVm(Instruction[] program, InputStream input, OutputStream output) {
+		this(program, defaultDataStoreSize, new PrimitiveIO(Channels.newChannel(input), Channels.newChannel(output),
+				PrimitiveIO.defaultBufferSize, PrimitiveIO.defaultBufferSize));
+	}
+
+	/**
+	 * Creates a machine for the given program.
+	 *
+	 * @param program       the instructions of the program, from CB.
+	 * @param dataStoreSize the number of words in the data store.
+	 * @param io            the program's input and output.
+	 */
+	TamVm(Instruction[] program, int dataStoreSize, PrimitiveIO io) {
+		if (dataStoreSize < Machine.linkDataSize || dataStoreSize > maxDataStoreSize) {
+			throw new IllegalArgumentException("data store size must be between " + Machine.linkDataSize + " and "
+					+ maxDataStoreSize + " words");
+		}
+		if (program.length > Machine.maxCodeSize) {
+			throw new IllegalArgumentException("program has more than " + Machine.maxCodeSize + " instructions");
+		}
+		code = program;
+		CT = CB + program.length;
+		// as in Machine, the primitives start no lower than initialCodeSize
+		PB = Math.max(CT, Machine.initialCodeSize);
+		PT = PB + Primitive.count;
+		data = new int[dataStoreSize];
+		HB = dataStoreSize;
+		this.io = io;
+	}
+
+	/**
+	 * Selects the engine that {@link #run} uses: {@link #decodedEngine}, the
+	 * default, {@link #instructionEngine}, {@link #threadedEngine} or
+	 * {@link #jitEngine}.
+	 */
+	public void setEngine(int engine) {
+		if (engine < instructionEngine || engine > jitEngine) {
+			throw new IllegalArgumentException("unknown engine " + engine);
+		}
+		this.engine = engine;
+	}
+
+	/**
+	 * @return the status of the program: {@link #running} before it has run,
+	 *         {@link #halted}, or the reason it failed.
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the number of instructions dispatched by the last run, if it used
+	 *         the {@link #instructionEngine}; the other engines do not count
+	 *         them, and give 0.
+	 */
+	public long getDispatchCount() {
+		return dispatches;
+	}
+
+	/**
+	 * Runs the program from CB until it halts or fails, then flushes its
+	 * output.
+	 *
+	 * @return the final status.
+	 */
+	public int run() {
+		try {
+			switch (engine) {
+			case decodedEngine:
+				decodeProgram();
+				if (fuse) {
+					Superinstructions.fuse(this);
+				}
+				startTimeNanos = System.nanoTime();
+				interpretDecodedProgram();
+				break;
+			case threadedEngine:
+				decodeProgram();
+				handlers = ThreadedEngine.compile(this);
+				startTimeNanos = System.nanoTime();
+				ThreadedEngine.run(this);
+				break;
+			case jitEngine:
+				decodeProgram();
+				JitEngine.CompiledProgram program;
+				try {
+					program = JitEngine.compile(this);
+				} catch (ReflectiveOperationException | LinkageError e) {
+					System.err.println("Cannot compile program to bytecode (" + e + "), using threaded engine");
+					handlers = ThreadedEngine.compile(this);
+					startTimeNanos = System.nanoTime();
+					ThreadedEngine.run(this);
+					break;
+				}
+				startTimeNanos = System.nanoTime();
+				JitEngine.run(this, program);
+				break;
+			default:
+				startTimeNanos = System.nanoTime();
+				interpretProgram();
+				break;
+			}
+		} finally {
+			// the program has halted or failed
+			try {
+				io.flush();
+			} catch (IOException e) {
+				status = failedIOError;
+			}
+		}
+		return status;
+	}
+
+	void resetDisplay() {
+		// Clears the display, for the top level of a program.
+
+		java.util.Arrays.fill(display, unknown);
+		displayDepth = 0;
+	}
+
+	void enterFrame(int n, int staticLink) {
+		// Sets up the display of a routine being called with the given static
+		// link, which is the content of register n, or n is -1 if it came from
+		// a closure.
+
+		if (!useDisplay) {
+			return;
+		}
+		var base = displayDepth * 7;
+		if (base + 7 > displayStack.length) {
+			displayStack = java.util.Arrays.copyOf(displayStack, displayStack.length * 2);
+		}
+		System.arraycopy(display, 0, displayStack, base, 7);
+		displayDepth = displayDepth + 1;
+
+		// The new Lk is the old L(j+k-1) when the static link is Lj, counting
+		// LB as L0. Any other static link starts a fresh chain.
+		int j;
+		if (n == LBr) {
+			j = 0;
+		} else if (n >= L1r && n <= L6r) {
+			j = n - L1r + 1;
+		} else {
+			j = 6;
+		}
+		for (var k = 2; k <= 6; k++) {
+			var from = j + k - 1;
+			display[k] = from <= 6 ? displayStack[base + from] : unknown;
+		}
+		display[1] = staticLink;
+	}
+
+	void leaveFrame() {
+		// Restores the display of the routine being returned to.
+
+		if (displayDepth == 0) {
+			java.util.Arrays.fill(display, unknown);
+			return;
+		}
+		displayDepth = displayDepth - 1;
+		System.arraycopy(displayStack, displayDepth * 7, display, 0, 7);
+	}
+
+	int content(int r) {
+		// Returns the current content of the register numbered r,
+		// even if r is one of the pseudo-registers L1..L6.
+
+		switch (r) {
+		case CBr:
+			return CB;
+		case CTr:
+			return CT;
+		case PBr:
+			return PB;
+		case PTr:
+			return PT;
+		case SBr:
+			return SB;
+		case STr:
+			return ST;
+		case HBr:
+			return HB;
+		case HTr:
+			return HT;
+		case LBr:
+			return LB;
+		case L1r:
+			return data[LB];
+		case L2r:
+			return display[2] >= 0 ? display[2] : data[data[LB]];
+		case L3r:
+			return display[3] >= 0 ? display[3] : data[data[data[LB]]];
+		case L4r:
+			return display[4] >= 0 ? display[4] : data[data[data[data[LB]]]];
+		case L5r:
+			return display[5] >= 0 ? display[5] : data[data[data[data[data[LB]]]]];
+		case L6r:
+			return display[6] >= 0 ? display[6] : data[data[data[data[data[data[LB]]]]]];
+		case CPr:
+			return CP;
+		default:
+			return 0;
+		}
+	}
+
+	int content(Register r) {
+		// Returns the current content of register r,
+		// even if r is one of the pseudo-registers L1..L6.
+
+		switch (r) {
+		case CB:
+			return CB;
+		case CT:
+			return CT;
+		case PB:
+			return PB;
+		case PT:
+			return PT;
+		case SB:
+			return SB;
+		case ST:
+			return ST;
+		case HB:
+			return HB;
+		case HT:
+			return HT;
+		case LB:
+			return LB;
+		case L1:
+			return data[LB];
+		case L2:
+			return data[data[LB]];
+		case L3:
+			return data[data[data[LB]]];
+		case L4:
+			return data[data[data[data[LB]]]];
+		case L5:
+			return data[data[data[data[data[LB]]]]];
+		case L6:
+			return data[data[data[data[data[data[LB]]]]]];
+		case CP:
+			return CP;
+		default:
+			return 0;
+		}
+	}
+
+	// PROGRAM STATUS
+
+	void dump() {
+		// Writes a summary of the machine state.
+
+		System.out.println("");
+		System.out.println("State of data store and registers:");
+		System.out.println("");
+		if (HT == HB) {
+			System.out.println("            |--------|          (heap is empty)");
+		} else {
+			System.out.println("       HB-->");
+			System.out.println("            |--------|");
+			for (var addr = HB - 1; addr >= HT; addr--) {
+				System.out.print(addr + ":");
+				if (addr == HT) {
+					System.out.print(" HT-->");
+				} else {
+					System.out.print("      ");
+				}
+				System.out.println("|" + data[addr] + "|");
+			}
+			System.out.println("            |--------|");
+		}
+		System.out.println("            |////////|");
+		System.out.println("            |////////|");
+		if (ST == SB) {
+			System.out.println("            |--------|          (stack is empty)");
+		} else {
+			var dynamicLink = LB;
+			var staticLink = LB;
+			var localRegNum = Register.LB;
+			System.out.println("      ST--> |////////|");
+			System.out.println("            |--------|");
+			for (var addr = ST - 1; addr >= SB; addr--) {
+				System.out.print(addr + ":");
+				if (addr == SB) {
+					System.out.print(" SB-->");
+				} else if (addr == staticLink) {
+					switch (localRegNum) {
+					case LB:
+						System.out.print(" LB-->");
+						break;
+					case L1:
+						System.out.print(" L1-->");
+						break;
+					case L2:
+						System.out.print(" L2-->");
+						break;
+					case L3:
+						System.out.print(" L3-->");
+						break;
+					case L4:
+						System.out.print(" L4-->");
+						break;
+					case L5:
+						System.out.print(" L5-->");
+						break;
+					case L6:
+						System.out.print(" L6-->");
+						break;
+					default:
+						break;
+					}
+					staticLink = data[addr];
+					localRegNum = Register.of(localRegNum.ordinal() + 1);
+				} else {
+					System.out.print("      ");
+				}
+				if (addr == dynamicLink && dynamicLink != SB) {
+					System.out.print("|SL=" + data[addr] + "|");
+				} else if (addr == dynamicLink + 1 && dynamicLink != SB) {
+					System.out.print("|DL=" + data[addr] + "|");
+				} else if (addr == dynamicLink + 2 && dynamicLink != SB) {
+					System.out.print("|RA=" + data[addr] + "|");
+				} else {
+					System.out.print("|" + data[addr] + "|");
+				}
+				System.out.println("");
+				if (addr == dynamicLink) {
+					System.out.println("            |--------|");
+					dynamicLink = data[addr + 1];
+				}
+			}
+		}
+		System.out.println("");
+	}
+
+	void showStatus() {
+		// Writes an indication of whether and why the program has terminated.
+		System.out.println("");
+		switch (status) {
+		case running:
+			System.out.println("Program is running.");
+			break;
+		case halted:
+			System.out.println("Program has halted normally.");
+			System.out.println("Total execution time (ns): " + (System.nanoTime() - startTimeNanos));
+			break;
+		case failedDataStoreFull:
+			System.out.println("Program has failed due to exhaustion of Data Store.");
+			break;
+		case failedInvalidCodeAddress:
+			System.out.println("Program has failed due to an invalid code address.");
+			break;
+		case failedInvalidInstruction:
+			System.out.println("Program has failed due to an invalid instruction.");
+			break;
+		case failedOverflow:
+			System.out.println("Program has failed due to overflow.");
+			break;
+		case failedZeroDivide:
+			System.out.println("Program has failed due to division by zero.");
+			break;
+		case failedIOError:
+			System.out.println("Program has failed due to an IO error.");
+			break;
+		}
+		if (heap.allocations > 0 || heap.disposals > 0 || heap.invalidDisposals > 0) {
+			showHeapStatus();
+		}
+		if (status != halted) {
+			dump();
+		}
+	}
+
+	void showHeapStatus() {
+		// Writes the allocation and fragmentation counters of the heap.
+
+		var heapSize = HB - HT;
+		var inUse = heapSize - heap.freeWords;
+		System.out.println("Heap: " + heap.allocations + " allocations (" + heap.reused
+				+ " from free lists), " + heap.disposals + " disposals, " + heap.invalidDisposals
+				+ " invalid disposals.");
+		System.out.println("Heap: " + heapSize + " words (" + (HB - heap.lowestHT) + " at most), " + inUse
+				+ " in use, " + heap.freeWords + " free in " + heap.freeBlocks() + " blocks ("
+				+ (heapSize == 0 ? 0 : 100L * heap.freeWords / heapSize) + "% fragmentation).");
+	}
+
+	// INTERPRETATION
+
+	void checkSpace(int spaceNeeded) {
+		// Signals failure if there is not enough space to expand the stack or
+		// heap by spaceNeeded.
+
+		if (HT - ST < spaceNeeded) {
+			status = failedDataStoreFull;
+		}
+	}
+
+	static boolean isTrue(int datum) {
+		// Tests whether the given datum represents true.
+		return (datum == Machine.trueRep);
+	}
+
+	boolean equal(int size, int addr1, int addr2) {
+		// Tests whether two multi-word objects are equal, given their common
+		// size and their base addresses.
+
+		boolean eq;
+		int index;
+
+		eq = true;
+		index = 0;
+		while (eq && (index < size)) {
+			if (data[addr1 + index] == data[addr2 + index]) {
+				index = index + 1;
+			} else {
+				eq = false;
+			}
+		}
+
+		return eq;
+	}
+
+	int overflowChecked(long datum) {
+		// Signals failure if the datum is too large to fit into a single word,
+		// otherwise returns the datum as a single word.
+
+		if ((-Machine.maxintRep <= datum) && (datum <= Machine.maxintRep)) {
+			return (int) datum;
+		} else {
+			status = failedOverflow;
+			return 0;
+		}
+	}
+
+	static int toInt(boolean b) {
+		return b ? Machine.trueRep : Machine.falseRep;
+	}
+
+	int currentChar;
+
+	int readInt() throws java.io.IOException {
+		int temp = 0;
+		int sign = 1;
+
+		do {
+			currentChar = io.read();
+		} while (Character.isWhitespace((char) currentChar));
+
+		if ((currentChar == '-') || (currentChar == '+')) {
+			do {
+				sign = (currentChar == '-') ? -1 : 1;
+				currentChar = io.read();
+			} while ((currentChar == '-') || currentChar == '+');
+		}
+
+		if (Character.isDigit((char) currentChar)) {
+			do {
+				temp = temp * 10 + (currentChar - '0');
+				currentChar = io.read();
+			} while (Character.isDigit((char) currentChar));
+		}
+
+		return sign * temp;
+	}
+
+	void callPrimitive(int primitiveDisplacement) {
+		// Invokes the given primitive routine.
+
+		int addr, size;
+		char ch;
+
+		var primitive = Primitive.of(primitiveDisplacement);
+		switch (primitive) {
+		case ID:
+			break; // nothing to be done
+		case NOT:
+			data[ST - 1] = toInt(!isTrue(data[ST - 1]));
+			break;
+		case AND:
+			ST = ST - 1;
+			data[ST - 1] = toInt(isTrue(data[ST - 1]) & isTrue(data[ST]));
+			break;
+		case OR:
+			ST = ST - 1;
+			data[ST - 1] = toInt(isTrue(data[ST - 1]) | isTrue(data[ST]));
+			break;
+		case SUCC:
+			data[ST - 1] = overflowChecked(data[ST - 1] + 1);
+			break;
+		case PRED:
+			data[ST - 1] = overflowChecked(data[ST - 1] - 1);
+			break;
+		case NEG:
+			data[ST - 1] = -data[ST - 1];
+			break;
+		case ADD:
+			ST = ST - 1;
+			accumulator = data[ST - 1];
+			data[ST - 1] = overflowChecked(accumulator + data[ST]);
+			break;
+		case SUB:
+			ST = ST - 1;
+			accumulator = data[ST - 1];
+			data[ST - 1] = overflowChecked(accumulator - data[ST]);
+			break;
+		case MULT:
+			ST = ST - 1;
+			accumulator = data[ST - 1];
+			data[ST - 1] = overflowChecked(accumulator * data[ST]);
+			break;
+		case DIV:
+			ST = ST - 1;
+			accumulator = data[ST - 1];
+			if (data[ST] != 0) {
+				data[ST - 1] = (int) (accumulator / data[ST]);
+			} else {
+				status = failedZeroDivide;
+			}
+			break;
+		case MOD:
+			ST = ST - 1;
+			accumulator = data[ST - 1];
+			if (data[ST] != 0) {
+				data[ST - 1] = (int) (accumulator % data[ST]);
+			} else {
+				status = failedZeroDivide;
+			}
+			break;
+		case LT:
+			ST = ST - 1;
+			data[ST - 1] = toInt(data[ST - 1] < data[ST]);
+			break;
+		case LE:
+			ST = ST - 1;
+			data[ST - 1] = toInt(data[ST - 1] <= data[ST]);
+			break;
+		case GE:
+			ST = ST - 1;
+			data[ST - 1] = toInt(data[ST - 1] >= data[ST]);
+			break;
+		case GT:
+			ST = ST - 1;
+			data[ST - 1] = toInt(data[ST - 1] > data[ST]);
+			break;
+		case EQ:
+			size = data[ST - 1]; // size of each comparand
+			ST = ST - 2 * size;
+			data[ST - 1] = toInt(equal(size, ST - 1, ST - 1 + size));
+			break;
+		case NE:
+			size = data[ST - 1]; // size of each comparand
+			ST = ST - 2 * size;
+			data[ST - 1] = toInt(!equal(size, ST - 1, ST - 1 + size));
+			break;
+		case EOL:
+			data[ST] = toInt(currentChar == '\n');
+			ST = ST + 1;
+			break;
+		case EOF:
+			data[ST] = toInt(currentChar == -1);
+			ST = ST + 1;
+			break;
+		case GET:
+			ST = ST - 1;
+			addr = data[ST];
+			try {
+				currentChar = io.read();
+			} catch (java.io.IOException s) {
+				status = failedIOError;
+			}
+			data[addr] = currentChar;
+			break;
+		case PUT:
+			ST = ST - 1;
+			ch = (char) data[ST];
+			try {
+				io.putChar(ch);
+			} catch (java.io.IOException s) {
+				status = failedIOError;
+			}
+			break;
+		case GETEOL:
+			try {
+				while ((currentChar = io.read()) != '\n')
+					;
+			} catch (java.io.IOException s) {
+				status = failedIOError;
+			}
+			break;
+		case PUTEOL:
+			try {
+				io.putEOL();
+			} catch (java.io.IOException s) {
+				status = failedIOError;
+			}
+			break;
+		case GETINT:
+			ST = ST - 1;
+			addr = data[ST];
+			try {
+				io.putString("enter int: ");
+				io.putEOL();
+				accumulator = readInt();
+			} catch (java.io.IOException s) {
+				status = failedIOError;
+			}
+			data[addr] = (int) accumulator;
+			break;
+		case PUTINT:
+			ST = ST - 1;
+			accumulator = data[ST];
+			try {
+				io.putInt(accumulator);
+			} catch (java.io.IOException s) {
+				status = failedIOError;
+			}
+			break;
+		case NEW:
+			size = data[ST - 1];
+			addr = heap.allocate(size);
+			if (addr < 0) {
+				checkSpace(size);
+				HT = HT - size;
+				heap.extended();
+				addr = HT;
+			}
+			data[ST - 1] = addr;
+			break;
+		case DISPOSE:
+			ST = ST - 2;
+			heap.dispose(data[ST + 1], data[ST]);
+			break;
+		}
+	}
+
+	void interpretProgram() {
+		// Runs the program in code store.
+
+		Instruction currentInstr;
+
+		// Initialize registers ...
+		ST = SB;
+		HT = HB;
+		heap.reset();
+		LB = SB;
+		CP = CB;
+		status = running;
+		dispatches = 0;
+		// this engine keeps no display, so L2..L6 are always found by
+		// following the static chain
+		resetDisplay();
+		do {
+			// Fetch instruction ...
+			currentInstr = code[CP];
+			dispatches++;
+			// Decode instruction ...
+			var op = currentInstr.opCode;
+			var r = currentInstr.register;
+			var n = currentInstr.length;
+			var d = currentInstr.operand;
+			int addr;
+
+			// Execute instruction ...
+			switch (op) {
+			case LOAD:
+				addr = d + content(r);
+				checkSpace(n);
+				for (var index = 0; index < n; index++) {
+					data[ST + index] = data[addr + index];
+				}
+				ST = ST + n;
+				CP = CP + 1;
+				break;
+			case LOADA:
+				addr = d + content(r);
+				checkSpace(1);
+				data[ST] = addr;
+				ST = ST + 1;
+				CP = CP + 1;
+				break;
+			case LOADI:
+				ST = ST - 1;
+				addr = data[ST];
+				checkSpace(n);
+				for (var index = 0; index < n; index++) {
+					data[ST + index] = data[addr + index];
+				}
+				ST = ST + n;
+				CP = CP + 1;
+				break;
+			case LOADL:
+				checkSpace(1);
+				data[ST] = d;
+				ST = ST + 1;
+				CP = CP + 1;
+				break;
+			case STORE:
+				addr = d + content(r);
+				ST = ST - n;
+				for (var index = 0; index < n; index++) {
+					data[addr + index] = data[ST + index];
+				}
+				CP = CP + 1;
+				break;
+			case STOREI:
+				ST = ST - 1;
+				addr = data[ST];
+				ST = ST - n;
+				for (var index = 0; index < n; index++) {
+					data[addr + index] = data[ST + index];
+				}
+				CP = CP + 1;
+				break;
+			case CALL:
+				addr = d + content(r);
+				if (addr >= PB) {
+					callPrimitive(addr - PB);
+					CP = CP + 1;
+				} else {
+					checkSpace(3);
+					if (0 <= n && n <= 15) {
+						data[ST] = content(n); // static link
+					} else {
+						status = failedInvalidInstruction;
+					}
+					data[ST + 1] = LB; // dynamic link
+					data[ST + 2] = CP + 1; // return address
+					LB = ST;
+					ST = ST + 3;
+					CP = addr;
+				}
+				break;
+			case CALLI:
+				ST = ST - 2;
+				addr = data[ST + 1];
+				if (addr >= PB) {
+					callPrimitive(addr - PB);
+					CP = CP + 1;
+				} else {
+					// data[ST] = static link already
+					data[ST + 1] = LB; // dynamic link
+					data[ST + 2] = CP + 1; // return address
+					LB = ST;
+					ST = ST + 3;
+					CP = addr;
+				}
+				break;
+			case RETURN:
+				addr = LB - d;
+				CP = data[LB + 2];
+				LB = data[LB + 1];
+				ST = ST - n;
+				for (var index = 0; index < n; index++) {
+					data[addr + index] = data[ST + index];
+				}
+				ST = addr + n;
+				break;
+			case PUSH:
+				checkSpace(d);
+				ST = ST + d;
+				CP = CP + 1;
+				break;
+			case POP:
+				addr = ST - n - d;
+				ST = ST - n;
+				for (var index = 0; index < n; index++) {
+					data[addr + index] = data[ST + index];
+				}
+				ST = addr + n;
+				CP = CP + 1;
+				break;
+			case JUMP:
+				CP = d + content(r);
+				break;
+			case JUMPI:
+				ST = ST - 1;
+				CP = data[ST];
+				break;
+			case JUMPIF:
+				ST = ST - 1;
+				if (data[ST] == n) {
+					CP = d + content(r);
+				} else {
+					CP = CP + 1;
+				}
+				break;
+			case HALT:
+				status = halted;
+				break;
+			}
+			if (CP < CB || CP >= CT) {
+				status = failedInvalidCodeAddress;
+			}
+		} while (status == running);
+	}
+
+	void interpretDecodedProgram() {
+		// Runs the program in the decoded code store.
+
+		// the stores do not change while the program runs, so are kept in
+		// locals rather than reloaded from fields on every instruction
+		var data = this.data;
+		var codeOp = this.codeOp;
+		var codeR = this.codeR;
+		var codeN = this.codeN;
+		var codeD = this.codeD;
+		var CT = this.CT;
+
+		// Initialize registers ...
+		ST = SB;
+		HT = HB;
+		heap.reset();
+		LB = SB;
+		CP = CB;
+		status = running;
+		resetDisplay();
+		do {
+			// Fetch instruction ...
+			var op = codeOp[CP];
+			var r = codeR[CP];
+			var n = codeN[CP];
+			var d = codeD[CP];
+			int addr;
+
+			if (op >= Superinstructions.LITSTOREop && !Superinstructions.execute(this, op)) {
+				op = codeBaseOp[CP];
+			}
+
+			// Execute instruction ...
+			switch (op) {
+			case LOADop:
+				addr = d + content(r);
+				checkSpace(n);
+				for (var index = 0; index < n; index++) {
+					data[ST + index] = data[addr + index];
+				}
+				ST = ST + n;
+				CP = CP + 1;
+				break;
+			case LOADAop:
+				addr = d + content(r);
+				checkSpace(1);
+				data[ST] = addr;
+				ST = ST + 1;
+				CP = CP + 1;
+				break;
+			case LOADIop:
+				ST = ST - 1;
+				addr = data[ST];
+				checkSpace(n);
+				for (var index = 0; index < n; index++) {
+					data[ST + index] = data[addr + index];
+				}
+				ST = ST + n;
+				CP = CP + 1;
+				break;
+			case LOADLop:
+				checkSpace(1);
+				data[ST] = d;
+				ST = ST + 1;
+				CP = CP + 1;
+				break;
+			case STOREop:
+				addr = d + content(r);
+				ST = ST - n;
+				for (var index = 0; index < n; index++) {
+					data[addr + index] = data[ST + index];
+				}
+				CP = CP + 1;
+				break;
+			case STOREIop:
+				ST = ST - 1;
+				addr = data[ST];
+				ST = ST - n;
+				for (var index = 0; index < n; index++) {
+					data[addr + index] = data[ST + index];
+				}
+				CP = CP + 1;
+				break;
+			case CALLop:
+				addr = d + content(r);
+				if (addr >= PB) {
+					callPrimitive(addr - PB);
+					CP = CP + 1;
+				} else {
+					checkSpace(3);
+					if (0 <= n && n <= 15) {
+						data[ST] = content(n); // static link
+					} else {
+						status = failedInvalidInstruction;
+					}
+					data[ST + 1] = LB; // dynamic link
+					data[ST + 2] = CP + 1; // return address
+					enterFrame(n, data[ST]);
+					LB = ST;
+					ST = ST + 3;
+					CP = addr;
+				}
+				break;
+			case CALLIop:
+				ST = ST - 2;
+				addr = data[ST + 1];
+				if (addr >= PB) {
+					callPrimitive(addr - PB);
+					CP = CP + 1;
+				} else {
+					// data[ST] = static link already
+					data[ST + 1] = LB; // dynamic link
+					data[ST + 2] = CP + 1; // return address
+					enterFrame(-1, data[ST]);
+					LB = ST;
+					ST = ST + 3;
+					CP = addr;
+				}
+				break;
+			case RETURNop:
+				addr = LB - d;
+				CP = data[LB + 2];
+				LB = data[LB + 1];
+				leaveFrame();
+				ST = ST - n;
+				for (var index = 0; index < n; index++) {
+					data[addr + index] = data[ST + index];
+				}
+				ST = addr + n;
+				break;
+			case PUSHop:
+				checkSpace(d);
+				ST = ST + d;
+				CP = CP + 1;
+				break;
+			case POPop:
+				addr = ST - n - d;
+				ST = ST - n;
+				for (var index = 0; index < n; index++) {
+					data[addr + index] = data[ST + index];
+				}
+				ST = addr + n;
+				CP = CP + 1;
+				break;
+			case JUMPop:
+				CP = d + content(r);
+				break;
+			case JUMPIop:
+				ST = ST - 1;
+				CP = data[ST];
+				break;
+			case JUMPIFop:
+				ST = ST - 1;
+				if (data[ST] == n) {
+					CP = d + content(r);
+				} else {
+					CP = CP + 1;
+				}
+				break;
+			case HALTop:
+				status = halted;
+				break;
+			}
+			if (CP < CB || CP >= CT) {
+				status = failedInvalidCodeAddress;
+			}
+		} while (status == running);
+	}
+
+	// DECODING
+
+	void decodeProgram() {
+		// Flattens the instructions in code store into the decoded arrays.
+
+		codeOp = new int[CT];
+		codeR = new int[CT];
+		codeN = new int[CT];
+		codeD = new int[CT];
+		for (var addr = CB; addr < CT; addr++) {
+			var instr = code[addr];
+			codeOp[addr] = instr.opCode.ordinal();
+			codeR[addr] = instr.register.ordinal();
+			codeN[addr] = instr.length;
+			codeD[addr] = instr.operand;
+		}
+	}
+}
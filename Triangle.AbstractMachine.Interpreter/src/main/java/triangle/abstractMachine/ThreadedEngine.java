@@ -0,0 +1,405 @@
+/*
+ * @(#)ThreadedEngine.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import static triangle.abstractMachine.TamVm.*;
+
+/**
+ * A closure-compiled execution engine for the TAM.
+ *
+ * <p>
+ * Each instruction in the decoded code store is compiled once, before the
+ * program starts, into a {@link Handler} with its operands already bound.
+ * Where the register of an instruction holds a value that cannot change while
+ * the program runs (CB, SB, PB, PT, HB) the address is resolved at compile
+ * time, and calls to the arithmetic and comparison primitives get handlers of
+ * their own. The main loop then does nothing but run
+ * {@code handlers[CP].exec()}.
+ * </p>
+ *
+ * <p>
+ * The handlers update the same registers and data store as
+ * {@link TamVm#interpretDecodedProgram()}, so output and failure
+ * statuses are the same whichever engine is used.
+ * </p>
+ */
+final class ThreadedEngine {
+
+	/**
+	 * A single compiled TAM instruction.
+	 */
+	interface Handler {
+		void exec();
+	}
+
+	private ThreadedEngine() {
+	}
+
+	/**
+	 * Runs the machine's handlers, starting from CB.
+	 */
+	static void run(TamVm vm) {
+		var handlers = vm.handlers;
+
+		// Initialize registers ...
+		vm.ST = SB;
+		vm.HT = vm.HB;
+		vm.heap.reset();
+		vm.LB = SB;
+		vm.CP = CB;
+		vm.status = running;
+		vm.resetDisplay();
+		do {
+			handlers[vm.CP].exec();
+			if (vm.CP < CB || vm.CP >= vm.CT) {
+				vm.status = failedInvalidCodeAddress;
+			}
+		} while (vm.status == running);
+	}
+
+	/**
+	 * Compiles the decoded code store into handlers.
+	 *
+	 * @return one handler for each instruction between CB and CT.
+	 */
+	static Handler[] compile(TamVm vm) {
+		var handlers = new Handler[vm.CT];
+		for (var addr = CB; addr < vm.CT; addr++) {
+			handlers[addr] = compile(vm, vm.codeOp[addr], vm.codeR[addr], vm.codeN[addr], vm.codeD[addr]);
+		}
+		return handlers;
+	}
+
+	// Returns true iff the content of register r is fixed for the whole run.
+	private static boolean isFixed(int r) {
+		return r == CBr || r == SBr || r == PBr || r == PTr || r == HBr;
+	}
+
+	private static Handler compile(TamVm vm, int op, int r, int n, int d) {
+		switch (op) {
+		case LOADop:
+			return load(vm, r, n, d);
+		case LOADAop:
+			if (isFixed(r)) {
+				var addr = d + vm.content(r);
+				return () -> {
+					vm.checkSpace(1);
+					vm.data[vm.ST] = addr;
+					vm.ST = vm.ST + 1;
+					vm.CP = vm.CP + 1;
+				};
+			}
+			return () -> {
+				var addr = d + vm.content(r);
+				vm.checkSpace(1);
+				vm.data[vm.ST] = addr;
+				vm.ST = vm.ST + 1;
+				vm.CP = vm.CP + 1;
+			};
+		case LOADIop:
+			return () -> {
+				vm.ST = vm.ST - 1;
+				var addr = vm.data[vm.ST];
+				vm.checkSpace(n);
+				for (var index = 0; index < n; index++) {
+					vm.data[vm.ST + index] = vm.data[addr + index];
+				}
+				vm.ST = vm.ST + n;
+				vm.CP = vm.CP + 1;
+			};
+		case LOADLop:
+			return () -> {
+				vm.checkSpace(1);
+				vm.data[vm.ST] = d;
+				vm.ST = vm.ST + 1;
+				vm.CP = vm.CP + 1;
+			};
+		case STOREop:
+			return store(vm, r, n, d);
+		case STOREIop:
+			return () -> {
+				vm.ST = vm.ST - 1;
+				var addr = vm.data[vm.ST];
+				vm.ST = vm.ST - n;
+				for (var index = 0; index < n; index++) {
+					vm.data[addr + index] = vm.data[vm.ST + index];
+				}
+				vm.CP = vm.CP + 1;
+			};
+		case CALLop:
+			return call(vm, r, n, d);
+		case CALLIop:
+			return () -> {
+				vm.ST = vm.ST - 2;
+				var addr = vm.data[vm.ST + 1];
+				if (addr >= vm.PB) {
+					vm.callPrimitive(addr - vm.PB);
+					vm.CP = vm.CP + 1;
+				} else {
+					// data[ST] = static link already
+					vm.data[vm.ST + 1] = vm.LB; // dynamic link
+					vm.data[vm.ST + 2] = vm.CP + 1; // return address
+					vm.enterFrame(-1, vm.data[vm.ST]);
+					vm.LB = vm.ST;
+					vm.ST = vm.ST + 3;
+					vm.CP = addr;
+				}
+			};
+		case RETURNop:
+			return () -> {
+				var addr = vm.LB - d;
+				vm.CP = vm.data[vm.LB + 2];
+				vm.LB = vm.data[vm.LB + 1];
+				vm.leaveFrame();
+				vm.ST = vm.ST - n;
+				for (var index = 0; index < n; index++) {
+					vm.data[addr + index] = vm.data[vm.ST + index];
+				}
+				vm.ST = addr + n;
+			};
+		case PUSHop:
+			return () -> {
+				vm.checkSpace(d);
+				vm.ST = vm.ST + d;
+				vm.CP = vm.CP + 1;
+			};
+		case POPop:
+			return () -> {
+				var addr = vm.ST - n - d;
+				vm.ST = vm.ST - n;
+				for (var index = 0; index < n; index++) {
+					vm.data[addr + index] = vm.data[vm.ST + index];
+				}
+				vm.ST = addr + n;
+				vm.CP = vm.CP + 1;
+			};
+		case JUMPop:
+			if (isFixed(r)) {
+				var target = d + vm.content(r);
+				return () -> vm.CP = target;
+			}
+			return () -> vm.CP = d + vm.content(r);
+		case JUMPIop:
+			return () -> {
+				vm.ST = vm.ST - 1;
+				vm.CP = vm.data[vm.ST];
+			};
+		case JUMPIFop:
+			if (isFixed(r)) {
+				var target = d + vm.content(r);
+				return () -> {
+					vm.ST = vm.ST - 1;
+					if (vm.data[vm.ST] == n) {
+						vm.CP = target;
+					} else {
+						vm.CP = vm.CP + 1;
+					}
+				};
+			}
+			return () -> {
+				vm.ST = vm.ST - 1;
+				if (vm.data[vm.ST] == n) {
+					vm.CP = d + vm.content(r);
+				} else {
+					vm.CP = vm.CP + 1;
+				}
+			};
+		case HALTop:
+			return () -> vm.status = halted;
+		default:
+			// NOP, like the decoded loop, does nothing at all
+			return () -> {
+			};
+		}
+	}
+
+	private static Handler load(TamVm vm, int r, int n, int d) {
+		if (isFixed(r)) {
+			var addr = d + vm.content(r);
+			if (n == 1) {
+				return () -> {
+					vm.checkSpace(1);
+					vm.data[vm.ST] = vm.data[addr];
+					vm.ST = vm.ST + 1;
+					vm.CP = vm.CP + 1;
+				};
+			}
+			return () -> {
+				vm.checkSpace(n);
+				for (var index = 0; index < n; index++) {
+					vm.data[vm.ST + index] = vm.data[addr + index];
+				}
+				vm.ST = vm.ST + n;
+				vm.CP = vm.CP + 1;
+			};
+		}
+		if (r == LBr && n == 1) {
+			return () -> {
+				vm.checkSpace(1);
+				vm.data[vm.ST] = vm.data[d + vm.LB];
+				vm.ST = vm.ST + 1;
+				vm.CP = vm.CP + 1;
+			};
+		}
+		return () -> {
+			var addr = d + vm.content(r);
+			vm.checkSpace(n);
+			for (var index = 0; index < n; index++) {
+				vm.data[vm.ST + index] = vm.data[addr + index];
+			}
+			vm.ST = vm.ST + n;
+			vm.CP = vm.CP + 1;
+		};
+	}
+
+	private static Handler store(TamVm vm, int r, int n, int d) {
+		if (isFixed(r)) {
+			var addr = d + vm.content(r);
+			if (n == 1) {
+				return () -> {
+					vm.ST = vm.ST - 1;
+					vm.data[addr] = vm.data[vm.ST];
+					vm.CP = vm.CP + 1;
+				};
+			}
+			return () -> {
+				vm.ST = vm.ST - n;
+				for (var index = 0; index < n; index++) {
+					vm.data[addr + index] = vm.data[vm.ST + index];
+				}
+				vm.CP = vm.CP + 1;
+			};
+		}
+		if (r == LBr && n == 1) {
+			return () -> {
+				vm.ST = vm.ST - 1;
+				vm.data[d + vm.LB] = vm.data[vm.ST];
+				vm.CP = vm.CP + 1;
+			};
+		}
+		return () -> {
+			var addr = d + vm.content(r);
+			vm.ST = vm.ST - n;
+			for (var index = 0; index < n; index++) {
+				vm.data[addr + index] = vm.data[vm.ST + index];
+			}
+			vm.CP = vm.CP + 1;
+		};
+	}
+
+	private static Handler call(TamVm vm, int r, int n, int d) {
+		if (!isFixed(r)) {
+			return () -> {
+				var addr = d + vm.content(r);
+				if (addr >= vm.PB) {
+					vm.callPrimitive(addr - vm.PB);
+					vm.CP = vm.CP + 1;
+				} else {
+					callRoutine(vm, n, addr);
+				}
+			};
+		}
+
+		var addr = d + vm.content(r);
+		if (addr >= vm.PB) {
+			return primitive(vm, addr - vm.PB);
+		}
+		return () -> callRoutine(vm, n, addr);
+	}
+
+	private static void callRoutine(TamVm vm, int n, int addr) {
+		vm.checkSpace(3);
+		if (0 <= n && n <= 15) {
+			vm.data[vm.ST] = vm.content(n); // static link
+		} else {
+			vm.status = failedInvalidInstruction;
+		}
+		vm.data[vm.ST + 1] = vm.LB; // dynamic link
+		vm.data[vm.ST + 2] = vm.CP + 1; // return address
+		vm.enterFrame(n, vm.data[vm.ST]);
+		vm.LB = vm.ST;
+		vm.ST = vm.ST + 3;
+		vm.CP = addr;
+	}
+
+	// Returns a handler for a call to the primitive routine with the given
+	// displacement. The common arithmetic and comparison primitives are
+	// expanded in place; the rest go through callPrimitive.
+	private static Handler primitive(TamVm vm, int displacement) {
+		if (displacement < 0 || displacement >= Primitive.count) {
+			return () -> {
+				vm.callPrimitive(displacement);
+				vm.CP = vm.CP + 1;
+			};
+		}
+
+		switch (Primitive.of(displacement)) {
+		case ADD:
+			return () -> {
+				vm.ST = vm.ST - 1;
+				vm.accumulator = vm.data[vm.ST - 1];
+				vm.data[vm.ST - 1] = vm.overflowChecked(vm.accumulator + vm.data[vm.ST]);
+				vm.CP = vm.CP + 1;
+			};
+		case SUB:
+			return () -> {
+				vm.ST = vm.ST - 1;
+				vm.accumulator = vm.data[vm.ST - 1];
+				vm.data[vm.ST - 1] = vm.overflowChecked(vm.accumulator - vm.data[vm.ST]);
+				vm.CP = vm.CP + 1;
+			};
+		case MULT:
+			return () -> {
+				vm.ST = vm.ST - 1;
+				vm.accumulator = vm.data[vm.ST - 1];
+				vm.data[vm.ST - 1] = vm.overflowChecked(vm.accumulator * vm.data[vm.ST]);
+				vm.CP = vm.CP + 1;
+			};
+		case LT:
+			return () -> {
+				vm.ST = vm.ST - 1;
+				vm.data[vm.ST - 1] = toInt(vm.data[vm.ST - 1] < vm.data[vm.ST]);
+				vm.CP = vm.CP + 1;
+			};
+		case LE:
+			return () -> {
+				vm.ST = vm.ST - 1;
+				vm.data[vm.ST - 1] = toInt(vm.data[vm.ST - 1] <= vm.data[vm.ST]);
+				vm.CP = vm.CP + 1;
+			};
+		case GE:
+			return () -> {
+				vm.ST = vm.ST - 1;
+				vm.data[vm.ST - 1] = toInt(vm.data[vm.ST - 1] >= vm.data[vm.ST]);
+				vm.CP = vm.CP + 1;
+			};
+		case GT:
+			return () -> {
+				vm.ST = vm.ST - 1;
+				vm.data[vm.ST - 1] = toInt(vm.data[vm.ST - 1] > vm.data[vm.ST]);
+				vm.CP = vm.CP + 1;
+			};
+		default:
+			return () -> {
+				vm.callPrimitive(displacement);
+				vm.CP = vm.CP + 1;
+			};
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * @(#)AllocationBenchmark.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the memory allocated by the interpreter while it runs a program
+ * that calls a primitive routine on almost every other instruction, and
+ * compares looking up primitives and registers through values() with the
+ * cached tables.
+ *
+ * <p>
+ * Allocation is counted per thread by the JVM, so the figures are exact
+ * rather than sampled. Run with
+ * {@code gradle :Triangle.AbstractMachine.Interpreter:benchmark -PbenchmarkClass=triangle.abstractMachine.AllocationBenchmark}.
+ * </p>
+ */
+public class AllocationBenchmark {
+
+	static final int iterations = 30000, lookups = 1000000, rounds = 5;
+
+	private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	public static void main(String[] args) {
+		var vm = new TamVm(build(), InputStream.nullInputStream(), OutputStream.nullOutputStream());
+		vm.decodeProgram();
+		vm.handlers = ThreadedEngine.compile(vm);
+		System.out.println("bytes allocated          per run   per primitive call");
+		report("instruction engine", checked(vm, vm::interpretProgram), primitiveCalls());
+		report("decoded engine", checked(vm, vm::interpretDecodedProgram), primitiveCalls());
+		report("threaded engine", checked(vm, () -> ThreadedEngine.run(vm)), primitiveCalls());
+
+		System.out.println();
+		System.out.println("bytes allocated          per run     per lookup");
+		report("values()[i]", AllocationBenchmark::copying, lookups);
+		report("of(i)", AllocationBenchmark::cached, lookups);
+		System.out.println("(sink " + sink + ")");
+	}
+
+	// Reports the fewest bytes allocated by a run, over several rounds.
+	static void report(String name, Runnable run, long calls) {
+		var least = Long.MAX_VALUE;
+		for (var round = 0; round < rounds; round++) {
+			var before = threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+			run.run();
+			var bytes = threads.getThreadAllocatedBytes(Thread.currentThread().threadId()) - before;
+			least = Math.min(least, bytes);
+		}
+		System.out.printf("%-20s %11d %14.3f%n", name, least, (double) least / calls);
+	}
+
+	// Returns the engine, failing if the program does not halt normally.
+	static Runnable checked(TamVm vm, Runnable engine) {
+		return () -> {
+			engine.run();
+			if (vm.status != TamVm.halted) {
+				throw new IllegalStateException("benchmark program failed with status " + vm.status);
+			}
+		};
+	}
+
+	static long sink;
+
+	static void copying() {
+		for (var i = 0; i < lookups; i++) {
+			sink += Primitive.values()[i % Primitive.count].ordinal() + Register.values()[i & 0xF].ordinal();
+		}
+	}
+
+	static void cached() {
+		for (var i = 0; i < lookups; i++) {
+			sink += Primitive.of(i % Primitive.count).ordinal() + Register.of(i & 0xF).ordinal();
+		}
+	}
+
+	// Returns the number of primitive calls made by one run of the program.
+	static long primitiveCalls() {
+		return 4L * iterations;
+	}
+
+	private static List<Instruction> code;
+
+	private static void emit(OpCode op, Register r, int n, int d) {
+		code.add(new Instruction(op, r, n, d));
+	}
+
+	private static void callPrimitive(Primitive p) {
+		emit(OpCode.CALL, Register.PB, Register.SB.ordinal(), p.ordinal());
+	}
+
+	// Returns a program with a loop that counts to iterations with succ, lt
+	// and not, none of which the decoded engine fuses.
+	static Instruction[] build() {
+		code = new ArrayList<>();
+		// the counter, at SB
+		emit(OpCode.LOADL, Register.CB, 0, 0);
+		var loop = code.size();
+		emit(OpCode.LOAD, Register.SB, 1, 0);
+		callPrimitive(Primitive.SUCC);
+		emit(OpCode.STORE, Register.SB, 1, 0);
+		emit(OpCode.LOAD, Register.SB, 1, 0);
+		emit(OpCode.LOADL, Register.CB, 0, iterations);
+		callPrimitive(Primitive.LT);
+		callPrimitive(Primitive.NOT);
+		callPrimitive(Primitive.NOT);
+		emit(OpCode.JUMPIF, Register.CB, Machine.trueRep, loop);
+		emit(OpCode.HALT, Register.CB, 0, 0);
+
+		return code.toArray(new Instruction[0]);
+	}
+}
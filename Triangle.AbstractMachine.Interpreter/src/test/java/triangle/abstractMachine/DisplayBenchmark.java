@@ -0,0 +1,126 @@
+/*
+ * @(#)DisplayBenchmark.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times non-local variable access through L1..L6 with the display and with
+ * the static chain walk, using the decoded and threaded engines.
+ *
+ * <p>
+ * For each nesting depth, the benchmark builds a program of nested routines
+ * p0 .. pDepth, where the innermost routine loops, reading and writing a
+ * variable of p0 through register L(depth). Run with
+ * {@code gradle :Triangle.AbstractMachine.Interpreter:benchmark}.
+ * </p>
+ */
+public class DisplayBenchmark {
+
+	static final int iterations = 30000, warmups = 30, rounds = 100;
+
+	public static void main(String[] args) {
+		System.out.println("best time per run (us)   decoded engine              threaded engine");
+		System.out.println("depth               chain walk  display  speedup  chain walk  display  speedup");
+		for (var depth = 1; depth <= 6; depth++) {
+			var vm = new TamVm(build(depth), InputStream.nullInputStream(), OutputStream.nullOutputStream());
+			vm.decodeProgram();
+			vm.handlers = ThreadedEngine.compile(vm);
+			System.out.printf("%5d           ", depth);
+			compare(vm, vm::interpretDecodedProgram);
+			compare(vm, () -> ThreadedEngine.run(vm));
+			System.out.println();
+		}
+	}
+
+	// Times the engine with and without the display, alternating the two so
+	// that both see the same JIT state.
+	static void compare(TamVm vm, Runnable engine) {
+		long walk = Long.MAX_VALUE, display = Long.MAX_VALUE;
+		for (var round = 0; round < warmups + rounds; round++) {
+			var w = time(vm, engine, false);
+			var d = time(vm, engine, true);
+			if (round >= warmups) {
+				walk = Math.min(walk, w);
+				display = Math.min(display, d);
+			}
+		}
+		System.out.printf("%11.1f %8.1f %7.2fx", walk / 1000.0, display / 1000.0, (double) walk / display);
+	}
+
+	// Returns the time, in ns, to run the machine's program.
+	static long time(TamVm vm, Runnable engine, boolean useDisplay) {
+		vm.useDisplay = useDisplay;
+		var start = System.nanoTime();
+		engine.run();
+		var elapsed = System.nanoTime() - start;
+		if (vm.status != TamVm.halted) {
+			throw new IllegalStateException("benchmark program failed with status " + vm.status);
+		}
+		return elapsed;
+	}
+
+	private static List<Instruction> code;
+
+	private static void emit(OpCode op, Register r, int n, int d) {
+		code.add(new Instruction(op, r, n, d));
+	}
+
+	// Returns a program of nested routines for the given depth.
+	static Instruction[] build(int depth) {
+		code = new ArrayList<>();
+		emit(OpCode.CALL, Register.CB, Register.SB.ordinal(), 2);
+		emit(OpCode.HALT, Register.CB, 0, 0);
+
+		// p0 .. p(depth-1): a local variable, then a call to the next level
+		for (var level = 0; level < depth; level++) {
+			var start = code.size();
+			emit(OpCode.PUSH, Register.CB, 0, 1);
+			emit(OpCode.CALL, Register.CB, Register.LB.ordinal(), start + 4);
+			emit(OpCode.RETURN, Register.CB, 0, 0);
+			// padding, so the next routine starts at start + 4
+			emit(OpCode.HALT, Register.CB, 0, 0);
+		}
+
+		// p(depth): the loop
+		var lk = Register.values()[Register.L1.ordinal() + depth - 1];
+		emit(OpCode.PUSH, Register.CB, 0, 1);
+		emit(OpCode.LOADL, Register.CB, 0, 0);
+		emit(OpCode.STORE, Register.LB, 1, 3);
+		var loop = code.size();
+		for (var i = 0; i < 4; i++) {
+			emit(OpCode.LOAD, lk, 1, 3);
+			emit(OpCode.STORE, lk, 1, 3);
+		}
+		emit(OpCode.LOAD, Register.LB, 1, 3);
+		emit(OpCode.LOADL, Register.CB, 0, 1);
+		emit(OpCode.CALL, Register.PB, Register.SB.ordinal(), Primitive.ADD.ordinal());
+		emit(OpCode.STORE, Register.LB, 1, 3);
+		emit(OpCode.LOAD, Register.LB, 1, 3);
+		emit(OpCode.LOADL, Register.CB, 0, iterations);
+		emit(OpCode.CALL, Register.PB, Register.SB.ordinal(), Primitive.LT.ordinal());
+		emit(OpCode.JUMPIF, Register.CB, Machine.trueRep, loop);
+		emit(OpCode.RETURN, Register.CB, 0, 0);
+
+		return code.toArray(new Instruction[0]);
+	}
+}
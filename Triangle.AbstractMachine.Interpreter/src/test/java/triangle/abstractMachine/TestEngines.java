@@ -0,0 +1,174 @@
+/*
+ * @(#)TestEngines.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import triangle.Compiler;
+
+/**
+ * Runs the sample programs on each engine and checks that it gives the same
+ * status and output as the instruction engine, which interprets the
+ * instructions as they are and so is the reference for the others.
+ */
+public class TestEngines {
+
+	// enough for every sample program that reads its input; bank.tri reads
+	// commands until it is given q
+	static final String input = "5\n7\nabc\n3\nq\nq\nq\nq\n";
+
+	// too slow on the instruction engine to run on every build
+	static final String skipped = "while-longloop.tri";
+
+	record Run(int status, String output) {
+	}
+
+	@Test
+	public void testDecodedEngine() throws Exception {
+		assertAgrees(TamVm.decodedEngine);
+	}
+
+	@Test
+	public void testThreadedEngine() throws Exception {
+		// --nofuse is accepted with any engine, so is tried with this one too
+		assertAgrees(TamVm.threadedEngine);
+	}
+
+	@Test
+	public void testJitEngine() throws Exception {
+		// the interpreter falls back to the threaded engine on a program the JIT
+		// cannot compile, so check first that it compiles them all
+		for (var program : samples().values()) {
+			compileToBytecode(program);
+		}
+		assertAgrees(TamVm.jitEngine);
+	}
+
+	@Test
+	public void testJitEngineOnLargeProgram() throws Exception {
+		// each call has its own return address, so there are more code
+		// addresses above 32767 than fit in the constant pool
+		var calls = 100000;
+		var source = new StringBuilder("let var n: Integer; proc step() ~ n := (n + 3) // 10 in begin n := 0");
+		for (var i = 0; i < calls; i++) {
+			source.append("; step()");
+		}
+		source.append("; putint(n) end");
+		var compilation = new Compiler(new Compiler.CLIOptions()).compile("large.tri", source.toString().getBytes());
+		assertTrue(compilation.getDiagnostics().toString(), compilation.isSuccessful());
+		var program = compilation.getObjectProgram();
+		assertTrue(program.length > calls);
+
+		compileToBytecode(program);
+		var expected = run(program, TamVm.instructionEngine, true, true);
+		assertEquals(new Run(TamVm.halted, "0"), expected);
+		assertEquals(expected, run(program, TamVm.jitEngine, true, true));
+	}
+
+	@Test
+	public void testStaticLinks() throws Exception {
+		// innermost reaches a and x through L2 and L3, calls setA, a sibling of
+		// inner, with the static link of outer, and assigns to the global g
+		var source = "let var g: Integer;"
+				+ " proc outer(x: Integer) ~"
+				+ "   let var a: Integer;"
+				+ "       proc setA(v: Integer) ~ a := v + x;"
+				+ "       proc inner(y: Integer) ~"
+				+ "         let proc innermost() ~ begin setA(y); g := a + 1 end"
+				+ "         in begin innermost(); setA(a) end"
+				+ "   in begin a := 0; inner(10); putint(a); put('|'); putint(g) end"
+				+ " in begin g := 0; outer(30) end";
+		var compilation = new Compiler(new Compiler.CLIOptions()).compile("links.tri", source.getBytes());
+		assertTrue(compilation.getDiagnostics().toString(), compilation.isSuccessful());
+		var expected = new Run(TamVm.halted, "70|41");
+		for (var engine : new int[] { TamVm.instructionEngine, TamVm.decodedEngine, TamVm.threadedEngine,
+				TamVm.jitEngine }) {
+			for (var useDisplay : new boolean[] { true, false }) {
+				assertEquals("engine " + engine + " display=" + useDisplay, expected,
+						run(compilation.getObjectProgram(), engine, true, useDisplay));
+			}
+		}
+	}
+
+	// Checks that the engine gives the same results as the instruction engine
+	// on every sample, with and without superinstructions and the display.
+	static void assertAgrees(int engine) throws Exception {
+		for (var sample : samples().entrySet()) {
+			var expected = run(sample.getValue(), TamVm.instructionEngine, true, true);
+			for (var fuse : new boolean[] { true, false }) {
+				for (var useDisplay : new boolean[] { true, false }) {
+					assertEquals(sample.getKey() + " fuse=" + fuse + " display=" + useDisplay, expected,
+							run(sample.getValue(), engine, fuse, useDisplay));
+				}
+			}
+		}
+	}
+
+	// Returns every sample program that compiles, by name.
+	static Map<String, Instruction[]> samples() throws Exception {
+		// the programs directory is configured as a test resource in build.gradle
+		var directory = Path.of(TestEngines.class.getResource("/hi.tri").toURI()).getParent();
+		var compiler = new Compiler(new Compiler.CLIOptions());
+		var samples = new LinkedHashMap<String, Instruction[]>();
+		try (var files = Files.list(directory)) {
+			for (var file : (Iterable<Path>) files.sorted()::iterator) {
+				var name = file.getFileName().toString();
+				if (!name.endsWith(".tri") || name.equals(skipped)) {
+					continue;
+				}
+				var compilation = compiler.compile(name, Files.readAllBytes(file));
+				if (compilation.isSuccessful()) {
+					samples.put(name, compilation.getObjectProgram());
+				}
+			}
+		}
+		assertTrue(samples.size() > 20);
+		return samples;
+	}
+
+	// Compiles the program as the JIT engine does, failing rather than falling
+	// back to the threaded engine.
+	static void compileToBytecode(Instruction[] program) throws ReflectiveOperationException {
+		var vm = new TamVm(program, InputStream.nullInputStream(), OutputStream.nullOutputStream());
+		vm.decodeProgram();
+		JitEngine.compile(vm);
+	}
+
+	static Run run(Instruction[] program, int engine, boolean fuse, boolean useDisplay) {
+		var output = new ByteArrayOutputStream();
+		var vm = new TamVm(program, new ByteArrayInputStream(input.getBytes()), output);
+		vm.setEngine(engine);
+		vm.fuse = fuse;
+		vm.useDisplay = useDisplay;
+		var status = vm.run();
+		return new Run(status, output.toString());
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * @(#)TestHeapAllocator.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+
+import org.junit.Test;
+
+/**
+ * Runs the NEW and DISPOSE primitives directly on a machine and checks how the
+ * heap allocator reuses, splits and merges blocks, when it gives space back to
+ * the stack, and that the heap and stack stay within the data store.
+ */
+public class TestHeapAllocator {
+
+	@Test
+	public void testExactFitIsReused() {
+		var vm = machine(TamVm.defaultDataStoreSize);
+		var a = allocate(vm, 4);
+		var b = allocate(vm, 4);
+		var c = allocate(vm, 4);
+		assertEquals(vm.HB - 4, a);
+		assertEquals(vm.HB - 8, b);
+		assertEquals(vm.HB - 12, c);
+
+		dispose(vm, b, 4);
+		assertEquals(1, vm.heap.freeBlocks());
+		assertEquals(4, vm.heap.freeWords);
+		assertEquals(b, allocate(vm, 4));
+		assertEquals(c, vm.HT);
+		assertEquals(1, vm.heap.reused);
+		assertEquals(0, vm.heap.freeBlocks());
+	}
+
+	@Test
+	public void testLargerBlockIsSplit() {
+		var vm = machine(TamVm.defaultDataStoreSize);
+		var a = allocate(vm, 10);
+		allocate(vm, 2);
+		dispose(vm, a, 10);
+
+		assertEquals(a, allocate(vm, 3));
+		assertEquals(7, vm.heap.freeWords);
+		assertEquals(a + 3, allocate(vm, 7));
+		assertEquals(0, vm.heap.freeBlocks());
+
+		// blocks of more than exactClasses words share a list per power of two
+		var large = allocate(vm, 100);
+		var guard = allocate(vm, 2);
+		dispose(vm, large, 100);
+		assertEquals(large, allocate(vm, 40));
+		// what is left, 60 words, is too small, so the heap is extended
+		assertEquals(guard - 70, allocate(vm, 70));
+		assertEquals(60, vm.heap.freeWords);
+	}
+
+	@Test
+	public void testNeighboursAreMerged() {
+		var vm = machine(TamVm.defaultDataStoreSize);
+		var a = allocate(vm, 4);
+		var b = allocate(vm, 4);
+		var c = allocate(vm, 4);
+		var d = allocate(vm, 4);
+
+		dispose(vm, a, 4);
+		dispose(vm, c, 4);
+		assertEquals(2, vm.heap.freeBlocks());
+		dispose(vm, b, 4);
+		assertEquals(1, vm.heap.freeBlocks());
+		assertEquals(12, vm.heap.freeWords);
+		assertEquals(c, allocate(vm, 12));
+
+		// a block that reaches HT is given back to the stack, with the free
+		// block above it
+		dispose(vm, c, 12);
+		assertEquals(d, vm.HT);
+		dispose(vm, d, 4);
+		assertEquals(vm.HB, vm.HT);
+		assertEquals(0, vm.heap.freeBlocks());
+		assertEquals(0, vm.heap.freeWords);
+		assertEquals(5, vm.heap.disposals);
+	}
+
+	@Test
+	public void testInvalidDisposalsAreIgnored() {
+		var vm = machine(TamVm.defaultDataStoreSize);
+		var a = allocate(vm, 4);
+		allocate(vm, 4);
+		dispose(vm, a, 4);
+
+		// below HT, beyond HB, of no words, and overlapping a free block
+		dispose(vm, 0, 4);
+		dispose(vm, vm.HB - 2, 4);
+		dispose(vm, a, 0);
+		dispose(vm, a + 2, 2);
+		assertEquals(4, vm.heap.invalidDisposals);
+		assertEquals(1, vm.heap.disposals);
+		assertEquals(4, vm.heap.freeWords);
+		assertEquals(TamVm.running, vm.status);
+	}
+
+	@Test
+	public void testHeapExhaustion() {
+		// blocks that are disposed of are reused, so the heap never grows
+		var vm = machine(64);
+		var kept = allocate(vm, 4);
+		for (var i = 0; i < 1000; i++) {
+			var block = allocate(vm, 8);
+			var next = allocate(vm, 1 + i % 3);
+			dispose(vm, block, 8);
+			dispose(vm, next, 1 + i % 3);
+		}
+		assertEquals(TamVm.running, vm.status);
+		assertEquals(kept, vm.HT);
+
+		// until it meets the stack
+		vm = machine(64);
+		vm.ST = 16;
+		var blocks = 0;
+		while (vm.status == TamVm.running) {
+			allocate(vm, 8);
+			blocks++;
+		}
+		// 48 words between the stack and HB, less the word holding the size
+		assertEquals(TamVm.failedDataStoreFull, vm.status);
+		assertEquals(6, blocks);
+	}
+
+	@Test
+	public void testDataStoreSize() {
+		assertThrows(IllegalArgumentException.class, () -> machine(Machine.linkDataSize - 1));
+		assertThrows(IllegalArgumentException.class, () -> machine(TamVm.maxDataStoreSize + 1));
+		assertEquals(Machine.linkDataSize, machine(Machine.linkDataSize).HB);
+
+		// the same program runs out of room in a small data store only
+		Instruction[] program = { new Instruction(OpCode.PUSH, Register.CB, 0, 100),
+				new Instruction(OpCode.HALT, Register.CB, 0, 0) };
+		assertEquals(TamVm.failedDataStoreFull, machine(program, 64).run());
+		assertEquals(TamVm.halted, machine(program, TamVm.defaultDataStoreSize).run());
+
+		// the interpreter refuses a size outside those limits
+		var out = System.out;
+		try {
+			for (var arg : new String[] { "--datastore=" + (Machine.linkDataSize - 1),
+					"--datastore=" + (TamVm.maxDataStoreSize + 1), "--datastore=lots" }) {
+				var output = new ByteArrayOutputStream();
+				System.setOut(new PrintStream(output, true));
+				Interpreter.main(new String[] { arg });
+				assertTrue(arg, output.toString().contains("Data store size must be between " + Machine.linkDataSize
+						+ " and " + TamVm.maxDataStoreSize + " words"));
+			}
+		} finally {
+			System.setOut(out);
+		}
+	}
+
+	// Runs NEW for a block of the given size, as a program would.
+	static int allocate(TamVm vm, int size) {
+		vm.data[vm.ST++] = size;
+		vm.callPrimitive(Primitive.NEW.ordinal());
+		return vm.data[--vm.ST];
+	}
+
+	// Runs DISPOSE, which pops the address of the block and then its size.
+	static void dispose(TamVm vm, int addr, int size) {
+		vm.data[vm.ST++] = size;
+		vm.data[vm.ST++] = addr;
+		vm.callPrimitive(Primitive.DISPOSE.ordinal());
+	}
+
+	// Returns a machine with an empty stack and heap, as at the start of a
+	// program.
+	static TamVm machine(int dataStoreSize) {
+		var vm = machine(new Instruction[0], dataStoreSize);
+		vm.ST = 0;
+		vm.HT = vm.HB;
+		vm.status = TamVm.running;
+		vm.heap.reset();
+		return vm;
+	}
+
+	static TamVm machine(Instruction[] program, int dataStoreSize) {
+		return new TamVm(program, dataStoreSize,
+				new PrimitiveIO(Channels.newChannel(InputStream.nullInputStream()),
+						Channels.newChannel(OutputStream.nullOutputStream()), PrimitiveIO.defaultBufferSize,
+						PrimitiveIO.defaultBufferSize));
+	}
+}
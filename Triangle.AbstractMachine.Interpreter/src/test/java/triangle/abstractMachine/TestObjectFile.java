@@ -0,0 +1,159 @@
+/*
+ * @(#)TestObjectFile.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Writes object programs and reads them back, in the packed format and in the
+ * two older formats, and checks that damaged files are rejected.
+ */
+public class TestObjectFile {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		var program = program(1000);
+		var bytes = ObjectFile.toBytes(program);
+		var header = ByteBuffer.wrap(bytes);
+		assertEquals(ObjectFile.magic, header.getInt());
+		assertEquals(ObjectFile.version, header.getInt());
+		assertEquals(program.length, header.getInt());
+		assertEquals(4 * Integer.BYTES + program.length * ObjectFile.packedSize, bytes.length);
+
+		assertSame(program, ObjectFile.decode(ByteBuffer.wrap(bytes)));
+	}
+
+	@Test
+	public void testRoundTripThroughFile() throws IOException {
+		// a small file is read, and one of more than a megabyte is mapped
+		for (var count : new int[] { 10, 200000 }) {
+			var program = program(count);
+			var file = Files.createTempFile("tam", ".tam");
+			try {
+				Files.write(file, ObjectFile.toBytes(program));
+				try (var channel = FileChannel.open(file)) {
+					assertSame(program, ObjectFile.decode(channel));
+				}
+			} finally {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	public void testDamagedFilesRejected() throws IOException {
+		var bytes = ObjectFile.toBytes(program(100));
+
+		var flipped = bytes.clone();
+		flipped[flipped.length / 2] ^= 1;
+		assertRejected("checksum does not match", flipped);
+
+		var truncated = Arrays.copyOf(bytes, bytes.length - 1);
+		assertRejected("ends before instruction 99", truncated);
+
+		var version = bytes.clone();
+		ByteBuffer.wrap(version).putInt(Integer.BYTES, 3);
+		assertRejected("unsupported object file version 3", version);
+
+		var count = bytes.clone();
+		ByteBuffer.wrap(count).putInt(2 * Integer.BYTES, -1);
+		assertRejected("invalid instruction count -1", count);
+
+		// a length that does not fit in a byte cannot be written
+		var wide = new Instruction[] { new Instruction(OpCode.LOAD, Register.SB, 256, 0) };
+		assertTrue(assertThrows(IOException.class, () -> ObjectFile.toBytes(wide)).getMessage()
+				.contains("does not fit"));
+	}
+
+	@Test
+	public void testVersion1() throws IOException {
+		var program = program(100);
+		var buffer = ByteBuffer.allocate(3 * Integer.BYTES + program.length * 4 * Integer.BYTES);
+		buffer.putInt(ObjectFile.magic).putInt(1).putInt(program.length);
+		putLegacy(buffer, program);
+		assertSame(program, ObjectFile.decode(buffer.flip()));
+
+		// version 1 has no checksum, but must hold every instruction
+		assertRejected("ends before instruction 99",
+				Arrays.copyOf(buffer.array(), buffer.limit() - Integer.BYTES));
+	}
+
+	@Test
+	public void testHeaderless() throws IOException {
+		var program = program(100);
+		// a part-instruction at the end is ignored
+		var buffer = ByteBuffer.allocate(program.length * 4 * Integer.BYTES + 3);
+		putLegacy(buffer, program);
+		assertSame(program, ObjectFile.decode(buffer.rewind()));
+
+		var invalid = ByteBuffer.allocate(4 * Integer.BYTES).putInt(OpCode.count).putInt(0).putInt(0).putInt(0);
+		assertRejected("invalid instruction at 0", invalid.array());
+	}
+
+	// Returns a program that uses every opcode and register, and lengths and
+	// operands at the ends of their ranges.
+	static Instruction[] program(int count) {
+		var opCodes = OpCode.values();
+		var registers = Register.values();
+		var program = new Instruction[count];
+		for (var i = 0; i < count; i++) {
+			var operand = switch (i % 4) {
+			case 0 -> i;
+			case 1 -> -i;
+			case 2 -> Integer.MAX_VALUE - i;
+			default -> Integer.MIN_VALUE + i;
+			};
+			program[i] = new Instruction(opCodes[i % opCodes.length], registers[i / opCodes.length % registers.length],
+					i % 256, operand);
+		}
+		return program;
+	}
+
+	static void putLegacy(ByteBuffer buffer, Instruction[] program) {
+		for (var instr : program) {
+			buffer.putInt(instr.opCode.ordinal()).putInt(instr.register.ordinal()).putInt(instr.length)
+					.putInt(instr.operand);
+		}
+	}
+
+	static void assertSame(Instruction[] expected, Instruction[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (var addr = 0; addr < expected.length; addr++) {
+			assertEquals("opcode at " + addr, expected[addr].opCode, actual[addr].opCode);
+			assertEquals("register at " + addr, expected[addr].register, actual[addr].register);
+			assertEquals("length at " + addr, expected[addr].length, actual[addr].length);
+			assertEquals("operand at " + addr, expected[addr].operand, actual[addr].operand);
+		}
+	}
+
+	static void assertRejected(String reason, byte[] bytes) {
+		var e = assertThrows(IOException.class, () -> ObjectFile.decode(ByteBuffer.wrap(bytes)));
+		assertTrue(e.getMessage(), e.getMessage().contains(reason));
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * @(#)TestPrimitiveIO.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import triangle.Compiler;
+
+/**
+ * Runs programs that read and write through the smallest and the default
+ * buffers, and checks that a prompt is written before the read that waits for
+ * its answer, that nothing written is lost or reordered, and how characters
+ * are encoded.
+ */
+public class TestPrimitiveIO {
+
+	static final String eol = System.lineSeparator();
+
+	static final int[] bufferSizes = { PrimitiveIO.minBufferSize, PrimitiveIO.defaultBufferSize };
+
+	@Test
+	public void testPromptBeforeRead() throws IOException {
+		var program = compile("let var n: Integer in begin getint(var n); putint(n + 1); puteol();"
+				+ " getint(var n); putint(n + 1); puteol() end");
+		for (var size : bufferSizes) {
+			var terminal = new Terminal("5\n", "7\n");
+			assertEquals(TamVm.halted, new TamVm(program, TamVm.defaultDataStoreSize,
+					new PrimitiveIO(terminal, terminal, size, size)).run());
+			assertEquals("buffer size " + size, "enter int: " + eol + "[5\n]6" + eol + "enter int: " + eol + "[7\n]8" + eol,
+					terminal.transcript.toString());
+		}
+	}
+
+	@Test
+	public void testLongLinesThroughSmallBuffers() throws IOException {
+		// each line fills the input and output buffers several times over
+		var program = compile("let var c: Char in begin get(var c);"
+				+ " while \\ eof() do begin if eol() then puteol() else put(c); get(var c) end end");
+		var line = "the quick brown fox jumps over the lazy dog, 0123456789";
+		var input = line + "\n" + line.toUpperCase() + "\n\n" + line + "\n";
+		for (var size : bufferSizes) {
+			var terminal = new Terminal(input);
+			assertEquals(TamVm.halted, new TamVm(program, TamVm.defaultDataStoreSize,
+					new PrimitiveIO(terminal, terminal, size, size)).run());
+			assertEquals("buffer size " + size, input.replace("\n", eol), terminal.output.toString());
+			for (var write : terminal.writes) {
+				assertTrue(write <= size);
+			}
+		}
+	}
+
+	@Test
+	public void testCharactersEncoded() throws IOException {
+		// characters outside ASCII are written in the default charset, some in
+		// more than one byte, across the end of the smallest buffer
+		var text = "Triangle: éüñ € 日本 ok";
+		var output = new ByteArrayOutputStream();
+		var io = new PrimitiveIO(Channels.newChannel(InputStream.nullInputStream()), Channels.newChannel(output),
+				PrimitiveIO.minBufferSize, PrimitiveIO.minBufferSize);
+		for (var c : text.toCharArray()) {
+			io.putChar(c);
+		}
+		io.putEOL();
+		io.putInt(-42);
+		io.putInt(7);
+		io.putInt(Integer.MIN_VALUE);
+		io.putString("enter int: ");
+		io.flush();
+		assertArrayEquals((text + eol + "-427" + Integer.MIN_VALUE + "enter int: ").getBytes(System.out.charset()),
+				output.toByteArray());
+
+		// input is read a byte at a time, and a byte of all ones is not taken
+		// for the end of the input
+		io = new PrimitiveIO(Channels.newChannel(new ByteArrayInputStream(new byte[] { 'A', (byte) 0xe9, (byte) 0xff })),
+				Channels.newChannel(output), PrimitiveIO.minBufferSize, PrimitiveIO.minBufferSize);
+		assertEquals('A', io.read());
+		assertEquals(0xe9, io.read());
+		assertEquals(0xff, io.read());
+		assertEquals(-1, io.read());
+	}
+
+	@Test
+	public void testBufferOptions() throws Exception {
+		var program = compile("let var n: Integer; var c: Char in begin getint(var n); putint(n * n); puteol();"
+				+ " get(var c); while \\ eol() do begin put(c); get(var c) end; puteol() end");
+		var directory = Files.createTempDirectory("tam");
+		var objectFile = directory.resolve("obj.tam");
+		var inputFile = directory.resolve("input.txt");
+		var outputFile = directory.resolve("output.txt");
+		var out = System.out;
+		try {
+			Files.write(objectFile, ObjectFile.toBytes(program));
+			Files.writeString(inputFile, "5\nthis line is longer than either buffer\n");
+			var report = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(report, true));
+			Interpreter.main(new String[] { "--inbuffer=" + PrimitiveIO.minBufferSize,
+					"--outbuffer=" + PrimitiveIO.minBufferSize, "--stdin=" + inputFile, "--stdout=" + outputFile,
+					objectFile.toString() });
+			assertEquals("enter int: " + eol + "25" + eol + "this line is longer than either buffer" + eol,
+					Files.readString(outputFile));
+
+			// the interpreter refuses a size outside the limits
+			for (var arg : new String[] { "--inbuffer=" + (PrimitiveIO.minBufferSize - 1),
+					"--outbuffer=" + (PrimitiveIO.maxBufferSize + 1), "--inbuffer=small" }) {
+				report.reset();
+				Interpreter.main(new String[] { arg, objectFile.toString() });
+				assertTrue(arg, report.toString().contains("Buffer size must be between " + PrimitiveIO.minBufferSize
+						+ " and " + PrimitiveIO.maxBufferSize + " bytes"));
+			}
+		} finally {
+			System.setOut(out);
+			for (var file : List.of(objectFile, inputFile, outputFile, directory)) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	// A terminal, which gives the program its input one line at a time, as it
+	// is typed, and records what the program writes and reads, in order. Input
+	// that has been read is shown in brackets.
+	static class Terminal implements ByteChannel {
+
+		final ArrayDeque<byte[]> lines = new ArrayDeque<>();
+
+		final StringBuilder transcript = new StringBuilder();
+
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		final List<Integer> writes = new ArrayList<>();
+
+		Terminal(String... lines) {
+			for (var line : lines) {
+				this.lines.add(line.getBytes());
+			}
+		}
+
+		@Override
+		public int read(ByteBuffer dst) {
+			if (lines.isEmpty()) {
+				return -1;
+			}
+			var line = lines.poll();
+			var count = Math.min(line.length, dst.remaining());
+			dst.put(line, 0, count);
+			if (count < line.length) {
+				lines.push(Arrays.copyOfRange(line, count, line.length));
+			}
+			transcript.append('[').append(new String(line, 0, count)).append(']');
+			return count;
+		}
+
+		@Override
+		public int write(ByteBuffer src) {
+			var bytes = new byte[src.remaining()];
+			src.get(bytes);
+			transcript.append(new String(bytes));
+			output.writeBytes(bytes);
+			writes.add(bytes.length);
+			return bytes.length;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	static Instruction[] compile(String source) {
+		var compilation = new Compiler(new Compiler.CLIOptions()).compile("io.tri", source.getBytes());
+		assertTrue(compilation.getDiagnostics().toString(), compilation.isSuccessful());
+		return compilation.getObjectProgram();
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * @(#)TestSuperinstructions.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import triangle.Compiler;
+
+/**
+ * Checks that a program whose common sequences are fused into
+ * superinstructions does exactly what it does without them, and that a
+ * sequence with a jump into its middle is left alone.
+ */
+public class TestSuperinstructions {
+
+	@Test
+	public void testFusedMatchesUnfused() {
+		var program = compile("let var a: Integer; var b: Integer; var c: Integer"
+				+ " in begin a := 3; b := a + 4; c := a * b; b := b - a; c := c - 1;"
+				+ " while a < 10 do a := a + 1;"
+				+ " if a >= b then putint(a) else putint(b); if a <= 9 then putint(1) else putint(0);"
+				+ " if b > a then putint(2) else putint(3); putint(c) end");
+
+		// every kind of superinstruction is used
+		var vm = machine(program, TamVm.defaultDataStoreSize, new ByteArrayOutputStream());
+		vm.decodeProgram();
+		Superinstructions.fuse(vm);
+		var kinds = new HashSet<Integer>();
+		for (var op : vm.codeOp) {
+			if (op >= Superinstructions.LITSTOREop) {
+				kinds.add(op);
+			}
+		}
+		assertEquals(5, kinds.size());
+
+		assertSameRun(program, TamVm.defaultDataStoreSize);
+	}
+
+	@Test
+	public void testFailuresMatchUnfused() {
+		// the product overflows in a fused sequence
+		var overflow = compile("let var a: Integer; var b: Integer in begin a := 200; b := a * 200; putint(b) end");
+		assertEquals(TamVm.failedOverflow, assertSameRun(overflow, TamVm.defaultDataStoreSize));
+
+		// there is no room on the stack for the operands of a fused sequence,
+		// which then runs its first instruction on its own; a heap block keeps
+		// the stack top below the end of the data store
+		var program = new ArrayList<Instruction>();
+		emit(program, OpCode.PUSH, Register.CB, 0, 1);
+		emit(program, OpCode.LOADL, Register.CB, 0, 2);
+		callPrimitive(program, Primitive.NEW);
+		emit(program, OpCode.STORE, Register.SB, 1, 0);
+		emit(program, OpCode.PUSH, Register.CB, 0, 4);
+		emit(program, OpCode.LOAD, Register.SB, 1, 0);
+		emit(program, OpCode.LOADL, Register.CB, 0, 1);
+		callPrimitive(program, Primitive.ADD);
+		emit(program, OpCode.STORE, Register.SB, 1, 1);
+		emit(program, OpCode.HALT, Register.CB, 0, 0);
+		var statuses = new HashSet<Integer>();
+		for (var size = 8; size <= 16; size++) {
+			statuses.add(assertSameRun(program.toArray(new Instruction[0]), size));
+		}
+		assertTrue(statuses.contains(TamVm.halted));
+		assertTrue(statuses.contains(TamVm.failedDataStoreFull));
+	}
+
+	@Test
+	public void testJumpIntoSequenceBlocksFusion() {
+		// x := 7; push 10; then either from 5, x := x + 1, or from 6, with 10
+		// on the stack, x := 10 + 1
+		for (var entry = 5; entry <= 6; entry++) {
+			var program = new ArrayList<Instruction>();
+			emit(program, OpCode.PUSH, Register.CB, 0, 1);
+			emit(program, OpCode.LOADL, Register.CB, 0, 7);
+			emit(program, OpCode.STORE, Register.SB, 1, 0);
+			emit(program, OpCode.LOADL, Register.CB, 0, 10);
+			emit(program, OpCode.JUMP, Register.CB, 0, entry);
+			emit(program, OpCode.LOAD, Register.SB, 1, 0);
+			emit(program, OpCode.LOADL, Register.CB, 0, 1);
+			callPrimitive(program, Primitive.ADD);
+			emit(program, OpCode.STORE, Register.SB, 1, 0);
+			emit(program, OpCode.LOAD, Register.SB, 1, 0);
+			callPrimitive(program, Primitive.PUTINT);
+			emit(program, OpCode.HALT, Register.CB, 0, 0);
+			var code = program.toArray(new Instruction[0]);
+
+			var vm = machine(code, TamVm.defaultDataStoreSize, new ByteArrayOutputStream());
+			vm.decodeProgram();
+			Superinstructions.fuse(vm);
+			assertEquals(Superinstructions.LITSTOREop, vm.codeOp[1]);
+			if (entry == 5) {
+				assertEquals(Superinstructions.VARLITSTOREop, vm.codeOp[5]);
+			} else {
+				assertEquals(OpCode.LOAD.ordinal(), vm.codeOp[5]);
+			}
+
+			assertSameRun(code, TamVm.defaultDataStoreSize);
+			assertEquals(entry == 5 ? "8" : "11", run(code, TamVm.defaultDataStoreSize, true).output);
+		}
+	}
+
+	// The state of a machine once it has stopped.
+	static class Result {
+		int status, cp, st;
+		int[] data;
+		String output;
+	}
+
+	// Runs the program with and without superinstructions, checks that both
+	// runs end in the same state, and returns the status.
+	static int assertSameRun(Instruction[] program, int dataStoreSize) {
+		var fused = run(program, dataStoreSize, true);
+		var unfused = run(program, dataStoreSize, false);
+		assertEquals("status", unfused.status, fused.status);
+		assertEquals("CP", unfused.cp, fused.cp);
+		assertEquals("ST", unfused.st, fused.st);
+		assertArrayEquals("data store", unfused.data, fused.data);
+		assertEquals("output", unfused.output, fused.output);
+		return fused.status;
+	}
+
+	static Result run(Instruction[] program, int dataStoreSize, boolean fuse) {
+		var output = new ByteArrayOutputStream();
+		var vm = machine(program, dataStoreSize, output);
+		vm.fuse = fuse;
+		var result = new Result();
+		result.status = vm.run();
+		result.cp = vm.CP;
+		result.st = vm.ST;
+		result.data = vm.data;
+		result.output = output.toString();
+		return result;
+	}
+
+	static TamVm machine(Instruction[] program, int dataStoreSize, ByteArrayOutputStream output) {
+		return new TamVm(program, dataStoreSize, new PrimitiveIO(Channels.newChannel(InputStream.nullInputStream()),
+				Channels.newChannel(output), PrimitiveIO.defaultBufferSize, PrimitiveIO.defaultBufferSize));
+	}
+
+	static Instruction[] compile(String source) {
+		var compilation = new Compiler(new Compiler.CLIOptions()).compile("fuse.tri", source.getBytes());
+		assertTrue(compilation.getDiagnostics().toString(), compilation.isSuccessful());
+		return compilation.getObjectProgram();
+	}
+
+	private static void emit(List<Instruction> code, OpCode op, Register r, int n, int d) {
+		code.add(new Instruction(op, r, n, d));
+	}
+
+	private static void callPrimitive(List<Instruction> code, Primitive p) {
+		emit(code, OpCode.CALL, Register.PB, Register.SB.ordinal(), p.ordinal());
+	}
+}
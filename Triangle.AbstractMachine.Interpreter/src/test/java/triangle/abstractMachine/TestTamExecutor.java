@@ -0,0 +1,213 @@
+/*
+ * @(#)TestTamExecutor.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Runs many machines at once, sharing one program and cycling through the
+ * engines, and checks that each sees only its own input, output and store.
+ */
+public class TestTamExecutor {
+
+	static final int machines = 2000;
+
+	static final String eol = System.lineSeparator();
+
+	static final int[] engines = { TamVm.instructionEngine, TamVm.decodedEngine, TamVm.threadedEngine,
+			TamVm.jitEngine };
+
+	@Test
+	public void testSumOnVirtualThreads() throws Exception {
+		try (var executor = TamExecutor.withVirtualThreads()) {
+			runSums(executor);
+		}
+	}
+
+	@Test
+	public void testSumOnThreadPool() throws Exception {
+		try (var executor = TamExecutor.withThreads(Runtime.getRuntime().availableProcessors())) {
+			runSums(executor);
+		}
+	}
+
+	@Test
+	public void testEchoOnVirtualThreads() throws Exception {
+		var program = echoProgram();
+		var inputs = new ArrayList<String>();
+		var outputs = new ArrayList<ByteArrayOutputStream>();
+		var vms = new ArrayList<TamVm>();
+		for (var i = 0; i < machines; i++) {
+			var input = "machine " + i + eol + "x".repeat(i % 100) + eol;
+			var output = new ByteArrayOutputStream();
+			var vm = new TamVm(program, new ByteArrayInputStream(input.getBytes()), output);
+			vm.setEngine(engines[i % engines.length]);
+			inputs.add(input);
+			outputs.add(output);
+			vms.add(vm);
+		}
+		try (var executor = TamExecutor.withVirtualThreads()) {
+			executor.runAll(vms);
+		}
+		for (var i = 0; i < machines; i++) {
+			assertEquals("status of machine " + i, TamVm.halted, vms.get(i).getStatus());
+			assertEquals("output of machine " + i, inputs.get(i), outputs.get(i).toString());
+		}
+	}
+
+	@Test
+	public void testFailureIsPerMachine() throws Exception {
+		// every other machine divides by zero
+		var program = divideProgram();
+		var outputs = new ArrayList<ByteArrayOutputStream>();
+		var vms = new ArrayList<TamVm>();
+		for (var i = 0; i < machines; i++) {
+			var output = new ByteArrayOutputStream();
+			var vm = new TamVm(program, new ByteArrayInputStream((i % 2 + eol).getBytes()), output);
+			vm.setEngine(engines[i % engines.length]);
+			outputs.add(output);
+			vms.add(vm);
+		}
+		try (var executor = TamExecutor.withVirtualThreads()) {
+			executor.runAll(vms);
+		}
+		for (var i = 0; i < machines; i++) {
+			if (i % 2 == 0) {
+				assertEquals("status of machine " + i, TamVm.failedZeroDivide, vms.get(i).getStatus());
+				assertEquals("output of machine " + i, "enter int: " + eol, outputs.get(i).toString());
+			} else {
+				assertEquals("status of machine " + i, TamVm.halted, vms.get(i).getStatus());
+				assertEquals("output of machine " + i, "enter int: " + eol + "7" + eol, outputs.get(i).toString());
+			}
+		}
+	}
+
+	// Runs the sum program on many machines, each summing 1..n for its own n.
+	static void runSums(TamExecutor executor) throws Exception {
+		var program = sumProgram();
+		var outputs = new ArrayList<ByteArrayOutputStream>();
+		var vms = new ArrayList<TamVm>();
+		for (var i = 0; i < machines; i++) {
+			var output = new ByteArrayOutputStream();
+			var vm = new TamVm(program, new ByteArrayInputStream((n(i) + eol).getBytes()), output);
+			vm.setEngine(engines[i % engines.length]);
+			outputs.add(output);
+			vms.add(vm);
+		}
+		executor.runAll(vms);
+		for (var i = 0; i < machines; i++) {
+			var n = n(i);
+			assertEquals("status of machine " + i, TamVm.halted, vms.get(i).getStatus());
+			assertEquals("output of machine " + i, "enter int: " + eol + n * (n + 1) / 2 + eol,
+					outputs.get(i).toString());
+		}
+	}
+
+	// Returns the n summed by machine i, small enough that the sum is below
+	// maxint.
+	static int n(int i) {
+		return i % 250;
+	}
+
+	private static List<Instruction> code;
+
+	private static void emit(OpCode op, Register r, int n, int d) {
+		code.add(new Instruction(op, r, n, d));
+	}
+
+	private static void callPrimitive(Primitive p) {
+		emit(OpCode.CALL, Register.PB, Register.SB.ordinal(), p.ordinal());
+	}
+
+	// Returns a program that reads n, then sums 1..n, allocating and disposing
+	// a heap block on each iteration, and writes the sum.
+	static Instruction[] sumProgram() {
+		code = new ArrayList<>();
+		// n at 0[SB], sum at 1[SB], i at 2[SB]
+		emit(OpCode.PUSH, Register.CB, 0, 3);
+		emit(OpCode.LOADA, Register.SB, 0, 0);
+		callPrimitive(Primitive.GETINT);
+		emit(OpCode.LOADL, Register.CB, 0, 0);
+		emit(OpCode.STORE, Register.SB, 1, 1);
+		emit(OpCode.LOADL, Register.CB, 0, 0);
+		emit(OpCode.STORE, Register.SB, 1, 2);
+		var loop = code.size();
+		emit(OpCode.LOAD, Register.SB, 1, 2);
+		emit(OpCode.LOAD, Register.SB, 1, 0);
+		callPrimitive(Primitive.LT);
+		var exit = code.size();
+		emit(OpCode.JUMPIF, Register.CB, Machine.falseRep, 0);
+		emit(OpCode.LOAD, Register.SB, 1, 2);
+		callPrimitive(Primitive.SUCC);
+		emit(OpCode.STORE, Register.SB, 1, 2);
+		emit(OpCode.LOAD, Register.SB, 1, 1);
+		emit(OpCode.LOAD, Register.SB, 1, 2);
+		callPrimitive(Primitive.ADD);
+		emit(OpCode.STORE, Register.SB, 1, 1);
+		emit(OpCode.LOADL, Register.CB, 0, 2);
+		emit(OpCode.LOADL, Register.CB, 0, 2);
+		callPrimitive(Primitive.NEW);
+		callPrimitive(Primitive.DISPOSE);
+		emit(OpCode.JUMP, Register.CB, 0, loop);
+		code.set(exit, new Instruction(OpCode.JUMPIF, Register.CB, Machine.falseRep, code.size()));
+		emit(OpCode.LOAD, Register.SB, 1, 1);
+		callPrimitive(Primitive.PUTINT);
+		callPrimitive(Primitive.PUTEOL);
+		emit(OpCode.HALT, Register.CB, 0, 0);
+		return code.toArray(new Instruction[0]);
+	}
+
+	// Returns a program that copies its input to its output.
+	static Instruction[] echoProgram() {
+		code = new ArrayList<>();
+		emit(OpCode.PUSH, Register.CB, 0, 1);
+		var loop = code.size();
+		emit(OpCode.LOADA, Register.SB, 0, 0);
+		callPrimitive(Primitive.GET);
+		callPrimitive(Primitive.EOF);
+		emit(OpCode.JUMPIF, Register.CB, Machine.trueRep, loop + 7);
+		emit(OpCode.LOAD, Register.SB, 1, 0);
+		callPrimitive(Primitive.PUT);
+		emit(OpCode.JUMP, Register.CB, 0, loop);
+		emit(OpCode.HALT, Register.CB, 0, 0);
+		return code.toArray(new Instruction[0]);
+	}
+
+	// Returns a program that reads d and writes 7 / d.
+	static Instruction[] divideProgram() {
+		code = new ArrayList<>();
+		emit(OpCode.PUSH, Register.CB, 0, 1);
+		emit(OpCode.LOADA, Register.SB, 0, 0);
+		callPrimitive(Primitive.GETINT);
+		emit(OpCode.LOADL, Register.CB, 0, 7);
+		emit(OpCode.LOAD, Register.SB, 1, 0);
+		callPrimitive(Primitive.DIV);
+		callPrimitive(Primitive.PUTINT);
+		callPrimitive(Primitive.PUTEOL);
+		emit(OpCode.HALT, Register.CB, 0, 0);
+		return code.toArray(new Instruction[0]);
+	}
+}
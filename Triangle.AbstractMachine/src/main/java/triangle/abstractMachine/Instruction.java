@@ -46,6 +46,22 @@ public class Instruction {
 		this.operand = operand;
 	}
 
+	public OpCode getOpCode() {
+		return opCode;
+	}
+
+	public Register getRegister() {
+		return register;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public int getOperand() {
+		return operand;
+	}
+
 	public void setOperand(int operand) {
 		this.operand = operand;
 	}
@@ -59,8 +75,8 @@ public class Instruction {
 
 	public static Instruction read(DataInputStream input) throws IOException {
 		try {
-			var opCode = OpCode.values()[input.readInt()];
-			var register = Register.values()[input.readInt()];
+			var opCode = OpCode.of(input.readInt());
+			var register = Register.of(input.readInt());
 			var length = input.readInt();
 			var operand = input.readInt();
 			return new Instruction(opCode, register, length, operand);
@@ -37,12 +37,38 @@ public final class Machine {
 
 	// CODE STORE
 
-	public static Instruction[] code = new Instruction[1024];
+	// The code store starts with room for initialCodeSize instructions and
+	// grows on demand, up to maxCodeSize, through ensureCodeSize().
+
+	public final static int initialCodeSize = 1024, maxCodeSize = 1 << 24;
+
+	public static Instruction[] code = new Instruction[initialCodeSize];
 
 	// CODE STORE REGISTERS
 
-	public final static int CB = 0, PB = 1024, // = upper bound of code array + 1
-			PT = 1052; // = PB + 28
+	// The primitive routines sit just above the code store, so PB and PT move
+	// up whenever it grows. Code addresses them relative to PB.
+
+	public final static int CB = 0;
+
+	public static int PB = initialCodeSize, // = upper bound of code array + 1
+			PT = PB + Primitive.count;
+
+	/**
+	 * Grows the code store, if need be, so that it can hold size instructions,
+	 * moving PB and PT up to match.
+	 *
+	 * @param size the number of instructions needed, at most maxCodeSize.
+	 */
+	public static void ensureCodeSize(int size) {
+		if (size <= code.length) {
+			return;
+		}
+		var newSize = Math.min(maxCodeSize, Math.max(size, 2 * code.length));
+		code = java.util.Arrays.copyOf(code, newSize);
+		PB = newSize;
+		PT = PB + Primitive.count;
+	}
 
 	// REGISTER NUMBERS
 
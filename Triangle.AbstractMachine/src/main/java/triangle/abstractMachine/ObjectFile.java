@@ -0,0 +1,257 @@
+/*
+ * @(#)ObjectFile.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.abstractMachine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes TAM object programs.
+ *
+ * <p>
+ * Object files are written in the packed format, version 2. A 16-byte header
+ * holds {@link #magic}, the version, the number of instructions and a CRC-32
+ * of the code that follows. Each instruction then takes {@link #packedSize}
+ * bytes: opcode and register in one byte, the length in the next, and the
+ * operand as a 32-bit int.
+ * </p>
+ *
+ * <p>
+ * Two older formats can still be read: version 1, which has a 12-byte header
+ * (no checksum) followed by four ints per instruction, and the original
+ * format, which has no header and is just four ints per instruction up to
+ * the end of the file.
+ * </p>
+ *
+ * <p>
+ * A file is read with one bulk read, or mapped if it is large, and decoded
+ * from the buffer.
+ * </p>
+ */
+public final class ObjectFile {
+
+	// "TAM!"; an original-format file starts with an opcode, which is far
+	// smaller
+	public final static int magic = 0x54414D21;
+
+	public final static int version = 2;
+
+	public final static int packedSize = 6;
+
+	private final static int legacySize = 4 * Integer.BYTES;
+
+	// files larger than this are mapped rather than read
+	private final static long mapThreshold = 1 << 20;
+
+	private ObjectFile() {
+	}
+
+	/**
+	 * Packs the first count instructions of the code store into an object
+	 * program.
+	 *
+	 * @param count the number of instructions in the program.
+	 * @return the object program.
+	 * @throws IOException if an instruction field does not fit the format.
+	 */
+	public static byte[] toBytes(int count) throws IOException {
+		return toBytes(Machine.code, count);
+	}
+
+	/**
+	 * Packs a program into an object program.
+	 *
+	 * @param program the instructions of the program, from CB.
+	 * @return the object program.
+	 * @throws IOException if an instruction field does not fit the format.
+	 */
+	public static byte[] toBytes(Instruction[] program) throws IOException {
+		return toBytes(program, program.length);
+	}
+
+	// Packs the first count instructions of the given code store.
+	private static byte[] toBytes(Instruction[] code, int count) throws IOException {
+		var buffer = ByteBuffer.allocate(4 * Integer.BYTES + count * packedSize);
+		buffer.putInt(magic).putInt(version).putInt(count).putInt(0);
+		for (var addr = Machine.CB; addr < Machine.CB + count; addr++) {
+			var instr = code[addr];
+			if (instr.length < 0 || instr.length > 255) {
+				throw new IOException("length " + instr.length + " at " + addr + " does not fit in an object file");
+			}
+			buffer.put((byte) (instr.opCode.ordinal() << 4 | instr.register.ordinal()));
+			buffer.put((byte) instr.length);
+			buffer.putInt(instr.operand);
+		}
+		var bytes = buffer.array();
+		var crc = new CRC32();
+		crc.update(bytes, 4 * Integer.BYTES, count * packedSize);
+		buffer.putInt(3 * Integer.BYTES, (int) crc.getValue());
+		return bytes;
+	}
+
+	/**
+	 * Writes the first count instructions of the code store.
+	 *
+	 * @param output the stream to write to.
+	 * @param count  the number of instructions in the program.
+	 */
+	public static void write(OutputStream output, int count) throws IOException {
+		output.write(toBytes(count));
+		output.flush();
+	}
+
+	/**
+	 * Writes a program.
+	 *
+	 * @param output  the stream to write to.
+	 * @param program the instructions of the program, from CB.
+	 */
+	public static void write(OutputStream output, Instruction[] program) throws IOException {
+		output.write(toBytes(program));
+		output.flush();
+	}
+
+	/**
+	 * Reads an object file into the code store, starting at CB, growing the
+	 * code store as needed.
+	 *
+	 * @param channel the open file.
+	 * @return the number of instructions read.
+	 */
+	public static int read(FileChannel channel) throws IOException {
+		return read(contents(channel));
+	}
+
+	/**
+	 * Reads an object program, in any of the formats, into the code store,
+	 * starting at CB, growing the code store as needed.
+	 *
+	 * @param buffer the object program, from its position to its limit.
+	 * @return the number of instructions read.
+	 */
+	public static int read(ByteBuffer buffer) throws IOException {
+		var program = decode(buffer);
+		Machine.ensureCodeSize(Machine.CB + program.length);
+		System.arraycopy(program, 0, Machine.code, Machine.CB, program.length);
+		return program.length;
+	}
+
+	/**
+	 * Decodes an object file without touching the code store, so that any
+	 * number of threads may load programs at once.
+	 *
+	 * @param channel the open file.
+	 * @return the instructions of the program, from CB.
+	 */
+	public static Instruction[] decode(FileChannel channel) throws IOException {
+		return decode(contents(channel));
+	}
+
+	// Returns the contents of the file, read in one go, or mapped if it is
+	// large.
+	private static ByteBuffer contents(FileChannel channel) throws IOException {
+		var size = channel.size();
+		if (size > mapThreshold) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		var buffer = ByteBuffer.allocate((int) size);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				break;
+			}
+		}
+		return buffer.flip();
+	}
+
+	/**
+	 * Decodes an object program in any of the formats, without touching the
+	 * code store.
+	 *
+	 * @param buffer the object program, from its position to its limit.
+	 * @return the instructions of the program, from CB.
+	 */
+	public static Instruction[] decode(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < Integer.BYTES || buffer.getInt(buffer.position()) != magic) {
+			// the original format: instructions until the end of the file; a
+			// part-instruction at the end is ignored, as it always was
+			return decodeLegacy(buffer, buffer.remaining() / legacySize);
+		}
+
+		buffer.getInt(); // magic
+		var fileVersion = buffer.getInt();
+		if (fileVersion != 1 && fileVersion != version) {
+			throw new IOException("unsupported object file version " + fileVersion);
+		}
+		var count = buffer.getInt();
+		if (count < 0 || count > Machine.maxCodeSize - Machine.CB) {
+			throw new IOException("invalid instruction count " + count);
+		}
+		if (fileVersion == 1) {
+			if (buffer.remaining() < (long) count * legacySize) {
+				throw new IOException("object program ends before instruction " + buffer.remaining() / legacySize);
+			}
+			return decodeLegacy(buffer, count);
+		}
+
+		var checksum = buffer.getInt();
+		if (buffer.remaining() < (long) count * packedSize) {
+			throw new IOException("object program ends before instruction " + buffer.remaining() / packedSize);
+		}
+		var crc = new CRC32();
+		crc.update(buffer.slice(buffer.position(), count * packedSize));
+		if ((int) crc.getValue() != checksum) {
+			throw new IOException("object program checksum does not match");
+		}
+
+		var program = new Instruction[count];
+		for (var addr = 0; addr < count; addr++) {
+			var opAndRegister = buffer.get() & 0xFF;
+			var length = buffer.get() & 0xFF;
+			var operand = buffer.getInt();
+			if ((opAndRegister >> 4) >= OpCode.count) {
+				throw new IOException("invalid opcode at " + (Machine.CB + addr));
+			}
+			program[addr] = new Instruction(OpCode.of(opAndRegister >> 4), Register.of(opAndRegister & 0xF), length,
+					operand);
+		}
+		return program;
+	}
+
+	// Decodes count instructions of four ints each.
+	private static Instruction[] decodeLegacy(ByteBuffer buffer, int count) throws IOException {
+		if (count > Machine.maxCodeSize - Machine.CB) {
+			throw new IOException("object program has more than " + Machine.maxCodeSize + " instructions");
+		}
+		var program = new Instruction[count];
+		for (var addr = 0; addr < count; addr++) {
+			var op = buffer.getInt();
+			var register = buffer.getInt();
+			var length = buffer.getInt();
+			var operand = buffer.getInt();
+			if (op < 0 || op >= OpCode.count || register < 0 || register >= Register.count) {
+				throw new IOException("invalid instruction at " + (Machine.CB + addr));
+			}
+			program[addr] = new Instruction(OpCode.of(op), Register.of(register), length, operand);
+		}
+		return program;
+	}
+}
@@ -1,5 +1,15 @@
 package triangle.abstractMachine;
 
 public enum OpCode {
-	LOAD, LOADA, LOADI, LOADL, STORE, STOREI, CALL, CALLI, RETURN, NOP, PUSH, POP, JUMP, JUMPI, JUMPIF, HALT
+	LOAD, LOADA, LOADI, LOADL, STORE, STOREI, CALL, CALLI, RETURN, NOP, PUSH, POP, JUMP, JUMPI, JUMPIF, HALT;
+
+	// values() returns a fresh copy of this array on every call
+	private final static OpCode[] values = values();
+
+	public final static int count = values.length;
+
+	// Returns the opcode numbered op.
+	public static OpCode of(int op) {
+		return values[op];
+	}
 }
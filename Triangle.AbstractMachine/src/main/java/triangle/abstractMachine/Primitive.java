@@ -3,5 +3,15 @@ package triangle.abstractMachine;
 /** The primitive routines, listed in Table C3 (P411) of the PLPJ book, and Table 3 of the Triangle guide */
 public enum Primitive {
 	ID, NOT, AND, OR, SUCC, PRED, NEG, ADD, SUB, MULT, DIV, MOD, LT, LE, GE, GT, EQ, NE, EOL, EOF, GET, PUT, GETEOL,
-	PUTEOL, GETINT, PUTINT, NEW, DISPOSE
+	PUTEOL, GETINT, PUTINT, NEW, DISPOSE;
+
+	private final static Primitive[] values = values();
+
+	// the number of primitive routines, from PB to PT
+	public final static int count = values.length;
+
+	// Returns the primitive routine at displacement d from PB.
+	public static Primitive of(int d) {
+		return values[d];
+	}
 }
@@ -1,5 +1,14 @@
 package triangle.abstractMachine;
 
 public enum Register {
-	CB, CT, PB, PT, SB, ST, HB, HT, LB, L1, L2, L3, L4, L5, L6, CP
+	CB, CT, PB, PT, SB, ST, HB, HT, LB, L1, L2, L3, L4, L5, L6, CP;
+
+	private final static Register[] values = values();
+
+	public final static int count = values.length;
+
+	// Returns the register numbered r, without copying values().
+	public static Register of(int r) {
+		return values[r];
+	}
 }
@@ -0,0 +1,100 @@
+/*
+ * @(#)Compilation.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import triangle.abstractMachine.Instruction;
+import triangle.abstractMachine.ObjectFile;
+
+/**
+ * The outcome of compiling one source program: the object program, if the
+ * source was free of errors, and the errors and restrictions reported.
+ */
+public final class Compilation {
+
+	private final String sourceName;
+
+	private final Instruction[] objectProgram;
+
+	private final List<String> diagnostics;
+
+	Compilation(String sourceName, Instruction[] objectProgram, List<String> diagnostics) {
+		this.sourceName = sourceName;
+		this.objectProgram = objectProgram;
+		this.diagnostics = diagnostics;
+	}
+
+	/**
+	 * @return the name the source program was compiled under.
+	 */
+	public String getSourceName() {
+		return sourceName;
+	}
+
+	/**
+	 * @return true iff the source program is free of compile-time errors.
+	 */
+	public boolean isSuccessful() {
+		return objectProgram != null;
+	}
+
+	/**
+	 * @return the instructions of the object program, from CB, or null if the
+	 *         compilation was unsuccessful. The array is not copied, and should
+	 *         not be changed.
+	 */
+	public Instruction[] getObjectProgram() {
+		return objectProgram;
+	}
+
+	/**
+	 * @return the errors and restrictions reported, in order.
+	 */
+	public List<String> getDiagnostics() {
+		return diagnostics;
+	}
+
+	/**
+	 * @return the contents of the object file for the program.
+	 * @throws IOException if the compilation was unsuccessful, or the program
+	 *                     does not fit the object file format.
+	 */
+	public byte[] toObjectFile() throws IOException {
+		if (objectProgram == null) {
+			throw new IOException("no object program: " + sourceName + " did not compile");
+		}
+		return ObjectFile.toBytes(objectProgram);
+	}
+
+	/**
+	 * Saves the object program in the given object file.
+	 *
+	 * @param objectName the name of the object file.
+	 */
+	public void saveObjectProgram(String objectName) throws IOException {
+		var bytes = toObjectFile();
+		try (var objectFile = new BufferedOutputStream(new FileOutputStream(objectName))) {
+			objectFile.write(bytes);
+		}
+	}
+}
@@ -0,0 +1,243 @@
+/*
+ * @(#)CompileCache.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+
+import triangle.abstractMachine.Instruction;
+import triangle.abstractMachine.ObjectFile;
+
+/**
+ * An on-disk cache of object programs, addressed by the content of what was
+ * compiled.
+ *
+ * <p>
+ * The key is a SHA-256 hash of the compiler's stamp, the options that change
+ * the object code, and the bytes of the source program, so a source file
+ * that has not changed is not compiled again. The stamp is a hash of the
+ * compiler's own classes, so entries made by any other build of the compiler
+ * are never used. Each entry is an object file, named by its key.
+ * </p>
+ *
+ * <p>
+ * Entries are written to a temporary file and moved into place, so any number
+ * of compilers, in this process or others, may share a cache directory and
+ * none will see part of an entry. A hit touches the entry's modification
+ * time; once the entries take more than the size limit, the least recently
+ * used are removed. A damaged entry fails its checksum and counts as a miss.
+ * </p>
+ */
+public final class CompileCache {
+
+	private final static String suffix = ".tam";
+
+	private final Path directory;
+
+	private final long maxSize;
+
+	private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong();
+
+	/**
+	 * Opens the cache in the given directory, creating it if need be.
+	 *
+	 * @param maxSize the number of bytes the entries may take.
+	 */
+	public CompileCache(Path directory, long maxSize) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return the key for the given source program compiled with the given
+	 *         options.
+	 */
+	public static String key(byte[] source, Compiler.CLIOptions options) {
+		var digest = sha256();
+		digest.update(Stamp.stamp);
+		digest.update(codeOptions(options).getBytes(StandardCharsets.UTF_8));
+		digest.update(source);
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	// Returns the options that change the object code, which are therefore
+	// part of the key. An option that changes the code must be added here.
+	private static String codeOptions(Compiler.CLIOptions options) {
+		return "folding=" + options.folding + "\n" + "inline=" + options.inline + "\n" + "inlineSize="
+				+ options.inlineSize + "\n" + "propagate=" + options.propagate + "\n" + "simplify="
+				+ options.simplify + "\n" + "hoist=" + options.hoist + "\n" + "peephole=" + options.peephole + "\n";
+	}
+
+	/**
+	 * @return the object program cached under the key, or null if there is
+	 *         none or it cannot be read.
+	 */
+	public Instruction[] get(String key) {
+		var entry = directory.resolve(key + suffix);
+		try {
+			var program = ObjectFile.decode(ByteBuffer.wrap(Files.readAllBytes(entry)));
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+			hits.incrementAndGet();
+			return program;
+		} catch (IOException e) {
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Caches an object file under the key, then evicts the least recently used
+	 * entries if the cache has grown too big. The cache is only an
+	 * optimisation, so an entry that cannot be written is dropped.
+	 */
+	public void put(String key, byte[] objectFile) {
+		try {
+			var entry = directory.resolve(key + suffix);
+			var temporary = Files.createTempFile(directory, key, ".tmp");
+			try {
+				Files.write(temporary, objectFile);
+				Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(temporary);
+			}
+			evict(entry);
+		} catch (IOException e) {
+			// left uncached
+		}
+	}
+
+	// Removes the least recently used entries, other than the one just
+	// written, until the rest fit.
+	private synchronized void evict(Path written) throws IOException {
+		var entries = new ArrayList<Entry>();
+		var size = 0L;
+		try (var files = Files.list(directory)) {
+			for (var file : (Iterable<Path>) files::iterator) {
+				if (file.getFileName().toString().endsWith(suffix)) {
+					try {
+						var entry = new Entry(file, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+						entries.add(entry);
+						size += entry.size;
+					} catch (NoSuchFileException e) {
+						// removed by another compiler
+					}
+				}
+			}
+		}
+		if (size <= maxSize) {
+			return;
+		}
+		entries.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+		for (var entry : entries) {
+			if (size <= maxSize) {
+				break;
+			}
+			if (entry.file.equals(written)) {
+				continue;
+			}
+			if (Files.deleteIfExists(entry.file)) {
+				evictions.incrementAndGet();
+			}
+			size -= entry.size;
+		}
+	}
+
+	private static final class Entry {
+		final Path file;
+		final long size, lastUsed;
+
+		Entry(Path file, long size, long lastUsed) {
+			this.file = file;
+			this.size = size;
+			this.lastUsed = lastUsed;
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public void printStats(PrintStream out) {
+		out.println("Compile cache " + directory + ": " + hits + " hits, " + misses + " misses, " + evictions
+				+ " evictions");
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// The compiler's stamp, worked out once, when the first key is made: a
+	// hash of the classes of the compiler and of the abstract machine, which
+	// fixes the object file format, whether they are in directories or jars.
+	private static final class Stamp {
+
+		final static byte[] stamp = stamp();
+
+		private static byte[] stamp() {
+			var digest = sha256();
+			digest.update("Triangle Compiler (Java Version 2.1)".getBytes(StandardCharsets.UTF_8));
+			for (var type : new Class<?>[] { Compiler.class, ObjectFile.class }) {
+				try {
+					var location = Path.of(type.getProtectionDomain().getCodeSource().getLocation().toURI());
+					if (Files.isDirectory(location)) {
+						try (var files = Files.walk(location)) {
+							for (var file : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".class"))
+									.sorted()::iterator) {
+								digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+								digest.update(Files.readAllBytes(file));
+							}
+						}
+					} else {
+						digest.update(Files.readAllBytes(location));
+					}
+				} catch (Exception e) {
+					// the classes cannot be found, so the version alone
+					// stamps them
+				}
+			}
+			return digest.digest();
+		}
+	}
+}
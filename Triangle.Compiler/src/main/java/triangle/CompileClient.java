@@ -0,0 +1,130 @@
+/*
+ * @(#)CompileClient.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * A thin tc: forwards its command line to a {@link CompileServer} and prints
+ * the reply, falling back to compiling in this JVM when no server is running.
+ *
+ * <p>
+ * The socket is {@link CompileServer#defaultSocketPath()} unless the
+ * triangle.socket system property names another. {@code --stopServer} asks
+ * the server to stop.
+ * </p>
+ */
+public final class CompileClient {
+
+	/**
+	 * The reply to a request: the exit status and the output.
+	 */
+	static final class Reply {
+		final int status;
+		final String output;
+
+		Reply(int status, String output) {
+			this.status = status;
+			this.output = output;
+		}
+	}
+
+	private CompileClient() {
+	}
+
+	/**
+	 * Sends a command line to the server, to be run in the given working
+	 * directory.
+	 *
+	 * @throws IOException if the server cannot be reached.
+	 */
+	static Reply compile(Path socketPath, Path workingDirectory, String[] args) throws IOException {
+		try (var channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+			var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+			out.writeByte(CompileServer.compileRequest);
+			CompileServer.writeString(out, workingDirectory.toAbsolutePath().toString());
+			out.writeInt(args.length);
+			for (var arg : args) {
+				CompileServer.writeString(out, arg);
+			}
+			out.flush();
+			return readReply(channel);
+		}
+	}
+
+	/**
+	 * Asks the server to stop, once it has answered the requests it has
+	 * already accepted.
+	 *
+	 * @throws IOException if the server cannot be reached.
+	 */
+	static Reply stop(Path socketPath) throws IOException {
+		try (var channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+			var out = new DataOutputStream(Channels.newOutputStream(channel));
+			out.writeByte(CompileServer.stopRequest);
+			out.flush();
+			return readReply(channel);
+		}
+	}
+
+	private static Reply readReply(SocketChannel channel) throws IOException {
+		var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+		var status = in.readInt();
+		return new Reply(status, CompileServer.readString(in));
+	}
+
+	/**
+	 * Runs a tc command line on the compile server.
+	 *
+	 * @param args the command-line arguments, as for {@link Compiler#main}, or
+	 *             --stopServer.
+	 */
+	public static void main(String[] args) {
+		// the arguments are all for tc, so none of them names the socket
+		var socketPath = CompileServer.socketPath(null);
+
+		Reply reply;
+		try {
+			if (args.length == 1 && args[0].equals("--stopServer")) {
+				reply = stop(socketPath);
+			} else {
+				reply = compile(socketPath, Path.of(""), args);
+			}
+		} catch (IOException e) {
+			if (args.length == 1 && args[0].equals("--stopServer")) {
+				System.out.println("No compile server is running on " + socketPath);
+				System.exit(1);
+			}
+			// no server: compile here, cold
+			Compiler.main(args);
+			return;
+		}
+		System.out.print(reply.output);
+		System.out.flush();
+		System.exit(reply.status);
+	}
+}
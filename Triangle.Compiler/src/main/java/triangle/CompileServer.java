@@ -0,0 +1,229 @@
+/*
+ * @(#)CompileServer.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long-lived compiler that takes tc command lines over a Unix domain socket,
+ * so that repeated compilations pay neither JVM startup nor a cold JIT.
+ *
+ * <p>
+ * {@link CompileClient} forwards its command line and working directory, and
+ * the server runs it as {@link Compiler#main} would, sending back the output
+ * and the exit status. Requests are served on a pool of one thread per
+ * processor. The standard environment is built and elaborated once, when the
+ * first program is compiled, and shared from then on.
+ * </p>
+ *
+ * <p>
+ * A request is a byte, {@link #compileRequest} or {@link #stopRequest}. A
+ * compile request is followed by the working directory and the number of
+ * arguments, then the arguments. The reply is the exit status, then the
+ * output. Strings are sent as a length and UTF-8 bytes.
+ * </p>
+ */
+public final class CompileServer implements Closeable {
+
+	final static byte compileRequest = 'C', stopRequest = 'S';
+
+	private final Path socketPath;
+
+	private final ServerSocketChannel server;
+
+	private final ExecutorService executor = Executors
+			.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Listens on the given socket, replacing a socket file left behind by a
+	 * server that has gone.
+	 *
+	 * @throws IOException if a server is already listening on the socket, or
+	 *                     it cannot be created.
+	 */
+	public CompileServer(Path socketPath) throws IOException {
+		this.socketPath = socketPath;
+		if (Files.exists(socketPath)) {
+			if (isListening(socketPath)) {
+				throw new IOException("a compile server is already listening on " + socketPath);
+			}
+			Files.deleteIfExists(socketPath);
+		}
+		server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		server.bind(UnixDomainSocketAddress.of(socketPath));
+	}
+
+	// Returns true iff a server accepts connections on the socket.
+	static boolean isListening(Path socketPath) {
+		try {
+			SocketChannel.open(UnixDomainSocketAddress.of(socketPath)).close();
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return the socket used when none is given: triangle-tc-<user>.sock in
+	 *         the temporary directory.
+	 */
+	public static Path defaultSocketPath() {
+		var name = "triangle-tc-" + System.getProperty("user.name") + ".sock";
+		return Path.of(System.getProperty("java.io.tmpdir"), name);
+	}
+
+	/**
+	 * @param given the socket named on the command line, or null if none was.
+	 * @return the socket to use: the one given, else the one named by the
+	 *         triangle.socket system property, else the default.
+	 */
+	public static Path socketPath(String given) {
+		if (given == null) {
+			given = System.getProperty("triangle.socket");
+		}
+		return given != null ? Path.of(given) : defaultSocketPath();
+	}
+
+	/**
+	 * Serves requests until the server is stopped or closed.
+	 */
+	public void serve() throws IOException {
+		try {
+			while (true) {
+				var channel = server.accept();
+				executor.execute(() -> handle(channel));
+			}
+		} catch (ClosedChannelException e) {
+			// closed by a stop request or by close()
+		} finally {
+			close();
+		}
+	}
+
+	// Answers one request on the channel, then closes it.
+	private void handle(SocketChannel channel) {
+		try (channel) {
+			var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+			int request;
+			try {
+				request = in.readByte();
+			} catch (EOFException e) {
+				// a client checking that the server is listening
+				return;
+			}
+			if (request == stopRequest) {
+				out.writeInt(0);
+				writeString(out, "Compile server stopped.\n");
+				out.flush();
+				server.close();
+				return;
+			}
+			if (request != compileRequest) {
+				throw new IOException("unknown request " + request);
+			}
+			var workingDirectory = Path.of(readString(in));
+			var args = new String[in.readInt()];
+			for (var i = 0; i < args.length; i++) {
+				args[i] = readString(in);
+			}
+
+			var output = new ByteArrayOutputStream();
+			var status = compile(args, workingDirectory, new PrintStream(output, true, StandardCharsets.UTF_8));
+			out.writeInt(status);
+			writeString(out, output.toString(StandardCharsets.UTF_8));
+			out.flush();
+		} catch (IOException e) {
+			System.err.println("Compile request failed: " + e);
+		}
+	}
+
+	// Runs a tc command line, returning its exit status.
+	static int compile(String[] args, Path workingDirectory, PrintStream out) {
+		var options = new Compiler.CLIOptions();
+		var extraArgs = Compiler.parseArguments(options, args, out, out);
+		if (extraArgs == null) {
+			return 1;
+		}
+		if (options.showTree || options.showTreeAfter) {
+			out.println("The compile server can't show trees; run tc directly.");
+			return 1;
+		}
+		return Compiler.run(options, extraArgs.get(0), workingDirectory, out, out) ? 0 : 1;
+	}
+
+	static void writeString(DataOutputStream out, String s) throws IOException {
+		var bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		var bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Stops accepting requests, waits for those already accepted, and removes
+	 * the socket file.
+	 */
+	@Override
+	public void close() throws IOException {
+		server.close();
+		executor.close();
+		Files.deleteIfExists(socketPath);
+	}
+
+	/**
+	 * Runs the compile server.
+	 *
+	 * @param args optionally, the socket to listen on, which otherwise is the
+	 *             one named by the triangle.socket system property, if any.
+	 */
+	public static void main(String[] args) {
+		var socketPath = socketPath(args.length > 0 ? args[0] : null);
+		try (var server = new CompileServer(socketPath)) {
+			System.out.println("********** Triangle Compile Server: listening on " + socketPath + " **********");
+			server.serve();
+		} catch (IOException e) {
+			System.out.println("Can't run compile server: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
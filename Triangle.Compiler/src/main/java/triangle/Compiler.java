@@ -18,18 +18,34 @@
 
 package triangle;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import com.sampullara.cli.Args;
 import com.sampullara.cli.Argument;
 
 import triangle.contextualAnalyzer.SummaryVisitor;
 
-import triangle.abstractSyntaxTrees.Program;
 import triangle.codeGenerator.Emitter;
 import triangle.codeGenerator.Encoder;
 import triangle.contextualAnalyzer.Checker;
+import triangle.optimiser.AlgebraicSimplifier;
 import triangle.optimiser.ConstantFolder;
+import triangle.optimiser.ConstantPropagator;
+import triangle.optimiser.Inliner;
+import triangle.optimiser.LoopInvariantHoister;
+import triangle.optimiser.PeepholeOptimiser;
 import triangle.syntacticAnalyzer.Parser;
 import triangle.syntacticAnalyzer.Scanner;
 import triangle.syntacticAnalyzer.SourceFile;
@@ -37,6 +53,14 @@ import triangle.treeDrawer.Drawer;
 
 /**
  * The main driver class for the Triangle compiler.
+ *
+ * <p>
+ * A Compiler holds only its options, so one instance may compile any number
+ * of programs, one after another or at the same time on different threads.
+ * Each compilation has its own scanner, parser, checker, encoder, emitter and
+ * AST, and returns its object program and diagnostics in a
+ * {@link Compilation} rather than writing to the TAM code store.
+ * </p>
  */
 public class Compiler {
 
@@ -54,150 +78,430 @@ public class Compiler {
     @Argument(description = "Enable constant folding optimisation")
     public boolean folding = false;
 
+    @Argument(description = "Enable inlining of calls to small routines")
+    public boolean inline = false;
+
+    @Argument(description = "The most commands, expressions and names a routine body may have and still be inlined")
+    public int inlineSize = Inliner.DEFAULT_MAXIMUM_SIZE;
+
+    @Argument(description = "Enable constant propagation and removal of branches never taken")
+    public boolean propagate = false;
+
+    @Argument(description = "Enable algebraic simplification and strength reduction of arithmetic")
+    public boolean simplify = false;
+
+    @Argument(description = "Enable hoisting of loop-invariant code out of loops")
+    public boolean hoist = false;
+
+    @Argument(description = "Enable peephole optimisation and jump threading of the object program")
+    public boolean peephole = false;
+
     @Argument(description = "Show the AST after folding is complete")
     public boolean showTreeAfter = false;
 
     @Argument(description = "Show summary statistics of the program")
     public boolean showStats = false;
+
+    @Argument(description = "Compile every .tri file in the given directory, in parallel, each to a .tam file beside it")
+    public boolean batch = false;
+
+    @Argument(description = "Keep object programs in the given directory, and reuse them when the source and options are unchanged")
+    public String cacheDir = null;
+
+    @Argument(description = "The most the compile cache may hold, in MB")
+    public int cacheSize = 64;
+
+    @Argument(description = "Encode the bodies of routines in parallel; the object program is the same")
+    public boolean parallelEncoding = false;
 	}
 
-	private static Scanner scanner;
-	private static Parser parser;
-	private static Checker checker;
-	private static Encoder encoder;
-	private static Emitter emitter;
-	private static ErrorReporter reporter;
-	private static Drawer drawer;
+	private final CLIOptions options;
+
+	// where the progress of each compilation is written, or null
+	private final PrintStream log;
 
-	/** The AST representing the source program. */
-	private static Program theAST;
+	// where object programs are looked up before compiling, or null
+	private final CompileCache cache;
 
 	/**
-	 * Compile the source program to TAM machine code.
+	 * Creates a compiler that writes nothing as it works; each compilation's
+	 * errors are returned in its {@link Compilation}. The options should not be
+	 * changed while the compiler is in use.
 	 *
-	 * @param sourceName   the name of the file containing the source program.
-	 * @param objectName   the name of the file containing the object program.
-	 * @param showingAST   true iff the AST is to be displayed after contextual
-	 *                     analysis
-	 * @param showingTable true iff the object description details are to be
-	 *                     displayed during code generation (not currently
-	 *                     implemented).
-	 * @return true iff the source program is free of compile-time errors, otherwise
-	 *         false.
+	 * @param options the options; objectName is not used.
 	 */
-	static boolean compileProgram(String sourceName,
-                                  String objectName,
-                                  boolean showingAST,
-                                  boolean showingTable,
-                                  boolean folding,
-                                  boolean showTreeAfter,
-                                  boolean showStats) {
+	public Compiler(CLIOptions options) {
+		this(options, null, null);
+	}
 
-		System.out.println("********** " + "Triangle Compiler (Java Version 2.1)" + " **********");
+	/**
+	 * Creates a compiler that writes nothing as it works, and takes the object
+	 * program of any source it has compiled before, with the same options, from
+	 * the cache.
+	 */
+	public Compiler(CLIOptions options, CompileCache cache) {
+		this(options, null, cache);
+	}
 
-		System.out.println("Syntactic Analysis ...");
-		SourceFile source = SourceFile.ofPath(sourceName);
+	/**
+	 * Creates a compiler that writes the progress of each compilation, its
+	 * errors and any statistics to the given stream, as the command-line
+	 * compiler does.
+	 */
+	Compiler(CLIOptions options, PrintStream log, CompileCache cache) {
+		this.options = options;
+		this.log = log;
+		this.cache = cache;
+	}
 
-		if (source == null) {
-			System.out.println("Can't access source file " + sourceName);
-			System.exit(1);
+	/**
+	 * Compiles a source program held in memory.
+	 *
+	 * @param sourceName the name of the program, used only to identify it.
+	 * @param source     the text of the source program.
+	 * @return the object program and the errors reported.
+	 */
+	public Compilation compile(String sourceName, byte[] source) {
+		// the trees can only be shown by compiling
+		if (cache == null || options.showTree || options.showTreeAfter) {
+			return compile(sourceName, SourceFile.ofBytes(source));
 		}
 
-		scanner = new Scanner(source);
-		reporter = new ErrorReporter(false);
-		parser = new Parser(scanner, reporter);
-		checker = new Checker(reporter);
-		emitter = new Emitter(reporter);
-		encoder = new Encoder(emitter, reporter);
-		drawer = new Drawer();
+		var key = CompileCache.key(source, options);
+		var objectProgram = cache.get(key);
+		if (objectProgram != null) {
+			log("********** " + "Triangle Compiler (Java Version 2.1)" + " **********");
+			log("Object program taken from the compile cache.");
+			log("Compilation was successful.");
+			return new Compilation(sourceName, objectProgram, List.of());
+		}
+
+		var compilation = compile(sourceName, SourceFile.ofBytes(source));
+		// a hit reports nothing, so only programs compiled without any
+		// diagnostics are cached
+		if (compilation.isSuccessful() && compilation.getDiagnostics().isEmpty()) {
+			try {
+				cache.put(key, compilation.toObjectFile());
+			} catch (IOException e) {
+				// left uncached
+			}
+		}
+		return compilation;
+	}
+
+	/**
+	 * Compiles the source program in the given file.
+	 *
+	 * @return the object program and the errors reported.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public Compilation compile(Path sourcePath) throws IOException {
+		return compile(sourcePath.toString(), Files.readAllBytes(sourcePath));
+	}
+
+	/**
+	 * Compile the source program to TAM machine code.
+	 *
+	 * @param sourceName the name of the source program.
+	 * @param source     the source program.
+	 * @return the object program, if the source program is free of
+	 *         compile-time errors, and the errors reported.
+	 */
+	Compilation compile(String sourceName, SourceFile source) {
+
+		log("********** " + "Triangle Compiler (Java Version 2.1)" + " **********");
+
+		log("Syntactic Analysis ...");
+
+		var scanner = new Scanner(source);
+		var reporter = new ErrorReporter(false, log);
+		var parser = new Parser(scanner, reporter);
+		var checker = new Checker(reporter);
+		var emitter = new Emitter(reporter);
+		// with a single thread to run them on, bodies are encoded in place
+		var parallel = options.parallelEncoding && ForkJoinPool.getCommonPoolParallelism() > 1;
+		var encoder = new Encoder(emitter, reporter, parallel ? ForkJoinPool.commonPool() : null);
+		var drawer = new Drawer();
 
 		// scanner.enableDebugging();
-		theAST = parser.parseProgram(); // 1st pass
+		var theAST = parser.parseProgram(); // 1st pass
 		if (reporter.getNumErrors() == 0) {
 
             // Run summary stats if requested (can be done after parsing)
-            if (showStats) {
+            if (options.showStats && log != null) {
                 SummaryVisitor visitor = new SummaryVisitor();
                 theAST.visit(visitor, null);
-                visitor.printStats();
+                visitor.printStats(log);
             }
 			
-			System.out.println("Contextual Analysis ...");
+			log("Contextual Analysis ...");
 			checker.check(theAST); // 2nd pass
 
 			// Show AST after contextual analysis, if requested
-			if (showingAST) {
+			if (options.showTree) {
 				drawer.draw(theAST);
 			}
 
 			// Constant folding and optional tree display afterwards
-			if (folding) {
+			if (options.folding) {
 				theAST.visit(new ConstantFolder());
 
-				if (showTreeAfter) {
+				if (options.showTreeAfter) {
 					drawer.draw(theAST);
 				}
 			}
-			
+
+			// The optimisations rely on the program being well typed, so are
+			// only done if checking found no errors
 			if (reporter.getNumErrors() == 0) {
-				System.out.println("Code Generation ...");
-				encoder.encodeRun(theAST, showingTable); // 3rd pass
+				// Inlining, before propagation so that the values of the actual
+				// parameters are propagated into the bodies
+				if (options.inline) {
+					theAST.visit(new Inliner(options.inlineSize));
+				}
+
+				// Constant propagation, before hoisting so that hoisting sees the
+				// pruned loops
+				if (options.propagate) {
+					theAST.visit(new ConstantPropagator());
+				}
+
+				// Algebraic simplification, after propagation so that it sees the
+				// operands whose values have been propagated
+				if (options.simplify) {
+					theAST.visit(new AlgebraicSimplifier());
+				}
+
+				// Loop-invariant code motion
+				if (options.hoist) {
+					theAST.visit(new LoopInvariantHoister());
+				}
+
+				log("Code Generation ...");
+				encoder.encodeRun(theAST, false); // 3rd pass
 			}
 		}
 
-		boolean successful = (reporter.getNumErrors() == 0);
-		if (successful) {
-			emitter.saveObjectProgram(objectName);
-			System.out.println("Compilation was successful.");
+		if (reporter.getNumErrors() == 0) {
+			log("Compilation was successful.");
+			var objectProgram = emitter.getObjectProgram();
+			// Peephole optimisation, once the code is linked and its
+			// addresses are final
+			if (options.peephole) {
+				objectProgram = new PeepholeOptimiser().optimise(objectProgram);
+			}
+			return new Compilation(sourceName, objectProgram, reporter.getDiagnostics());
 		} else {
-			System.out.println("Compilation was unsuccessful.");
+			log("Compilation was unsuccessful.");
+			return new Compilation(sourceName, null, reporter.getDiagnostics());
+		}
+	}
+
+	private void log(String message) {
+		if (log != null) {
+			log.println(message);
+		}
+	}
+
+	// Saves the object program, reporting rather than throwing any error.
+	private static void saveObjectProgram(Compilation compilation, String objectName, PrintStream err) {
+		try {
+			compilation.saveObjectProgram(objectName);
+		} catch (FileNotFoundException fnfe) {
+			err.println("Error opening object file: " + fnfe);
+		} catch (IOException ioe) {
+			err.println("Error writing object file: " + ioe);
 		}
-		return successful;
 	}
 
 	/**
-	 * Triangle compiler main program.
+	 * Compiles every .tri file in the directory, on as many threads as there
+	 * are processors, writing each object program beside its source. The
+	 * output of each compilation is written as a block, in file name order.
 	 *
-	 * @param args the command-line arguments. First non-option argument specifies the
-	 *             source filename. Options:
-	 *             --objectName=<filename>
-	 *             --showTree
-	 *             --folding
-	 *             --showTreeAfter
+	 * @return true iff every program compiled.
 	 */
-	public static void main(String[] args) {
+	static boolean compileDirectory(Path directory, CLIOptions options, CompileCache cache, PrintStream out,
+			PrintStream err) throws IOException, InterruptedException {
+		List<Path> sources;
+		try (var files = Files.list(directory)) {
+			sources = files.filter(f -> f.toString().endsWith(".tri")).sorted().toList();
+		}
 
-		CLIOptions options = new CLIOptions();
+		var start = System.nanoTime();
+		var threads = Runtime.getRuntime().availableProcessors();
+		var logs = new ArrayList<ByteArrayOutputStream>();
+		var results = new ArrayList<Future<Compilation>>();
+		try (var executor = Executors.newFixedThreadPool(threads)) {
+			for (var source : sources) {
+				var log = new ByteArrayOutputStream();
+				var compiler = new Compiler(options, new PrintStream(log, true), cache);
+				logs.add(log);
+				results.add(executor.submit(() -> compiler.compile(source)));
+			}
+		}
+
+		var compiled = 0;
+		for (var i = 0; i < sources.size(); i++) {
+			var source = sources.get(i);
+			Compilation compilation;
+			try {
+				compilation = results.get(i).get();
+			} catch (ExecutionException e) {
+				out.println("Can't compile " + source + ": " + e.getCause());
+				continue;
+			}
+			out.println("---------- " + source + " ----------");
+			out.print(logs.get(i));
+			if (compilation.isSuccessful()) {
+				var name = source.getFileName().toString();
+				saveObjectProgram(compilation,
+						source.resolveSibling(name.substring(0, name.length() - 4) + ".tam").toString(), err);
+				compiled++;
+			}
+		}
+		var elapsed = (System.nanoTime() - start) / 1_000_000;
+		out.println("Compiled " + compiled + " of " + sources.size() + " programs in " + elapsed + " ms on "
+				+ threads + (threads == 1 ? " thread." : " threads."));
+		return compiled == sources.size();
+	}
+
+	/**
+	 * Compiles one source file, writing the progress to out and the object
+	 * program to options.objectName.
+	 *
+	 * @return true iff the program compiled.
+	 */
+	static boolean compileFile(String sourceName, CLIOptions options, CompileCache cache, PrintStream out,
+			PrintStream err) {
+		var compiler = new Compiler(options, out, cache);
+		Compilation compilation = null;
+		if (cache == null) {
+			// the source is mapped rather than read, as nothing else needs its
+			// bytes
+			var source = SourceFile.ofPath(sourceName);
+			if (source != null) {
+				compilation = compiler.compile(sourceName, source);
+			}
+		} else {
+			// the cache key is a digest of the whole source, so it is read
+			try {
+				compilation = compiler.compile(sourceName, Files.readAllBytes(Path.of(sourceName)));
+			} catch (IOException | InvalidPathException e) {
+				// reported below
+			}
+		}
+		if (compilation == null) {
+			out.println("********** " + "Triangle Compiler (Java Version 2.1)" + " **********");
+			out.println("Syntactic Analysis ...");
+			out.println("Can't access source file " + sourceName);
+			return false;
+		}
+
+		if (compilation.isSuccessful()) {
+			saveObjectProgram(compilation, options.objectName, err);
+		}
+		return compilation.isSuccessful();
+	}
+
+	/**
+	 * Parses a command line into the options.
+	 *
+	 * @return the positional arguments, or null if the command line is not
+	 *         valid, once the error and the usage have been written.
+	 */
+	static List<String> parseArguments(CLIOptions options, String[] args, PrintStream out, PrintStream err) {
 
 		// Parse flags and get remaining positional args
         List<String> extraArgs;
         try {
             extraArgs = Args.parse(options, args);
         } catch (IllegalArgumentException ex) {
-            System.out.println("Error parsing arguments: " + ex.getMessage());
-            Args.usage(options);
-            System.exit(1);
-            return; // unreachable, but keeps compiler happy
+            out.println("Error parsing arguments: " + ex.getMessage());
+            Args.usage(err, options);
+            return null;
         }
 
         if (extraArgs.isEmpty()) {
-            System.out.println("Usage: tc <sourcefile> [--objectName=<output>] [--showTree] [--folding] [--showTreeAfter]");
-            Args.usage(options);
-            System.exit(1);
+            out.println("Usage: tc <sourcefile> [--objectName=<output>] [--showTree] [--folding] [--inline] [--propagate] [--simplify] [--hoist] [--peephole] [--showTreeAfter]");
+            out.println("       tc --batch <directory> [--folding] [--inline] [--propagate] [--simplify] [--hoist] [--peephole] [--showStats]");
+            out.println("       either may also take [--cacheDir=<directory>] [--cacheSize=<MB>] [--parallelEncoding] [--inlineSize=<n>]");
+            Args.usage(err, options);
+            return null;
         }
-		
-		
-
-		String sourceName = extraArgs.get(0);
-		
-		boolean compiledOK =
-            compileProgram(sourceName,
-                           options.objectName,
-                           options.showTree,
-                           false, // showingTable unused
-                           options.folding,
-                           options.showTreeAfter,
-                            options.showStats);
+        return extraArgs;
+	}
+
+	/**
+	 * Runs a command line that has been parsed into the options, with file
+	 * names taken relative to the given working directory.
+	 *
+	 * @return true iff every program compiled.
+	 */
+	static boolean run(CLIOptions options, String sourceName, Path workingDirectory, PrintStream out,
+			PrintStream err) {
+		CompileCache cache = null;
+		if (options.cacheDir != null) {
+			try {
+				cache = new CompileCache(workingDirectory.resolve(options.cacheDir), options.cacheSize * (1L << 20));
+			} catch (IOException e) {
+				out.println("Can't open compile cache " + options.cacheDir + ": " + e);
+			}
+		}
+
+		boolean compiledOK;
+		if (options.batch) {
+			try {
+				compiledOK = compileDirectory(workingDirectory.resolve(sourceName), options, cache, out, err);
+			} catch (IOException e) {
+				out.println("Can't read source directory " + sourceName + ": " + e);
+				compiledOK = false;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				compiledOK = false;
+			}
+		} else {
+			options.objectName = workingDirectory.resolve(options.objectName).toString();
+			compiledOK = compileFile(workingDirectory.resolve(sourceName).toString(), options, cache, out, err);
+		}
+
+		if (options.showStats && cache != null) {
+			cache.printStats(out);
+		}
+		return compiledOK;
+	}
+
+	/**
+	 * Triangle compiler main program.
+	 *
+	 * @param args the command-line arguments. First non-option argument specifies the
+	 *             source filename, or with --batch a directory of them. Options:
+	 *             --objectName=<filename>
+	 *             --showTree
+	 *             --folding
+	 *             --inline
+	 *             --inlineSize=<n>
+	 *             --propagate
+	 *             --simplify
+	 *             --hoist
+	 *             --peephole
+	 *             --showTreeAfter
+	 *             --showStats
+	 *             --batch
+	 *             --cacheDir=<directory>
+	 *             --cacheSize=<MB>
+	 *             --parallelEncoding
+	 */
+	public static void main(String[] args) {
+
+		CLIOptions options = new CLIOptions();
+		var extraArgs = parseArguments(options, args, System.out, System.err);
+		if (extraArgs == null) {
+			System.exit(1);
+			return; // unreachable, but keeps compiler happy
+		}
+
+		boolean compiledOK = run(options, extraArgs.get(0), Path.of(""), System.out, System.err);
 
 		if (!options.showTree && !options.showTreeAfter) {
 			System.exit(compiledOK ? 0 : 1);
@@ -18,6 +18,10 @@
 
 package triangle;
 
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
 import triangle.syntacticAnalyzer.SourcePosition;
 
 public class ErrorReporter {
@@ -26,12 +30,27 @@ public class ErrorReporter {
 	
 	private boolean throwExceptions;
 
+	private PrintStream out;
+
+	private List<String> diagnostics = new ArrayList<>();
+
 	/**
 	 * @param throwExceptions if true, throw exceptions (good for unit tests) otherwise write to stdout
 	 */
 	public ErrorReporter(boolean throwExceptions) {
+		this(throwExceptions, System.out);
+	}
+
+	/**
+	 * @param throwExceptions if true, throw exceptions (good for unit tests)
+	 * @param out             where errors and restrictions are written as they
+	 *                        are reported, or null to only keep them for
+	 *                        {@link #getDiagnostics}
+	 */
+	public ErrorReporter(boolean throwExceptions, PrintStream out) {
 		numErrors = 0;
 		this.throwExceptions = throwExceptions;
+		this.out = out;
 	}
 
 	public void reportError(String message, String tokenName, SourcePosition pos) {
@@ -46,20 +65,47 @@ public class ErrorReporter {
 			else
 				s += message.charAt(p);
 		s += (" " + pos.start + ".." + pos.finish);
+		diagnostics.add(s);
 		
 		if (throwExceptions) {
 			throw new RuntimeException(s);
-		} else {
-			System.out.println(s);
+		} else if (out != null) {
+			out.println(s);
 		}
 		
 	}
 
 	public void reportRestriction(String message) {
-		System.out.println("RESTRICTION: " + message);
+		var s = "RESTRICTION: " + message;
+		diagnostics.add(s);
+		if (out != null) {
+			out.println(s);
+		}
 	}
 	
+	/**
+	 * Reports the errors and restrictions kept by another reporter, in order,
+	 * as if they had been reported here.
+	 */
+	public void reportAll(ErrorReporter other) {
+		numErrors += other.numErrors;
+		for (var s : other.diagnostics) {
+			diagnostics.add(s);
+			if (out != null) {
+				out.println(s);
+			}
+		}
+	}
+
 	public int getNumErrors() {
 		return numErrors;
 	}
+
+	/**
+	 * @return the errors and restrictions reported so far, in order, as they
+	 *         would be written out.
+	 */
+	public List<String> getDiagnostics() {
+		return List.copyOf(diagnostics);
+	}
 }
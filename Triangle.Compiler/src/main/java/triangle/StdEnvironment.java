@@ -18,33 +18,145 @@
 
 package triangle;
 
+import triangle.abstractSyntaxTrees.commands.EmptyCommand;
 import triangle.abstractSyntaxTrees.declarations.BinaryOperatorDeclaration;
 import triangle.abstractSyntaxTrees.declarations.ConstDeclaration;
 import triangle.abstractSyntaxTrees.declarations.FuncDeclaration;
 import triangle.abstractSyntaxTrees.declarations.ProcDeclaration;
 import triangle.abstractSyntaxTrees.declarations.UnaryOperatorDeclaration;
+import triangle.abstractSyntaxTrees.expressions.EmptyExpression;
+import triangle.abstractSyntaxTrees.expressions.IntegerExpression;
+import triangle.abstractSyntaxTrees.formals.ConstFormalParameter;
+import triangle.abstractSyntaxTrees.formals.EmptyFormalParameterSequence;
+import triangle.abstractSyntaxTrees.formals.FormalParameterSequence;
+import triangle.abstractSyntaxTrees.formals.SingleFormalParameterSequence;
+import triangle.abstractSyntaxTrees.formals.VarFormalParameter;
+import triangle.abstractSyntaxTrees.terminals.Identifier;
+import triangle.abstractSyntaxTrees.terminals.Operator;
+import triangle.abstractSyntaxTrees.types.AnyTypeDenoter;
+import triangle.abstractSyntaxTrees.types.BoolTypeDenoter;
+import triangle.abstractSyntaxTrees.types.CharTypeDenoter;
+import triangle.abstractSyntaxTrees.types.ErrorTypeDenoter;
+import triangle.abstractSyntaxTrees.types.IntTypeDenoter;
 import triangle.abstractSyntaxTrees.types.TypeDeclaration;
 import triangle.abstractSyntaxTrees.types.TypeDenoter;
+import triangle.syntacticAnalyzer.SourcePosition;
 
+/**
+ * The standard environment: the types and the "declarations" of the standard
+ * constants, routines and operators.
+ *
+ * <p>
+ * The environment is built once, when this class is first used, and is shared
+ * by every compilation, including those running at the same time on other
+ * threads. The Checker enters these declarations in each of its
+ * identification tables, and the Encoder decides their run-time
+ * representations once; after that they are only read.
+ * </p>
+ */
 public final class StdEnvironment {
 
+	private final static SourcePosition dummyPos = new SourcePosition();
+
+	private final static Identifier dummyI = new Identifier("", dummyPos);
+
 	// These are small ASTs representing standard types.
 
-	public static TypeDenoter booleanType, charType, integerType, anyType, errorType;
+	public final static TypeDenoter booleanType = new BoolTypeDenoter(dummyPos), charType = new CharTypeDenoter(dummyPos),
+			integerType = new IntTypeDenoter(dummyPos), anyType = new AnyTypeDenoter(dummyPos),
+			errorType = new ErrorTypeDenoter(dummyPos);
 
-	public static TypeDeclaration booleanDecl, charDecl, integerDecl;
+	public final static TypeDeclaration booleanDecl = declareStdType("Boolean", booleanType),
+			charDecl = declareStdType("Char", charType), integerDecl = declareStdType("Integer", integerType);
 
 	// These are small ASTs representing "declarations" of standard entities.
 
-	public static ConstDeclaration falseDecl, trueDecl, maxintDecl;
+	public final static ConstDeclaration falseDecl = declareStdConst("false", booleanType),
+			trueDecl = declareStdConst("true", booleanType), maxintDecl = declareStdConst("maxint", integerType);
+
+	public final static UnaryOperatorDeclaration notDecl = declareStdUnaryOp("\\", booleanType, booleanType);
+
+	public final static BinaryOperatorDeclaration andDecl = declareStdBinaryOp("/\\", booleanType, booleanType,
+			booleanType), orDecl = declareStdBinaryOp("\\/", booleanType, booleanType, booleanType),
+			addDecl = declareStdBinaryOp("+", integerType, integerType, integerType),
+			subtractDecl = declareStdBinaryOp("-", integerType, integerType, integerType),
+			multiplyDecl = declareStdBinaryOp("*", integerType, integerType, integerType),
+			divideDecl = declareStdBinaryOp("/", integerType, integerType, integerType),
+			moduloDecl = declareStdBinaryOp("//", integerType, integerType, integerType),
+			equalDecl = declareStdBinaryOp("=", anyType, anyType, booleanType),
+			unequalDecl = declareStdBinaryOp("\\=", anyType, anyType, booleanType),
+			lessDecl = declareStdBinaryOp("<", integerType, integerType, booleanType),
+			notlessDecl = declareStdBinaryOp(">=", integerType, integerType, booleanType),
+			greaterDecl = declareStdBinaryOp(">", integerType, integerType, booleanType),
+			notgreaterDecl = declareStdBinaryOp("<=", integerType, integerType, booleanType);
+
+	public final static ProcDeclaration getDecl = declareStdProc("get", varParameter(charType)),
+			putDecl = declareStdProc("put", constParameter(charType)),
+			getintDecl = declareStdProc("getint", varParameter(integerType)),
+			putintDecl = declareStdProc("putint", constParameter(integerType)),
+			geteolDecl = declareStdProc("geteol", new EmptyFormalParameterSequence(dummyPos)),
+			puteolDecl = declareStdProc("puteol", new EmptyFormalParameterSequence(dummyPos));
+
+	public final static FuncDeclaration chrDecl = declareStdFunc("chr", constParameter(integerType), charType),
+			ordDecl = declareStdFunc("ord", constParameter(charType), integerType),
+			eolDecl = declareStdFunc("eol", new EmptyFormalParameterSequence(dummyPos), booleanType),
+			eofDecl = declareStdFunc("eof", new EmptyFormalParameterSequence(dummyPos), booleanType);
+
+	private StdEnvironment() {
+	}
+
+	// Creates a small AST to represent the "declaration" of a standard
+	// type.
+
+	private static TypeDeclaration declareStdType(String id, TypeDenoter typedenoter) {
+		return new TypeDeclaration(new Identifier(id, dummyPos), typedenoter, dummyPos);
+	}
+
+	// Creates a small AST to represent the "declaration" of a standard
+	// constant.
+
+	private static ConstDeclaration declareStdConst(String id, TypeDenoter constType) {
+		// constExpr used only as a placeholder for constType
+		var constExpr = new IntegerExpression(null, dummyPos);
+		constExpr.type = constType;
+		return new ConstDeclaration(new Identifier(id, dummyPos), constExpr, dummyPos);
+	}
+
+	// Creates a small AST to represent the "declaration" of a standard
+	// procedure.
+
+	private static ProcDeclaration declareStdProc(String id, FormalParameterSequence fps) {
+		return new ProcDeclaration(new Identifier(id, dummyPos), fps, new EmptyCommand(dummyPos), dummyPos);
+	}
+
+	// Creates a small AST to represent the "declaration" of a standard
+	// function.
+
+	private static FuncDeclaration declareStdFunc(String id, FormalParameterSequence fps, TypeDenoter resultType) {
+		return new FuncDeclaration(new Identifier(id, dummyPos), fps, resultType, new EmptyExpression(dummyPos),
+				dummyPos);
+	}
+
+	// Creates a small AST to represent the "declaration" of a
+	// unary operator. This "declaration" summarises the operator's type info.
 
-	public static UnaryOperatorDeclaration notDecl;
+	private static UnaryOperatorDeclaration declareStdUnaryOp(String op, TypeDenoter argType, TypeDenoter resultType) {
+		return new UnaryOperatorDeclaration(new Operator(op, dummyPos), argType, resultType, dummyPos);
+	}
 
-	public static BinaryOperatorDeclaration andDecl, orDecl, addDecl, subtractDecl, multiplyDecl, divideDecl,
-			moduloDecl, equalDecl, unequalDecl, lessDecl, notlessDecl, greaterDecl, notgreaterDecl;
+	// Creates a small AST to represent the "declaration" of a
+	// binary operator. This "declaration" summarises the operator's type info.
 
-	public static ProcDeclaration getDecl, putDecl, getintDecl, putintDecl, geteolDecl, puteolDecl;
+	private static BinaryOperatorDeclaration declareStdBinaryOp(String op, TypeDenoter arg1Type, TypeDenoter arg2type,
+			TypeDenoter resultType) {
+		return new BinaryOperatorDeclaration(new Operator(op, dummyPos), arg1Type, arg2type, resultType, dummyPos);
+	}
 
-	public static FuncDeclaration chrDecl, ordDecl, eolDecl, eofDecl;
+	private static FormalParameterSequence constParameter(TypeDenoter type) {
+		return new SingleFormalParameterSequence(new ConstFormalParameter(dummyI, type, dummyPos), dummyPos);
+	}
 
+	private static FormalParameterSequence varParameter(TypeDenoter type) {
+		return new SingleFormalParameterSequence(new VarFormalParameter(dummyI, type, dummyPos), dummyPos);
+	}
 }
@@ -18,6 +18,10 @@
 
 package triangle.abstractSyntaxTrees.commands;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
 import triangle.abstractSyntaxTrees.visitors.CommandVisitor;
 import triangle.syntacticAnalyzer.SourcePosition;
 
@@ -29,9 +33,46 @@ public class SequentialCommand extends Command {
 		C2 = c2AST;
 	}
 
+	/**
+	 * Returns the given commands as one command: a sequence nested as the parser
+	 * nests it, the command itself if there is just one, or an empty command if
+	 * there are none.
+	 */
+	public static Command of(List<Command> commands, SourcePosition position) {
+		if (commands.isEmpty()) {
+			return new EmptyCommand(position);
+		}
+		var sequence = commands.get(0);
+		for (var i = 1; i < commands.size(); i++) {
+			sequence = new SequentialCommand(sequence, commands.get(i), position);
+		}
+		return sequence;
+	}
+
 	public <TArg, TResult> TResult visit(CommandVisitor<TArg, TResult> v, TArg arg) {
 		return v.visitSequentialCommand(this, arg);
 	}
 
+	/**
+	 * Returns the commands of this sequence in order, with any sequences nested in
+	 * it flattened out. The parser nests a sequence of n commands n - 1 deep, so
+	 * the passes go through this list rather than recursing into C1 and C2.
+	 */
+	public List<Command> getCommands() {
+		var commands = new ArrayList<Command>();
+		var pending = new ArrayDeque<Command>();
+		pending.push(this);
+		while (!pending.isEmpty()) {
+			var command = pending.pop();
+			if (command instanceof SequentialCommand sequence) {
+				pending.push(sequence.C2);
+				pending.push(sequence.C1);
+			} else {
+				commands.add(command);
+			}
+		}
+		return commands;
+	}
+
 	public final Command C1, C2;
 }
@@ -18,6 +18,10 @@
 
 package triangle.abstractSyntaxTrees.declarations;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
 import triangle.abstractSyntaxTrees.visitors.DeclarationVisitor;
 import triangle.syntacticAnalyzer.SourcePosition;
 
@@ -29,9 +33,43 @@ public class SequentialDeclaration extends Declaration {
 		D2 = d2AST;
 	}
 
+	/**
+	 * Returns the given declarations, of which there must be at least one, as one
+	 * declaration: a sequence nested as the parser nests it, or the declaration
+	 * itself if there is just one.
+	 */
+	public static Declaration of(List<Declaration> declarations, SourcePosition position) {
+		var sequence = declarations.get(0);
+		for (var i = 1; i < declarations.size(); i++) {
+			sequence = new SequentialDeclaration(sequence, declarations.get(i), position);
+		}
+		return sequence;
+	}
+
 	public <TArg, TResult> TResult visit(DeclarationVisitor<TArg, TResult> v, TArg arg) {
 		return v.visitSequentialDeclaration(this, arg);
 	}
 
+	/**
+	 * Returns the declarations of this sequence in order, with any sequences nested in
+	 * it flattened out. The parser nests a sequence of n declarations n - 1 deep, so
+	 * the passes go through this list rather than recursing into D1 and D2.
+	 */
+	public List<Declaration> getDeclarations() {
+		var declarations = new ArrayList<Declaration>();
+		var pending = new ArrayDeque<Declaration>();
+		pending.push(this);
+		while (!pending.isEmpty()) {
+			var declaration = pending.pop();
+			if (declaration instanceof SequentialDeclaration sequence) {
+				pending.push(sequence.D2);
+				pending.push(sequence.D1);
+			} else {
+				declarations.add(declaration);
+			}
+		}
+		return declarations;
+	}
+
 	public final Declaration D1, D2;
 }
@@ -38,6 +38,8 @@ public class ArrayTypeDenoter extends TypeDenoter {
 	public boolean equals(Object obj) {
 		if (obj != null && obj instanceof ErrorTypeDenoter) {
 			return true;
+		} else if (bothInterned(obj)) {
+			return this == obj;
 		} else if (obj != null && obj instanceof ArrayTypeDenoter) {
 			return this.IL.spelling.compareTo(((ArrayTypeDenoter) obj).IL.spelling) == 0
 					&& this.T.equals(((ArrayTypeDenoter) obj).T);
@@ -48,6 +50,9 @@ public class ArrayTypeDenoter extends TypeDenoter {
 	
 	@Override
 	public int getSize() {
+		if (isInterned()) {
+			return getInternedSize();
+		}
 		return IL.getValue() * T.getSize();
 	}
 
@@ -38,6 +38,9 @@ public class MultipleFieldTypeDenoter extends FieldTypeDenoter {
 	
 	@Override
 	public int getSize() {
+		if (isInterned()) {
+			return getInternedSize();
+		}
 		return T.getSize() + FT.getSize();
 	}
 
@@ -34,6 +34,9 @@ public class RecordTypeDenoter extends TypeDenoter {
 	
 	@Override
 	public int getSize() {
+		if (isInterned()) {
+			return getInternedSize();
+		}
 		return FT.getSize();
 	}
 
@@ -41,6 +44,8 @@ public class RecordTypeDenoter extends TypeDenoter {
 	public boolean equals(Object obj) {
 		if (obj != null && obj instanceof ErrorTypeDenoter) {
 			return true;
+		} else if (bothInterned(obj)) {
+			return this == obj;
 		} else if (obj != null && obj instanceof RecordTypeDenoter) {
 			return this.FT.equals(((RecordTypeDenoter) obj).FT);
 		} else {
@@ -36,6 +36,9 @@ public class SingleFieldTypeDenoter extends FieldTypeDenoter {
 	
 	@Override
 	public int getSize() {
+		if (isInterned()) {
+			return getInternedSize();
+		}
 		return T.getSize();
 	}
 
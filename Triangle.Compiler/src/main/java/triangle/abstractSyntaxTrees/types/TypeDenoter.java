@@ -24,13 +24,52 @@ import triangle.syntacticAnalyzer.SourcePosition;
 
 public abstract class TypeDenoter extends AbstractSyntaxTree {
 
+	// Set once the checker has interned this type: it is then the only
+	// instance of its structure in the program, so it is equal to another
+	// interned type iff they are the same object, and its hash code and size
+	// are worked out once.
+	private boolean interned = false;
+	private int hash, size;
+
 	public TypeDenoter(SourcePosition position) {
 		super(position);
 	}
 
+	/**
+	 * Marks this type as the canonical instance of its structure. Its
+	 * components must already be canonical. Only the checker's type table
+	 * should call this.
+	 *
+	 * @param hash the hash code of the structure.
+	 */
+	public final void intern(int hash) {
+		this.hash = hash;
+		this.size = getSize();
+		interned = true;
+	}
+
+	public final boolean isInterned() {
+		return interned;
+	}
+
+	// Returns true iff this type and obj are both interned, in which case
+	// they are equal iff they are the same object.
+	protected final boolean bothInterned(Object obj) {
+		return interned && obj instanceof TypeDenoter type && type.interned;
+	}
+
+	protected final int getInternedSize() {
+		return size;
+	}
+
 	@Override
 	public abstract boolean equals(Object obj);
 
+	@Override
+	public int hashCode() {
+		return interned ? hash : super.hashCode();
+	}
+
 	public abstract <TArg, TResult> TResult visit(TypeDenoterVisitor<TArg, TResult> visitor, TArg arg);
 
 	public <TArg, TResult> TResult visit(TypeDenoterVisitor<TArg, TResult> visitor) {
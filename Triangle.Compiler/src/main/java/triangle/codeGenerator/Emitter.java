@@ -1,13 +1,17 @@
 package triangle.codeGenerator;
 
-import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
 
 import triangle.ErrorReporter;
 import triangle.abstractMachine.Instruction;
 import triangle.abstractMachine.Machine;
+import triangle.abstractMachine.ObjectFile;
 import triangle.abstractMachine.OpCode;
 import triangle.abstractMachine.Primitive;
 import triangle.abstractMachine.Register;
@@ -17,16 +21,59 @@ public class Emitter {
 	// OBJECT CODE
 
 	// Implementation notes:
-	// Object code is generated directly into the TAM Code Store, starting at
-	// CB.
+	// Object code is generated into this emitter's own copy of the TAM Code
+	// Store, starting at CB, so that any number of programs can be compiled
+	// at once. The code store grows on demand, as Machine's does.
 	// The address of the next instruction is held in nextInstrAddr.
+	//
+	// When routine bodies are encoded in parallel, each body is emitted into
+	// an emitter of its own, a fragment, with its own addresses from CB.
+	// The place of a fragment in the code that started it is held by an empty
+	// slot there, and each operand that is a code address is noted along with
+	// the code it addresses, so that link() can lay all the fragments out in
+	// order and relocate those operands. The linked code is exactly what would
+	// have been emitted had the bodies been encoded in place.
 
 	ErrorReporter errorReporter;
 
+	private Instruction[] code;
+
 	int nextInstrAddr;
 
+	// the fragments started in this code, in order
+	private final ArrayList<Emitter> fragments = new ArrayList<>();
+
+	// the slot this fragment fills in the code that started it, and the task
+	// emitting it; unused in the emitter for a whole program
+	private int slot;
+
+	private ForkJoinTask<?> task;
+
+	// whether the addresses in this code are still to be relocated, as they
+	// are once a fragment has been started in it, or if it is a fragment
+	private boolean relocating;
+
+	// the instructions whose operands are code addresses, with the code each
+	// operand addresses
+	private int[] relocations = new int[0];
+
+	private Emitter[] relocationTargets = new Emitter[0];
+
+	private int relocationCount;
+
+	// the base address and size of this code once laid out, and, for each
+	// fragment, the number of instructions it adds before the slots after it
+	private int base, size;
+
+	private int[] shifts;
+
 	public Emitter(ErrorReporter errorReporter) {
+		this(errorReporter, Machine.initialCodeSize);
+	}
+
+	private Emitter(ErrorReporter errorReporter, int initialSize) {
 		this.errorReporter = errorReporter;
+		code = new Instruction[initialSize];
 		nextInstrAddr = Machine.CB;
 	}
 
@@ -85,19 +132,164 @@ public class Emitter {
 		var nextInstr = new Instruction(op, register, length, operand);
 
 		var currentInstrAddr = nextInstrAddr;
-		if (nextInstrAddr == Machine.PB) {
+		if (nextInstrAddr == Machine.maxCodeSize) {
 			errorReporter.reportRestriction("too many instructions for code segment");
 		} else {
-			Machine.code[nextInstrAddr++] = nextInstr;
+			if (nextInstrAddr == code.length) {
+				code = Arrays.copyOf(code, Math.min(Machine.maxCodeSize, 2 * code.length));
+			}
+			code[nextInstrAddr++] = nextInstr;
 		}
 		return currentInstrAddr;
 
 	}
 
+	/**
+	 * Appends an instruction whose operand is a code address: the given address
+	 * in the code of the given emitter, which may be this one or a fragment.
+	 *
+	 * @return the code address of the new instruction
+	 */
+	public int emit(OpCode op, int length, Emitter target, int addr) {
+		var instrAddr = emit(op, length, Register.CB, addr);
+		if (target != this || relocating) {
+			addRelocation(instrAddr, target);
+		}
+		return instrAddr;
+	}
+
 	// Patches the d-field of the instruction at address addr with the next
 	// instruction address.
 	public void patch(int addr) {
-		Machine.code[addr].setOperand(nextInstrAddr);
+		code[addr].setOperand(nextInstrAddr);
+		if (relocating) {
+			addRelocation(addr, this);
+		}
+	}
+
+	private void addRelocation(int instrAddr, Emitter target) {
+		if (relocationCount == relocations.length) {
+			var length = Math.max(16, 2 * relocationCount);
+			relocations = Arrays.copyOf(relocations, length);
+			relocationTargets = Arrays.copyOf(relocationTargets, length);
+		}
+		relocations[relocationCount] = instrAddr;
+		relocationTargets[relocationCount++] = target;
+	}
+
+	/**
+	 * Starts a fragment at this point in the code: code emitted here from now on
+	 * follows the whole of the fragment. The fragment has its own error reporter,
+	 * whose diagnostics are reported here when the code is linked.
+	 *
+	 * @return the emitter for the fragment, whose code starts at CB.
+	 */
+	public Emitter startFragment() {
+		var fragment = new Emitter(new ErrorReporter(false, null), 64);
+		fragment.relocating = true;
+		fragment.slot = nextInstrAddr;
+		fragments.add(fragment);
+		relocating = true;
+		if (nextInstrAddr == code.length) {
+			code = Arrays.copyOf(code, Math.min(Machine.maxCodeSize, 2 * code.length));
+		}
+		code[nextInstrAddr++] = null;
+		return fragment;
+	}
+
+	/**
+	 * Sets the task emitting this fragment, which link() waits for.
+	 */
+	public void setTask(ForkJoinTask<?> task) {
+		this.task = task;
+	}
+
+	/**
+	 * Waits for every fragment started in this code, and in theirs, to be
+	 * emitted, then lays them out in place, relocates the code addresses
+	 * between them and reports their diagnostics. Afterwards this emitter holds
+	 * the whole program, as if it had all been emitted here.
+	 */
+	public void link() {
+		if (fragments.isEmpty()) {
+			return;
+		}
+
+		awaitFragments();
+		layOut(Machine.CB);
+		if (base + size > Machine.maxCodeSize) {
+			errorReporter.reportRestriction("too many instructions for code segment");
+		}
+
+		var linked = new Instruction[Math.min(Machine.maxCodeSize, Math.max(Machine.initialCodeSize, base + size))];
+		copyInto(linked, errorReporter);
+		code = linked;
+		nextInstrAddr = Math.min(Machine.maxCodeSize, base + size);
+		fragments.clear();
+		relocating = false;
+		relocationCount = 0;
+	}
+
+	// Waits for the fragments started in this code, and their fragments, and
+	// works out the size of each once laid out.
+	private void awaitFragments() {
+		size = nextInstrAddr - Machine.CB;
+		shifts = new int[fragments.size()];
+		for (var i = 0; i < fragments.size(); i++) {
+			var fragment = fragments.get(i);
+			fragment.task.join();
+			fragment.awaitFragments();
+			// the fragment takes the place of its slot
+			size += fragment.size - 1;
+			shifts[i] = (i == 0 ? 0 : shifts[i - 1]) + fragment.size - 1;
+		}
+	}
+
+	private void layOut(int base) {
+		this.base = base;
+		for (var fragment : fragments) {
+			fragment.layOut(address(fragment.slot));
+		}
+	}
+
+	// Returns the address, once laid out, of the instruction at the given
+	// address in this code; a fragment's slot gives the fragment's start.
+	private int address(int addr) {
+		// the fragments in slots before addr, found by their slots' order
+		int low = 0, high = fragments.size();
+		while (low < high) {
+			var middle = (low + high) >>> 1;
+			if (fragments.get(middle).slot < addr) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return base + addr - Machine.CB + (low == 0 ? 0 : shifts[low - 1]);
+	}
+
+	private void copyInto(Instruction[] linked, ErrorReporter reporter) {
+		for (var i = 0; i < relocationCount; i++) {
+			var instr = code[relocations[i]];
+			instr.setOperand(relocationTargets[i].address(instr.getOperand()));
+		}
+		for (var addr = Machine.CB; addr < nextInstrAddr; addr++) {
+			var linkedAddr = address(addr);
+			if (code[addr] != null && linkedAddr < linked.length) {
+				linked[linkedAddr] = code[addr];
+			}
+		}
+		for (var fragment : fragments) {
+			reporter.reportAll(fragment.errorReporter);
+			fragment.copyInto(linked, reporter);
+		}
+	}
+
+	/**
+	 * @return the instructions emitted so far, from CB.
+	 */
+	public Instruction[] getObjectProgram() {
+		return Arrays.copyOfRange(code, Machine.CB, nextInstrAddr);
 	}
 
 	/**
@@ -106,11 +298,8 @@ public class Emitter {
 	 * @param objectFile the object file
 	 */
 	public void saveObjectProgram(String objectFileName) {
-		try (var objectFile = new FileOutputStream(objectFileName)) {
-			var objectStream = new DataOutputStream(objectFile);
-			for (var addr = Machine.CB; addr < nextInstrAddr; addr++) {
-				Machine.code[addr].write(objectStream);
-			}
+		try (var objectFile = new BufferedOutputStream(new FileOutputStream(objectFileName))) {
+			ObjectFile.write(objectFile, getObjectProgram());
 		} catch (FileNotFoundException fnfe) {
 			System.err.println("Error opening object file: " + fnfe);
 		} catch (IOException ioe) {
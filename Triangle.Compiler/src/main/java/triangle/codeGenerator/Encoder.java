@@ -18,6 +18,9 @@
 
 package triangle.codeGenerator;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
 import triangle.ErrorReporter;
 import triangle.StdEnvironment;
 import triangle.abstractMachine.Machine;
@@ -79,6 +82,7 @@ import triangle.abstractSyntaxTrees.types.RecordTypeDenoter;
 import triangle.abstractSyntaxTrees.types.SimpleTypeDenoter;
 import triangle.abstractSyntaxTrees.types.SingleFieldTypeDenoter;
 import triangle.abstractSyntaxTrees.types.TypeDeclaration;
+import triangle.abstractSyntaxTrees.types.TypeDenoter;
 import triangle.abstractSyntaxTrees.visitors.ActualParameterSequenceVisitor;
 import triangle.abstractSyntaxTrees.visitors.ActualParameterVisitor;
 import triangle.abstractSyntaxTrees.visitors.ArrayAggregateVisitor;
@@ -185,8 +189,9 @@ public final class Encoder implements ActualParameterVisitor<Frame, Integer>,
 
 	@Override
 	public Void visitSequentialCommand(SequentialCommand ast, Frame frame) {
-		ast.C1.visit(this, frame);
-		ast.C2.visit(this, frame);
+		for (var command : ast.getCommands()) {
+			command.visit(this, frame);
+		}
 		return null;
 	}
 
@@ -197,7 +202,7 @@ public final class Encoder implements ActualParameterVisitor<Frame, Integer>,
 		ast.C.visit(this, frame);
 		emitter.patch(jumpAddr);
 		ast.E.visit(this, frame);
-		emitter.emit(OpCode.JUMPIF, Machine.trueRep, Register.CB, loopAddr);
+		emitter.emit(OpCode.JUMPIF, Machine.trueRep, emitter, loopAddr);
 		return null;
 	}
 
@@ -208,7 +213,7 @@ public final class Encoder implements ActualParameterVisitor<Frame, Integer>,
         ast.E.visit(this, frame);
         var jumpIfAddr = emitter.emit(OpCode.JUMPIF, Machine.falseRep, Register.CB, 0);
         ast.C2.visit(this, frame);
-        emitter.emit(OpCode.JUMP, 0, Register.CB, loopAddr);
+        emitter.emit(OpCode.JUMP, 0, emitter, loopAddr);
         emitter.patch(jumpIfAddr);
         return null;
     }
@@ -326,12 +331,13 @@ public final class Encoder implements ActualParameterVisitor<Frame, Integer>,
 
 	@Override
 	public Integer visitFuncDeclaration(FuncDeclaration ast, Frame frame) {
+		encodeRoutine(ast, frame, encoder -> encoder.encodeFuncBody(ast, frame));
+		return 0;
+	}
+
+	private void encodeFuncBody(FuncDeclaration ast, Frame frame) {
 		var argsSize = 0;
 		var valSize = 0;
-
-		var jumpAddr = emitter.emit(OpCode.JUMP, 0, Register.CB, 0);
-		ast.entity = new KnownRoutine(Machine.closureSize, frame.getLevel(), emitter.getNextInstrAddr());
-		writeTableDetails(ast);
 		if (frame.getLevel() == Machine.maxRoutineLevel) {
 			reporter.reportRestriction("can't nest routines more than 7 deep");
 		} else {
@@ -341,16 +347,16 @@ public final class Encoder implements ActualParameterVisitor<Frame, Integer>,
 			valSize = ast.E.visit(this, frame2);
 		}
 		emitter.emit(OpCode.RETURN, valSize, argsSize);
-		emitter.patch(jumpAddr);
-		return 0;
 	}
 
 	@Override
 	public Integer visitProcDeclaration(ProcDeclaration ast, Frame frame) {
+		encodeRoutine(ast, frame, encoder -> encoder.encodeProcBody(ast, frame));
+		return 0;
+	}
+
+	private void encodeProcBody(ProcDeclaration ast, Frame frame) {
 		var argsSize = 0;
-		var jumpAddr = emitter.emit(OpCode.JUMP, 0, Register.CB, 0);
-		ast.entity = new KnownRoutine(Machine.closureSize, frame.getLevel(), emitter.getNextInstrAddr());
-		writeTableDetails(ast);
 		if (frame.getLevel() == Machine.maxRoutineLevel) {
 			reporter.reportRestriction("can't nest routines so deeply");
 		} else {
@@ -360,16 +366,34 @@ public final class Encoder implements ActualParameterVisitor<Frame, Integer>,
 			ast.C.visit(this, frame2);
 		}
 		emitter.emit(OpCode.RETURN, argsSize);
+	}
+
+	// Encodes a routine declaration: a jump over the routine, then its body.
+	// With a pool, the body is encoded by a task of its own, by a new encoder,
+	// into a fragment that takes its place when the program is linked.
+	private void encodeRoutine(Declaration ast, Frame frame, Consumer<Encoder> body) {
+		var jumpAddr = emitter.emit(OpCode.JUMP, 0, Register.CB, 0);
+		var code = pool == null ? emitter : emitter.startFragment();
+		ast.entity = new KnownRoutine(Machine.closureSize, frame.getLevel(), code, code.getNextInstrAddr());
+		writeTableDetails(ast);
+		if (pool == null) {
+			body.accept(this);
+		} else {
+			var encoder = new Encoder(code, code.errorReporter, pool);
+			encoder.tableDetailsReqd = tableDetailsReqd;
+			code.setTask(pool.submit(() -> body.accept(encoder)));
+		}
 		emitter.patch(jumpAddr);
-		return 0;
 	}
 
 	@Override
 	public Integer visitSequentialDeclaration(SequentialDeclaration ast, Frame frame) {
-		var extraSize1 = ast.D1.visit(this, frame);
-		var frame1 = frame.expand(extraSize1);
-		var extraSize2 = ast.D2.visit(this, frame1);
-		return extraSize1 + extraSize2;
+		// each declaration is elaborated in the frame expanded by those before it
+		var extraSize = 0;
+		for (var declaration : ast.getDeclarations()) {
+			extraSize += declaration.visit(this, frame.expand(extraSize));
+		}
+		return extraSize;
 	}
 
 	@Override
@@ -698,9 +722,24 @@ public final class Encoder implements ActualParameterVisitor<Frame, Integer>,
 	}
 
 	public Encoder(Emitter emitter, ErrorReporter reporter) {
+		this(emitter, reporter, null);
+	}
+
+	/**
+	 * Creates an encoder that encodes the bodies of routines in parallel, on the
+	 * given pool if it is not null, and links them into place at the end of the
+	 * run; the object program is the same as if they had been encoded in place.
+	 */
+	public Encoder(Emitter emitter, ErrorReporter reporter, ForkJoinPool pool) {
 		this.emitter = emitter;
 		this.reporter = reporter;
+		this.pool = pool;
+	}
 
+	// The standard environment is shared by all compilations, so its run-time
+	// representations are decided once, when the first Encoder is created,
+	// and only read from then on.
+	static {
 		elaborateStdEnvironment();
 	}
 
@@ -708,6 +747,9 @@ public final class Encoder implements ActualParameterVisitor<Frame, Integer>,
 
 	private ErrorReporter reporter;
 
+	// where routine bodies are encoded, or null to encode them in place
+	private final ForkJoinPool pool;
+
 	// Generates code to run a program.
 	// showingTable is true iff entity description details
 	// are to be displayed.
@@ -716,23 +758,30 @@ public final class Encoder implements ActualParameterVisitor<Frame, Integer>,
 		// startCodeGeneration();
 		program.visit(this, Frame.Initial);
 		emitter.emit(OpCode.HALT);
+		emitter.link();
+	}
+
+	// Decides run-time representation of a standard type.
+	private static void elaborateStdType(TypeDenoter type, int typeSize) {
+		type.entity = new TypeRepresentation(typeSize);
+		writeTableDetails(type);
 	}
 
 	// Decides run-time representation of a standard constant.
-	private final void elaborateStdConst(ConstDeclaration constDeclaration, int value) {
+	private static void elaborateStdConst(ConstDeclaration constDeclaration, int value) {
 
-		var typeSize = constDeclaration.E.type.visit(this);
+		var typeSize = constDeclaration.E.type.entity.getSize();
 		constDeclaration.entity = new KnownValue(typeSize, value);
 		writeTableDetails(constDeclaration);
 	}
 
 	// Decides run-time representation of a standard routine.
-	private final void elaborateStdPrimRoutine(Declaration routineDeclaration, Primitive primitive) {
+	private static void elaborateStdPrimRoutine(Declaration routineDeclaration, Primitive primitive) {
 		routineDeclaration.entity = new PrimitiveRoutine(Machine.closureSize, primitive);
 		writeTableDetails(routineDeclaration);
 	}
 
-	private final void elaborateStdEqRoutine(Declaration routineDeclaration, Primitive primitive) {
+	private static void elaborateStdEqRoutine(Declaration routineDeclaration, Primitive primitive) {
 		routineDeclaration.entity = new EqualityRoutine(Machine.closureSize, primitive);
 		writeTableDetails(routineDeclaration);
 	}
@@ -744,8 +793,10 @@ public final class Encoder implements ActualParameterVisitor<Frame, Integer>,
 	 * The primitive routines are listed in Table C3 (P411) of the PLPJ book, 
 	 * and Table 3 of the Triangle guide
 	 */
-	private final void elaborateStdEnvironment() {
-		tableDetailsReqd = false;
+	private static void elaborateStdEnvironment() {
+		elaborateStdType(StdEnvironment.booleanType, Machine.booleanSize);
+		elaborateStdType(StdEnvironment.charType, Machine.characterSize);
+		elaborateStdType(StdEnvironment.integerType, Machine.integerSize);
 		elaborateStdConst(StdEnvironment.falseDecl, Machine.falseRep);
 		elaborateStdConst(StdEnvironment.trueDecl, Machine.trueRep);
 		elaborateStdPrimRoutine(StdEnvironment.notDecl, Primitive.NOT);
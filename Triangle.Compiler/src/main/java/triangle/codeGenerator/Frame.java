@@ -68,7 +68,7 @@ public class Frame {
 		}
 
 		if (level - address.getLevel() <= 6) {
-			return Register.values()[Register.LB.ordinal() + level - address.getLevel()]; // LB|L1|...|L6
+			return Register.of(Register.LB.ordinal() + level - address.getLevel()); // LB|L1|...|L6
 		}
 
 		// _errorReporter.ReportRestriction("can't access data more than 6 levels out");
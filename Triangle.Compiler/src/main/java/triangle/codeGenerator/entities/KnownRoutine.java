@@ -19,7 +19,6 @@
 package triangle.codeGenerator.entities;
 
 import triangle.abstractMachine.OpCode;
-import triangle.abstractMachine.Register;
 import triangle.codeGenerator.Emitter;
 import triangle.codeGenerator.Frame;
 
@@ -27,9 +26,13 @@ public class KnownRoutine extends RuntimeEntity implements RoutineEntity {
 
 	private final ObjectAddress address;
 
-	public KnownRoutine(int size, int level, int displacement) {
+	// the code holding the routine, to which its displacement is relative
+	private final Emitter code;
+
+	public KnownRoutine(int size, int level, Emitter code, int displacement) {
 		super(size);
 		address = new ObjectAddress(level, displacement);
+		this.code = code;
 	}
 
 	public final ObjectAddress getAddress() {
@@ -37,12 +40,12 @@ public class KnownRoutine extends RuntimeEntity implements RoutineEntity {
 	}
 
 	public void encodeCall(Emitter emitter, Frame frame) {
-		emitter.emit(OpCode.CALL, frame.getDisplayRegister(address), Register.CB, address.getDisplacement());
+		emitter.emit(OpCode.CALL, frame.getDisplayRegister(address).ordinal(), code, address.getDisplacement());
 	}
 
 	public void encodeFetch(Emitter emitter, Frame frame) {
 		emitter.emit(OpCode.LOADA, frame.getDisplayRegister(address), 0);
-		emitter.emit(OpCode.LOADA, Register.CB, address.getDisplacement());
+		emitter.emit(OpCode.LOADA, 0, code, address.getDisplacement());
 	}
 
 }
@@ -59,7 +59,7 @@ public class UnknownAddress extends AddressableEntity {
 			emitter.emit(OpCode.LOADL, offset);
 			emitter.emit(OpCode.CALL, Register.PB, Primitive.ADD);
 		}
-		emitter.emit(OpCode.LOADI, size);
+		emitter.emit(OpCode.LOADI, size, 0);
 	}
 
 	public void encodeFetchAddress(Emitter emitter, Frame frame, Vname vname) {
@@ -178,8 +178,9 @@ public final class Checker implements ActualParameterVisitor<FormalParameter, Vo
 
 	@Override
 	public Void visitSequentialCommand(SequentialCommand ast, Void arg) {
-		ast.C1.visit(this);
-		ast.C2.visit(this);
+		for (var command : ast.getCommands()) {
+			command.visit(this);
+		}
 		return null;
 	}
 
@@ -211,7 +212,7 @@ public final class Checker implements ActualParameterVisitor<FormalParameter, Vo
 	public TypeDenoter visitArrayExpression(ArrayExpression ast, Void arg) {
 		var elemType = ast.AA.visit(this);
 		var il = new IntegerLiteral(Integer.toString(ast.AA.elemCount), ast.getPosition());
-		ast.type = new ArrayTypeDenoter(il, elemType, ast.getPosition());
+		ast.type = types.intern(new ArrayTypeDenoter(il, elemType, ast.getPosition()));
 		return ast.type;
 	}
 
@@ -287,7 +288,7 @@ public final class Checker implements ActualParameterVisitor<FormalParameter, Vo
 	@Override
 	public TypeDenoter visitRecordExpression(RecordExpression ast, Void arg) {
 		var rType = ast.RA.visit(this);
-		return ast.type = new RecordTypeDenoter(rType, ast.getPosition());
+		return ast.type = types.intern(new RecordTypeDenoter(rType, ast.getPosition()));
 	}
 
 	@Override
@@ -357,8 +358,9 @@ public final class Checker implements ActualParameterVisitor<FormalParameter, Vo
 
 	@Override
 	public Void visitSequentialDeclaration(SequentialDeclaration ast, Void arg) {
-		ast.D1.visit(this);
-		ast.D2.visit(this);
+		for (var declaration : ast.getDeclarations()) {
+			declaration.visit(this);
+		}
 		return null;
 	}
 
@@ -589,7 +591,7 @@ public final class Checker implements ActualParameterVisitor<FormalParameter, Vo
 	public TypeDenoter visitArrayTypeDenoter(ArrayTypeDenoter ast, Void arg) {
 		ast.T = ast.T.visit(this);
 		checkAndReportError(ast.IL.getValue() != 0, "arrays must not be empty", ast.IL);
-		return ast;
+		return types.intern(ast);
 	}
 
 	@Override
@@ -626,7 +628,7 @@ public final class Checker implements ActualParameterVisitor<FormalParameter, Vo
 	@Override
 	public TypeDenoter visitRecordTypeDenoter(RecordTypeDenoter ast, Void arg) {
 		ast.FT = (FieldTypeDenoter) ast.FT.visit(this);
-		return ast;
+		return types.intern(ast);
 	}
 
 	@Override
@@ -770,11 +772,14 @@ public final class Checker implements ActualParameterVisitor<FormalParameter, Vo
 	public Checker(ErrorReporter reporter) {
 		this.reporter = reporter;
 		this.idTable = new IdentificationTable();
+		this.types = new TypeTable();
 		establishStdEnvironment();
 	}
 
 	private IdentificationTable idTable;
-	private static SourcePosition dummyPos = new SourcePosition();
+	// the canonical array and record types, so that types are compared by
+	// identity
+	private TypeTable types;
 	private ErrorReporter reporter;
 
 	private void reportUndeclaredOrError(Declaration binding, Terminal leaf, String message) {
@@ -833,147 +838,71 @@ public final class Checker implements ActualParameterVisitor<FormalParameter, Vo
 		return StdEnvironment.errorType;
 	}
 
-	// Creates a small AST to represent the "declaration" of a standard
-	// type, and enters it in the identification table.
+	// Enters a standard "declaration" in the identification table.
 
-	private TypeDeclaration declareStdType(String id, TypeDenoter typedenoter) {
-
-		var binding = new TypeDeclaration(new Identifier(id, dummyPos), typedenoter, dummyPos);
-		idTable.enter(id, binding);
-		return binding;
+	private void enterStd(TypeDeclaration binding) {
+		idTable.enter(binding.I.spelling, binding);
 	}
 
-	// Creates a small AST to represent the "declaration" of a standard
-	// type, and enters it in the identification table.
-
-	private ConstDeclaration declareStdConst(String id, TypeDenoter constType) {
-
-		// constExpr used only as a placeholder for constType
-		var constExpr = new IntegerExpression(null, dummyPos);
-		constExpr.type = constType;
-		var binding = new ConstDeclaration(new Identifier(id, dummyPos), constExpr, dummyPos);
-		idTable.enter(id, binding);
-		return binding;
+	private void enterStd(ConstDeclaration binding) {
+		idTable.enter(binding.I.spelling, binding);
 	}
 
-	// Creates a small AST to represent the "declaration" of a standard
-	// type, and enters it in the identification table.
-
-	private ProcDeclaration declareStdProc(String id, FormalParameterSequence fps) {
-
-		var binding = new ProcDeclaration(new Identifier(id, dummyPos), fps, new EmptyCommand(dummyPos), dummyPos);
-		idTable.enter(id, binding);
-		return binding;
+	private void enterStd(ProcDeclaration binding) {
+		idTable.enter(binding.I.spelling, binding);
 	}
 
-	// Creates a small AST to represent the "declaration" of a standard
-	// type, and enters it in the identification table.
-
-	private FuncDeclaration declareStdFunc(String id, FormalParameterSequence fps, TypeDenoter resultType) {
-
-		var binding = new FuncDeclaration(new Identifier(id, dummyPos), fps, resultType, new EmptyExpression(dummyPos),
-				dummyPos);
-		idTable.enter(id, binding);
-		return binding;
+	private void enterStd(FuncDeclaration binding) {
+		idTable.enter(binding.I.spelling, binding);
 	}
 
-	// Creates a small AST to represent the "declaration" of a
-	// unary operator, and enters it in the identification table.
-	// This "declaration" summarises the operator's type info.
-
-	private UnaryOperatorDeclaration declareStdUnaryOp(String op, TypeDenoter argType, TypeDenoter resultType) {
-
-		var binding = new UnaryOperatorDeclaration(new Operator(op, dummyPos), argType, resultType, dummyPos);
-		idTable.enter(op, binding);
-		return binding;
+	private void enterStd(UnaryOperatorDeclaration binding) {
+		idTable.enter(binding.O.spelling, binding);
 	}
 
-	// Creates a small AST to represent the "declaration" of a
-	// binary operator, and enters it in the identification table.
-	// This "declaration" summarises the operator's type info.
-
-	private BinaryOperatorDeclaration declareStdBinaryOp(String op, TypeDenoter arg1Type, TypeDenoter arg2type,
-			TypeDenoter resultType) {
-
-		var binding = new BinaryOperatorDeclaration(new Operator(op, dummyPos), arg1Type, arg2type, resultType,
-				dummyPos);
-		idTable.enter(op, binding);
-		return binding;
+	private void enterStd(BinaryOperatorDeclaration binding) {
+		idTable.enter(binding.O.spelling, binding);
 	}
 
-	// Creates small ASTs to represent the standard types.
-	// Creates small ASTs to represent "declarations" of standard types,
-	// constants, procedures, functions, and operators.
-	// Enters these "declarations" in the identification table.
-
-	private final static Identifier dummyI = new Identifier("", dummyPos);
+	// Enters the "declarations" of the standard types, constants,
+	// procedures, functions, and operators in the identification table.
+	// They are built once, by StdEnvironment, and shared by all checkers.
 
 	private void establishStdEnvironment() {
 
 		// idTable.startIdentification();
-		StdEnvironment.booleanType = new BoolTypeDenoter(dummyPos);
-		StdEnvironment.integerType = new IntTypeDenoter(dummyPos);
-		StdEnvironment.charType = new CharTypeDenoter(dummyPos);
-		StdEnvironment.anyType = new AnyTypeDenoter(dummyPos);
-		StdEnvironment.errorType = new ErrorTypeDenoter(dummyPos);
-
-		StdEnvironment.booleanDecl = declareStdType("Boolean", StdEnvironment.booleanType);
-		StdEnvironment.falseDecl = declareStdConst("false", StdEnvironment.booleanType);
-		StdEnvironment.trueDecl = declareStdConst("true", StdEnvironment.booleanType);
-		StdEnvironment.notDecl = declareStdUnaryOp("\\", StdEnvironment.booleanType, StdEnvironment.booleanType);
-		StdEnvironment.andDecl = declareStdBinaryOp("/\\", StdEnvironment.booleanType, StdEnvironment.booleanType,
-				StdEnvironment.booleanType);
-		StdEnvironment.orDecl = declareStdBinaryOp("\\/", StdEnvironment.booleanType, StdEnvironment.booleanType,
-				StdEnvironment.booleanType);
-
-		StdEnvironment.integerDecl = declareStdType("Integer", StdEnvironment.integerType);
-		StdEnvironment.maxintDecl = declareStdConst("maxint", StdEnvironment.integerType);
-		StdEnvironment.addDecl = declareStdBinaryOp("+", StdEnvironment.integerType, StdEnvironment.integerType,
-				StdEnvironment.integerType);
-		StdEnvironment.subtractDecl = declareStdBinaryOp("-", StdEnvironment.integerType, StdEnvironment.integerType,
-				StdEnvironment.integerType);
-		StdEnvironment.multiplyDecl = declareStdBinaryOp("*", StdEnvironment.integerType, StdEnvironment.integerType,
-				StdEnvironment.integerType);
-		StdEnvironment.divideDecl = declareStdBinaryOp("/", StdEnvironment.integerType, StdEnvironment.integerType,
-				StdEnvironment.integerType);
-		StdEnvironment.moduloDecl = declareStdBinaryOp("//", StdEnvironment.integerType, StdEnvironment.integerType,
-				StdEnvironment.integerType);
-		StdEnvironment.lessDecl = declareStdBinaryOp("<", StdEnvironment.integerType, StdEnvironment.integerType,
-				StdEnvironment.booleanType);
-		StdEnvironment.notgreaterDecl = declareStdBinaryOp("<=", StdEnvironment.integerType, StdEnvironment.integerType,
-				StdEnvironment.booleanType);
-		StdEnvironment.greaterDecl = declareStdBinaryOp(">", StdEnvironment.integerType, StdEnvironment.integerType,
-				StdEnvironment.booleanType);
-		StdEnvironment.notlessDecl = declareStdBinaryOp(">=", StdEnvironment.integerType, StdEnvironment.integerType,
-				StdEnvironment.booleanType);
-
-		StdEnvironment.charDecl = declareStdType("Char", StdEnvironment.charType);
-		StdEnvironment.chrDecl = declareStdFunc("chr",
-				new SingleFormalParameterSequence(
-						new ConstFormalParameter(dummyI, StdEnvironment.integerType, dummyPos), dummyPos),
-				StdEnvironment.charType);
-		StdEnvironment.ordDecl = declareStdFunc("ord",
-				new SingleFormalParameterSequence(new ConstFormalParameter(dummyI, StdEnvironment.charType, dummyPos),
-						dummyPos),
-				StdEnvironment.integerType);
-		StdEnvironment.eofDecl = declareStdFunc("eof", new EmptyFormalParameterSequence(dummyPos),
-				StdEnvironment.booleanType);
-		StdEnvironment.eolDecl = declareStdFunc("eol", new EmptyFormalParameterSequence(dummyPos),
-				StdEnvironment.booleanType);
-		StdEnvironment.getDecl = declareStdProc("get", new SingleFormalParameterSequence(
-				new VarFormalParameter(dummyI, StdEnvironment.charType, dummyPos), dummyPos));
-		StdEnvironment.putDecl = declareStdProc("put", new SingleFormalParameterSequence(
-				new ConstFormalParameter(dummyI, StdEnvironment.charType, dummyPos), dummyPos));
-		StdEnvironment.getintDecl = declareStdProc("getint", new SingleFormalParameterSequence(
-				new VarFormalParameter(dummyI, StdEnvironment.integerType, dummyPos), dummyPos));
-		StdEnvironment.putintDecl = declareStdProc("putint", new SingleFormalParameterSequence(
-				new ConstFormalParameter(dummyI, StdEnvironment.integerType, dummyPos), dummyPos));
-		StdEnvironment.geteolDecl = declareStdProc("geteol", new EmptyFormalParameterSequence(dummyPos));
-		StdEnvironment.puteolDecl = declareStdProc("puteol", new EmptyFormalParameterSequence(dummyPos));
-		StdEnvironment.equalDecl = declareStdBinaryOp("=", StdEnvironment.anyType, StdEnvironment.anyType,
-				StdEnvironment.booleanType);
-		StdEnvironment.unequalDecl = declareStdBinaryOp("\\=", StdEnvironment.anyType, StdEnvironment.anyType,
-				StdEnvironment.booleanType);
+		enterStd(StdEnvironment.booleanDecl);
+		enterStd(StdEnvironment.falseDecl);
+		enterStd(StdEnvironment.trueDecl);
+		enterStd(StdEnvironment.notDecl);
+		enterStd(StdEnvironment.andDecl);
+		enterStd(StdEnvironment.orDecl);
+
+		enterStd(StdEnvironment.integerDecl);
+		enterStd(StdEnvironment.maxintDecl);
+		enterStd(StdEnvironment.addDecl);
+		enterStd(StdEnvironment.subtractDecl);
+		enterStd(StdEnvironment.multiplyDecl);
+		enterStd(StdEnvironment.divideDecl);
+		enterStd(StdEnvironment.moduloDecl);
+		enterStd(StdEnvironment.lessDecl);
+		enterStd(StdEnvironment.notgreaterDecl);
+		enterStd(StdEnvironment.greaterDecl);
+		enterStd(StdEnvironment.notlessDecl);
+
+		enterStd(StdEnvironment.charDecl);
+		enterStd(StdEnvironment.chrDecl);
+		enterStd(StdEnvironment.ordDecl);
+		enterStd(StdEnvironment.eofDecl);
+		enterStd(StdEnvironment.eolDecl);
+		enterStd(StdEnvironment.getDecl);
+		enterStd(StdEnvironment.putDecl);
+		enterStd(StdEnvironment.getintDecl);
+		enterStd(StdEnvironment.putintDecl);
+		enterStd(StdEnvironment.geteolDecl);
+		enterStd(StdEnvironment.puteolDecl);
+		enterStd(StdEnvironment.equalDecl);
+		enterStd(StdEnvironment.unequalDecl);
 
 	}
 }
@@ -25,6 +25,7 @@ public class IdEntry {
 	protected String id;
 	protected Declaration attr;
 	protected int level;
+	// the entry for the same identifier that this one hides, if any
 	protected IdEntry previous;
 
 	IdEntry(String id, Declaration attr, int level, IdEntry previous) {
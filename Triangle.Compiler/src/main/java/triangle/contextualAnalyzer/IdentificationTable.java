@@ -18,16 +18,39 @@
 
 package triangle.contextualAnalyzer;
 
+import java.util.Arrays;
+import java.util.HashMap;
+
 import triangle.abstractSyntaxTrees.declarations.Declaration;
 
+/**
+ * The identification table: the bindings of identifiers to their
+ * declarations, in nested scopes.
+ *
+ * <p>
+ * Each identifier maps to its innermost entry, which links to the entry it
+ * hides, so retrieve and enter take constant time however many identifiers
+ * are declared. The entries of all open scopes are also kept, in the order
+ * they were entered, in an undo log; closing a scope pops that scope's own
+ * entries from the log, restoring the entries they hid.
+ * </p>
+ */
 public final class IdentificationTable {
 
 	private int level;
-	private IdEntry latest;
+
+	// the innermost entry for each identifier
+	private final HashMap<String, IdEntry> bindings = new HashMap<>();
+
+	// the entries of the open scopes, in order; scopeStart[l] is where the
+	// entries of level l begin
+	private IdEntry[] log = new IdEntry[64];
+	private int logSize;
+	private int[] scopeStart = new int[16];
 
 	public IdentificationTable() {
 		level = 0;
-		latest = null;
+		logSize = 0;
 	}
 
 	// Opens a new level in the identification table, 1 higher than the
@@ -35,6 +58,10 @@ public final class IdentificationTable {
 
 	public void openScope() {
 		level++;
+		if (level == scopeStart.length) {
+			scopeStart = Arrays.copyOf(scopeStart, level * 2);
+		}
+		scopeStart[level] = logSize;
 	}
 
 	// Closes the topmost level in the identification table, discarding
@@ -42,13 +69,18 @@ public final class IdentificationTable {
 
 	public void closeScope() {
 		// Presumably, idTable.level > 0.
-		var entry = this.latest;
-		while (entry.level == this.level) {
-			entry = entry.previous;
+		var start = scopeStart[level];
+		while (logSize > start) {
+			var entry = log[--logSize];
+			log[logSize] = null;
+			if (entry.previous == null) {
+				bindings.remove(entry.id);
+			} else {
+				bindings.put(entry.id, entry.previous);
+			}
 		}
 
 		this.level--;
-		this.latest = entry;
 	}
 
 	// Makes a new entry in the identification table for the given identifier
@@ -57,8 +89,14 @@ public final class IdentificationTable {
 	// same identifier at the current level.
 
 	public void enter(String id, Declaration attr) {
-		attr.duplicated = retrieve(id, true) != null;
-		this.latest = new IdEntry(id, attr, this.level, this.latest);
+		var hidden = bindings.get(id);
+		attr.duplicated = hidden != null && hidden.level == this.level;
+		var entry = new IdEntry(id, attr, this.level, hidden);
+		bindings.put(id, entry);
+		if (logSize == log.length) {
+			log = Arrays.copyOf(log, logSize * 2);
+		}
+		log[logSize++] = entry;
 	}
 
 	// Finds an entry for the given identifier in the identification table,
@@ -74,18 +112,11 @@ public final class IdentificationTable {
 	// thisLevelOnly limits the search to only the current level
 	
 	public Declaration retrieve(String id, boolean thisLevelOnly) {
-		var entry = this.latest;
-		while (true) {
-			if (entry == null || (thisLevelOnly && entry.level < this.level)) {
-				break;
-			} else if (entry.id.equals(id)) {
-				return entry.attr;
-			} else {
-				entry = entry.previous;
-			}
+		var entry = bindings.get(id);
+		if (entry == null || (thisLevelOnly && entry.level < this.level)) {
+			return null;
 		}
-
-		return null;
+		return entry.attr;
 	}
 
 }
@@ -1,5 +1,7 @@
 package triangle.contextualAnalyzer;
 
+import java.io.PrintStream;
+
 import triangle.abstractSyntaxTrees.Program;
 import triangle.abstractSyntaxTrees.actuals.ConstActualParameter;
 import triangle.abstractSyntaxTrees.actuals.EmptyActualParameterSequence;
@@ -90,9 +92,13 @@ public class SummaryVisitor implements ActualParameterVisitor<Void, Void>,
     private int integerCount = 0;
 
     public void printStats() {
-        System.out.println("Summary statistics:");
-        System.out.println("Character expressions: " + characterCount);
-        System.out.println("Integer expressions: " + integerCount);
+        printStats(System.out);
+    }
+
+    public void printStats(PrintStream out) {
+        out.println("Summary statistics:");
+        out.println("Character expressions: " + characterCount);
+        out.println("Integer expressions: " + integerCount);
     }
 
     // getters
@@ -380,8 +386,9 @@ public class SummaryVisitor implements ActualParameterVisitor<Void, Void>,
 
     @Override
     public Void visitSequentialDeclaration(SequentialDeclaration ast, Void arg) {
-        ast.D1.visit(this, null);
-        ast.D2.visit(this, null);
+        for (var declaration : ast.getDeclarations()) {
+            declaration.visit(this, null);
+        }
         return null;
     }
 
@@ -449,8 +456,9 @@ public class SummaryVisitor implements ActualParameterVisitor<Void, Void>,
 
     @Override
     public Void visitSequentialCommand(SequentialCommand ast, Void arg) {
-        ast.C1.visit(this, null);
-        ast.C2.visit(this, null);
+        for (var command : ast.getCommands()) {
+            command.visit(this, null);
+        }
         return null;
     }
 
@@ -0,0 +1,160 @@
+/*
+ * @(#)TypeTable.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.contextualAnalyzer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import triangle.abstractSyntaxTrees.types.ArrayTypeDenoter;
+import triangle.abstractSyntaxTrees.types.ErrorTypeDenoter;
+import triangle.abstractSyntaxTrees.types.FieldTypeDenoter;
+import triangle.abstractSyntaxTrees.types.MultipleFieldTypeDenoter;
+import triangle.abstractSyntaxTrees.types.RecordTypeDenoter;
+import triangle.abstractSyntaxTrees.types.SingleFieldTypeDenoter;
+import triangle.abstractSyntaxTrees.types.TypeDenoter;
+
+/**
+ * The array and record types of one program, each kept once: the first type
+ * of a given structure that the checker resolves becomes the canonical one,
+ * and every later type of the same structure is replaced by it.
+ *
+ * <p>
+ * A type is interned once its components are, so it is looked up by its
+ * field names or element count and the identities of its components. The
+ * standard types are already single instances and are left as they are.
+ * Records are interned whole; their field lists are never shared with
+ * another record, since a field's offset depends on the fields before it.
+ * A type that contains the error type is never interned, as it must still
+ * match any type of the same shape by structure.
+ * </p>
+ */
+final class TypeTable {
+
+	private final HashMap<Key, TypeDenoter> types = new HashMap<>();
+
+	/**
+	 * @return the canonical type with the same structure as the given one, whose
+	 *         components must already be canonical.
+	 */
+	TypeDenoter intern(TypeDenoter type) {
+		if (type.isInterned() || containsError(type)) {
+			return type;
+		}
+
+		Key key;
+		if (type instanceof ArrayTypeDenoter array) {
+			key = new Key(new Object[] { ArrayTypeDenoter.class, array.IL.spelling, array.T });
+		} else if (type instanceof RecordTypeDenoter record) {
+			var parts = new ArrayList<Object>();
+			parts.add(RecordTypeDenoter.class);
+			for (FieldTypeDenoter field = record.FT; field != null; field = next(field)) {
+				if (field instanceof MultipleFieldTypeDenoter multiple) {
+					parts.add(multiple.I.spelling);
+					parts.add(multiple.T);
+				} else if (field instanceof SingleFieldTypeDenoter single) {
+					parts.add(single.I.spelling);
+					parts.add(single.T);
+				}
+			}
+			key = new Key(parts.toArray());
+		} else {
+			return type;
+		}
+
+		var canonical = types.putIfAbsent(key, type);
+		if (canonical != null) {
+			return canonical;
+		}
+		if (type instanceof RecordTypeDenoter record) {
+			internFields(record.FT);
+		}
+		type.intern(key.hash);
+		return type;
+	}
+
+	// Whether the type is, or has a component that is, the error type, which
+	// equals every type and so cannot be compared by identity.
+	private static boolean containsError(TypeDenoter type) {
+		if (type instanceof ErrorTypeDenoter) {
+			return true;
+		} else if (type instanceof ArrayTypeDenoter array) {
+			return containsError(array.T);
+		} else if (type instanceof RecordTypeDenoter record) {
+			for (FieldTypeDenoter field = record.FT; field != null; field = next(field)) {
+				if (field instanceof MultipleFieldTypeDenoter multiple && containsError(multiple.T)
+						|| field instanceof SingleFieldTypeDenoter single && containsError(single.T)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static FieldTypeDenoter next(FieldTypeDenoter field) {
+		return field instanceof MultipleFieldTypeDenoter multiple ? multiple.FT : null;
+	}
+
+	// Interns the fields of a new canonical record, last first, so that each
+	// size is worked out from those already known. Returns the hash of the
+	// list.
+	private static int internFields(FieldTypeDenoter field) {
+		var hash = 0;
+		if (field instanceof MultipleFieldTypeDenoter multiple) {
+			hash = 31 * (31 * internFields(multiple.FT) + multiple.I.spelling.hashCode()) + multiple.T.hashCode();
+		} else if (field instanceof SingleFieldTypeDenoter single) {
+			hash = 31 * single.I.spelling.hashCode() + single.T.hashCode();
+		}
+		field.intern(hash);
+		return hash;
+	}
+
+	// The structure of a type: the kind of type, then spellings, compared by
+	// value, and component types, compared by identity.
+	private static final class Key {
+		final Object[] parts;
+		final int hash;
+
+		Key(Object[] parts) {
+			this.parts = parts;
+			var hash = 0;
+			for (var part : parts) {
+				hash = 31 * hash + part.hashCode();
+			}
+			this.hash = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key other) || other.hash != hash || other.parts.length != parts.length) {
+				return false;
+			}
+			for (var i = 0; i < parts.length; i++) {
+				if (parts[i] instanceof String spelling ? !spelling.equals(other.parts[i]) : parts[i] != other.parts[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,564 @@
+/*
+ * @(#)AlgebraicSimplifier.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.optimiser;
+
+import java.util.Map;
+
+import triangle.StdEnvironment;
+import triangle.abstractSyntaxTrees.Program;
+import triangle.abstractSyntaxTrees.actuals.ConstActualParameter;
+import triangle.abstractSyntaxTrees.actuals.EmptyActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.FuncActualParameter;
+import triangle.abstractSyntaxTrees.actuals.MultipleActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.ProcActualParameter;
+import triangle.abstractSyntaxTrees.actuals.SingleActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.VarActualParameter;
+import triangle.abstractSyntaxTrees.aggregates.MultipleArrayAggregate;
+import triangle.abstractSyntaxTrees.aggregates.MultipleRecordAggregate;
+import triangle.abstractSyntaxTrees.aggregates.SingleArrayAggregate;
+import triangle.abstractSyntaxTrees.aggregates.SingleRecordAggregate;
+import triangle.abstractSyntaxTrees.commands.AssignCommand;
+import triangle.abstractSyntaxTrees.commands.CallCommand;
+import triangle.abstractSyntaxTrees.commands.Command;
+import triangle.abstractSyntaxTrees.commands.DoubleAssignCommand;
+import triangle.abstractSyntaxTrees.commands.EmptyCommand;
+import triangle.abstractSyntaxTrees.commands.IfCommand;
+import triangle.abstractSyntaxTrees.commands.LetCommand;
+import triangle.abstractSyntaxTrees.commands.LoopWhileCommand;
+import triangle.abstractSyntaxTrees.commands.SequentialCommand;
+import triangle.abstractSyntaxTrees.commands.WhileCommand;
+import triangle.abstractSyntaxTrees.declarations.BinaryOperatorDeclaration;
+import triangle.abstractSyntaxTrees.declarations.ConstDeclaration;
+import triangle.abstractSyntaxTrees.declarations.Declaration;
+import triangle.abstractSyntaxTrees.declarations.FuncDeclaration;
+import triangle.abstractSyntaxTrees.declarations.ProcDeclaration;
+import triangle.abstractSyntaxTrees.declarations.SequentialDeclaration;
+import triangle.abstractSyntaxTrees.declarations.UnaryOperatorDeclaration;
+import triangle.abstractSyntaxTrees.declarations.VarDeclaration;
+import triangle.abstractSyntaxTrees.expressions.ArrayExpression;
+import triangle.abstractSyntaxTrees.expressions.BinaryExpression;
+import triangle.abstractSyntaxTrees.expressions.CallExpression;
+import triangle.abstractSyntaxTrees.expressions.CharacterExpression;
+import triangle.abstractSyntaxTrees.expressions.EmptyExpression;
+import triangle.abstractSyntaxTrees.expressions.Expression;
+import triangle.abstractSyntaxTrees.expressions.IfExpression;
+import triangle.abstractSyntaxTrees.expressions.IntegerExpression;
+import triangle.abstractSyntaxTrees.expressions.LetExpression;
+import triangle.abstractSyntaxTrees.expressions.RecordExpression;
+import triangle.abstractSyntaxTrees.expressions.UnaryExpression;
+import triangle.abstractSyntaxTrees.expressions.VnameExpression;
+import triangle.abstractSyntaxTrees.formals.ConstFormalParameter;
+import triangle.abstractSyntaxTrees.formals.FuncFormalParameter;
+import triangle.abstractSyntaxTrees.formals.ProcFormalParameter;
+import triangle.abstractSyntaxTrees.formals.VarFormalParameter;
+import triangle.abstractSyntaxTrees.terminals.Operator;
+import triangle.abstractSyntaxTrees.types.TypeDeclaration;
+import triangle.abstractSyntaxTrees.visitors.ActualParameterSequenceVisitor;
+import triangle.abstractSyntaxTrees.visitors.ActualParameterVisitor;
+import triangle.abstractSyntaxTrees.visitors.ArrayAggregateVisitor;
+import triangle.abstractSyntaxTrees.visitors.CommandVisitor;
+import triangle.abstractSyntaxTrees.visitors.DeclarationVisitor;
+import triangle.abstractSyntaxTrees.visitors.ExpressionVisitor;
+import triangle.abstractSyntaxTrees.visitors.ProgramVisitor;
+import triangle.abstractSyntaxTrees.visitors.RecordAggregateVisitor;
+import triangle.abstractSyntaxTrees.visitors.VnameVisitor;
+import triangle.abstractSyntaxTrees.vnames.DotVname;
+import triangle.abstractSyntaxTrees.vnames.SimpleVname;
+import triangle.abstractSyntaxTrees.vnames.SubscriptVname;
+import triangle.syntacticAnalyzer.SourcePosition;
+
+/**
+ * Algebraic simplification: rewrites Integer and Boolean expressions into
+ * cheaper ones that always have the same value, and fail in the same way. It
+ * runs on a checked program, before it is encoded, so that the encoder emits
+ * neither the operands nor the call of the primitive routine.
+ *
+ * <p>
+ * The operands of +, *, =, \=, /\ and \/ are put in a canonical order, with
+ * an operand whose value is known second, so that the rules below need only
+ * look there. As an operand with a known value can neither fail nor change
+ * anything, evaluating it second does not change what the program does.
+ * Then, where x is any expression and the operand on the right is known:
+ * </p>
+ * <ul>
+ * <li>x + 0, x - 0, x * 1, x / 1, x /\ true and x \/ false are x;</li>
+ * <li>x * 0 and x // 1 are 0, x /\ false is false and x \/ true is true,
+ * provided x cannot fail;</li>
+ * <li>x - x is 0 where x is a variable or constant;</li>
+ * <li>\ \ x is x;</li>
+ * <li>x * 2, and the doubling command x**, add x to itself, where x is a
+ * variable or constant read by a single LOAD.</li>
+ * </ul>
+ *
+ * <p>
+ * An operand that may fail is never removed, as a program that would stop
+ * with an overflow, a division by zero or an index out of range must still do
+ * so: see {@link KnownValues#mayFail}. x + x overflows for just the values of
+ * x for which x * 2 does, as both are 2x, so the TAM's limit of maxint holds
+ * as before. The TAM has no shifts, so multiplying by a larger power of two
+ * is left as it is: adding x to itself k times would take more instructions
+ * than the one call of mult.
+ * </p>
+ */
+public class AlgebraicSimplifier implements ProgramVisitor<Void, Void>, CommandVisitor<Void, Command>,
+		ExpressionVisitor<Void, Expression>, VnameVisitor<Void, Void>, ActualParameterVisitor<Void, Void>,
+		ActualParameterSequenceVisitor<Void, Void>, ArrayAggregateVisitor<Void, Void>,
+		RecordAggregateVisitor<Void, Void>, DeclarationVisitor<Void, Void> {
+
+	private int identitiesRemoved = 0, operandsReordered = 0, multiplicationsReduced = 0;
+
+	/**
+	 * @return the number of operations removed by their identity or annihilator,
+	 *         or as a double negation
+	 */
+	public int getIdentitiesRemoved() {
+		return identitiesRemoved;
+	}
+
+	/**
+	 * @return the number of operations whose operands were swapped into the
+	 *         canonical order
+	 */
+	public int getOperandsReordered() {
+		return operandsReordered;
+	}
+
+	/**
+	 * @return the number of multiplications by two replaced by additions
+	 */
+	public int getMultiplicationsReduced() {
+		return multiplicationsReduced;
+	}
+
+	@Override
+	public Void visitProgram(Program ast, Void arg) {
+		ast.C = ast.C.visit(this);
+		return null;
+	}
+
+	// Commands. Each gives the command to take its place, or itself.
+
+	@Override
+	public Command visitAssignCommand(AssignCommand ast, Void arg) {
+		ast.V.visit(this);
+		ast.E = ast.E.visit(this);
+		return ast;
+	}
+
+	@Override
+	public Command visitDoubleAssignCommand(DoubleAssignCommand ast, Void arg) {
+		ast.V.visit(this);
+		var position = ast.getPosition();
+		var name = new VnameExpression(ast.V, position);
+		name.type = ast.V.type;
+		if (!isLoaded(name)) {
+			return ast;
+		}
+		multiplicationsReduced++;
+		// the name is read by a copy of its own, as nodes are not shared
+		return new AssignCommand(ast.V, sum(new Copier().copy(name), position), position);
+	}
+
+	@Override
+	public Command visitCallCommand(CallCommand ast, Void arg) {
+		ast.APS.visit(this);
+		return ast;
+	}
+
+	@Override
+	public Command visitEmptyCommand(EmptyCommand ast, Void arg) {
+		return ast;
+	}
+
+	@Override
+	public Command visitIfCommand(IfCommand ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		var c1 = ast.C1.visit(this);
+		var c2 = ast.C2.visit(this);
+		if (c1 == ast.C1 && c2 == ast.C2) {
+			return ast;
+		}
+		return new IfCommand(ast.E, c1, c2, ast.getPosition());
+	}
+
+	@Override
+	public Command visitLetCommand(LetCommand ast, Void arg) {
+		ast.D.visit(this);
+		var c = ast.C.visit(this);
+		return c == ast.C ? ast : new LetCommand(ast.D, c, ast.getPosition());
+	}
+
+	@Override
+	public Command visitSequentialCommand(SequentialCommand ast, Void arg) {
+		var commands = ast.getCommands();
+		var changed = false;
+		for (var i = 0; i < commands.size(); i++) {
+			var command = commands.get(i);
+			var replacement = command.visit(this);
+			if (replacement != command) {
+				commands.set(i, replacement);
+				changed = true;
+			}
+		}
+		return changed ? SequentialCommand.of(commands, ast.getPosition()) : ast;
+	}
+
+	@Override
+	public Command visitWhileCommand(WhileCommand ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		var c = ast.C.visit(this);
+		return c == ast.C ? ast : new WhileCommand(ast.E, c, ast.getPosition());
+	}
+
+	@Override
+	public Command visitLoopWhileCommand(LoopWhileCommand ast, Void arg) {
+		var c1 = ast.C1.visit(this);
+		ast.E = ast.E.visit(this);
+		var c2 = ast.C2.visit(this);
+		if (c1 == ast.C1 && c2 == ast.C2) {
+			return ast;
+		}
+		return new LoopWhileCommand(c1, ast.E, c2, ast.getPosition());
+	}
+
+	// Expressions. Each gives the expression to take its place, or itself.
+
+	@Override
+	public Expression visitArrayExpression(ArrayExpression ast, Void arg) {
+		ast.AA.visit(this);
+		return ast;
+	}
+
+	@Override
+	public Expression visitBinaryExpression(BinaryExpression ast, Void arg) {
+		ast.E1 = ast.E1.visit(this);
+		ast.E2 = ast.E2.visit(this);
+
+		var operator = ast.O.decl;
+		var left = KnownValues.evaluate(ast.E1, Map.of());
+		var right = KnownValues.evaluate(ast.E2, Map.of());
+		if (left != null && right != null) {
+			// left to constant folding and propagation
+			return ast;
+		}
+		if (left != null && isCommutative(operator)) {
+			var known = ast.E1;
+			ast.E1 = ast.E2;
+			ast.E2 = known;
+			right = left;
+			operandsReordered++;
+		}
+		if (right == null) {
+			if (operator == StdEnvironment.subtractDecl && isSameVariable(ast.E1, ast.E2)) {
+				identitiesRemoved++;
+				return KnownValues.literal(ast, 0);
+			}
+			return ast;
+		}
+
+		var x = ast.E1;
+		if (isIdentity(operator, right)) {
+			identitiesRemoved++;
+			return x;
+		}
+		if (isAnnihilator(operator, right) && !KnownValues.mayFail(x, Map.of())) {
+			identitiesRemoved++;
+			return KnownValues.literal(ast, operator == StdEnvironment.moduloDecl ? 0 : right);
+		}
+		if (operator == StdEnvironment.multiplyDecl && right == 2 && isLoaded(x)) {
+			multiplicationsReduced++;
+			return sum(x, ast.getPosition());
+		}
+		return ast;
+	}
+
+	@Override
+	public Expression visitCallExpression(CallExpression ast, Void arg) {
+		ast.APS.visit(this);
+		return ast;
+	}
+
+	@Override
+	public Expression visitCharacterExpression(CharacterExpression ast, Void arg) {
+		return ast;
+	}
+
+	@Override
+	public Expression visitEmptyExpression(EmptyExpression ast, Void arg) {
+		return ast;
+	}
+
+	@Override
+	public Expression visitIfExpression(IfExpression ast, Void arg) {
+		ast.E1 = ast.E1.visit(this);
+		ast.E2 = ast.E2.visit(this);
+		ast.E3 = ast.E3.visit(this);
+		return ast;
+	}
+
+	@Override
+	public Expression visitIntegerExpression(IntegerExpression ast, Void arg) {
+		return ast;
+	}
+
+	@Override
+	public Expression visitLetExpression(LetExpression ast, Void arg) {
+		ast.D.visit(this);
+		ast.E = ast.E.visit(this);
+		return ast;
+	}
+
+	@Override
+	public Expression visitRecordExpression(RecordExpression ast, Void arg) {
+		ast.RA.visit(this);
+		return ast;
+	}
+
+	@Override
+	public Expression visitUnaryExpression(UnaryExpression ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		if (ast.O.decl == StdEnvironment.notDecl && ast.E instanceof UnaryExpression inner
+				&& inner.O.decl == StdEnvironment.notDecl) {
+			identitiesRemoved++;
+			return inner.E;
+		}
+		return ast;
+	}
+
+	@Override
+	public Expression visitVnameExpression(VnameExpression ast, Void arg) {
+		ast.V.visit(this);
+		return ast;
+	}
+
+	// Simplification
+
+	private static boolean isCommutative(Declaration operator) {
+		return operator == StdEnvironment.addDecl || operator == StdEnvironment.multiplyDecl
+				|| operator == StdEnvironment.equalDecl || operator == StdEnvironment.unequalDecl
+				|| operator == StdEnvironment.andDecl || operator == StdEnvironment.orDecl;
+	}
+
+	// Whether x op value is x. A Boolean is 1 if true and 0 if false.
+	private static boolean isIdentity(Declaration operator, int value) {
+		if (operator == StdEnvironment.addDecl || operator == StdEnvironment.subtractDecl
+				|| operator == StdEnvironment.orDecl) {
+			return value == 0;
+		}
+		return (operator == StdEnvironment.multiplyDecl || operator == StdEnvironment.divideDecl
+				|| operator == StdEnvironment.andDecl) && value == 1;
+	}
+
+	// Whether x op value is the same whatever x is.
+	private static boolean isAnnihilator(Declaration operator, int value) {
+		if (operator == StdEnvironment.multiplyDecl || operator == StdEnvironment.andDecl) {
+			return value == 0;
+		}
+		return (operator == StdEnvironment.moduloDecl || operator == StdEnvironment.orDecl) && value == 1;
+	}
+
+	// Whether both expressions read the same variable or constant.
+	private static boolean isSameVariable(Expression e1, Expression e2) {
+		return e1 instanceof VnameExpression name1 && name1.V instanceof SimpleVname simple1
+				&& e2 instanceof VnameExpression name2 && name2.V instanceof SimpleVname simple2
+				&& simple1.I.decl != null && simple1.I.decl == simple2.I.decl;
+	}
+
+	// Whether the expression reads a variable or constant with a single LOAD,
+	// so that reading it twice costs no more than loading a literal.
+	private static boolean isLoaded(Expression expression) {
+		if (!(expression instanceof VnameExpression name && name.V instanceof SimpleVname simple)) {
+			return false;
+		}
+		var declaration = simple.I.decl;
+		return declaration instanceof VarDeclaration || declaration instanceof ConstDeclaration
+				|| declaration instanceof ConstFormalParameter;
+	}
+
+	// Returns x + x, for an x that is loaded.
+	private static Expression sum(Expression x, SourcePosition position) {
+		var operator = new Operator("+", position);
+		operator.decl = StdEnvironment.addDecl;
+		var sum = new BinaryExpression(x, operator, new Copier().copy(x), position);
+		sum.type = StdEnvironment.integerType;
+		return sum;
+	}
+
+	// Value-or-variable names
+
+	@Override
+	public Void visitDotVname(DotVname ast, Void arg) {
+		ast.V.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitSimpleVname(SimpleVname ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitSubscriptVname(SubscriptVname ast, Void arg) {
+		ast.V.visit(this);
+		ast.E = ast.E.visit(this);
+		return null;
+	}
+
+	// Actual parameters
+
+	@Override
+	public Void visitConstActualParameter(ConstActualParameter ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitFuncActualParameter(FuncActualParameter ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitProcActualParameter(ProcActualParameter ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitVarActualParameter(VarActualParameter ast, Void arg) {
+		ast.V.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitEmptyActualParameterSequence(EmptyActualParameterSequence ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitMultipleActualParameterSequence(MultipleActualParameterSequence ast, Void arg) {
+		ast.AP.visit(this);
+		ast.APS.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitSingleActualParameterSequence(SingleActualParameterSequence ast, Void arg) {
+		ast.AP.visit(this);
+		return null;
+	}
+
+	// Array Aggregates
+
+	@Override
+	public Void visitMultipleArrayAggregate(MultipleArrayAggregate ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		ast.AA.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitSingleArrayAggregate(SingleArrayAggregate ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		return null;
+	}
+
+	// Record Aggregates
+
+	@Override
+	public Void visitMultipleRecordAggregate(MultipleRecordAggregate ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		ast.RA.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitSingleRecordAggregate(SingleRecordAggregate ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		return null;
+	}
+
+	// Declarations
+
+	@Override
+	public Void visitBinaryOperatorDeclaration(BinaryOperatorDeclaration ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitConstDeclaration(ConstDeclaration ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitFuncDeclaration(FuncDeclaration ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitProcDeclaration(ProcDeclaration ast, Void arg) {
+		ast.C = ast.C.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitSequentialDeclaration(SequentialDeclaration ast, Void arg) {
+		for (var declaration : ast.getDeclarations()) {
+			declaration.visit(this);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitTypeDeclaration(TypeDeclaration ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryOperatorDeclaration(UnaryOperatorDeclaration ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitVarDeclaration(VarDeclaration ast, Void arg) {
+		return null;
+	}
+
+	// Formal parameters
+
+	@Override
+	public Void visitConstFormalParameter(ConstFormalParameter ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitFuncFormalParameter(FuncFormalParameter ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitProcFormalParameter(ProcFormalParameter ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitVarFormalParameter(VarFormalParameter ast, Void arg) {
+		return null;
+	}
+}
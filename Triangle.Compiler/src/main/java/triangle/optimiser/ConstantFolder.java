@@ -404,8 +404,9 @@ public class ConstantFolder implements ActualParameterVisitor<Void, AbstractSynt
 
 	@Override
 	public AbstractSyntaxTree visitSequentialDeclaration(SequentialDeclaration ast, Void arg) {
-		ast.D1.visit(this);
-		ast.D2.visit(this);
+		for (var declaration : ast.getDeclarations()) {
+			declaration.visit(this);
+		}
 		return null;
 	}
 
@@ -479,8 +480,9 @@ public class ConstantFolder implements ActualParameterVisitor<Void, AbstractSynt
 
 	@Override
 	public AbstractSyntaxTree visitSequentialCommand(SequentialCommand ast, Void arg) {
-		ast.C1.visit(this);
-		ast.C2.visit(this);
+		for (var command : ast.getCommands()) {
+			command.visit(this);
+		}
 		return null;
 	}
 
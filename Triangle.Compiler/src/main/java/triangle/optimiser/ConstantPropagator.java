@@ -0,0 +1,619 @@
+/*
+ * @(#)ConstantPropagator.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.optimiser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import triangle.StdEnvironment;
+import triangle.abstractSyntaxTrees.Program;
+import triangle.abstractSyntaxTrees.actuals.ConstActualParameter;
+import triangle.abstractSyntaxTrees.actuals.EmptyActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.FuncActualParameter;
+import triangle.abstractSyntaxTrees.actuals.MultipleActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.ProcActualParameter;
+import triangle.abstractSyntaxTrees.actuals.SingleActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.VarActualParameter;
+import triangle.abstractSyntaxTrees.aggregates.MultipleArrayAggregate;
+import triangle.abstractSyntaxTrees.aggregates.MultipleRecordAggregate;
+import triangle.abstractSyntaxTrees.aggregates.SingleArrayAggregate;
+import triangle.abstractSyntaxTrees.aggregates.SingleRecordAggregate;
+import triangle.abstractSyntaxTrees.commands.AssignCommand;
+import triangle.abstractSyntaxTrees.commands.CallCommand;
+import triangle.abstractSyntaxTrees.commands.Command;
+import triangle.abstractSyntaxTrees.commands.DoubleAssignCommand;
+import triangle.abstractSyntaxTrees.commands.EmptyCommand;
+import triangle.abstractSyntaxTrees.commands.IfCommand;
+import triangle.abstractSyntaxTrees.commands.LetCommand;
+import triangle.abstractSyntaxTrees.commands.LoopWhileCommand;
+import triangle.abstractSyntaxTrees.commands.SequentialCommand;
+import triangle.abstractSyntaxTrees.commands.WhileCommand;
+import triangle.abstractSyntaxTrees.declarations.BinaryOperatorDeclaration;
+import triangle.abstractSyntaxTrees.declarations.ConstDeclaration;
+import triangle.abstractSyntaxTrees.declarations.Declaration;
+import triangle.abstractSyntaxTrees.declarations.FuncDeclaration;
+import triangle.abstractSyntaxTrees.declarations.ProcDeclaration;
+import triangle.abstractSyntaxTrees.declarations.SequentialDeclaration;
+import triangle.abstractSyntaxTrees.declarations.UnaryOperatorDeclaration;
+import triangle.abstractSyntaxTrees.declarations.VarDeclaration;
+import triangle.abstractSyntaxTrees.expressions.ArrayExpression;
+import triangle.abstractSyntaxTrees.expressions.BinaryExpression;
+import triangle.abstractSyntaxTrees.expressions.CallExpression;
+import triangle.abstractSyntaxTrees.expressions.CharacterExpression;
+import triangle.abstractSyntaxTrees.expressions.EmptyExpression;
+import triangle.abstractSyntaxTrees.expressions.Expression;
+import triangle.abstractSyntaxTrees.expressions.IfExpression;
+import triangle.abstractSyntaxTrees.expressions.IntegerExpression;
+import triangle.abstractSyntaxTrees.expressions.LetExpression;
+import triangle.abstractSyntaxTrees.expressions.RecordExpression;
+import triangle.abstractSyntaxTrees.expressions.UnaryExpression;
+import triangle.abstractSyntaxTrees.expressions.VnameExpression;
+import triangle.abstractSyntaxTrees.formals.ConstFormalParameter;
+import triangle.abstractSyntaxTrees.formals.FuncFormalParameter;
+import triangle.abstractSyntaxTrees.formals.ProcFormalParameter;
+import triangle.abstractSyntaxTrees.formals.VarFormalParameter;
+import triangle.abstractSyntaxTrees.types.TypeDeclaration;
+import triangle.abstractSyntaxTrees.visitors.ActualParameterSequenceVisitor;
+import triangle.abstractSyntaxTrees.visitors.ActualParameterVisitor;
+import triangle.abstractSyntaxTrees.visitors.ArrayAggregateVisitor;
+import triangle.abstractSyntaxTrees.visitors.CommandVisitor;
+import triangle.abstractSyntaxTrees.visitors.DeclarationVisitor;
+import triangle.abstractSyntaxTrees.visitors.ExpressionVisitor;
+import triangle.abstractSyntaxTrees.visitors.ProgramVisitor;
+import triangle.abstractSyntaxTrees.visitors.RecordAggregateVisitor;
+import triangle.abstractSyntaxTrees.visitors.VnameVisitor;
+import triangle.abstractSyntaxTrees.vnames.DotVname;
+import triangle.abstractSyntaxTrees.vnames.SimpleVname;
+import triangle.abstractSyntaxTrees.vnames.SubscriptVname;
+
+/**
+ * Constant propagation: replaces each Integer, Char or Boolean expression
+ * whose value is known at compile time by a literal, and each conditional
+ * whose condition is known by the branch it takes. It runs on a checked
+ * program, before it is encoded, so that the encoder emits neither the
+ * arithmetic nor the jumps.
+ *
+ * <p>
+ * Values are known from constant declarations and from assignments. The
+ * values of variables are carried forward through each routine body: an
+ * assignment of a known value to a variable makes its value known, an update
+ * makes it unknown, the arms of an if command keep what they agree on, and a
+ * loop forgets what it updates. Only variables that cannot be aliased are
+ * followed, so that every update to them is seen. See {@link KnownValues} for
+ * the values an expression may have.
+ * </p>
+ *
+ * <p>
+ * A variable that is assigned just once in the whole program, by a command
+ * that stands on its own in the body of the let command that declares it, and
+ * that nothing reads or calls before, is a constant from then on: its value is
+ * also known in the routines declared with it, as in
+ * </p>
+ *
+ * <pre>
+ * let var n: Integer; proc p() ~ putint(n * 2) in begin n := 5; p() end
+ * </pre>
+ *
+ * <p>
+ * A while command whose condition is false on entry, and a loop-while command
+ * whose condition is always false, go round no more than the first part of the
+ * loop, and are replaced by that.
+ * </p>
+ */
+public class ConstantPropagator implements ProgramVisitor<Void, Void>,
+		CommandVisitor<Map<Declaration, Integer>, Command>, ExpressionVisitor<Map<Declaration, Integer>, Expression>,
+		VnameVisitor<Map<Declaration, Integer>, Void>, ActualParameterVisitor<Map<Declaration, Integer>, Void>,
+		ActualParameterSequenceVisitor<Map<Declaration, Integer>, Void>,
+		ArrayAggregateVisitor<Map<Declaration, Integer>, Void>, RecordAggregateVisitor<Map<Declaration, Integer>, Void>,
+		DeclarationVisitor<Map<Declaration, Integer>, Void> {
+
+	private EffectAnalyser analyser;
+
+	// the variables assigned once, whose values are known wherever they are read,
+	// and the assignments that may fix them
+	private final Map<Declaration, Integer> fixed = new HashMap<>();
+	private final Set<AssignCommand> fixing = new HashSet<>();
+
+	// the routines declared by the declaration being visited, whose bodies are
+	// visited after the body of the let that declares them
+	private List<Declaration> routines = new ArrayList<>();
+
+	private int constantsPropagated = 0, branchesPruned = 0;
+
+	/**
+	 * @return the number of expressions replaced by literals
+	 */
+	public int getConstantsPropagated() {
+		return constantsPropagated;
+	}
+
+	/**
+	 * @return the number of conditionals and loops replaced by the branch they
+	 *         take
+	 */
+	public int getBranchesPruned() {
+		return branchesPruned;
+	}
+
+	@Override
+	public Void visitProgram(Program ast, Void arg) {
+		analyser = new EffectAnalyser(ast);
+		ast.C = ast.C.visit(this, new HashMap<>());
+		return null;
+	}
+
+	// Commands. Each is given the values of variables known before it, which
+	// it updates to those known after it, and gives the command to take its
+	// place, or itself.
+
+	@Override
+	public Command visitAssignCommand(AssignCommand ast, Map<Declaration, Integer> known) {
+		ast.V.visit(this, known);
+		ast.E = ast.E.visit(this, known);
+		var value = KnownValues.evaluate(ast.E, known);
+		forget(known, analyser.of(ast));
+		if (value != null && ast.V instanceof SimpleVname simple && simple.I.decl instanceof VarDeclaration variable
+				&& !analyser.isAliased(variable)) {
+			known.put(variable, value);
+			if (fixing.contains(ast)) {
+				fixed.put(variable, value);
+			}
+		}
+		return ast;
+	}
+
+	@Override
+	public Command visitDoubleAssignCommand(DoubleAssignCommand ast, Map<Declaration, Integer> known) {
+		ast.V.visit(this, known);
+		forget(known, analyser.of(ast));
+		return ast;
+	}
+
+	@Override
+	public Command visitCallCommand(CallCommand ast, Map<Declaration, Integer> known) {
+		ast.APS.visit(this, known);
+		forget(known, analyser.of(ast));
+		return ast;
+	}
+
+	@Override
+	public Command visitEmptyCommand(EmptyCommand ast, Map<Declaration, Integer> known) {
+		return ast;
+	}
+
+	@Override
+	public Command visitIfCommand(IfCommand ast, Map<Declaration, Integer> known) {
+		ast.E = ast.E.visit(this, known);
+		var condition = KnownValues.evaluate(ast.E, known);
+		if (condition != null) {
+			branchesPruned++;
+			return (condition != 0 ? ast.C1 : ast.C2).visit(this, known);
+		}
+
+		var knownAfterC1 = new HashMap<>(known);
+		var knownAfterC2 = new HashMap<>(known);
+		var c1 = ast.C1.visit(this, knownAfterC1);
+		var c2 = ast.C2.visit(this, knownAfterC2);
+		known.clear();
+		for (var entry : knownAfterC1.entrySet()) {
+			if (entry.getValue().equals(knownAfterC2.get(entry.getKey()))) {
+				known.put(entry.getKey(), entry.getValue());
+			}
+		}
+		if (c1 == ast.C1 && c2 == ast.C2) {
+			return ast;
+		}
+		return new IfCommand(ast.E, c1, c2, ast.getPosition());
+	}
+
+	@Override
+	public Command visitLetCommand(LetCommand ast, Map<Declaration, Integer> known) {
+		findFixing(ast);
+		var declared = declare(ast.D, known);
+		var c = ast.C.visit(this, known);
+		visitBodies(declared);
+		return c == ast.C ? ast : new LetCommand(ast.D, c, ast.getPosition());
+	}
+
+	@Override
+	public Command visitSequentialCommand(SequentialCommand ast, Map<Declaration, Integer> known) {
+		var commands = ast.getCommands();
+		var changed = false;
+		for (var i = 0; i < commands.size(); i++) {
+			var command = commands.get(i);
+			var replacement = command.visit(this, known);
+			if (replacement != command) {
+				commands.set(i, replacement);
+				changed = true;
+			}
+		}
+		return changed ? SequentialCommand.of(commands, ast.getPosition()) : ast;
+	}
+
+	@Override
+	public Command visitWhileCommand(WhileCommand ast, Map<Declaration, Integer> known) {
+		var condition = KnownValues.evaluate(ast.E, known);
+		if (condition != null && condition == 0) {
+			branchesPruned++;
+			return new EmptyCommand(ast.getPosition());
+		}
+
+		// what is known throughout the loop is what is known before it, less
+		// what the loop updates
+		forget(known, analyser.of(ast));
+		ast.E = ast.E.visit(this, known);
+		var body = ast.C.visit(this, new HashMap<>(known));
+		return body == ast.C ? ast : new WhileCommand(ast.E, body, ast.getPosition());
+	}
+
+	@Override
+	public Command visitLoopWhileCommand(LoopWhileCommand ast, Map<Declaration, Integer> known) {
+		var inLoop = new HashMap<>(known);
+		forget(inLoop, analyser.of(ast));
+		var condition = KnownValues.evaluate(ast.E, inLoop);
+		if (condition != null && condition == 0) {
+			// the first part runs once, from where the loop starts
+			branchesPruned++;
+			return ast.C1.visit(this, known);
+		}
+
+		forget(known, analyser.of(ast));
+		var c1 = ast.C1.visit(this, new HashMap<>(known));
+		ast.E = ast.E.visit(this, known);
+		var c2 = ast.C2.visit(this, new HashMap<>(known));
+		if (c1 == ast.C1 && c2 == ast.C2) {
+			return ast;
+		}
+		return new LoopWhileCommand(c1, ast.E, c2, ast.getPosition());
+	}
+
+	/**
+	 * Finds the assignments that stand on their own in the body of a let command,
+	 * to variables it declares that are assigned nowhere else, before anything
+	 * reads them or any routine is called. If such an assignment is of a known
+	 * value, the variable has that value wherever it is read.
+	 */
+	private void findFixing(LetCommand ast) {
+		var candidates = new HashSet<Declaration>();
+		var before = new Effects();
+		for (var declaration : declarations(ast.D)) {
+			if (declaration instanceof VarDeclaration variable && !analyser.isAliased(variable)
+					&& analyser.assignmentsTo(variable) == 1) {
+				candidates.add(variable);
+			} else if (declaration instanceof ConstDeclaration constant) {
+				before.add(analyser.of(constant.E));
+			}
+		}
+
+		var commands = ast.C instanceof SequentialCommand sequence ? sequence.getCommands() : List.of(ast.C);
+		for (var command : commands) {
+			if (candidates.isEmpty() || before.unknown || !before.calls.isEmpty()) {
+				return;
+			}
+			if (command instanceof AssignCommand assign && assign.V instanceof SimpleVname simple
+					&& candidates.remove(simple.I.decl) && !before.reads.contains(simple.I.decl)) {
+				fixing.add(assign);
+			}
+			before.add(analyser.of(command));
+		}
+	}
+
+	// Visits a declaration, leaving the bodies of the routines it declares
+	private List<Declaration> declare(Declaration declaration, Map<Declaration, Integer> known) {
+		var outer = routines;
+		routines = new ArrayList<>();
+		declaration.visit(this, known);
+		var declared = routines;
+		routines = outer;
+		return declared;
+	}
+
+	// Visits the bodies of routines, each of which starts out knowing only the
+	// fixed variables
+	private void visitBodies(List<Declaration> declared) {
+		for (var routine : declared) {
+			if (routine instanceof FuncDeclaration function) {
+				function.E = function.E.visit(this, new HashMap<>(fixed));
+			} else {
+				var procedure = (ProcDeclaration) routine;
+				procedure.C = procedure.C.visit(this, new HashMap<>(fixed));
+			}
+		}
+	}
+
+	private static List<Declaration> declarations(Declaration declaration) {
+		if (declaration instanceof SequentialDeclaration sequence) {
+			return sequence.getDeclarations();
+		}
+		return List.of(declaration);
+	}
+
+	private void forget(Map<Declaration, Integer> known, Effects effects) {
+		if (effects.unknown) {
+			// nothing but their own assignments updates the fixed variables
+			known.clear();
+			known.putAll(fixed);
+		} else {
+			known.keySet().removeAll(effects.writes);
+		}
+	}
+
+	// Expressions. Each is given the values known where it is evaluated, and
+	// gives the expression to take its place, or itself.
+
+	@Override
+	public Expression visitArrayExpression(ArrayExpression ast, Map<Declaration, Integer> known) {
+		ast.AA.visit(this, known);
+		return ast;
+	}
+
+	@Override
+	public Expression visitBinaryExpression(BinaryExpression ast, Map<Declaration, Integer> known) {
+		ast.E1 = ast.E1.visit(this, known);
+		ast.E2 = ast.E2.visit(this, known);
+		return propagate(ast, known);
+	}
+
+	@Override
+	public Expression visitCallExpression(CallExpression ast, Map<Declaration, Integer> known) {
+		ast.APS.visit(this, known);
+		return propagate(ast, known);
+	}
+
+	@Override
+	public Expression visitCharacterExpression(CharacterExpression ast, Map<Declaration, Integer> known) {
+		return ast;
+	}
+
+	@Override
+	public Expression visitEmptyExpression(EmptyExpression ast, Map<Declaration, Integer> known) {
+		return ast;
+	}
+
+	@Override
+	public Expression visitIfExpression(IfExpression ast, Map<Declaration, Integer> known) {
+		ast.E1 = ast.E1.visit(this, known);
+		var condition = KnownValues.evaluate(ast.E1, known);
+		if (condition != null) {
+			branchesPruned++;
+			return (condition != 0 ? ast.E2 : ast.E3).visit(this, known);
+		}
+		ast.E2 = ast.E2.visit(this, known);
+		ast.E3 = ast.E3.visit(this, known);
+		return propagate(ast, known);
+	}
+
+	@Override
+	public Expression visitIntegerExpression(IntegerExpression ast, Map<Declaration, Integer> known) {
+		return ast;
+	}
+
+	@Override
+	public Expression visitLetExpression(LetExpression ast, Map<Declaration, Integer> known) {
+		var declared = declare(ast.D, known);
+		ast.E = ast.E.visit(this, known);
+		visitBodies(declared);
+		return ast;
+	}
+
+	@Override
+	public Expression visitRecordExpression(RecordExpression ast, Map<Declaration, Integer> known) {
+		ast.RA.visit(this, known);
+		return ast;
+	}
+
+	@Override
+	public Expression visitUnaryExpression(UnaryExpression ast, Map<Declaration, Integer> known) {
+		ast.E = ast.E.visit(this, known);
+		return propagate(ast, known);
+	}
+
+	@Override
+	public Expression visitVnameExpression(VnameExpression ast, Map<Declaration, Integer> known) {
+		ast.V.visit(this, known);
+		if (ast.V instanceof SimpleVname simple
+				&& (simple.I.decl == StdEnvironment.trueDecl || simple.I.decl == StdEnvironment.falseDecl)) {
+			return ast;
+		}
+		return propagate(ast, known);
+	}
+
+	// Replaces an expression by a literal, if its value is known
+	private Expression propagate(Expression expression, Map<Declaration, Integer> known) {
+		var value = KnownValues.evaluate(expression, known);
+		if (value == null) {
+			return expression;
+		}
+
+		var literal = KnownValues.literal(expression, value);
+		if (literal == null) {
+			return expression;
+		}
+		constantsPropagated++;
+		return literal;
+	}
+
+	// Value-or-variable names. Only the indices in them can be replaced.
+
+	@Override
+	public Void visitDotVname(DotVname ast, Map<Declaration, Integer> known) {
+		ast.V.visit(this, known);
+		return null;
+	}
+
+	@Override
+	public Void visitSimpleVname(SimpleVname ast, Map<Declaration, Integer> known) {
+		return null;
+	}
+
+	@Override
+	public Void visitSubscriptVname(SubscriptVname ast, Map<Declaration, Integer> known) {
+		ast.V.visit(this, known);
+		ast.E = ast.E.visit(this, known);
+		return null;
+	}
+
+	// Actual parameters
+
+	@Override
+	public Void visitConstActualParameter(ConstActualParameter ast, Map<Declaration, Integer> known) {
+		ast.E = ast.E.visit(this, known);
+		return null;
+	}
+
+	@Override
+	public Void visitFuncActualParameter(FuncActualParameter ast, Map<Declaration, Integer> known) {
+		return null;
+	}
+
+	@Override
+	public Void visitProcActualParameter(ProcActualParameter ast, Map<Declaration, Integer> known) {
+		return null;
+	}
+
+	@Override
+	public Void visitVarActualParameter(VarActualParameter ast, Map<Declaration, Integer> known) {
+		ast.V.visit(this, known);
+		return null;
+	}
+
+	@Override
+	public Void visitEmptyActualParameterSequence(EmptyActualParameterSequence ast,
+			Map<Declaration, Integer> known) {
+		return null;
+	}
+
+	@Override
+	public Void visitMultipleActualParameterSequence(MultipleActualParameterSequence ast,
+			Map<Declaration, Integer> known) {
+		ast.AP.visit(this, known);
+		ast.APS.visit(this, known);
+		return null;
+	}
+
+	@Override
+	public Void visitSingleActualParameterSequence(SingleActualParameterSequence ast,
+			Map<Declaration, Integer> known) {
+		ast.AP.visit(this, known);
+		return null;
+	}
+
+	// Aggregates
+
+	@Override
+	public Void visitMultipleArrayAggregate(MultipleArrayAggregate ast, Map<Declaration, Integer> known) {
+		ast.E = ast.E.visit(this, known);
+		ast.AA.visit(this, known);
+		return null;
+	}
+
+	@Override
+	public Void visitSingleArrayAggregate(SingleArrayAggregate ast, Map<Declaration, Integer> known) {
+		ast.E = ast.E.visit(this, known);
+		return null;
+	}
+
+	@Override
+	public Void visitMultipleRecordAggregate(MultipleRecordAggregate ast, Map<Declaration, Integer> known) {
+		ast.E = ast.E.visit(this, known);
+		ast.RA.visit(this, known);
+		return null;
+	}
+
+	@Override
+	public Void visitSingleRecordAggregate(SingleRecordAggregate ast, Map<Declaration, Integer> known) {
+		ast.E = ast.E.visit(this, known);
+		return null;
+	}
+
+	// Declarations. A constant is given the value of its expression where it is
+	// declared; the bodies of routines are left until the variables the let
+	// body fixes are known.
+
+	@Override
+	public Void visitBinaryOperatorDeclaration(BinaryOperatorDeclaration ast, Map<Declaration, Integer> known) {
+		return null;
+	}
+
+	@Override
+	public Void visitConstDeclaration(ConstDeclaration ast, Map<Declaration, Integer> known) {
+		ast.E = ast.E.visit(this, known);
+		return null;
+	}
+
+	@Override
+	public Void visitFuncDeclaration(FuncDeclaration ast, Map<Declaration, Integer> known) {
+		routines.add(ast);
+		return null;
+	}
+
+	@Override
+	public Void visitProcDeclaration(ProcDeclaration ast, Map<Declaration, Integer> known) {
+		routines.add(ast);
+		return null;
+	}
+
+	@Override
+	public Void visitSequentialDeclaration(SequentialDeclaration ast, Map<Declaration, Integer> known) {
+		for (var declaration : ast.getDeclarations()) {
+			declaration.visit(this, known);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitTypeDeclaration(TypeDeclaration ast, Map<Declaration, Integer> known) {
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryOperatorDeclaration(UnaryOperatorDeclaration ast, Map<Declaration, Integer> known) {
+		return null;
+	}
+
+	@Override
+	public Void visitVarDeclaration(VarDeclaration ast, Map<Declaration, Integer> known) {
+		return null;
+	}
+
+	// Formal parameters
+	@Override
+	public Void visitConstFormalParameter(ConstFormalParameter ast, Map<Declaration, Integer> known) {
+		return null;
+	}
+
+	@Override
+	public Void visitFuncFormalParameter(FuncFormalParameter ast, Map<Declaration, Integer> known) {
+		return null;
+	}
+
+	@Override
+	public Void visitProcFormalParameter(ProcFormalParameter ast, Map<Declaration, Integer> known) {
+		return null;
+	}
+
+	@Override
+	public Void visitVarFormalParameter(VarFormalParameter ast, Map<Declaration, Integer> known) {
+		return null;
+	}
+}
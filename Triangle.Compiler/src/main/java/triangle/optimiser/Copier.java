@@ -0,0 +1,481 @@
+/*
+ * @(#)Copier.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.optimiser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import triangle.abstractSyntaxTrees.actuals.ActualParameter;
+import triangle.abstractSyntaxTrees.actuals.ActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.ConstActualParameter;
+import triangle.abstractSyntaxTrees.actuals.EmptyActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.FuncActualParameter;
+import triangle.abstractSyntaxTrees.actuals.MultipleActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.ProcActualParameter;
+import triangle.abstractSyntaxTrees.actuals.SingleActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.VarActualParameter;
+import triangle.abstractSyntaxTrees.aggregates.ArrayAggregate;
+import triangle.abstractSyntaxTrees.aggregates.MultipleArrayAggregate;
+import triangle.abstractSyntaxTrees.aggregates.MultipleRecordAggregate;
+import triangle.abstractSyntaxTrees.aggregates.RecordAggregate;
+import triangle.abstractSyntaxTrees.aggregates.SingleArrayAggregate;
+import triangle.abstractSyntaxTrees.aggregates.SingleRecordAggregate;
+import triangle.abstractSyntaxTrees.commands.AssignCommand;
+import triangle.abstractSyntaxTrees.commands.CallCommand;
+import triangle.abstractSyntaxTrees.commands.Command;
+import triangle.abstractSyntaxTrees.commands.DoubleAssignCommand;
+import triangle.abstractSyntaxTrees.commands.EmptyCommand;
+import triangle.abstractSyntaxTrees.commands.IfCommand;
+import triangle.abstractSyntaxTrees.commands.LetCommand;
+import triangle.abstractSyntaxTrees.commands.LoopWhileCommand;
+import triangle.abstractSyntaxTrees.commands.SequentialCommand;
+import triangle.abstractSyntaxTrees.commands.WhileCommand;
+import triangle.abstractSyntaxTrees.declarations.BinaryOperatorDeclaration;
+import triangle.abstractSyntaxTrees.declarations.ConstDeclaration;
+import triangle.abstractSyntaxTrees.declarations.Declaration;
+import triangle.abstractSyntaxTrees.declarations.FuncDeclaration;
+import triangle.abstractSyntaxTrees.declarations.ProcDeclaration;
+import triangle.abstractSyntaxTrees.declarations.SequentialDeclaration;
+import triangle.abstractSyntaxTrees.declarations.UnaryOperatorDeclaration;
+import triangle.abstractSyntaxTrees.declarations.VarDeclaration;
+import triangle.abstractSyntaxTrees.expressions.ArrayExpression;
+import triangle.abstractSyntaxTrees.expressions.BinaryExpression;
+import triangle.abstractSyntaxTrees.expressions.CallExpression;
+import triangle.abstractSyntaxTrees.expressions.CharacterExpression;
+import triangle.abstractSyntaxTrees.expressions.EmptyExpression;
+import triangle.abstractSyntaxTrees.expressions.Expression;
+import triangle.abstractSyntaxTrees.expressions.IfExpression;
+import triangle.abstractSyntaxTrees.expressions.IntegerExpression;
+import triangle.abstractSyntaxTrees.expressions.LetExpression;
+import triangle.abstractSyntaxTrees.expressions.RecordExpression;
+import triangle.abstractSyntaxTrees.expressions.UnaryExpression;
+import triangle.abstractSyntaxTrees.expressions.VnameExpression;
+import triangle.abstractSyntaxTrees.formals.ConstFormalParameter;
+import triangle.abstractSyntaxTrees.formals.FuncFormalParameter;
+import triangle.abstractSyntaxTrees.formals.ProcFormalParameter;
+import triangle.abstractSyntaxTrees.formals.VarFormalParameter;
+import triangle.abstractSyntaxTrees.terminals.Identifier;
+import triangle.abstractSyntaxTrees.types.TypeDeclaration;
+import triangle.abstractSyntaxTrees.visitors.ActualParameterSequenceVisitor;
+import triangle.abstractSyntaxTrees.visitors.ActualParameterVisitor;
+import triangle.abstractSyntaxTrees.visitors.ArrayAggregateVisitor;
+import triangle.abstractSyntaxTrees.visitors.CommandVisitor;
+import triangle.abstractSyntaxTrees.visitors.DeclarationVisitor;
+import triangle.abstractSyntaxTrees.visitors.ExpressionVisitor;
+import triangle.abstractSyntaxTrees.visitors.RecordAggregateVisitor;
+import triangle.abstractSyntaxTrees.visitors.VnameVisitor;
+import triangle.abstractSyntaxTrees.vnames.DotVname;
+import triangle.abstractSyntaxTrees.vnames.SimpleVname;
+import triangle.abstractSyntaxTrees.vnames.SubscriptVname;
+import triangle.abstractSyntaxTrees.vnames.Vname;
+
+/**
+ * Copies checked commands and expressions, keeping the types and the links to
+ * declarations that the checker made, so that a copy may be put elsewhere in
+ * the tree and encoded on its own.
+ *
+ * <p>
+ * Operators, literals, and identifiers naming anything declared outside the
+ * phrase are shared, as no later pass changes them. Each constant, variable
+ * and type the phrase declares is copied too, and the copy is named by the
+ * names in the copied phrase, as the encoder keeps the address of each in its
+ * declaration. A phrase that declares a routine cannot be copied, as its body
+ * would be encoded twice.
+ * </p>
+ *
+ * <p>
+ * A copier may also be given declarations to rename, and var parameters to
+ * substitute: each name of a substituted declaration is replaced by a copy of
+ * the given value-or-variable name.
+ * </p>
+ */
+final class Copier implements CommandVisitor<Void, Command>, ExpressionVisitor<Void, Expression>,
+		VnameVisitor<Void, Vname>, ActualParameterVisitor<Void, ActualParameter>,
+		ActualParameterSequenceVisitor<Void, ActualParameterSequence>, ArrayAggregateVisitor<Void, ArrayAggregate>,
+		RecordAggregateVisitor<Void, RecordAggregate>, DeclarationVisitor<Void, Declaration> {
+
+	private final Map<Declaration, Declaration> renamed;
+	private final Map<Declaration, Vname> substituted;
+
+	// the number of commands, expressions and names copied
+	private int size = 0;
+
+	Copier() {
+		this(new HashMap<>(), Map.of());
+	}
+
+	/**
+	 * @param renamed     the declarations whose names are to name another
+	 *                    declaration in the copy, which the copier adds to
+	 * @param substituted the declarations whose names are to be replaced by
+	 *                    another name in the copy
+	 */
+	Copier(Map<Declaration, Declaration> renamed, Map<Declaration, Vname> substituted) {
+		this.renamed = renamed;
+		this.substituted = substituted;
+	}
+
+	/**
+	 * @return a copy of the expression, or null if it cannot be copied
+	 */
+	Expression copy(Expression expression) {
+		try {
+			return expression.visit(this);
+		} catch (Uncopyable e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return a copy of the command, or null if it cannot be copied
+	 */
+	Command copy(Command command) {
+		try {
+			return command.visit(this);
+		} catch (Uncopyable e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the number of commands, expressions and names copied so far
+	 */
+	int getSize() {
+		return size;
+	}
+
+	// thrown when the phrase being copied declares a routine
+	private static final class Uncopyable extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		Uncopyable() {
+			super(null, null, false, false);
+		}
+	}
+
+	// Commands
+
+	@Override
+	public Command visitAssignCommand(AssignCommand ast, Void arg) {
+		size++;
+		return new AssignCommand(ast.V.visit(this), ast.E.visit(this), ast.getPosition());
+	}
+
+	@Override
+	public Command visitDoubleAssignCommand(DoubleAssignCommand ast, Void arg) {
+		size++;
+		return new DoubleAssignCommand(ast.V.visit(this), ast.getPosition());
+	}
+
+	@Override
+	public Command visitCallCommand(CallCommand ast, Void arg) {
+		size++;
+		return new CallCommand(ast.I, ast.APS.visit(this, null), ast.getPosition());
+	}
+
+	@Override
+	public Command visitEmptyCommand(EmptyCommand ast, Void arg) {
+		return new EmptyCommand(ast.getPosition());
+	}
+
+	@Override
+	public Command visitIfCommand(IfCommand ast, Void arg) {
+		size++;
+		return new IfCommand(ast.E.visit(this), ast.C1.visit(this), ast.C2.visit(this), ast.getPosition());
+	}
+
+	@Override
+	public Command visitLetCommand(LetCommand ast, Void arg) {
+		size++;
+		return new LetCommand(ast.D.visit(this), ast.C.visit(this), ast.getPosition());
+	}
+
+	@Override
+	public Command visitSequentialCommand(SequentialCommand ast, Void arg) {
+		var commands = ast.getCommands();
+		commands.replaceAll(command -> command.visit(this));
+		return SequentialCommand.of(commands, ast.getPosition());
+	}
+
+	@Override
+	public Command visitWhileCommand(WhileCommand ast, Void arg) {
+		size++;
+		return new WhileCommand(ast.E.visit(this), ast.C.visit(this), ast.getPosition());
+	}
+
+	@Override
+	public Command visitLoopWhileCommand(LoopWhileCommand ast, Void arg) {
+		size++;
+		return new LoopWhileCommand(ast.C1.visit(this), ast.E.visit(this), ast.C2.visit(this), ast.getPosition());
+	}
+
+	// Expressions
+
+	@Override
+	public Expression visitArrayExpression(ArrayExpression ast, Void arg) {
+		return typed(new ArrayExpression(ast.AA.visit(this), ast.getPosition()), ast);
+	}
+
+	@Override
+	public Expression visitBinaryExpression(BinaryExpression ast, Void arg) {
+		return typed(new BinaryExpression(ast.E1.visit(this), ast.O, ast.E2.visit(this), ast.getPosition()), ast);
+	}
+
+	@Override
+	public Expression visitCallExpression(CallExpression ast, Void arg) {
+		return typed(new CallExpression(ast.I, ast.APS.visit(this, null), ast.getPosition()), ast);
+	}
+
+	@Override
+	public Expression visitCharacterExpression(CharacterExpression ast, Void arg) {
+		return typed(new CharacterExpression(ast.CL, ast.getPosition()), ast);
+	}
+
+	@Override
+	public Expression visitEmptyExpression(EmptyExpression ast, Void arg) {
+		return typed(new EmptyExpression(ast.getPosition()), ast);
+	}
+
+	@Override
+	public Expression visitIfExpression(IfExpression ast, Void arg) {
+		return typed(new IfExpression(ast.E1.visit(this), ast.E2.visit(this), ast.E3.visit(this), ast.getPosition()),
+				ast);
+	}
+
+	@Override
+	public Expression visitIntegerExpression(IntegerExpression ast, Void arg) {
+		return typed(new IntegerExpression(ast.IL, ast.getPosition()), ast);
+	}
+
+	@Override
+	public Expression visitLetExpression(LetExpression ast, Void arg) {
+		return typed(new LetExpression(ast.D.visit(this), ast.E.visit(this), ast.getPosition()), ast);
+	}
+
+	@Override
+	public Expression visitRecordExpression(RecordExpression ast, Void arg) {
+		return typed(new RecordExpression(ast.RA.visit(this), ast.getPosition()), ast);
+	}
+
+	@Override
+	public Expression visitUnaryExpression(UnaryExpression ast, Void arg) {
+		return typed(new UnaryExpression(ast.O, ast.E.visit(this), ast.getPosition()), ast);
+	}
+
+	@Override
+	public Expression visitVnameExpression(VnameExpression ast, Void arg) {
+		return typed(new VnameExpression(ast.V.visit(this), ast.getPosition()), ast);
+	}
+
+	private Expression typed(Expression copy, Expression original) {
+		size++;
+		copy.type = original.type;
+		return copy;
+	}
+
+	// Value-or-variable names
+
+	@Override
+	public Vname visitDotVname(DotVname ast, Void arg) {
+		return typed(new DotVname(ast.V.visit(this), ast.I, ast.getPosition()), ast);
+	}
+
+	@Override
+	public Vname visitSimpleVname(SimpleVname ast, Void arg) {
+		var replacement = substituted.get(ast.I.decl);
+		if (replacement != null) {
+			// counted as the one name it replaces
+			var copied = size;
+			var copy = replacement.visit(this);
+			size = copied + 1;
+			return copy;
+		}
+		return typed(new SimpleVname(name(ast.I), ast.getPosition()), ast);
+	}
+
+	@Override
+	public Vname visitSubscriptVname(SubscriptVname ast, Void arg) {
+		return typed(new SubscriptVname(ast.V.visit(this), ast.E.visit(this), ast.getPosition()), ast);
+	}
+
+	private Vname typed(Vname copy, Vname original) {
+		size++;
+		copy.type = original.type;
+		copy.variable = original.variable;
+		return copy;
+	}
+
+	// The identifier to use in the copy for a use of a name.
+	private Identifier name(Identifier original) {
+		var declaration = renamed.get(original.decl);
+		if (declaration == null) {
+			return original;
+		}
+		var identifier = new Identifier(original.spelling, original.getPosition());
+		identifier.type = original.type;
+		identifier.decl = declaration;
+		return identifier;
+	}
+
+	// Actual parameters
+
+	@Override
+	public ActualParameter visitConstActualParameter(ConstActualParameter ast, Void arg) {
+		return new ConstActualParameter(ast.E.visit(this), ast.getPosition());
+	}
+
+	@Override
+	public ActualParameter visitFuncActualParameter(FuncActualParameter ast, Void arg) {
+		return new FuncActualParameter(ast.I, ast.getPosition());
+	}
+
+	@Override
+	public ActualParameter visitProcActualParameter(ProcActualParameter ast, Void arg) {
+		return new ProcActualParameter(ast.I, ast.getPosition());
+	}
+
+	@Override
+	public ActualParameter visitVarActualParameter(VarActualParameter ast, Void arg) {
+		return new VarActualParameter(ast.V.visit(this), ast.getPosition());
+	}
+
+	@Override
+	public ActualParameterSequence visitEmptyActualParameterSequence(EmptyActualParameterSequence ast, Void arg) {
+		return new EmptyActualParameterSequence(ast.getPosition());
+	}
+
+	@Override
+	public ActualParameterSequence visitMultipleActualParameterSequence(MultipleActualParameterSequence ast,
+			Void arg) {
+		return new MultipleActualParameterSequence(ast.AP.visit(this, null), ast.APS.visit(this, null),
+				ast.getPosition());
+	}
+
+	@Override
+	public ActualParameterSequence visitSingleActualParameterSequence(SingleActualParameterSequence ast, Void arg) {
+		return new SingleActualParameterSequence(ast.AP.visit(this, null), ast.getPosition());
+	}
+
+	// Aggregates
+
+	@Override
+	public ArrayAggregate visitMultipleArrayAggregate(MultipleArrayAggregate ast, Void arg) {
+		var copy = new MultipleArrayAggregate(ast.E.visit(this), ast.AA.visit(this), ast.getPosition());
+		copy.elemCount = ast.elemCount;
+		return copy;
+	}
+
+	@Override
+	public ArrayAggregate visitSingleArrayAggregate(SingleArrayAggregate ast, Void arg) {
+		var copy = new SingleArrayAggregate(ast.E.visit(this), ast.getPosition());
+		copy.elemCount = ast.elemCount;
+		return copy;
+	}
+
+	@Override
+	public RecordAggregate visitMultipleRecordAggregate(MultipleRecordAggregate ast, Void arg) {
+		var copy = new MultipleRecordAggregate(ast.I, ast.E.visit(this), ast.RA.visit(this), ast.getPosition());
+		copy.type = ast.type;
+		return copy;
+	}
+
+	@Override
+	public RecordAggregate visitSingleRecordAggregate(SingleRecordAggregate ast, Void arg) {
+		var copy = new SingleRecordAggregate(ast.I, ast.E.visit(this), ast.getPosition());
+		copy.type = ast.type;
+		return copy;
+	}
+
+	// Declarations. Each copy is entered before the next declaration is
+	// copied, as that may name it.
+
+	@Override
+	public Declaration visitBinaryOperatorDeclaration(BinaryOperatorDeclaration ast, Void arg) {
+		return ast;
+	}
+
+	@Override
+	public Declaration visitConstDeclaration(ConstDeclaration ast, Void arg) {
+		return declared(new ConstDeclaration(ast.I, ast.E.visit(this), ast.getPosition()), ast);
+	}
+
+	@Override
+	public Declaration visitFuncDeclaration(FuncDeclaration ast, Void arg) {
+		throw new Uncopyable();
+	}
+
+	@Override
+	public Declaration visitProcDeclaration(ProcDeclaration ast, Void arg) {
+		throw new Uncopyable();
+	}
+
+	@Override
+	public Declaration visitSequentialDeclaration(SequentialDeclaration ast, Void arg) {
+		var declarations = new ArrayList<Declaration>();
+		for (var declaration : ast.getDeclarations()) {
+			declarations.add(declaration.visit(this));
+		}
+		return SequentialDeclaration.of(declarations, ast.getPosition());
+	}
+
+	@Override
+	public Declaration visitTypeDeclaration(TypeDeclaration ast, Void arg) {
+		return declared(new TypeDeclaration(ast.I, ast.T, ast.getPosition()), ast);
+	}
+
+	@Override
+	public Declaration visitUnaryOperatorDeclaration(UnaryOperatorDeclaration ast, Void arg) {
+		return ast;
+	}
+
+	@Override
+	public Declaration visitVarDeclaration(VarDeclaration ast, Void arg) {
+		return declared(new VarDeclaration(ast.I, ast.T, ast.getPosition()), ast);
+	}
+
+	private Declaration declared(Declaration copy, Declaration original) {
+		size++;
+		renamed.put(original, copy);
+		return copy;
+	}
+
+	// Formal parameters, which are only copied as part of a routine
+
+	@Override
+	public Declaration visitConstFormalParameter(ConstFormalParameter ast, Void arg) {
+		throw new Uncopyable();
+	}
+
+	@Override
+	public Declaration visitFuncFormalParameter(FuncFormalParameter ast, Void arg) {
+		throw new Uncopyable();
+	}
+
+	@Override
+	public Declaration visitProcFormalParameter(ProcFormalParameter ast, Void arg) {
+		throw new Uncopyable();
+	}
+
+	@Override
+	public Declaration visitVarFormalParameter(VarFormalParameter ast, Void arg) {
+		throw new Uncopyable();
+	}
+}
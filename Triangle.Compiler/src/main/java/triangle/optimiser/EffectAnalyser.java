@@ -0,0 +1,552 @@
+/*
+ * @(#)EffectAnalyser.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.optimiser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import triangle.StdEnvironment;
+import triangle.abstractSyntaxTrees.Program;
+import triangle.abstractSyntaxTrees.actuals.ConstActualParameter;
+import triangle.abstractSyntaxTrees.actuals.EmptyActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.FuncActualParameter;
+import triangle.abstractSyntaxTrees.actuals.MultipleActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.ProcActualParameter;
+import triangle.abstractSyntaxTrees.actuals.SingleActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.VarActualParameter;
+import triangle.abstractSyntaxTrees.aggregates.MultipleArrayAggregate;
+import triangle.abstractSyntaxTrees.aggregates.MultipleRecordAggregate;
+import triangle.abstractSyntaxTrees.aggregates.SingleArrayAggregate;
+import triangle.abstractSyntaxTrees.aggregates.SingleRecordAggregate;
+import triangle.abstractSyntaxTrees.commands.AssignCommand;
+import triangle.abstractSyntaxTrees.commands.CallCommand;
+import triangle.abstractSyntaxTrees.commands.Command;
+import triangle.abstractSyntaxTrees.commands.DoubleAssignCommand;
+import triangle.abstractSyntaxTrees.commands.EmptyCommand;
+import triangle.abstractSyntaxTrees.commands.IfCommand;
+import triangle.abstractSyntaxTrees.commands.LetCommand;
+import triangle.abstractSyntaxTrees.commands.LoopWhileCommand;
+import triangle.abstractSyntaxTrees.commands.SequentialCommand;
+import triangle.abstractSyntaxTrees.commands.WhileCommand;
+import triangle.abstractSyntaxTrees.declarations.BinaryOperatorDeclaration;
+import triangle.abstractSyntaxTrees.declarations.ConstDeclaration;
+import triangle.abstractSyntaxTrees.declarations.Declaration;
+import triangle.abstractSyntaxTrees.declarations.FuncDeclaration;
+import triangle.abstractSyntaxTrees.declarations.ProcDeclaration;
+import triangle.abstractSyntaxTrees.declarations.SequentialDeclaration;
+import triangle.abstractSyntaxTrees.declarations.UnaryOperatorDeclaration;
+import triangle.abstractSyntaxTrees.declarations.VarDeclaration;
+import triangle.abstractSyntaxTrees.expressions.ArrayExpression;
+import triangle.abstractSyntaxTrees.expressions.BinaryExpression;
+import triangle.abstractSyntaxTrees.expressions.CallExpression;
+import triangle.abstractSyntaxTrees.expressions.CharacterExpression;
+import triangle.abstractSyntaxTrees.expressions.EmptyExpression;
+import triangle.abstractSyntaxTrees.expressions.Expression;
+import triangle.abstractSyntaxTrees.expressions.IfExpression;
+import triangle.abstractSyntaxTrees.expressions.IntegerExpression;
+import triangle.abstractSyntaxTrees.expressions.LetExpression;
+import triangle.abstractSyntaxTrees.expressions.RecordExpression;
+import triangle.abstractSyntaxTrees.expressions.UnaryExpression;
+import triangle.abstractSyntaxTrees.expressions.VnameExpression;
+import triangle.abstractSyntaxTrees.formals.ConstFormalParameter;
+import triangle.abstractSyntaxTrees.formals.FuncFormalParameter;
+import triangle.abstractSyntaxTrees.formals.ProcFormalParameter;
+import triangle.abstractSyntaxTrees.formals.VarFormalParameter;
+import triangle.abstractSyntaxTrees.types.TypeDeclaration;
+import triangle.abstractSyntaxTrees.visitors.ActualParameterSequenceVisitor;
+import triangle.abstractSyntaxTrees.visitors.ActualParameterVisitor;
+import triangle.abstractSyntaxTrees.visitors.ArrayAggregateVisitor;
+import triangle.abstractSyntaxTrees.visitors.CommandVisitor;
+import triangle.abstractSyntaxTrees.visitors.DeclarationVisitor;
+import triangle.abstractSyntaxTrees.visitors.ExpressionVisitor;
+import triangle.abstractSyntaxTrees.visitors.RecordAggregateVisitor;
+import triangle.abstractSyntaxTrees.visitors.VnameVisitor;
+import triangle.abstractSyntaxTrees.vnames.DotVname;
+import triangle.abstractSyntaxTrees.vnames.SimpleVname;
+import triangle.abstractSyntaxTrees.vnames.SubscriptVname;
+
+/**
+ * Finds the effects of commands and expressions in a checked program,
+ * including the effects of the routines they call.
+ *
+ * <p>
+ * The analyser is made for a whole program. It first finds the direct effects
+ * of the body of every routine the program declares, and every variable the
+ * program passes to a var parameter; the effects of a phrase are then its
+ * direct effects together with those of every routine it may call, directly
+ * or not. A var parameter may share its variable with any other var parameter
+ * or with any variable passed to one, so these are all <i>aliased</i>.
+ * </p>
+ */
+final class EffectAnalyser implements CommandVisitor<Effects, Void>, ExpressionVisitor<Effects, Void>,
+		VnameVisitor<Effects, Declaration>, ActualParameterVisitor<Effects, Void>,
+		ActualParameterSequenceVisitor<Effects, Void>, ArrayAggregateVisitor<Effects, Void>,
+		RecordAggregateVisitor<Effects, Void>, DeclarationVisitor<Effects, Void> {
+
+	// the effects of each routine body, not counting the routines it calls
+	private final Map<Declaration, Effects> bodies = new HashMap<>();
+
+	// the effects of each routine, with those of the routines it calls
+	private final Map<Declaration, Effects> routines = new HashMap<>();
+
+	private final Set<Declaration> passedByReference = new HashSet<>();
+
+	// the number of commands that update each variable, counted only while the
+	// whole program is first walked
+	private final Map<Declaration, Integer> assignments = new HashMap<>();
+	private boolean counting = true;
+
+	EffectAnalyser(Program program) {
+		program.C.visit(this, new Effects());
+		counting = false;
+	}
+
+	Effects of(Command command) {
+		var effects = new Effects();
+		command.visit(this, effects);
+		return close(effects);
+	}
+
+	Effects of(Expression expression) {
+		var effects = new Effects();
+		expression.visit(this, effects);
+		return close(effects);
+	}
+
+	/**
+	 * @return true if the variable may also be reached through another name,
+	 *         because it is a var parameter or is passed to one.
+	 */
+	boolean isAliased(Declaration declaration) {
+		return declaration instanceof VarFormalParameter || passedByReference.contains(declaration);
+	}
+
+	/**
+	 * @return the number of assignments in the program that update the variable,
+	 *         not counting updates through var parameters
+	 */
+	int assignmentsTo(Declaration variable) {
+		return assignments.getOrDefault(variable, 0);
+	}
+
+	/**
+	 * @return true if the routine may call itself, directly or not
+	 */
+	boolean isRecursive(Declaration routine) {
+		var called = routines.get(routine);
+		if (called == null) {
+			called = closeRoutine(routine);
+		}
+		return called.calls.contains(routine);
+	}
+
+	/**
+	 * @param expression the effects of an expression in a loop
+	 * @param loop       the effects of the whole loop
+	 * @return true if the expression has the same value every time the loop
+	 *         evaluates it, as it calls no routines, reads nothing the loop
+	 *         updates or declares, and does not read the input
+	 */
+	boolean isInvariant(Effects expression, Effects loop) {
+		if (expression.unknown || expression.readsInput || !expression.calls.isEmpty() || loop.unknown) {
+			return false;
+		}
+		var aliasedWritten = false;
+		for (var written : loop.writes) {
+			aliasedWritten |= isAliased(written);
+		}
+		for (var read : expression.reads) {
+			if (loop.writes.contains(read) || loop.declares.contains(read) || aliasedWritten && isAliased(read)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Adds the effects of every routine the phrase may call.
+	private Effects close(Effects effects) {
+		for (var routine : new ArrayList<>(effects.calls)) {
+			var called = routines.get(routine);
+			if (called == null) {
+				called = closeRoutine(routine);
+			}
+			effects.add(called);
+		}
+		return effects;
+	}
+
+	private Effects closeRoutine(Declaration routine) {
+		var effects = new Effects();
+		var reached = new HashSet<Declaration>();
+		var pending = new ArrayDeque<Declaration>();
+		reached.add(routine);
+		pending.push(routine);
+		while (!pending.isEmpty()) {
+			var body = bodies.get(pending.pop());
+			// the standard routines have no body to analyse
+			if (body != null) {
+				effects.add(body);
+				for (var callee : body.calls) {
+					if (reached.add(callee)) {
+						pending.push(callee);
+					}
+				}
+			}
+		}
+		effects.declares.clear();
+		routines.put(routine, effects);
+		return effects;
+	}
+
+	// Commands
+
+	@Override
+	public Void visitAssignCommand(AssignCommand ast, Effects effects) {
+		count(ast.V.visit(this, effects), effects);
+		ast.E.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitDoubleAssignCommand(DoubleAssignCommand ast, Effects effects) {
+		var variable = ast.V.visit(this, effects);
+		effects.reads.add(variable);
+		count(variable, effects);
+		return null;
+	}
+
+	private void count(Declaration variable, Effects effects) {
+		effects.writes.add(variable);
+		if (counting) {
+			assignments.merge(variable, 1, Integer::sum);
+		}
+	}
+
+	@Override
+	public Void visitCallCommand(CallCommand ast, Effects effects) {
+		var routine = ast.I.decl;
+		if (routine == StdEnvironment.getDecl || routine == StdEnvironment.getintDecl
+				|| routine == StdEnvironment.geteolDecl) {
+			effects.consumesInput = true;
+		} else if (routine instanceof ProcDeclaration procedure) {
+			effects.calls.add(procedure);
+		} else {
+			effects.unknown = true;
+		}
+		ast.APS.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitEmptyCommand(EmptyCommand ast, Effects effects) {
+		return null;
+	}
+
+	@Override
+	public Void visitIfCommand(IfCommand ast, Effects effects) {
+		ast.E.visit(this, effects);
+		ast.C1.visit(this, effects);
+		ast.C2.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitLetCommand(LetCommand ast, Effects effects) {
+		ast.D.visit(this, effects);
+		ast.C.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitSequentialCommand(SequentialCommand ast, Effects effects) {
+		for (var command : ast.getCommands()) {
+			command.visit(this, effects);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitWhileCommand(WhileCommand ast, Effects effects) {
+		ast.E.visit(this, effects);
+		ast.C.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitLoopWhileCommand(LoopWhileCommand ast, Effects effects) {
+		ast.C1.visit(this, effects);
+		ast.E.visit(this, effects);
+		ast.C2.visit(this, effects);
+		return null;
+	}
+
+	// Expressions
+
+	@Override
+	public Void visitArrayExpression(ArrayExpression ast, Effects effects) {
+		ast.AA.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpression(BinaryExpression ast, Effects effects) {
+		ast.E1.visit(this, effects);
+		ast.E2.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpression(CallExpression ast, Effects effects) {
+		var routine = ast.I.decl;
+		if (routine == StdEnvironment.eofDecl || routine == StdEnvironment.eolDecl) {
+			effects.readsInput = true;
+		} else if (routine == StdEnvironment.chrDecl || routine == StdEnvironment.ordDecl) {
+			// only change the type of their argument
+		} else if (routine instanceof FuncDeclaration function) {
+			effects.calls.add(function);
+		} else {
+			effects.unknown = true;
+		}
+		ast.APS.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitCharacterExpression(CharacterExpression ast, Effects effects) {
+		return null;
+	}
+
+	@Override
+	public Void visitEmptyExpression(EmptyExpression ast, Effects effects) {
+		return null;
+	}
+
+	@Override
+	public Void visitIfExpression(IfExpression ast, Effects effects) {
+		ast.E1.visit(this, effects);
+		ast.E2.visit(this, effects);
+		ast.E3.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitIntegerExpression(IntegerExpression ast, Effects effects) {
+		return null;
+	}
+
+	@Override
+	public Void visitLetExpression(LetExpression ast, Effects effects) {
+		ast.D.visit(this, effects);
+		ast.E.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitRecordExpression(RecordExpression ast, Effects effects) {
+		ast.RA.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpression(UnaryExpression ast, Effects effects) {
+		ast.E.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitVnameExpression(VnameExpression ast, Effects effects) {
+		effects.reads.add(ast.V.visit(this, effects));
+		return null;
+	}
+
+	// Value-or-variable names, each giving the declaration of its whole
+
+	@Override
+	public Declaration visitDotVname(DotVname ast, Effects effects) {
+		return ast.V.visit(this, effects);
+	}
+
+	@Override
+	public Declaration visitSimpleVname(SimpleVname ast, Effects effects) {
+		return (Declaration) ast.I.decl;
+	}
+
+	@Override
+	public Declaration visitSubscriptVname(SubscriptVname ast, Effects effects) {
+		ast.E.visit(this, effects);
+		return ast.V.visit(this, effects);
+	}
+
+	// Actual parameters
+
+	@Override
+	public Void visitConstActualParameter(ConstActualParameter ast, Effects effects) {
+		ast.E.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitFuncActualParameter(FuncActualParameter ast, Effects effects) {
+		return null;
+	}
+
+	@Override
+	public Void visitProcActualParameter(ProcActualParameter ast, Effects effects) {
+		return null;
+	}
+
+	@Override
+	public Void visitVarActualParameter(VarActualParameter ast, Effects effects) {
+		var variable = ast.V.visit(this, effects);
+		effects.reads.add(variable);
+		effects.writes.add(variable);
+		passedByReference.add(variable);
+		return null;
+	}
+
+	@Override
+	public Void visitEmptyActualParameterSequence(EmptyActualParameterSequence ast, Effects effects) {
+		return null;
+	}
+
+	@Override
+	public Void visitMultipleActualParameterSequence(MultipleActualParameterSequence ast, Effects effects) {
+		ast.AP.visit(this, effects);
+		ast.APS.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitSingleActualParameterSequence(SingleActualParameterSequence ast, Effects effects) {
+		ast.AP.visit(this, effects);
+		return null;
+	}
+
+	// Aggregates
+
+	@Override
+	public Void visitMultipleArrayAggregate(MultipleArrayAggregate ast, Effects effects) {
+		ast.E.visit(this, effects);
+		ast.AA.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitSingleArrayAggregate(SingleArrayAggregate ast, Effects effects) {
+		ast.E.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitMultipleRecordAggregate(MultipleRecordAggregate ast, Effects effects) {
+		ast.E.visit(this, effects);
+		ast.RA.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitSingleRecordAggregate(SingleRecordAggregate ast, Effects effects) {
+		ast.E.visit(this, effects);
+		return null;
+	}
+
+	// Declarations. A routine declaration has no effect where it is made; its
+	// body is analysed once, on its own.
+
+	@Override
+	public Void visitBinaryOperatorDeclaration(BinaryOperatorDeclaration ast, Effects effects) {
+		return null;
+	}
+
+	@Override
+	public Void visitConstDeclaration(ConstDeclaration ast, Effects effects) {
+		effects.declares.add(ast);
+		ast.E.visit(this, effects);
+		return null;
+	}
+
+	@Override
+	public Void visitFuncDeclaration(FuncDeclaration ast, Effects effects) {
+		if (!bodies.containsKey(ast)) {
+			var body = new Effects();
+			bodies.put(ast, body);
+			ast.E.visit(this, body);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitProcDeclaration(ProcDeclaration ast, Effects effects) {
+		if (!bodies.containsKey(ast)) {
+			var body = new Effects();
+			bodies.put(ast, body);
+			ast.C.visit(this, body);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitSequentialDeclaration(SequentialDeclaration ast, Effects effects) {
+		for (var declaration : ast.getDeclarations()) {
+			declaration.visit(this, effects);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitTypeDeclaration(TypeDeclaration ast, Effects effects) {
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryOperatorDeclaration(UnaryOperatorDeclaration ast, Effects effects) {
+		return null;
+	}
+
+	@Override
+	public Void visitVarDeclaration(VarDeclaration ast, Effects effects) {
+		effects.declares.add(ast);
+		return null;
+	}
+
+	// Formal parameters
+	@Override
+	public Void visitConstFormalParameter(ConstFormalParameter ast, Effects effects) {
+		return null;
+	}
+
+	@Override
+	public Void visitFuncFormalParameter(FuncFormalParameter ast, Effects effects) {
+		return null;
+	}
+
+	@Override
+	public Void visitProcFormalParameter(ProcFormalParameter ast, Effects effects) {
+		return null;
+	}
+
+	@Override
+	public Void visitVarFormalParameter(VarFormalParameter ast, Effects effects) {
+		return null;
+	}
+}
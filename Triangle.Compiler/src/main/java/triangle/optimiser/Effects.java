@@ -0,0 +1,72 @@
+/*
+ * @(#)Effects.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.optimiser;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import triangle.abstractSyntaxTrees.declarations.Declaration;
+
+/**
+ * What a phrase may do when it runs: the constants and variables it may read
+ * and the variables it may update, each named by its declaration, the routines
+ * it calls, and whether it may read or consume input.
+ *
+ * <p>
+ * A variable is named by the declaration of its whole: updating one element of
+ * an array updates the array. A variable passed to a var parameter is taken to
+ * be read and updated by the call.
+ * </p>
+ */
+final class Effects {
+
+	final Set<Declaration> reads = new HashSet<>(), writes = new HashSet<>();
+
+	// the constants and variables declared by the phrase itself
+	final Set<Declaration> declares = new HashSet<>();
+
+	// the routines called, whose own effects are added by closing over them
+	final Set<Declaration> calls = new HashSet<>();
+
+	// input is consumed by get, getint and geteol, and its state read by eof
+	// and eol
+	boolean consumesInput, readsInput;
+
+	// a routine parameter is called, which may do anything
+	boolean unknown;
+
+	void add(Effects other) {
+		reads.addAll(other.reads);
+		writes.addAll(other.writes);
+		declares.addAll(other.declares);
+		calls.addAll(other.calls);
+		consumesInput |= other.consumesInput;
+		readsInput |= other.readsInput;
+		unknown |= other.unknown;
+	}
+
+	boolean writesAny(Set<Declaration> declarations) {
+		for (var declaration : declarations) {
+			if (writes.contains(declaration)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,451 @@
+/*
+ * @(#)ExpressionHoister.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.optimiser;
+
+import java.util.List;
+import java.util.Map;
+
+import triangle.abstractSyntaxTrees.actuals.ConstActualParameter;
+import triangle.abstractSyntaxTrees.actuals.EmptyActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.FuncActualParameter;
+import triangle.abstractSyntaxTrees.actuals.MultipleActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.ProcActualParameter;
+import triangle.abstractSyntaxTrees.actuals.SingleActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.VarActualParameter;
+import triangle.abstractSyntaxTrees.aggregates.MultipleArrayAggregate;
+import triangle.abstractSyntaxTrees.aggregates.MultipleRecordAggregate;
+import triangle.abstractSyntaxTrees.aggregates.SingleArrayAggregate;
+import triangle.abstractSyntaxTrees.aggregates.SingleRecordAggregate;
+import triangle.abstractSyntaxTrees.commands.AssignCommand;
+import triangle.abstractSyntaxTrees.commands.CallCommand;
+import triangle.abstractSyntaxTrees.commands.DoubleAssignCommand;
+import triangle.abstractSyntaxTrees.commands.EmptyCommand;
+import triangle.abstractSyntaxTrees.commands.IfCommand;
+import triangle.abstractSyntaxTrees.commands.LetCommand;
+import triangle.abstractSyntaxTrees.commands.LoopWhileCommand;
+import triangle.abstractSyntaxTrees.commands.SequentialCommand;
+import triangle.abstractSyntaxTrees.commands.WhileCommand;
+import triangle.abstractSyntaxTrees.declarations.BinaryOperatorDeclaration;
+import triangle.abstractSyntaxTrees.declarations.ConstDeclaration;
+import triangle.abstractSyntaxTrees.declarations.Declaration;
+import triangle.abstractSyntaxTrees.declarations.FuncDeclaration;
+import triangle.abstractSyntaxTrees.declarations.ProcDeclaration;
+import triangle.abstractSyntaxTrees.declarations.SequentialDeclaration;
+import triangle.abstractSyntaxTrees.declarations.UnaryOperatorDeclaration;
+import triangle.abstractSyntaxTrees.declarations.VarDeclaration;
+import triangle.abstractSyntaxTrees.expressions.ArrayExpression;
+import triangle.abstractSyntaxTrees.expressions.BinaryExpression;
+import triangle.abstractSyntaxTrees.expressions.CallExpression;
+import triangle.abstractSyntaxTrees.expressions.CharacterExpression;
+import triangle.abstractSyntaxTrees.expressions.EmptyExpression;
+import triangle.abstractSyntaxTrees.expressions.Expression;
+import triangle.abstractSyntaxTrees.expressions.IfExpression;
+import triangle.abstractSyntaxTrees.expressions.IntegerExpression;
+import triangle.abstractSyntaxTrees.expressions.LetExpression;
+import triangle.abstractSyntaxTrees.expressions.RecordExpression;
+import triangle.abstractSyntaxTrees.expressions.UnaryExpression;
+import triangle.abstractSyntaxTrees.expressions.VnameExpression;
+import triangle.abstractSyntaxTrees.formals.ConstFormalParameter;
+import triangle.abstractSyntaxTrees.formals.FuncFormalParameter;
+import triangle.abstractSyntaxTrees.formals.ProcFormalParameter;
+import triangle.abstractSyntaxTrees.formals.VarFormalParameter;
+import triangle.abstractSyntaxTrees.terminals.Identifier;
+import triangle.abstractSyntaxTrees.types.BoolTypeDenoter;
+import triangle.abstractSyntaxTrees.types.CharTypeDenoter;
+import triangle.abstractSyntaxTrees.types.IntTypeDenoter;
+import triangle.abstractSyntaxTrees.types.TypeDeclaration;
+import triangle.abstractSyntaxTrees.visitors.ActualParameterSequenceVisitor;
+import triangle.abstractSyntaxTrees.visitors.ActualParameterVisitor;
+import triangle.abstractSyntaxTrees.visitors.ArrayAggregateVisitor;
+import triangle.abstractSyntaxTrees.visitors.CommandVisitor;
+import triangle.abstractSyntaxTrees.visitors.DeclarationVisitor;
+import triangle.abstractSyntaxTrees.visitors.ExpressionVisitor;
+import triangle.abstractSyntaxTrees.visitors.RecordAggregateVisitor;
+import triangle.abstractSyntaxTrees.visitors.VnameVisitor;
+import triangle.abstractSyntaxTrees.vnames.DotVname;
+import triangle.abstractSyntaxTrees.vnames.SimpleVname;
+import triangle.abstractSyntaxTrees.vnames.SubscriptVname;
+
+/**
+ * Replaces each largest loop-invariant expression in one loop by a constant,
+ * declared to be evaluated once before the loop.
+ *
+ * <p>
+ * Only expressions that operate on Integer, Char or Boolean values, and are
+ * sure not to fail, are replaced; being evaluated before the loop, even when
+ * the loop does not run, cannot then change what the program does. The
+ * bodies of routines declared in the loop are left alone, as they do not run
+ * in the loop's frame.
+ * </p>
+ */
+final class ExpressionHoister implements CommandVisitor<Void, Void>, ExpressionVisitor<Void, Void>,
+		VnameVisitor<Void, Void>, ActualParameterVisitor<Void, Void>, ActualParameterSequenceVisitor<Void, Void>,
+		ArrayAggregateVisitor<Void, Void>, RecordAggregateVisitor<Void, Void>, DeclarationVisitor<Void, Void> {
+
+	private final EffectAnalyser analyser;
+
+	private final Effects loop;
+
+	private final Map<Declaration, Integer> known;
+
+	private final List<ConstDeclaration> constants;
+
+	private final String prefix;
+
+	/**
+	 * @param loop      the effects of the loop
+	 * @param known     the values of variables known throughout the loop
+	 * @param constants where the declarations of the constants are added
+	 * @param prefix    the start of the names of the constants
+	 */
+	ExpressionHoister(EffectAnalyser analyser, Effects loop, Map<Declaration, Integer> known,
+			List<ConstDeclaration> constants, String prefix) {
+		this.analyser = analyser;
+		this.loop = loop;
+		this.known = known;
+		this.constants = constants;
+		this.prefix = prefix;
+	}
+
+	/**
+	 * @return the expression, or a constant in its place if it is hoisted;
+	 *         otherwise its own subexpressions may have been replaced
+	 */
+	Expression hoist(Expression expression) {
+		if (!isHoistable(expression)) {
+			expression.visit(this);
+			return expression;
+		}
+
+		var position = expression.getPosition();
+		var name = prefix + constants.size();
+		var constant = new ConstDeclaration(new Identifier(name, position), expression, position);
+		constants.add(constant);
+
+		var identifier = new Identifier(name, position);
+		identifier.decl = constant;
+		var vname = new SimpleVname(identifier, position);
+		vname.type = expression.type;
+		var replacement = new VnameExpression(vname, position);
+		replacement.type = expression.type;
+		return replacement;
+	}
+
+	private boolean isHoistable(Expression expression) {
+		if (!(expression instanceof BinaryExpression || expression instanceof UnaryExpression
+				|| expression instanceof IfExpression)) {
+			return false;
+		}
+		var type = expression.type;
+		if (!(type instanceof IntTypeDenoter || type instanceof CharTypeDenoter || type instanceof BoolTypeDenoter)) {
+			return false;
+		}
+		return analyser.isInvariant(analyser.of(expression), loop) && !KnownValues.mayFail(expression, known);
+	}
+
+	// Commands
+
+	@Override
+	public Void visitAssignCommand(AssignCommand ast, Void arg) {
+		ast.V.visit(this);
+		ast.E = hoist(ast.E);
+		return null;
+	}
+
+	@Override
+	public Void visitDoubleAssignCommand(DoubleAssignCommand ast, Void arg) {
+		ast.V.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitCallCommand(CallCommand ast, Void arg) {
+		ast.APS.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitEmptyCommand(EmptyCommand ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitIfCommand(IfCommand ast, Void arg) {
+		ast.E = hoist(ast.E);
+		ast.C1.visit(this);
+		ast.C2.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitLetCommand(LetCommand ast, Void arg) {
+		ast.D.visit(this);
+		ast.C.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitSequentialCommand(SequentialCommand ast, Void arg) {
+		for (var command : ast.getCommands()) {
+			command.visit(this);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitWhileCommand(WhileCommand ast, Void arg) {
+		ast.E = hoist(ast.E);
+		ast.C.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitLoopWhileCommand(LoopWhileCommand ast, Void arg) {
+		ast.C1.visit(this);
+		ast.E = hoist(ast.E);
+		ast.C2.visit(this);
+		return null;
+	}
+
+	// Expressions
+
+	@Override
+	public Void visitArrayExpression(ArrayExpression ast, Void arg) {
+		ast.AA.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpression(BinaryExpression ast, Void arg) {
+		ast.E1 = hoist(ast.E1);
+		ast.E2 = hoist(ast.E2);
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpression(CallExpression ast, Void arg) {
+		ast.APS.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitCharacterExpression(CharacterExpression ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitEmptyExpression(EmptyExpression ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitIfExpression(IfExpression ast, Void arg) {
+		ast.E1 = hoist(ast.E1);
+		ast.E2 = hoist(ast.E2);
+		ast.E3 = hoist(ast.E3);
+		return null;
+	}
+
+	@Override
+	public Void visitIntegerExpression(IntegerExpression ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitLetExpression(LetExpression ast, Void arg) {
+		ast.D.visit(this);
+		ast.E = hoist(ast.E);
+		return null;
+	}
+
+	@Override
+	public Void visitRecordExpression(RecordExpression ast, Void arg) {
+		ast.RA.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpression(UnaryExpression ast, Void arg) {
+		ast.E = hoist(ast.E);
+		return null;
+	}
+
+	@Override
+	public Void visitVnameExpression(VnameExpression ast, Void arg) {
+		ast.V.visit(this);
+		return null;
+	}
+
+	// Value-or-variable names
+
+	@Override
+	public Void visitDotVname(DotVname ast, Void arg) {
+		ast.V.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitSimpleVname(SimpleVname ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitSubscriptVname(SubscriptVname ast, Void arg) {
+		ast.V.visit(this);
+		ast.E = hoist(ast.E);
+		return null;
+	}
+
+	// Actual parameters
+
+	@Override
+	public Void visitConstActualParameter(ConstActualParameter ast, Void arg) {
+		ast.E = hoist(ast.E);
+		return null;
+	}
+
+	@Override
+	public Void visitFuncActualParameter(FuncActualParameter ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitProcActualParameter(ProcActualParameter ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitVarActualParameter(VarActualParameter ast, Void arg) {
+		ast.V.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitEmptyActualParameterSequence(EmptyActualParameterSequence ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitMultipleActualParameterSequence(MultipleActualParameterSequence ast, Void arg) {
+		ast.AP.visit(this);
+		ast.APS.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitSingleActualParameterSequence(SingleActualParameterSequence ast, Void arg) {
+		ast.AP.visit(this);
+		return null;
+	}
+
+	// Aggregates
+
+	@Override
+	public Void visitMultipleArrayAggregate(MultipleArrayAggregate ast, Void arg) {
+		ast.E = hoist(ast.E);
+		ast.AA.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitSingleArrayAggregate(SingleArrayAggregate ast, Void arg) {
+		ast.E = hoist(ast.E);
+		return null;
+	}
+
+	@Override
+	public Void visitMultipleRecordAggregate(MultipleRecordAggregate ast, Void arg) {
+		ast.E = hoist(ast.E);
+		ast.RA.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitSingleRecordAggregate(SingleRecordAggregate ast, Void arg) {
+		ast.E = hoist(ast.E);
+		return null;
+	}
+
+	// Declarations
+
+	@Override
+	public Void visitBinaryOperatorDeclaration(BinaryOperatorDeclaration ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitConstDeclaration(ConstDeclaration ast, Void arg) {
+		ast.E = hoist(ast.E);
+		return null;
+	}
+
+	@Override
+	public Void visitFuncDeclaration(FuncDeclaration ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitProcDeclaration(ProcDeclaration ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitSequentialDeclaration(SequentialDeclaration ast, Void arg) {
+		for (var declaration : ast.getDeclarations()) {
+			declaration.visit(this);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitTypeDeclaration(TypeDeclaration ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryOperatorDeclaration(UnaryOperatorDeclaration ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitVarDeclaration(VarDeclaration ast, Void arg) {
+		return null;
+	}
+
+	// Formal parameters
+	@Override
+	public Void visitConstFormalParameter(ConstFormalParameter ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitFuncFormalParameter(FuncFormalParameter ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitProcFormalParameter(ProcFormalParameter ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitVarFormalParameter(VarFormalParameter ast, Void arg) {
+		return null;
+	}
+}
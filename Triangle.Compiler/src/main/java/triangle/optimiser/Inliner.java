@@ -0,0 +1,719 @@
+/*
+ * @(#)Inliner.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.optimiser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import triangle.abstractSyntaxTrees.AbstractSyntaxTree;
+import triangle.abstractSyntaxTrees.Program;
+import triangle.abstractSyntaxTrees.actuals.ActualParameter;
+import triangle.abstractSyntaxTrees.actuals.ActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.ConstActualParameter;
+import triangle.abstractSyntaxTrees.actuals.EmptyActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.FuncActualParameter;
+import triangle.abstractSyntaxTrees.actuals.MultipleActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.ProcActualParameter;
+import triangle.abstractSyntaxTrees.actuals.SingleActualParameterSequence;
+import triangle.abstractSyntaxTrees.actuals.VarActualParameter;
+import triangle.abstractSyntaxTrees.aggregates.MultipleArrayAggregate;
+import triangle.abstractSyntaxTrees.aggregates.MultipleRecordAggregate;
+import triangle.abstractSyntaxTrees.aggregates.SingleArrayAggregate;
+import triangle.abstractSyntaxTrees.aggregates.SingleRecordAggregate;
+import triangle.abstractSyntaxTrees.commands.AssignCommand;
+import triangle.abstractSyntaxTrees.commands.CallCommand;
+import triangle.abstractSyntaxTrees.commands.Command;
+import triangle.abstractSyntaxTrees.commands.DoubleAssignCommand;
+import triangle.abstractSyntaxTrees.commands.EmptyCommand;
+import triangle.abstractSyntaxTrees.commands.IfCommand;
+import triangle.abstractSyntaxTrees.commands.LetCommand;
+import triangle.abstractSyntaxTrees.commands.LoopWhileCommand;
+import triangle.abstractSyntaxTrees.commands.SequentialCommand;
+import triangle.abstractSyntaxTrees.commands.WhileCommand;
+import triangle.abstractSyntaxTrees.declarations.BinaryOperatorDeclaration;
+import triangle.abstractSyntaxTrees.declarations.ConstDeclaration;
+import triangle.abstractSyntaxTrees.declarations.Declaration;
+import triangle.abstractSyntaxTrees.declarations.FuncDeclaration;
+import triangle.abstractSyntaxTrees.declarations.ProcDeclaration;
+import triangle.abstractSyntaxTrees.declarations.SequentialDeclaration;
+import triangle.abstractSyntaxTrees.declarations.UnaryOperatorDeclaration;
+import triangle.abstractSyntaxTrees.declarations.VarDeclaration;
+import triangle.abstractSyntaxTrees.expressions.ArrayExpression;
+import triangle.abstractSyntaxTrees.expressions.BinaryExpression;
+import triangle.abstractSyntaxTrees.expressions.CallExpression;
+import triangle.abstractSyntaxTrees.expressions.CharacterExpression;
+import triangle.abstractSyntaxTrees.expressions.EmptyExpression;
+import triangle.abstractSyntaxTrees.expressions.Expression;
+import triangle.abstractSyntaxTrees.expressions.IfExpression;
+import triangle.abstractSyntaxTrees.expressions.IntegerExpression;
+import triangle.abstractSyntaxTrees.expressions.LetExpression;
+import triangle.abstractSyntaxTrees.expressions.RecordExpression;
+import triangle.abstractSyntaxTrees.expressions.UnaryExpression;
+import triangle.abstractSyntaxTrees.expressions.VnameExpression;
+import triangle.abstractSyntaxTrees.formals.ConstFormalParameter;
+import triangle.abstractSyntaxTrees.formals.EmptyFormalParameterSequence;
+import triangle.abstractSyntaxTrees.formals.FormalParameter;
+import triangle.abstractSyntaxTrees.formals.FormalParameterSequence;
+import triangle.abstractSyntaxTrees.formals.FuncFormalParameter;
+import triangle.abstractSyntaxTrees.formals.MultipleFormalParameterSequence;
+import triangle.abstractSyntaxTrees.formals.ProcFormalParameter;
+import triangle.abstractSyntaxTrees.formals.SingleFormalParameterSequence;
+import triangle.abstractSyntaxTrees.formals.VarFormalParameter;
+import triangle.abstractSyntaxTrees.terminals.Identifier;
+import triangle.abstractSyntaxTrees.types.TypeDeclaration;
+import triangle.abstractSyntaxTrees.visitors.ActualParameterSequenceVisitor;
+import triangle.abstractSyntaxTrees.visitors.ActualParameterVisitor;
+import triangle.abstractSyntaxTrees.visitors.ArrayAggregateVisitor;
+import triangle.abstractSyntaxTrees.visitors.CommandVisitor;
+import triangle.abstractSyntaxTrees.visitors.DeclarationVisitor;
+import triangle.abstractSyntaxTrees.visitors.ExpressionVisitor;
+import triangle.abstractSyntaxTrees.visitors.ProgramVisitor;
+import triangle.abstractSyntaxTrees.visitors.RecordAggregateVisitor;
+import triangle.abstractSyntaxTrees.visitors.VnameVisitor;
+import triangle.abstractSyntaxTrees.vnames.DotVname;
+import triangle.abstractSyntaxTrees.vnames.SimpleVname;
+import triangle.abstractSyntaxTrees.vnames.SubscriptVname;
+import triangle.abstractSyntaxTrees.vnames.Vname;
+
+/**
+ * Inlining: replaces each call of a small routine by a copy of its body, so
+ * that the program no longer pays for the call, the return and the passing of
+ * the parameters, and so that the passes after this one see the body where it
+ * is used. It runs on a checked program, before it is encoded.
+ *
+ * <p>
+ * A routine is inlined if it does not call itself, directly or not, its
+ * parameters are all const or var parameters, it declares no routines, and a
+ * copy of its body has no more than a given number of commands, expressions
+ * and names. A call of a procedure becomes a let command, and a call of a
+ * function a let expression, that declares a constant for each const
+ * parameter, given the value of its actual parameter, and then does the body:
+ * </p>
+ *
+ * <pre>
+ * proc p(x: Integer, var y: Integer) ~ y := y + x  ...  p(i * 2, var a[3])
+ * let const x ~ i * 2 in a[3] := a[3] + x
+ * </pre>
+ *
+ * <p>
+ * Each name of a var parameter is replaced by the variable passed to it, and
+ * so is each name of a const parameter of a function that is given the value
+ * of a variable, as nothing can update the variable while the body of the
+ * function is evaluated. This names the same variable only if evaluating the
+ * name again cannot give another, so a call is not inlined if any index in
+ * its var actual parameters is not a constant.
+ * </p>
+ *
+ * <p>
+ * The calls in the body of a routine are inlined before those of the routine,
+ * so a copy of its body has them inlined too. A routine whose calls have all
+ * been inlined, and that is no longer named, is removed from the declaration
+ * that declared it.
+ * </p>
+ */
+public class Inliner implements ProgramVisitor<Void, Void>, CommandVisitor<Void, Command>,
+		ExpressionVisitor<Void, Expression>, VnameVisitor<Void, Void>, ActualParameterVisitor<Void, Void>,
+		ActualParameterSequenceVisitor<Void, Void>, ArrayAggregateVisitor<Void, Void>,
+		RecordAggregateVisitor<Void, Void>, DeclarationVisitor<Void, Void> {
+
+	/**
+	 * The number of commands, expressions and names a routine body may have and
+	 * still be inlined, unless another is given.
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 16;
+
+	private final int maximumSize;
+
+	private EffectAnalyser analyser;
+
+	// the routines named by the body of each routine whose calls may now be
+	// inlined, with the number of times each is named
+	private final Map<Declaration, Map<Declaration, Integer>> named = new HashMap<>();
+
+	// the routines named by the phrase being visited
+	private Map<Declaration, Integer> naming = new HashMap<>();
+
+	// the routines that have been inlined somewhere, and those that cannot be
+	private final Set<Declaration> inlined = new HashSet<>(), rejected = new HashSet<>();
+
+	private int callsInlined = 0, routinesRemoved = 0;
+
+	public Inliner() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * @param maximumSize the number of commands, expressions and names a routine
+	 *                    body may have and still be inlined
+	 */
+	public Inliner(int maximumSize) {
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * @return the number of calls replaced by the body of the routine called
+	 */
+	public int getCallsInlined() {
+		return callsInlined;
+	}
+
+	/**
+	 * @return the number of routines removed as nothing calls them any more
+	 */
+	public int getRoutinesRemoved() {
+		return routinesRemoved;
+	}
+
+	@Override
+	public Void visitProgram(Program ast, Void arg) {
+		analyser = new EffectAnalyser(ast);
+		ast.C = ast.C.visit(this);
+		return null;
+	}
+
+	// Commands. Each gives the command to take its place, or itself.
+
+	@Override
+	public Command visitAssignCommand(AssignCommand ast, Void arg) {
+		ast.V.visit(this);
+		ast.E = ast.E.visit(this);
+		return ast;
+	}
+
+	@Override
+	public Command visitDoubleAssignCommand(DoubleAssignCommand ast, Void arg) {
+		ast.V.visit(this);
+		return ast;
+	}
+
+	@Override
+	public Command visitCallCommand(CallCommand ast, Void arg) {
+		ast.APS.visit(this);
+		if (ast.I.decl instanceof ProcDeclaration procedure && isInlinable(procedure, procedure.FPS)) {
+			var renamed = new HashMap<Declaration, Declaration>();
+			var substituted = new HashMap<Declaration, Vname>();
+			var constants = bind(procedure.FPS, ast.APS, false, renamed, substituted);
+			if (constants != null) {
+				var copier = new Copier(renamed, substituted);
+				var body = copier.copy(procedure.C);
+				if (fits(procedure, body, copier)) {
+					var position = ast.getPosition();
+					return constants.isEmpty() ? body
+							: new LetCommand(SequentialDeclaration.of(constants, position), body, position);
+				}
+			}
+		}
+		name(ast.I);
+		return ast;
+	}
+
+	@Override
+	public Command visitEmptyCommand(EmptyCommand ast, Void arg) {
+		return ast;
+	}
+
+	@Override
+	public Command visitIfCommand(IfCommand ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		var c1 = ast.C1.visit(this);
+		var c2 = ast.C2.visit(this);
+		if (c1 == ast.C1 && c2 == ast.C2) {
+			return ast;
+		}
+		return new IfCommand(ast.E, c1, c2, ast.getPosition());
+	}
+
+	@Override
+	public Command visitLetCommand(LetCommand ast, Void arg) {
+		var outer = naming;
+		naming = new HashMap<>();
+		ast.D.visit(this);
+		var c = ast.C.visit(this);
+		var d = removeUnnamed(ast.D);
+		close(outer);
+		if (d == null) {
+			return c;
+		}
+		return d == ast.D && c == ast.C ? ast : new LetCommand(d, c, ast.getPosition());
+	}
+
+	@Override
+	public Command visitSequentialCommand(SequentialCommand ast, Void arg) {
+		var commands = ast.getCommands();
+		var changed = false;
+		for (var i = 0; i < commands.size(); i++) {
+			var command = commands.get(i);
+			var replacement = command.visit(this);
+			if (replacement != command) {
+				commands.set(i, replacement);
+				changed = true;
+			}
+		}
+		return changed ? SequentialCommand.of(commands, ast.getPosition()) : ast;
+	}
+
+	@Override
+	public Command visitWhileCommand(WhileCommand ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		var c = ast.C.visit(this);
+		return c == ast.C ? ast : new WhileCommand(ast.E, c, ast.getPosition());
+	}
+
+	@Override
+	public Command visitLoopWhileCommand(LoopWhileCommand ast, Void arg) {
+		var c1 = ast.C1.visit(this);
+		ast.E = ast.E.visit(this);
+		var c2 = ast.C2.visit(this);
+		if (c1 == ast.C1 && c2 == ast.C2) {
+			return ast;
+		}
+		return new LoopWhileCommand(c1, ast.E, c2, ast.getPosition());
+	}
+
+	// Expressions. Each gives the expression to take its place, or itself.
+
+	@Override
+	public Expression visitArrayExpression(ArrayExpression ast, Void arg) {
+		ast.AA.visit(this);
+		return ast;
+	}
+
+	@Override
+	public Expression visitBinaryExpression(BinaryExpression ast, Void arg) {
+		ast.E1 = ast.E1.visit(this);
+		ast.E2 = ast.E2.visit(this);
+		return ast;
+	}
+
+	@Override
+	public Expression visitCallExpression(CallExpression ast, Void arg) {
+		ast.APS.visit(this);
+		if (ast.I.decl instanceof FuncDeclaration function && isInlinable(function, function.FPS)) {
+			var renamed = new HashMap<Declaration, Declaration>();
+			var substituted = new HashMap<Declaration, Vname>();
+			var constants = bind(function.FPS, ast.APS, true, renamed, substituted);
+			if (constants != null) {
+				var copier = new Copier(renamed, substituted);
+				var body = copier.copy(function.E);
+				if (fits(function, body, copier)) {
+					if (constants.isEmpty()) {
+						return body;
+					}
+					var position = ast.getPosition();
+					var let = new LetExpression(SequentialDeclaration.of(constants, position), body, position);
+					let.type = ast.type;
+					return let;
+				}
+			}
+		}
+		name(ast.I);
+		return ast;
+	}
+
+	@Override
+	public Expression visitCharacterExpression(CharacterExpression ast, Void arg) {
+		return ast;
+	}
+
+	@Override
+	public Expression visitEmptyExpression(EmptyExpression ast, Void arg) {
+		return ast;
+	}
+
+	@Override
+	public Expression visitIfExpression(IfExpression ast, Void arg) {
+		ast.E1 = ast.E1.visit(this);
+		ast.E2 = ast.E2.visit(this);
+		ast.E3 = ast.E3.visit(this);
+		return ast;
+	}
+
+	@Override
+	public Expression visitIntegerExpression(IntegerExpression ast, Void arg) {
+		return ast;
+	}
+
+	@Override
+	public Expression visitLetExpression(LetExpression ast, Void arg) {
+		var outer = naming;
+		naming = new HashMap<>();
+		ast.D.visit(this);
+		ast.E = ast.E.visit(this);
+		var d = removeUnnamed(ast.D);
+		close(outer);
+		if (d == null) {
+			return ast.E;
+		}
+		if (d == ast.D) {
+			return ast;
+		}
+		var let = new LetExpression(d, ast.E, ast.getPosition());
+		let.type = ast.type;
+		return let;
+	}
+
+	@Override
+	public Expression visitRecordExpression(RecordExpression ast, Void arg) {
+		ast.RA.visit(this);
+		return ast;
+	}
+
+	@Override
+	public Expression visitUnaryExpression(UnaryExpression ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		return ast;
+	}
+
+	@Override
+	public Expression visitVnameExpression(VnameExpression ast, Void arg) {
+		ast.V.visit(this);
+		return ast;
+	}
+
+	// Inlining
+
+	// A routine is considered for inlining once the calls in its body have been,
+	// which is not yet at a call in that body.
+	private boolean isInlinable(Declaration routine, FormalParameterSequence formals) {
+		if (!named.containsKey(routine) || rejected.contains(routine)) {
+			return false;
+		}
+		for (var formal : formals(formals)) {
+			if (formal instanceof FuncFormalParameter || formal instanceof ProcFormalParameter) {
+				rejected.add(routine);
+				return false;
+			}
+		}
+		if (analyser.isRecursive(routine)) {
+			rejected.add(routine);
+			return false;
+		}
+		return true;
+	}
+
+	// Whether a copy of the body of the routine may replace the call. If it may,
+	// the call now names what the body names.
+	private boolean fits(Declaration routine, AbstractSyntaxTree body, Copier copier) {
+		if (body == null || copier.getSize() > maximumSize) {
+			rejected.add(routine);
+			return false;
+		}
+		named.get(routine).forEach((callee, times) -> naming.merge(callee, times, Integer::sum));
+		inlined.add(routine);
+		callsInlined++;
+		return true;
+	}
+
+	// Binds the formal parameters of a routine to the actual parameters of a
+	// call. A var parameter is replaced by the variable passed, and so is a
+	// const parameter of a function given the value of a variable, as nothing
+	// can update the variable while the function's body is evaluated; any other
+	// const parameter is renamed to a new constant declaration. Returns the
+	// constants, or null if a variable passed may be another if its name is
+	// evaluated again.
+	private static List<Declaration> bind(FormalParameterSequence formals, ActualParameterSequence actuals,
+			boolean function, Map<Declaration, Declaration> renamed, Map<Declaration, Vname> substituted) {
+		var constants = new ArrayList<Declaration>();
+		var fps = formals(formals);
+		var aps = actuals(actuals);
+		for (var i = 0; i < fps.size(); i++) {
+			var formal = fps.get(i);
+			if (aps.get(i) instanceof VarActualParameter actual) {
+				if (!isFixed(actual.V)) {
+					return null;
+				}
+				substituted.put(formal, actual.V);
+			} else if (aps.get(i) instanceof ConstActualParameter actual) {
+				if (function && actual.E instanceof VnameExpression name && isFixed(name.V)) {
+					substituted.put(formal, name.V);
+				} else {
+					var position = actual.getPosition();
+					var identifier = new Identifier(((ConstFormalParameter) formal).I.spelling, position);
+					var constant = new ConstDeclaration(identifier, actual.E, position);
+					constants.add(constant);
+					renamed.put(formal, constant);
+				}
+			}
+		}
+		return constants;
+	}
+
+	// Whether the name gives the same variable each time it is evaluated.
+	private static boolean isFixed(Vname vname) {
+		if (vname instanceof DotVname dot) {
+			return isFixed(dot.V);
+		}
+		if (vname instanceof SubscriptVname subscript) {
+			return isFixed(subscript.V) && KnownValues.evaluate(subscript.E, Map.of()) != null;
+		}
+		return true;
+	}
+
+	private static List<FormalParameter> formals(FormalParameterSequence sequence) {
+		var formals = new ArrayList<FormalParameter>();
+		while (!(sequence instanceof EmptyFormalParameterSequence)) {
+			if (sequence instanceof MultipleFormalParameterSequence multiple) {
+				formals.add(multiple.FP);
+				sequence = multiple.FPS;
+			} else {
+				formals.add(((SingleFormalParameterSequence) sequence).FP);
+				break;
+			}
+		}
+		return formals;
+	}
+
+	private static List<ActualParameter> actuals(ActualParameterSequence sequence) {
+		var actuals = new ArrayList<ActualParameter>();
+		while (!(sequence instanceof EmptyActualParameterSequence)) {
+			if (sequence instanceof MultipleActualParameterSequence multiple) {
+				actuals.add(multiple.AP);
+				sequence = multiple.APS;
+			} else {
+				actuals.add(((SingleActualParameterSequence) sequence).AP);
+				break;
+			}
+		}
+		return actuals;
+	}
+
+	private void name(Identifier routine) {
+		if (routine.decl instanceof Declaration declaration) {
+			naming.merge(declaration, 1, Integer::sum);
+		}
+	}
+
+	// Removes the inlined routines of a let declaration that are named neither
+	// by its body nor by a routine that is kept. Returns what is left of the
+	// declaration, or null if nothing is.
+	private Declaration removeUnnamed(Declaration declaration) {
+		var declarations = declaration instanceof SequentialDeclaration sequence ? sequence.getDeclarations()
+				: new ArrayList<>(List.of(declaration));
+		var kept = new HashSet<Declaration>();
+		var pending = new ArrayDeque<Declaration>(naming.keySet());
+		for (var d : declarations) {
+			if ((d instanceof FuncDeclaration || d instanceof ProcDeclaration) && !inlined.contains(d)) {
+				pending.push(d);
+			}
+		}
+		while (!pending.isEmpty()) {
+			var routine = pending.pop();
+			if (kept.add(routine) && named.containsKey(routine)) {
+				pending.addAll(named.get(routine).keySet());
+			}
+		}
+
+		var count = declarations.size();
+		declarations.removeIf(d -> inlined.contains(d) && !kept.contains(d));
+		for (var d : declarations) {
+			if (named.containsKey(d)) {
+				named.get(d).forEach((callee, times) -> naming.merge(callee, times, Integer::sum));
+			}
+		}
+		if (declarations.size() == count) {
+			return declaration;
+		}
+		routinesRemoved += count - declarations.size();
+		return declarations.isEmpty() ? null : SequentialDeclaration.of(declarations, declaration.getPosition());
+	}
+
+	// Adds what the let just visited names to what encloses it.
+	private void close(Map<Declaration, Integer> outer) {
+		naming.forEach((routine, times) -> outer.merge(routine, times, Integer::sum));
+		naming = outer;
+	}
+
+	// Value-or-variable names
+
+	@Override
+	public Void visitDotVname(DotVname ast, Void arg) {
+		ast.V.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitSimpleVname(SimpleVname ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitSubscriptVname(SubscriptVname ast, Void arg) {
+		ast.V.visit(this);
+		ast.E = ast.E.visit(this);
+		return null;
+	}
+
+	// Actual parameters
+
+	@Override
+	public Void visitConstActualParameter(ConstActualParameter ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitFuncActualParameter(FuncActualParameter ast, Void arg) {
+		name(ast.I);
+		return null;
+	}
+
+	@Override
+	public Void visitProcActualParameter(ProcActualParameter ast, Void arg) {
+		name(ast.I);
+		return null;
+	}
+
+	@Override
+	public Void visitVarActualParameter(VarActualParameter ast, Void arg) {
+		ast.V.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitEmptyActualParameterSequence(EmptyActualParameterSequence ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitMultipleActualParameterSequence(MultipleActualParameterSequence ast, Void arg) {
+		ast.AP.visit(this);
+		ast.APS.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitSingleActualParameterSequence(SingleActualParameterSequence ast, Void arg) {
+		ast.AP.visit(this);
+		return null;
+	}
+
+	// Array Aggregates
+
+	@Override
+	public Void visitMultipleArrayAggregate(MultipleArrayAggregate ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		ast.AA.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitSingleArrayAggregate(SingleArrayAggregate ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		return null;
+	}
+
+	// Record Aggregates
+
+	@Override
+	public Void visitMultipleRecordAggregate(MultipleRecordAggregate ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		ast.RA.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitSingleRecordAggregate(SingleRecordAggregate ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		return null;
+	}
+
+	// Declarations. The calls in the body of a routine are inlined first, and
+	// what the body then names is kept for the calls of the routine.
+
+	@Override
+	public Void visitBinaryOperatorDeclaration(BinaryOperatorDeclaration ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitConstDeclaration(ConstDeclaration ast, Void arg) {
+		ast.E = ast.E.visit(this);
+		return null;
+	}
+
+	@Override
+	public Void visitFuncDeclaration(FuncDeclaration ast, Void arg) {
+		var outer = naming;
+		naming = new HashMap<>();
+		ast.E = ast.E.visit(this);
+		named.put(ast, naming);
+		naming = outer;
+		return null;
+	}
+
+	@Override
+	public Void visitProcDeclaration(ProcDeclaration ast, Void arg) {
+		var outer = naming;
+		naming = new HashMap<>();
+		ast.C = ast.C.visit(this);
+		named.put(ast, naming);
+		naming = outer;
+		return null;
+	}
+
+	@Override
+	public Void visitSequentialDeclaration(SequentialDeclaration ast, Void arg) {
+		for (var declaration : ast.getDeclarations()) {
+			declaration.visit(this);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitTypeDeclaration(TypeDeclaration ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryOperatorDeclaration(UnaryOperatorDeclaration ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitVarDeclaration(VarDeclaration ast, Void arg) {
+		return null;
+	}
+
+	// Formal parameters
+
+	@Override
+	public Void visitConstFormalParameter(ConstFormalParameter ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitFuncFormalParameter(FuncFormalParameter ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitProcFormalParameter(ProcFormalParameter ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitVarFormalParameter(VarFormalParameter ast, Void arg) {
+		return null;
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * @(#)KnownValues.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.optimiser;
+
+import java.util.Map;
+
+import triangle.StdEnvironment;
+import triangle.abstractMachine.Machine;
+import triangle.abstractSyntaxTrees.actuals.ConstActualParameter;
+import triangle.abstractSyntaxTrees.actuals.SingleActualParameterSequence;
+import triangle.abstractSyntaxTrees.declarations.ConstDeclaration;
+import triangle.abstractSyntaxTrees.declarations.Declaration;
+import triangle.abstractSyntaxTrees.expressions.BinaryExpression;
+import triangle.abstractSyntaxTrees.expressions.CallExpression;
+import triangle.abstractSyntaxTrees.expressions.CharacterExpression;
+import triangle.abstractSyntaxTrees.expressions.EmptyExpression;
+import triangle.abstractSyntaxTrees.expressions.Expression;
+import triangle.abstractSyntaxTrees.expressions.IfExpression;
+import triangle.abstractSyntaxTrees.expressions.IntegerExpression;
+import triangle.abstractSyntaxTrees.expressions.UnaryExpression;
+import triangle.abstractSyntaxTrees.expressions.VnameExpression;
+import triangle.abstractSyntaxTrees.terminals.CharacterLiteral;
+import triangle.abstractSyntaxTrees.terminals.Identifier;
+import triangle.abstractSyntaxTrees.terminals.IntegerLiteral;
+import triangle.abstractSyntaxTrees.types.ArrayTypeDenoter;
+import triangle.abstractSyntaxTrees.types.BoolTypeDenoter;
+import triangle.abstractSyntaxTrees.types.CharTypeDenoter;
+import triangle.abstractSyntaxTrees.types.IntTypeDenoter;
+import triangle.abstractSyntaxTrees.vnames.DotVname;
+import triangle.abstractSyntaxTrees.vnames.SimpleVname;
+import triangle.abstractSyntaxTrees.vnames.SubscriptVname;
+import triangle.abstractSyntaxTrees.vnames.Vname;
+
+/**
+ * Works out the values of expressions at compile time, where the values of
+ * some variables are known, and whether an expression may fail when it is
+ * evaluated at run time.
+ *
+ * <p>
+ * Values are those the abstract machine uses: an Integer stands for itself, a
+ * Char for its character code, and a Boolean for 1 (true) or 0 (false). The
+ * arithmetic is also that of the machine: a sum, difference or product outside
+ * &plusmn;maxint, or a division by zero, makes the program fail, and so has no
+ * value here. An array index that is not known to be within the array may
+ * also fail, as the address it gives may lie outside the data store.
+ * </p>
+ */
+final class KnownValues {
+
+	private KnownValues() {
+	}
+
+	/**
+	 * @param known the values of variables, by declaration
+	 * @return the value of the expression, or null if it is not an Integer, Char
+	 *         or Boolean expression whose value is known and that would not fail
+	 */
+	static Integer evaluate(Expression expression, Map<Declaration, Integer> known) {
+		if (expression.isLiteral()) {
+			return expression.getValue();
+		}
+		if (expression instanceof VnameExpression name && name.V instanceof SimpleVname simple) {
+			var declaration = simple.I.decl;
+			if (declaration == StdEnvironment.maxintDecl) {
+				return Machine.maxintRep;
+			}
+			if (declaration == StdEnvironment.trueDecl || declaration == StdEnvironment.falseDecl) {
+				return toValue(declaration == StdEnvironment.trueDecl);
+			}
+			// the standard constants are not literals, but are dealt with above
+			if (declaration instanceof ConstDeclaration constant && constant.E.isLiteral()) {
+				return constant.E.getValue();
+			}
+			// an undeclared name has no declaration
+			return declaration == null ? null : known.get(declaration);
+		}
+		if (expression instanceof UnaryExpression unary) {
+			var operand = evaluate(unary.E, known);
+			return operand == null || unary.O.decl != StdEnvironment.notDecl ? null : 1 - operand;
+		}
+		if (expression instanceof IfExpression conditional) {
+			var condition = evaluate(conditional.E1, known);
+			if (condition == null) {
+				return null;
+			}
+			return evaluate(condition != 0 ? conditional.E2 : conditional.E3, known);
+		}
+		if (expression instanceof CallExpression call
+				&& (call.I.decl == StdEnvironment.chrDecl || call.I.decl == StdEnvironment.ordDecl)) {
+			return evaluate(argument(call), known);
+		}
+		if (!(expression instanceof BinaryExpression binary)) {
+			return null;
+		}
+
+		var operator = binary.O.decl;
+		var left = evaluate(binary.E1, known);
+		var right = evaluate(binary.E2, known);
+		if (left == null || right == null) {
+			return null;
+		}
+		long result;
+		if (operator == StdEnvironment.addDecl) {
+			result = (long) left + right;
+		} else if (operator == StdEnvironment.subtractDecl) {
+			result = (long) left - right;
+		} else if (operator == StdEnvironment.multiplyDecl) {
+			result = (long) left * right;
+		} else if (operator == StdEnvironment.divideDecl || operator == StdEnvironment.moduloDecl) {
+			if (right == 0) {
+				return null;
+			}
+			return operator == StdEnvironment.divideDecl ? left / right : left % right;
+		} else if (operator == StdEnvironment.lessDecl) {
+			return toValue(left < right);
+		} else if (operator == StdEnvironment.notgreaterDecl) {
+			return toValue(left <= right);
+		} else if (operator == StdEnvironment.greaterDecl) {
+			return toValue(left > right);
+		} else if (operator == StdEnvironment.notlessDecl) {
+			return toValue(left >= right);
+		} else if (operator == StdEnvironment.equalDecl) {
+			// only values of one word have a value here
+			return toValue(left.equals(right));
+		} else if (operator == StdEnvironment.unequalDecl) {
+			return toValue(!left.equals(right));
+		} else if (operator == StdEnvironment.andDecl) {
+			return toValue(left != 0 && right != 0);
+		} else if (operator == StdEnvironment.orDecl) {
+			return toValue(left != 0 || right != 0);
+		} else {
+			return null;
+		}
+		return -Machine.maxintRep <= result && result <= Machine.maxintRep ? (int) result : null;
+	}
+
+	/**
+	 * @return a literal with the type of the expression and the given value, to
+	 *         take its place, or null if there are no literals of that type
+	 */
+	static Expression literal(Expression expression, int value) {
+		var position = expression.getPosition();
+		Expression literal;
+		if (expression.type instanceof IntTypeDenoter) {
+			literal = new IntegerExpression(new IntegerLiteral(Integer.toString(value), position), position);
+		} else if (expression.type instanceof CharTypeDenoter && value >= 0 && value <= Character.MAX_VALUE) {
+			literal = new CharacterExpression(new CharacterLiteral("'" + (char) value + "'", position), position);
+		} else if (expression.type instanceof BoolTypeDenoter) {
+			var truth = value != 0;
+			var identifier = new Identifier(truth ? "true" : "false", position);
+			identifier.decl = truth ? StdEnvironment.trueDecl : StdEnvironment.falseDecl;
+			var vname = new SimpleVname(identifier, position);
+			vname.type = expression.type;
+			literal = new VnameExpression(vname, position);
+		} else {
+			return null;
+		}
+		literal.type = expression.type;
+		return literal;
+	}
+
+	private static int toValue(boolean truth) {
+		return truth ? 1 : 0;
+	}
+
+	private static Expression argument(CallExpression call) {
+		return ((ConstActualParameter) ((SingleActualParameterSequence) call.APS).AP).E;
+	}
+
+	/**
+	 * @param known the values of variables, by declaration
+	 * @return true unless the expression is sure to be evaluated without failing
+	 */
+	static boolean mayFail(Expression expression, Map<Declaration, Integer> known) {
+		if (expression instanceof IntegerExpression || expression instanceof CharacterExpression
+				|| expression instanceof EmptyExpression) {
+			return false;
+		}
+		if (expression instanceof VnameExpression name) {
+			return mayFail(name.V, known);
+		}
+		if (expression instanceof UnaryExpression unary) {
+			return mayFail(unary.E, known);
+		}
+		if (expression instanceof BinaryExpression binary) {
+			if (mayFail(binary.E1, known) || mayFail(binary.E2, known)) {
+				return true;
+			}
+			var operator = binary.O.decl;
+			var arithmetic = operator == StdEnvironment.addDecl || operator == StdEnvironment.subtractDecl
+					|| operator == StdEnvironment.multiplyDecl || operator == StdEnvironment.divideDecl
+					|| operator == StdEnvironment.moduloDecl;
+			return arithmetic && evaluate(binary, known) == null;
+		}
+		if (expression instanceof IfExpression conditional) {
+			return mayFail(conditional.E1, known) || mayFail(conditional.E2, known) || mayFail(conditional.E3, known);
+		}
+		if (expression instanceof CallExpression call
+				&& (call.I.decl == StdEnvironment.chrDecl || call.I.decl == StdEnvironment.ordDecl)) {
+			return mayFail(argument(call), known);
+		}
+		// other calls, and aggregates and let expressions, are not looked into
+		return true;
+	}
+
+	private static boolean mayFail(Vname vname, Map<Declaration, Integer> known) {
+		if (vname instanceof SimpleVname) {
+			return false;
+		}
+		if (vname instanceof DotVname dot) {
+			return mayFail(dot.V, known);
+		}
+		var subscript = (SubscriptVname) vname;
+		if (mayFail(subscript.V, known) || mayFail(subscript.E, known)) {
+			return true;
+		}
+		var index = evaluate(subscript.E, known);
+		return index == null || index < 0 || !(subscript.V.type instanceof ArrayTypeDenoter array)
+				|| index >= array.IL.getValue();
+	}
+}
@@ -0,0 +1,432 @@
+/*
+ * @(#)LoopInvariantHoister.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.optimiser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import triangle.abstractSyntaxTrees.Program;
+import triangle.abstractSyntaxTrees.commands.AssignCommand;
+import triangle.abstractSyntaxTrees.commands.CallCommand;
+import triangle.abstractSyntaxTrees.commands.Command;
+import triangle.abstractSyntaxTrees.commands.DoubleAssignCommand;
+import triangle.abstractSyntaxTrees.commands.EmptyCommand;
+import triangle.abstractSyntaxTrees.commands.IfCommand;
+import triangle.abstractSyntaxTrees.commands.LetCommand;
+import triangle.abstractSyntaxTrees.commands.LoopWhileCommand;
+import triangle.abstractSyntaxTrees.commands.SequentialCommand;
+import triangle.abstractSyntaxTrees.commands.WhileCommand;
+import triangle.abstractSyntaxTrees.declarations.BinaryOperatorDeclaration;
+import triangle.abstractSyntaxTrees.declarations.ConstDeclaration;
+import triangle.abstractSyntaxTrees.declarations.Declaration;
+import triangle.abstractSyntaxTrees.declarations.FuncDeclaration;
+import triangle.abstractSyntaxTrees.declarations.ProcDeclaration;
+import triangle.abstractSyntaxTrees.declarations.SequentialDeclaration;
+import triangle.abstractSyntaxTrees.declarations.UnaryOperatorDeclaration;
+import triangle.abstractSyntaxTrees.declarations.VarDeclaration;
+import triangle.abstractSyntaxTrees.formals.ConstFormalParameter;
+import triangle.abstractSyntaxTrees.formals.FuncFormalParameter;
+import triangle.abstractSyntaxTrees.formals.ProcFormalParameter;
+import triangle.abstractSyntaxTrees.formals.VarFormalParameter;
+import triangle.abstractSyntaxTrees.types.TypeDeclaration;
+import triangle.abstractSyntaxTrees.visitors.CommandVisitor;
+import triangle.abstractSyntaxTrees.visitors.DeclarationVisitor;
+import triangle.abstractSyntaxTrees.visitors.ProgramVisitor;
+import triangle.abstractSyntaxTrees.vnames.SimpleVname;
+import triangle.syntacticAnalyzer.SourcePosition;
+
+/**
+ * Loop-invariant code motion: moves work that gives the same result on every
+ * pass of a while or loop-while command out in front of the loop, where it is
+ * done once. It runs on a checked program, before it is encoded.
+ *
+ * <p>
+ * An assignment to a variable is moved out of the body when it stands on its
+ * own in the body (of the first part of a loop-while), its expression is
+ * loop-invariant, nothing else in the loop updates the variable, and nothing
+ * reads the variable in the loop before the assignment first runs. The
+ * variable must not be aliased, so that the effects of calls and var
+ * parameters on it are all known. The expression must either be sure not to
+ * fail, or be the first thing the body evaluates, so that any failure happens
+ * at the same point as before. As the body of a while command may not run at
+ * all, the moved assignments are guarded by the loop's condition:
+ * </p>
+ *
+ * <pre>
+ * while E do begin C1; x := e; C2 end
+ * </pre>
+ *
+ * becomes
+ *
+ * <pre>
+ * if E then begin x := e; while E do begin C1; C2 end end else
+ * </pre>
+ *
+ * <p>
+ * Then each largest invariant expression left in the loop that is sure not to
+ * fail is replaced by a constant declared around the loop; see
+ * {@link ExpressionHoister}.
+ * </p>
+ *
+ * <p>
+ * Whether an expression may fail is decided using the values of Integer
+ * variables assigned known values before the loop, as in
+ * {@code c := 2; while ... do ... b := c + 2}.
+ * </p>
+ */
+public class LoopInvariantHoister implements ProgramVisitor<Void, Void>,
+		CommandVisitor<Map<Declaration, Integer>, Command>, DeclarationVisitor<Void, Void> {
+
+	private EffectAnalyser analyser;
+
+	private int assignmentsHoisted = 0, expressionsHoisted = 0;
+
+	/**
+	 * @return the number of assignments moved in front of their loops
+	 */
+	public int getAssignmentsHoisted() {
+		return assignmentsHoisted;
+	}
+
+	/**
+	 * @return the number of expressions replaced by constants declared in front
+	 *         of their loops
+	 */
+	public int getExpressionsHoisted() {
+		return expressionsHoisted;
+	}
+
+	@Override
+	public Void visitProgram(Program ast, Void arg) {
+		analyser = new EffectAnalyser(ast);
+		ast.C = ast.C.visit(this, new HashMap<>());
+		return null;
+	}
+
+	// Commands. Each is given the values of variables known before it, which
+	// it updates to those known after it, and gives the command to take its
+	// place, or itself.
+
+	@Override
+	public Command visitAssignCommand(AssignCommand ast, Map<Declaration, Integer> known) {
+		var value = KnownValues.evaluate(ast.E, known);
+		forget(known, analyser.of(ast));
+		if (value != null && ast.V instanceof SimpleVname simple && simple.I.decl instanceof VarDeclaration variable
+				&& !analyser.isAliased(variable)) {
+			known.put(variable, value);
+		}
+		return ast;
+	}
+
+	@Override
+	public Command visitDoubleAssignCommand(DoubleAssignCommand ast, Map<Declaration, Integer> known) {
+		forget(known, analyser.of(ast));
+		return ast;
+	}
+
+	@Override
+	public Command visitCallCommand(CallCommand ast, Map<Declaration, Integer> known) {
+		forget(known, analyser.of(ast));
+		return ast;
+	}
+
+	@Override
+	public Command visitEmptyCommand(EmptyCommand ast, Map<Declaration, Integer> known) {
+		return ast;
+	}
+
+	@Override
+	public Command visitIfCommand(IfCommand ast, Map<Declaration, Integer> known) {
+		var c1 = ast.C1.visit(this, new HashMap<>(known));
+		var c2 = ast.C2.visit(this, new HashMap<>(known));
+		forget(known, analyser.of(ast));
+		if (c1 == ast.C1 && c2 == ast.C2) {
+			return ast;
+		}
+		return new IfCommand(ast.E, c1, c2, ast.getPosition());
+	}
+
+	@Override
+	public Command visitLetCommand(LetCommand ast, Map<Declaration, Integer> known) {
+		ast.D.visit(this);
+		var c = ast.C.visit(this, known);
+		return c == ast.C ? ast : new LetCommand(ast.D, c, ast.getPosition());
+	}
+
+	@Override
+	public Command visitSequentialCommand(SequentialCommand ast, Map<Declaration, Integer> known) {
+		var commands = ast.getCommands();
+		var changed = false;
+		for (var i = 0; i < commands.size(); i++) {
+			var command = commands.get(i);
+			var replacement = command.visit(this, known);
+			if (replacement != command) {
+				commands.set(i, replacement);
+				changed = true;
+			}
+		}
+		return changed ? SequentialCommand.of(commands, ast.getPosition()) : ast;
+	}
+
+	@Override
+	public Command visitWhileCommand(WhileCommand ast, Map<Declaration, Integer> known) {
+		// what is known throughout the loop is what is known before it, less
+		// what the loop updates
+		forget(known, analyser.of(ast));
+		var inLoop = new HashMap<>(known);
+		var body = ast.C.visit(this, new HashMap<>(inLoop));
+
+		var position = ast.getPosition();
+		var statements = statements(body);
+		var hoisted = new ArrayList<Command>();
+		// the guard tests the condition itself, so the loop needs a copy
+		var condition = new Copier().copy(ast.E);
+		if (condition != null) {
+			hoisted = hoistAssignments(statements, analyser.of(ast.E), true, inLoop);
+		}
+		if (hoisted.isEmpty()) {
+			condition = ast.E;
+		}
+
+		var loop = new WhileCommand(condition, SequentialCommand.of(statements, ast.C.getPosition()), position);
+		var constants = hoistExpressions(loop, inLoop);
+		if (hoisted.isEmpty() && constants.isEmpty() && body == ast.C) {
+			return ast;
+		}
+
+		Command result = loop;
+		if (!constants.isEmpty()) {
+			result = new LetCommand(declare(constants, position), result, position);
+		}
+		if (!hoisted.isEmpty()) {
+			hoisted.add(result);
+			result = new IfCommand(ast.E, SequentialCommand.of(hoisted, position), new EmptyCommand(position),
+					position);
+		}
+		return result;
+	}
+
+	@Override
+	public Command visitLoopWhileCommand(LoopWhileCommand ast, Map<Declaration, Integer> known) {
+		forget(known, analyser.of(ast));
+		var inLoop = new HashMap<>(known);
+		var c1 = ast.C1.visit(this, new HashMap<>(inLoop));
+		var c2 = ast.C2.visit(this, new HashMap<>(inLoop));
+
+		// the first part always runs, so what is moved out of it needs no guard
+		var position = ast.getPosition();
+		var statements = statements(c1);
+		var rest = analyser.of(ast.E);
+		rest.add(analyser.of(c2));
+		var hoisted = hoistAssignments(statements, rest, false, inLoop);
+
+		var loop = new LoopWhileCommand(SequentialCommand.of(statements, ast.C1.getPosition()), ast.E, c2, position);
+		var constants = hoistExpressions(loop, inLoop);
+		if (hoisted.isEmpty() && constants.isEmpty() && c1 == ast.C1 && c2 == ast.C2) {
+			return ast;
+		}
+
+		Command result = loop;
+		if (!constants.isEmpty()) {
+			result = new LetCommand(declare(constants, position), result, position);
+		}
+		if (!hoisted.isEmpty()) {
+			hoisted.add(result);
+			result = SequentialCommand.of(hoisted, position);
+		}
+		return result;
+	}
+
+	/**
+	 * Removes from the statements of a loop body the invariant assignments that
+	 * can be made once, before the loop.
+	 *
+	 * @param statements the statements, in order; those hoisted are removed
+	 * @param rest       the effects of the rest of the loop
+	 * @param restFirst  true if the rest of the loop runs before the statements
+	 * @param known      the values of variables known throughout the loop, to
+	 *                   which those of the variables assigned are added
+	 * @return the assignments hoisted, in order
+	 */
+	private ArrayList<Command> hoistAssignments(List<Command> statements, Effects rest, boolean restFirst,
+			Map<Declaration, Integer> known) {
+		var hoisted = new ArrayList<Command>();
+		if (rest.unknown) {
+			return hoisted;
+		}
+
+		// how many statements update each variable, and aliased variables
+		var effects = new ArrayList<Effects>();
+		var updates = new HashMap<Declaration, Integer>();
+		var aliasedUpdates = 0;
+		for (var statement : statements) {
+			var statementEffects = analyser.of(statement);
+			if (statementEffects.unknown) {
+				return hoisted;
+			}
+			effects.add(statementEffects);
+			for (var written : statementEffects.writes) {
+				updates.merge(written, 1, Integer::sum);
+				aliasedUpdates += analyser.isAliased(written) ? 1 : 0;
+			}
+		}
+		var restAliased = false;
+		for (var written : rest.writes) {
+			restAliased |= analyser.isAliased(written);
+		}
+
+		// what the statements before the current one read
+		Set<Declaration> readBefore = new HashSet<>(restFirst ? rest.reads : Set.of());
+		var i = 0;
+		while (i < statements.size()) {
+			var own = effects.get(i);
+			if (statements.get(i) instanceof AssignCommand assign && assign.V instanceof SimpleVname simple
+					&& simple.I.decl instanceof VarDeclaration variable && !analyser.isAliased(variable)
+					&& !rest.writes.contains(variable) && updates.get(variable) == 1
+					&& !readBefore.contains(variable) && (i == 0 || !KnownValues.mayFail(assign.E, known))) {
+				var value = analyser.of(assign.E);
+				var otherAliased = restAliased || aliasedUpdates > 0;
+				var invariant = !value.unknown && !value.readsInput && value.calls.isEmpty();
+				for (var read : value.reads) {
+					var otherUpdates = updates.getOrDefault(read, 0) - (own.writes.contains(read) ? 1 : 0);
+					invariant &= read != variable && otherUpdates == 0 && !rest.writes.contains(read)
+							&& !(otherAliased && analyser.isAliased(read));
+				}
+				if (invariant) {
+					var assigned = KnownValues.evaluate(assign.E, known);
+					if (assigned != null) {
+						known.put(variable, assigned);
+					}
+					hoisted.add(statements.remove(i));
+					effects.remove(i);
+					updates.remove(variable);
+					continue;
+				}
+			}
+			readBefore.addAll(own.reads);
+			i++;
+		}
+		assignmentsHoisted += hoisted.size();
+		return hoisted;
+	}
+
+	private List<ConstDeclaration> hoistExpressions(Command loop, Map<Declaration, Integer> known) {
+		var constants = new ArrayList<ConstDeclaration>();
+		loop.visit(new ExpressionHoister(analyser, analyser.of(loop), known, constants, "hoisted" + expressionsHoisted
+				+ "_"));
+		expressionsHoisted += constants.size();
+		return constants;
+	}
+
+	private static List<Command> statements(Command body) {
+		if (body instanceof SequentialCommand sequence) {
+			return sequence.getCommands();
+		}
+		var statements = new ArrayList<Command>();
+		statements.add(body);
+		return statements;
+	}
+
+	private static Declaration declare(List<ConstDeclaration> constants, SourcePosition position) {
+		Declaration declarations = constants.get(0);
+		for (var i = 1; i < constants.size(); i++) {
+			declarations = new SequentialDeclaration(declarations, constants.get(i), position);
+		}
+		return declarations;
+	}
+
+	private static void forget(Map<Declaration, Integer> known, Effects effects) {
+		if (effects.unknown) {
+			known.clear();
+		} else {
+			known.keySet().removeAll(effects.writes);
+		}
+	}
+
+	// Declarations. Only the bodies of procedures have loops to look at.
+
+	@Override
+	public Void visitBinaryOperatorDeclaration(BinaryOperatorDeclaration ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitConstDeclaration(ConstDeclaration ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitFuncDeclaration(FuncDeclaration ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitProcDeclaration(ProcDeclaration ast, Void arg) {
+		ast.C = ast.C.visit(this, new HashMap<>());
+		return null;
+	}
+
+	@Override
+	public Void visitSequentialDeclaration(SequentialDeclaration ast, Void arg) {
+		for (var declaration : ast.getDeclarations()) {
+			declaration.visit(this);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitTypeDeclaration(TypeDeclaration ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryOperatorDeclaration(UnaryOperatorDeclaration ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitVarDeclaration(VarDeclaration ast, Void arg) {
+		return null;
+	}
+
+	// Formal parameters
+	@Override
+	public Void visitConstFormalParameter(ConstFormalParameter ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitFuncFormalParameter(FuncFormalParameter ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitProcFormalParameter(ProcFormalParameter ast, Void arg) {
+		return null;
+	}
+
+	@Override
+	public Void visitVarFormalParameter(VarFormalParameter ast, Void arg) {
+		return null;
+	}
+}
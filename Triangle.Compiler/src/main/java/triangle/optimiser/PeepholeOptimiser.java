@@ -0,0 +1,339 @@
+/*
+ * @(#)PeepholeOptimiser.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.optimiser;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import triangle.abstractMachine.Instruction;
+import triangle.abstractMachine.Machine;
+import triangle.abstractMachine.OpCode;
+import triangle.abstractMachine.Primitive;
+import triangle.abstractMachine.Register;
+
+/**
+ * Improves an object program once it has been encoded, by rewriting short
+ * sequences of instructions that the encoder emits without regard to their
+ * neighbours.
+ *
+ * <p>
+ * A jump to a jump is made to go straight to where the last jump goes, and a
+ * jump to a RETURN or HALT is replaced by a copy of it. Then these are removed:
+ * </p>
+ * <ul>
+ * <li>a JUMP to the next instruction;</li>
+ * <li>PUSH 0 and POP(n) 0, which do nothing;</li>
+ * <li>LOADL 0 followed by CALL add or CALL sub;</li>
+ * <li>LOAD(n) d[r] followed by STORE(n) d[r], which stores what is already
+ * there;</li>
+ * <li>code that can never be reached.</li>
+ * </ul>
+ * <p>
+ * and a JUMPIF over a JUMP, as in {@code JUMPIF(0) L; JUMP M; L:}, becomes a
+ * single {@code JUMPIF(1) M} where the word tested is known to be a truth
+ * value, as it is when it has just been computed by a comparison or a logical
+ * operation. This is repeated until nothing more changes.
+ * </p>
+ *
+ * <p>
+ * Every instruction whose operand is a code address (a JUMP, JUMPIF, CALL or
+ * LOADA relative to CB) is relocated as instructions are removed. A sequence
+ * is only rewritten if no jump goes into the middle of it. Code is only known
+ * to be unreachable if it is reached neither from CB nor from a routine
+ * address taken by a CALL or LOADA, so nothing is removed as unreachable from
+ * a program that has a JUMPI, as that may jump anywhere.
+ * </p>
+ */
+public class PeepholeOptimiser {
+
+	private int instructionsRemoved;
+
+	private int jumpsThreaded;
+
+	/**
+	 * @return the number of instructions removed from the last program optimised
+	 */
+	public int getInstructionsRemoved() {
+		return instructionsRemoved;
+	}
+
+	/**
+	 * @return the number of jumps made to go straight to where they end up, or
+	 *         replaced by the RETURN or HALT they went to
+	 */
+	public int getJumpsThreaded() {
+		return jumpsThreaded;
+	}
+
+	/**
+	 * Optimises the object program, which is left as it is.
+	 *
+	 * @param program the instructions, from CB
+	 * @return the optimised instructions, from CB
+	 */
+	public Instruction[] optimise(Instruction[] program) {
+		var code = program.clone();
+		instructionsRemoved = 0;
+		jumpsThreaded = 0;
+		while (true) {
+			var threaded = thread(code);
+			var reachable = reachable(code);
+			var targets = targets(code, reachable);
+			var removed = new boolean[code.length];
+			var rewritten = rewrite(code, reachable, targets, removed);
+			if (!threaded && !rewritten) {
+				break;
+			}
+			code = compact(code, removed);
+		}
+		instructionsRemoved = program.length - code.length;
+		return code;
+	}
+
+	// Makes each jump go to where the jumps it goes to end up, or replaces it by
+	// the RETURN or HALT they end up at.
+	private boolean thread(Instruction[] code) {
+		var changed = false;
+		for (var addr = 0; addr < code.length; addr++) {
+			var instr = code[addr];
+			if (!isJump(instr, OpCode.JUMP) && !isJump(instr, OpCode.JUMPIF)) {
+				continue;
+			}
+			var target = destination(code, instr.getOperand());
+			if (target >= 0 && target < code.length && isJump(code[target], OpCode.JUMP)) {
+				// a loop of jumps, which is left as it is
+				continue;
+			}
+			if (instr.getOpCode() == OpCode.JUMP && target >= 0 && target < code.length
+					&& (code[target].getOpCode() == OpCode.RETURN || code[target].getOpCode() == OpCode.HALT)) {
+				var end = code[target];
+				code[addr] = new Instruction(end.getOpCode(), end.getRegister(), end.getLength(), end.getOperand());
+			} else if (target != instr.getOperand()) {
+				code[addr] = withOperand(instr, target);
+			} else {
+				continue;
+			}
+			jumpsThreaded++;
+			changed = true;
+		}
+		return changed;
+	}
+
+	// Returns where a jump to the given address ends up, following at most as
+	// many jumps as there are instructions, so as to stop in a loop of jumps.
+	private static int destination(Instruction[] code, int addr) {
+		for (var jumps = 0; jumps < code.length; jumps++) {
+			if (addr < 0 || addr >= code.length || !isJump(code[addr], OpCode.JUMP)) {
+				break;
+			}
+			addr = code[addr].getOperand();
+		}
+		return addr;
+	}
+
+	// Marks the instructions that may be executed, starting from CB and from
+	// every routine whose address is taken.
+	private static boolean[] reachable(Instruction[] code) {
+		var reachable = new boolean[code.length];
+		var pending = new ArrayDeque<Integer>();
+		for (var instr : code) {
+			if (instr.getOpCode() == OpCode.JUMPI) {
+				Arrays.fill(reachable, true);
+				return reachable;
+			}
+			if (isCodeAddress(instr) && instr.getOpCode() != OpCode.JUMP && instr.getOpCode() != OpCode.JUMPIF) {
+				pending.add(instr.getOperand());
+			}
+		}
+		pending.add(Machine.CB);
+		while (!pending.isEmpty()) {
+			int addr = pending.remove();
+			while (addr >= 0 && addr < code.length && !reachable[addr]) {
+				reachable[addr] = true;
+				var instr = code[addr];
+				if (isJump(instr, OpCode.JUMPIF)) {
+					pending.add(instr.getOperand());
+				}
+				var op = instr.getOpCode();
+				if (op == OpCode.JUMP && instr.getRegister() == Register.CB) {
+					addr = instr.getOperand();
+				} else if (op == OpCode.JUMP || op == OpCode.RETURN || op == OpCode.HALT) {
+					break;
+				} else {
+					addr++;
+				}
+			}
+		}
+		return reachable;
+	}
+
+	// Marks the addresses that reachable instructions go to or take.
+	private static boolean[] targets(Instruction[] code, boolean[] reachable) {
+		var targets = new boolean[code.length];
+		for (var addr = 0; addr < code.length; addr++) {
+			var operand = code[addr].getOperand();
+			if (reachable[addr] && isCodeAddress(code[addr]) && operand >= 0 && operand < code.length) {
+				targets[operand] = true;
+			}
+		}
+		return targets;
+	}
+
+	// Marks the instructions to remove, rewriting those that take the place of
+	// a sequence, and returns whether any were.
+	private static boolean rewrite(Instruction[] code, boolean[] reachable, boolean[] targets, boolean[] removed) {
+		var changed = false;
+		for (var addr = 0; addr < code.length; addr++) {
+			var instr = code[addr];
+			var next = addr + 1 < code.length && reachable[addr + 1] && !targets[addr + 1] ? code[addr + 1] : null;
+			if (!reachable[addr]) {
+				removed[addr] = true;
+			} else if ((instr.getOpCode() == OpCode.PUSH || instr.getOpCode() == OpCode.POP)
+					&& instr.getOperand() == 0) {
+				removed[addr] = true;
+			} else if (isJump(instr, OpCode.JUMP) && jumpsToNext(addr, instr.getOperand(), reachable)) {
+				removed[addr] = true;
+			} else if (next != null && instr.getOpCode() == OpCode.LOADL && instr.getOperand() == 0
+					&& (isPrimitiveCall(next, Primitive.ADD) || isPrimitiveCall(next, Primitive.SUB))) {
+				removed[addr] = removed[++addr] = true;
+			} else if (next != null && instr.getOpCode() == OpCode.LOAD && next.getOpCode() == OpCode.STORE
+					&& isDisplayRegister(instr.getRegister()) && instr.getRegister() == next.getRegister()
+					&& instr.getLength() == next.getLength() && instr.getOperand() == next.getOperand()) {
+				removed[addr] = removed[++addr] = true;
+			} else if (next != null && isJump(instr, OpCode.JUMPIF) && isJump(next, OpCode.JUMP)
+					&& instr.getOperand() == addr + 2
+					&& (instr.getLength() == Machine.falseRep || instr.getLength() == Machine.trueRep)
+					&& testsTruthValue(code, addr, reachable, targets, removed)) {
+				// the word tested is a truth value, so jumping unless it is
+				// one is jumping if it is the other
+				var length = instr.getLength() == Machine.falseRep ? Machine.trueRep : Machine.falseRep;
+				code[addr] = new Instruction(OpCode.JUMPIF, Register.CB, length, next.getOperand());
+				removed[++addr] = true;
+			} else {
+				continue;
+			}
+			changed = true;
+		}
+		return changed;
+	}
+
+	// Whether the JUMPIF at addr can only be reached from the instruction before
+	// it, and that instruction leaves a truth value on the stack. A variable
+	// that was never assigned may hold any word, which a JUMPIF(0) and a
+	// JUMPIF(1) would both fall through on.
+	private static boolean testsTruthValue(Instruction[] code, int addr, boolean[] reachable, boolean[] targets,
+			boolean[] removed) {
+		if (addr == 0 || targets[addr] || !reachable[addr - 1] || removed[addr - 1]) {
+			return false;
+		}
+		var previous = code[addr - 1];
+		if (previous.getOpCode() == OpCode.LOADL) {
+			return previous.getOperand() == Machine.falseRep || previous.getOperand() == Machine.trueRep;
+		}
+		if (previous.getOpCode() != OpCode.CALL || previous.getRegister() != Register.PB
+				|| previous.getOperand() < 0 || previous.getOperand() >= Primitive.count) {
+			return false;
+		}
+		switch (Primitive.of(previous.getOperand())) {
+		case NOT:
+		case AND:
+		case OR:
+		case LT:
+		case LE:
+		case GE:
+		case GT:
+		case EQ:
+		case NE:
+		case EOL:
+		case EOF:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	// Whether every instruction between a jump and where it goes can never be
+	// reached, so that the jump goes where execution would go anyway.
+	private static boolean jumpsToNext(int addr, int target, boolean[] reachable) {
+		if (target <= addr || target > reachable.length) {
+			return false;
+		}
+		for (var between = addr + 1; between < target; between++) {
+			if (reachable[between]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Removes the marked instructions, relocating every code address. An
+	// address of a removed instruction becomes that of the next one kept, as
+	// nothing removed has an effect.
+	private static Instruction[] compact(Instruction[] code, boolean[] removed) {
+		var relocated = new int[code.length + 1];
+		var size = 0;
+		for (var addr = 0; addr < code.length; addr++) {
+			relocated[addr] = size;
+			if (!removed[addr]) {
+				size++;
+			}
+		}
+		relocated[code.length] = size;
+
+		var compacted = new Instruction[size];
+		for (var addr = 0; addr < code.length; addr++) {
+			if (removed[addr]) {
+				continue;
+			}
+			var instr = code[addr];
+			var operand = instr.getOperand();
+			if (isCodeAddress(instr) && operand >= 0 && operand <= code.length) {
+				instr = withOperand(instr, relocated[operand]);
+			}
+			compacted[relocated[addr]] = instr;
+		}
+		return compacted;
+	}
+
+	private static boolean isCodeAddress(Instruction instr) {
+		var op = instr.getOpCode();
+		return instr.getRegister() == Register.CB
+				&& (op == OpCode.JUMP || op == OpCode.JUMPIF || op == OpCode.CALL || op == OpCode.LOADA);
+	}
+
+	private static boolean isJump(Instruction instr, OpCode op) {
+		return instr.getOpCode() == op && instr.getRegister() == Register.CB;
+	}
+
+	private static boolean isPrimitiveCall(Instruction instr, Primitive primitive) {
+		return instr.getOpCode() == OpCode.CALL && instr.getRegister() == Register.PB
+				&& instr.getOperand() == primitive.ordinal();
+	}
+
+	// Whether addresses relative to the register are those of variables, which
+	// stay put between one instruction and the next.
+	private static boolean isDisplayRegister(Register register) {
+		return register == Register.SB || register == Register.LB
+				|| register.ordinal() >= Register.L1.ordinal() && register.ordinal() <= Register.L6.ordinal();
+	}
+
+	private static Instruction withOperand(Instruction instr, int operand) {
+		return new Instruction(instr.getOpCode(), instr.getRegister(), instr.getLength(), operand);
+	}
+}
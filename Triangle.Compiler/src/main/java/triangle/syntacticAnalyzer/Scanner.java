@@ -18,14 +18,25 @@
 
 package triangle.syntacticAnalyzer;
 
+/**
+ * The lexer: turns a source program into tokens.
+ *
+ * <p>
+ * A token is scanned without building its spelling: the scanner notes where
+ * it starts and ends in the source text, classifies a reserved word by its
+ * length and first letter, and takes the spelling of an identifier, operator
+ * or literal from its {@link SpellingTable}, which copies it out of the text
+ * only the first time it is seen.
+ * </p>
+ */
 public final class Scanner {
 
 	private SourceFile sourceFile;
 	private boolean debug;
 
 	private char currentChar;
-	private StringBuffer currentSpelling;
-	private boolean currentlyScanningToken;
+
+	private final SpellingTable spellings = new SpellingTable();
 
 	public static boolean isLetter(char c) {
 		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
@@ -54,12 +65,10 @@ public final class Scanner {
 		debug = true;
 	}
 
-	// takeIt appends the current character to the current token, and gets
-	// the next character from the source program.
+	// takeIt gets the next character from the source program; the current
+	// character becomes part of the current token, if one is being scanned.
 
 	private void takeIt() {
-		if (currentlyScanningToken)
-			currentSpelling.append(currentChar);
 		currentChar = sourceFile.getSource();
 	}
 
@@ -255,26 +264,131 @@ public final class Scanner {
 		}
 	}
 
+	// reservedWord returns the reserved word spelled by the text from start,
+	// or IDENTIFIER if it spells none. The candidate is picked by length and
+	// first letter, then checked in full.
+
+	private Token.Kind reservedWord(int start, int length) {
+		Token.Kind kind;
+		switch (length) {
+		case 2:
+			switch (sourceFile.charAt(start)) {
+			case 'd':
+				kind = Token.Kind.DO;
+				break;
+			case 'i':
+				kind = sourceFile.charAt(start + 1) == 'f' ? Token.Kind.IF : Token.Kind.IN;
+				break;
+			case 'o':
+				kind = Token.Kind.OF;
+				break;
+			default:
+				return Token.Kind.IDENTIFIER;
+			}
+			break;
+		case 3:
+			switch (sourceFile.charAt(start)) {
+			case 'e':
+				kind = Token.Kind.END;
+				break;
+			case 'l':
+				kind = Token.Kind.LET;
+				break;
+			case 'v':
+				kind = Token.Kind.VAR;
+				break;
+			default:
+				return Token.Kind.IDENTIFIER;
+			}
+			break;
+		case 4:
+			switch (sourceFile.charAt(start)) {
+			case 'e':
+				kind = Token.Kind.ELSE;
+				break;
+			case 'f':
+				kind = Token.Kind.FUNC;
+				break;
+			case 'l':
+				kind = Token.Kind.LOOP;
+				break;
+			case 'p':
+				kind = Token.Kind.PROC;
+				break;
+			case 't':
+				kind = sourceFile.charAt(start + 1) == 'h' ? Token.Kind.THEN : Token.Kind.TYPE;
+				break;
+			default:
+				return Token.Kind.IDENTIFIER;
+			}
+			break;
+		case 5:
+			switch (sourceFile.charAt(start)) {
+			case 'a':
+				kind = Token.Kind.ARRAY;
+				break;
+			case 'b':
+				kind = Token.Kind.BEGIN;
+				break;
+			case 'c':
+				kind = Token.Kind.CONST;
+				break;
+			case 'w':
+				kind = Token.Kind.WHILE;
+				break;
+			default:
+				return Token.Kind.IDENTIFIER;
+			}
+			break;
+		case 6:
+			kind = Token.Kind.RECORD;
+			break;
+		default:
+			return Token.Kind.IDENTIFIER;
+		}
+		return sourceFile.matches(start, kind.spelling) ? kind : Token.Kind.IDENTIFIER;
+	}
+
 	public Token scan() {
 		Token tok;
 		SourcePosition pos;
 		Token.Kind kind;
+		String spelling;
 
-		currentlyScanningToken = false;
 		// skip any whitespace or comments
 		while (currentChar == '!' || currentChar == ' ' || currentChar == '\n' || currentChar == '\r'
 				|| currentChar == '\t')
 			scanSeparator();
 
-		currentlyScanningToken = true;
-		currentSpelling = new StringBuffer("");
 		pos = new SourcePosition();
 		pos.start = sourceFile.getCurrentLine();
+		var start = sourceFile.getOffset();
 
 		kind = scanToken();
 
+		var end = sourceFile.getOffset();
 		pos.finish = sourceFile.getCurrentLine();
-		tok = new Token(kind, currentSpelling.toString(), pos);
+
+		switch (kind) {
+		case IDENTIFIER:
+			kind = reservedWord(start, end - start);
+			spelling = kind == Token.Kind.IDENTIFIER ? spellings.intern(sourceFile, start, end) : kind.spelling;
+			break;
+		case INTLITERAL:
+		case OPERATOR:
+			spelling = spellings.intern(sourceFile, start, end);
+			break;
+		case CHARLITERAL:
+		case ERROR:
+			spelling = sourceFile.getSpelling(start, end);
+			break;
+		default:
+			// punctuation, brackets and the end of the text are spelled as
+			// their kind
+			spelling = kind.spelling;
+		}
+
+		tok = new Token(kind, spelling, pos);
 		if (debug)
 			System.out.println(tok);
 		return tok;
@@ -18,55 +18,115 @@
 
 package triangle.syntacticAnalyzer;
 
-import java.net.URL;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
+/**
+ * The text of a source program, read one character at a time by the
+ * {@link Scanner}.
+ *
+ * <p>
+ * The whole text is held in a buffer, which is walked with an index: a file
+ * is mapped into memory, and a resource or an array of bytes is read or
+ * wrapped as it is. Each byte is one character, and the scanner refers to
+ * the spelling of a token by its offsets into the buffer.
+ * </p>
+ */
 public class SourceFile {
 
 	public static final char EOL = '\n';
 	public static final char EOT = '\u0000';
 
-	java.io.File sourceFile;
-	java.io.InputStream source;
-	int currentLine;
+	private final ByteBuffer source;
+	private final int length;
+	private int position;
+	private int offset;
+	private int currentLine;
 
+	/**
+	 * @return the source program in the given file, or null if it cannot be
+	 *         read.
+	 */
 	public static SourceFile ofPath(String pathname) {
-		try {
-			SourceFile sf = new SourceFile();
-			sf.sourceFile = new java.io.File(pathname);
-			sf.source = new java.io.FileInputStream(sf.sourceFile);
-			return sf;
-		} catch (java.io.IOException s) {
+		try (var channel = FileChannel.open(Path.of(pathname), StandardOpenOption.READ)) {
+			// the mapping outlives the channel
+			return new SourceFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} catch (IOException | RuntimeException s) {
 			return null;
 		}
 	}
-	
+
+	/**
+	 * @return the source program in the given resource, or null if there is
+	 *         none.
+	 */
 	public static SourceFile fromResource(String handle) {
-		SourceFile sf = new SourceFile();
-		//sf.sourceFile = new java.io.File(pathname);
-		sf.source = sf.getClass().getResourceAsStream(handle);
-		return sf;
+		try (var in = SourceFile.class.getResourceAsStream(handle)) {
+			return in == null ? null : ofBytes(in.readAllBytes());
+		} catch (IOException s) {
+			return null;
+		}
 	}
 
-	private SourceFile() {
+	/**
+	 * @return the source program held in the array, which is not copied.
+	 */
+	public static SourceFile ofBytes(byte[] contents) {
+		return new SourceFile(ByteBuffer.wrap(contents));
+	}
+
+	private SourceFile(ByteBuffer source) {
+		this.source = source;
+		length = source.limit();
+		position = 0;
+		offset = 0;
 		currentLine = 1;
 	}
 
 	char getSource() {
-		try {
-			int c = source.read();
-
-			if (c == -1) {
-				c = EOT;
-			} else if (c == EOL) {
-				currentLine++;
-			}
-			return (char) c;
-		} catch (java.io.IOException s) {
+		if (position == length) {
+			offset = length;
 			return EOT;
 		}
+		offset = position;
+		var c = (char) (source.get(position++) & 0xff);
+		if (c == EOL) {
+			currentLine++;
+		}
+		return c;
 	}
 
 	int getCurrentLine() {
 		return currentLine;
 	}
+
+	// Returns the offset of the character last returned by getSource, or the
+	// length of the text once it has all been read.
+	int getOffset() {
+		return offset;
+	}
+
+	char charAt(int offset) {
+		return (char) (source.get(offset) & 0xff);
+	}
+
+	// Returns true iff the text from start is the given word.
+	boolean matches(int start, String word) {
+		for (var i = 0; i < word.length(); i++) {
+			if (charAt(start + i) != word.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	String getSpelling(int start, int end) {
+		var bytes = new byte[end - start];
+		source.get(start, bytes);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
 }
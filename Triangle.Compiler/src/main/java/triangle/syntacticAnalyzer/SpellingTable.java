@@ -0,0 +1,91 @@
+/*
+ * @(#)SpellingTable.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.syntacticAnalyzer;
+
+/**
+ * The spellings of the identifiers, operators and literals met by one
+ * scanner, so that each is made into a String only the first time it is
+ * seen.
+ *
+ * <p>
+ * A spelling is looked up by its offsets into the source text, in an open
+ * addressing table, and only a new one is copied out. New spellings are
+ * interned, so every occurrence of a spelling is the same String, and is the
+ * same as any string literal with that spelling, such as the names in the
+ * standard environment: later passes may compare spellings with ==.
+ * </p>
+ */
+final class SpellingTable {
+
+	private String[] spellings = new String[256];
+
+	private int count = 0;
+
+	/**
+	 * @return the spelling of the text from start up to end.
+	 */
+	String intern(SourceFile source, int start, int end) {
+		var hash = 0;
+		for (var i = start; i < end; i++) {
+			hash = 31 * hash + source.charAt(i);
+		}
+
+		var mask = spellings.length - 1;
+		var slot = spread(hash) & mask;
+		String spelling;
+		while ((spelling = spellings[slot]) != null) {
+			// String.hashCode is the same sum, and is cached in each String
+			if (spelling.hashCode() == hash && matches(spelling, source, start, end)) {
+				return spelling;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		spelling = source.getSpelling(start, end).intern();
+		spellings[slot] = spelling;
+		if (++count * 2 > spellings.length) {
+			grow();
+		}
+		return spelling;
+	}
+
+	private static boolean matches(String spelling, SourceFile source, int start, int end) {
+		return spelling.length() == end - start && source.matches(start, spelling);
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	// Doubles the table, keeping it at most half full.
+	private void grow() {
+		var old = spellings;
+		spellings = new String[old.length * 2];
+		var mask = spellings.length - 1;
+		for (var spelling : old) {
+			if (spelling != null) {
+				var slot = spread(spelling.hashCode()) & mask;
+				while (spellings[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				spellings[slot] = spelling;
+			}
+		}
+	}
+}
@@ -18,26 +18,25 @@
 
 package triangle.syntacticAnalyzer;
 
-final class Token {
+public final class Token {
 
 	protected Kind kind;
 	protected String spelling;
 	protected SourcePosition position;
 
+	// the scanner has already told reserved words from identifiers
 	public Token(Kind kind, String spelling, SourcePosition position) {
 
-		// If this token is an identifier, is it also a reserved word?
-		if (kind == Kind.IDENTIFIER) {
-			this.kind = Kind.fromSpelling(spelling);
-		} else {
-			this.kind = kind;
-		}
-
+		this.kind = kind;
 		this.spelling = spelling;
 		this.position = position;
 
 	}
 
+	public Kind getKind() {
+		return kind;
+	}
+
 	public static String spell(Kind kind) {
 		return kind.spelling;
 	}
@@ -54,6 +53,7 @@ final class Token {
 		INTLITERAL("<int>"), CHARLITERAL("<char>"), IDENTIFIER("<identifier>"), OPERATOR("<operator>"),
 
 		// reserved words - keep in alphabetical order for ease of maintenance...
+		// (a new one must also be added to Scanner.reservedWord)
 		ARRAY("array"), BEGIN("begin"), CONST("const"), DO("do"), ELSE("else"), END("end"), FUNC("func"), IF("if"), IN("in"), LET("let"), LOOP("loop"), OF("of"),
 		PROC("proc"), RECORD("record"), THEN("then"), TYPE("type"), VAR("var"), WHILE("while"),
 
@@ -71,34 +71,6 @@ final class Token {
 	    private Kind(String spelling) {
 	        this.spelling = spelling;
 	    }
-	    
-	    /**
-	     * iterate over the reserved words above to find the one with a given spelling
-	     * need to specify firstReservedWord and lastReservedWord (inclusive) for this
-	     * to work!
-	     * 
-	     * @return Kind.IDENTIFIER if no matching token class found
-	     */
-	    public static Kind fromSpelling(String spelling) {
-	    	boolean isRW = false;
-	    	for (Kind kind: Kind.values()) {
-	    		if (kind == firstReservedWord) {
-	    			isRW = true;
-	    		}
-	    		
-	    		if (isRW && kind.spelling.equals(spelling)) {
-	    			return kind;
-	    		}
-	    		
-	    		if (kind == lastReservedWord) {
-	    			// if we get here, we've not found a match, so break and return failure
-	    			break;
-	    		}
-	    	}
-	    	return Kind.IDENTIFIER;
-	    }
-	    
-	    private final static Kind firstReservedWord = ARRAY, lastReservedWord = WHILE;
 	}
 
 }
@@ -21,6 +21,7 @@ package triangle.treeDrawer;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Point;
+import java.util.ArrayDeque;
 
 public class DrawingTree {
 
@@ -51,21 +52,31 @@ public class DrawingTree {
 	private final int FIXED_FONT_HEIGHT = 10;
 	private final Color nodeColor = new Color(250, 220, 100);
 
+	// Painting and positioning work through a stack of the trees still to do,
+	// as a long sequence makes the drawing as deep as it is long.
+
 	public void paint(Graphics graphics) {
-		graphics.setColor(nodeColor);
-		graphics.fillRect(pos.x, pos.y, width, height);
-		graphics.setColor(Color.black);
-		graphics.drawRect(pos.x, pos.y, width - 1, height - 1);
-		graphics.drawString(caption, pos.x + 2, pos.y + (height + FIXED_FONT_HEIGHT) / 2);
+		var pending = new ArrayDeque<DrawingTree>();
+		pending.push(this);
+		while (!pending.isEmpty()) {
+			var tree = pending.pop();
+			graphics.setColor(nodeColor);
+			graphics.fillRect(tree.pos.x, tree.pos.y, tree.width, tree.height);
+			graphics.setColor(Color.black);
+			graphics.drawRect(tree.pos.x, tree.pos.y, tree.width - 1, tree.height - 1);
+			graphics.drawString(tree.caption, tree.pos.x + 2, tree.pos.y + (tree.height + FIXED_FONT_HEIGHT) / 2);
 
-		if (children != null) {
-			for (DrawingTree child : children) {
-				child.paint(graphics);
+			if (tree.parent != null) {
+				var parent = tree.parent;
+				graphics.drawLine(tree.pos.x + tree.width / 2, tree.pos.y, parent.pos.x + parent.width / 2,
+						parent.pos.y + parent.height);
 			}
-		}
 
-		if (parent != null) {
-			graphics.drawLine(pos.x + width / 2, pos.y, parent.pos.x + parent.width / 2, parent.pos.y + parent.height);
+			if (tree.children != null) {
+				for (int i = tree.children.length - 1; i >= 0; i--) {
+					pending.push(tree.children[i]);
+				}
+			}
 		}
 	}
 
@@ -74,13 +85,20 @@ public class DrawingTree {
 		this.pos.x = pos.x + this.offset.x;
 		this.pos.y = pos.y + this.offset.y;
 
-		Point temp = new Point(this.pos.x, this.pos.y);
-
-		if (children != null) {
-			for (DrawingTree child : children) {
-				child.position(temp);
-				temp.x += child.offset.x;
-				temp.y = this.pos.y + children[0].offset.y;
+		var pending = new ArrayDeque<DrawingTree>();
+		pending.push(this);
+		while (!pending.isEmpty()) {
+			var tree = pending.pop();
+			if (tree.children != null) {
+				// each child is placed relative to the offsets of those before it
+				Point temp = new Point(tree.pos.x, tree.pos.y);
+				for (DrawingTree child : tree.children) {
+					child.pos.x = temp.x + child.offset.x;
+					child.pos.y = temp.y + child.offset.y;
+					pending.push(child);
+					temp.x += child.offset.x;
+					temp.y = tree.pos.y + tree.children[0].offset.y;
+				}
 			}
 		}
 	}
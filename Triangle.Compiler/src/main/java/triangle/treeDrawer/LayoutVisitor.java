@@ -19,6 +19,7 @@
 package triangle.treeDrawer;
 
 import java.awt.FontMetrics;
+import java.util.ArrayList;
 
 import triangle.abstractSyntaxTrees.Program;
 import triangle.abstractSyntaxTrees.actuals.ConstActualParameter;
@@ -35,6 +36,7 @@ import triangle.abstractSyntaxTrees.aggregates.SingleRecordAggregate;
 import triangle.abstractSyntaxTrees.commands.*;
 import triangle.abstractSyntaxTrees.declarations.BinaryOperatorDeclaration;
 import triangle.abstractSyntaxTrees.declarations.ConstDeclaration;
+import triangle.abstractSyntaxTrees.declarations.Declaration;
 import triangle.abstractSyntaxTrees.declarations.FuncDeclaration;
 import triangle.abstractSyntaxTrees.declarations.ProcDeclaration;
 import triangle.abstractSyntaxTrees.declarations.SequentialDeclaration;
@@ -152,9 +154,19 @@ public class LayoutVisitor implements ActualParameterVisitor<Void, DrawingTree>,
 
 	@Override
 	public DrawingTree visitSequentialCommand(SequentialCommand ast, Void obj) {
-		var d1 = ast.C1.visit(this);
-		var d2 = ast.C2.visit(this);
-		return layoutBinary("Seq.Com.", d1, d2);
+		// down the left spine of the sequence, then back up it, without recursion
+		var spine = new ArrayList<SequentialCommand>();
+		Command c1 = ast;
+		while (c1 instanceof SequentialCommand sequence) {
+			spine.add(sequence);
+			c1 = sequence.C1;
+		}
+		var d1 = c1.visit(this);
+		for (var i = spine.size() - 1; i >= 0; i--) {
+			var d2 = spine.get(i).C2.visit(this);
+			d1 = layoutBinary("Seq.Com.", d1, d2);
+		}
+		return d1;
 	}
 
 	@Override
@@ -281,9 +293,18 @@ public class LayoutVisitor implements ActualParameterVisitor<Void, DrawingTree>,
 
 	@Override
 	public DrawingTree visitSequentialDeclaration(SequentialDeclaration ast, Void obj) {
-		var d1 = ast.D1.visit(this);
-		var d2 = ast.D2.visit(this);
-		return layoutBinary("Seq.Decl.", d1, d2);
+		var spine = new ArrayList<SequentialDeclaration>();
+		Declaration d = ast;
+		while (d instanceof SequentialDeclaration sequence) {
+			spine.add(sequence);
+			d = sequence.D1;
+		}
+		var d1 = d.visit(this);
+		for (var i = spine.size() - 1; i >= 0; i--) {
+			var d2 = spine.get(i).D2.visit(this);
+			d1 = layoutBinary("Seq.Decl.", d1, d2);
+		}
+		return d1;
 	}
 
 	@Override
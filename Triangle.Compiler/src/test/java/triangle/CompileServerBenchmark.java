@@ -0,0 +1,120 @@
+/*
+ * @(#)CompileServerBenchmark.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Compares the latency of compiling each program in programs/ with a cold tc
+ * (a new JVM per program), with a thin client talking to a warm compile
+ * server (a new, small JVM per program), and with the request alone, sent
+ * from a JVM that is already running.
+ *
+ * <p>
+ * Run with {@code gradle :Triangle.Compiler:benchmark}, optionally giving the
+ * programs directory with {@code --args}.
+ * </p>
+ */
+public class CompileServerBenchmark {
+
+	static final int warmups = 20, rounds = 5;
+
+	static final String java = ProcessHandle.current().info().command().orElse("java");
+
+	static final String classPath = System.getProperty("java.class.path");
+
+	public static void main(String[] args) throws Exception {
+		var directory = Path.of(args.length > 0 ? args[0] : "../programs");
+		if (!Files.isDirectory(directory)) {
+			directory = Path.of("programs");
+		}
+		List<Path> programs;
+		try (var files = Files.list(directory)) {
+			programs = files.filter(f -> f.toString().endsWith(".tri")).sorted().toList();
+		}
+
+		var scratch = Files.createTempDirectory("tc-benchmark");
+		var socket = scratch.resolve("tc.sock");
+		var objectName = "--objectName=" + scratch.resolve("obj.tam");
+		var server = new CompileServer(socket);
+		var serving = new Thread(() -> {
+			try {
+				server.serve();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+		serving.start();
+
+		// warm the server's JIT
+		for (var round = 0; round < warmups; round++) {
+			for (var program : programs) {
+				CompileClient.compile(socket, Path.of(""), new String[] { program.toString(), objectName });
+			}
+		}
+
+		System.out.println("best time per compile (ms)     cold tc   client->server   request only");
+		long cold = 0, client = 0, request = 0;
+		for (var program : programs) {
+			var c = best(() -> time(java, "-cp", classPath, "triangle.Compiler", program.toString(), objectName));
+			var w = best(() -> time(java, "-cp", classPath, "-Dtriangle.socket=" + socket, "triangle.CompileClient",
+					program.toString(), objectName));
+			var r = best(() -> {
+				var start = System.nanoTime();
+				CompileClient.compile(socket, Path.of(""), new String[] { program.toString(), objectName });
+				return System.nanoTime() - start;
+			});
+			System.out.printf("%-28s %10.1f %16.1f %14.2f%n", program.getFileName(), c / 1e6, w / 1e6, r / 1e6);
+			cold += c;
+			client += w;
+			request += r;
+		}
+		System.out.printf("%-28s %10.1f %16.1f %14.2f%n", "total", cold / 1e6, client / 1e6, request / 1e6);
+
+		CompileClient.stop(socket);
+		serving.join();
+		Files.deleteIfExists(scratch.resolve("obj.tam"));
+		Files.deleteIfExists(scratch);
+	}
+
+	interface Timed {
+		long run() throws Exception;
+	}
+
+	// Returns the least of several timings, in ns.
+	static long best(Timed timed) throws Exception {
+		var least = Long.MAX_VALUE;
+		for (var round = 0; round < rounds; round++) {
+			least = Math.min(least, timed.run());
+		}
+		return least;
+	}
+
+	// Returns the time, in ns, to run a command to completion.
+	static long time(String... command) throws IOException, InterruptedException {
+		var start = System.nanoTime();
+		var process = new ProcessBuilder(List.of(command)).redirectErrorStream(true)
+				.redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+		process.waitFor();
+		return System.nanoTime() - start;
+	}
+}
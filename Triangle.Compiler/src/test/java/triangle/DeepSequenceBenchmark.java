@@ -0,0 +1,140 @@
+/*
+ * @(#)DeepSequenceBenchmark.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import triangle.abstractSyntaxTrees.Program;
+import triangle.codeGenerator.Emitter;
+import triangle.codeGenerator.Encoder;
+import triangle.contextualAnalyzer.Checker;
+import triangle.contextualAnalyzer.SummaryVisitor;
+import triangle.optimiser.ConstantFolder;
+import triangle.syntacticAnalyzer.Parser;
+import triangle.syntacticAnalyzer.Scanner;
+import triangle.syntacticAnalyzer.SourceFile;
+
+/**
+ * Times each pass of the compiler over a program of one long sequence of
+ * statements, after a long sequence of declarations, all run on a thread
+ * with a small stack to show that no pass recurses along a sequence.
+ *
+ * <p>
+ * Run with
+ * {@code gradle :Triangle.Compiler:benchmark -PbenchmarkClass=triangle.DeepSequenceBenchmark},
+ * optionally giving the number of statements with {@code --args}; the default
+ * is a million.
+ * </p>
+ */
+public class DeepSequenceBenchmark {
+
+	static final int rounds = 3, stackSize = 256 * 1024;
+
+	public static void main(String[] args) throws Exception {
+		var statements = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		var source = generate(statements);
+		System.out.printf("%d statements, %d bytes of source, on a %d KB stack%n", statements, source.length,
+				stackSize / 1024);
+
+		var failure = new Throwable[1];
+		var passes = new Thread(null, () -> {
+			try {
+				run(source);
+			} catch (Throwable e) {
+				failure[0] = e;
+			}
+		}, "passes", stackSize);
+		passes.start();
+		passes.join();
+		if (failure[0] != null) {
+			throw new IllegalStateException(failure[0]);
+		}
+	}
+
+	static void run(byte[] source) {
+		long parse = Long.MAX_VALUE, summary = Long.MAX_VALUE, check = Long.MAX_VALUE, encode = Long.MAX_VALUE,
+				fold = Long.MAX_VALUE;
+		var instructions = 0;
+		for (var round = 0; round < rounds; round++) {
+			var reporter = new ErrorReporter(true);
+
+			var start = System.nanoTime();
+			Program program = new Parser(new Scanner(SourceFile.ofBytes(source)), reporter).parseProgram();
+			parse = Math.min(parse, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			program.visit(new SummaryVisitor(), null);
+			summary = Math.min(summary, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			new Checker(reporter).check(program);
+			check = Math.min(check, System.nanoTime() - start);
+
+			var emitter = new Emitter(reporter);
+			start = System.nanoTime();
+			new Encoder(emitter, reporter).encodeRun(program, false);
+			encode = Math.min(encode, System.nanoTime() - start);
+
+			if (reporter.getNumErrors() > 0) {
+				throw new IllegalStateException(reporter.getNumErrors() + " errors in the generated program");
+			}
+			instructions = emitter.getObjectProgram().length;
+
+			// folding rewrites the tree, so it goes last, with its tracing
+			// output discarded
+			var out = System.out;
+			System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+			start = System.nanoTime();
+			program.visit(new ConstantFolder());
+			fold = Math.min(fold, System.nanoTime() - start);
+			System.setOut(out);
+		}
+
+		System.out.printf("best of %d (ms): parse %.0f, summary %.0f, check %.0f, encode %.0f, fold %.0f%n", rounds,
+				parse / 1e6, summary / 1e6, check / 1e6, encode / 1e6, fold / 1e6);
+		System.out.printf("%d instructions%n", instructions);
+	}
+
+	// Returns a program of a constant declaration for every tenth statement,
+	// then the statements, as one sequence in a single block.
+	static byte[] generate(int statements) {
+		var text = new StringBuilder("let\n  var x: Integer;\n  var y: Integer");
+		for (var d = 0; d * 10 < statements; d++) {
+			text.append(";\n  const k").append(d).append(" ~ ").append(d % 1000);
+		}
+		text.append("\nin\nbegin\n  x := 0;\n  y := 0");
+		for (var s = 0; s < statements; s++) {
+			text.append(";\n  ");
+			switch (s % 3) {
+			case 0:
+				text.append("x := x + k").append(s / 10);
+				break;
+			case 1:
+				text.append("if x > k").append(s / 10).append(" then y := y - 1 else y := x");
+				break;
+			default:
+				text.append("putint(y)");
+			}
+		}
+		text.append("\nend\n");
+		return text.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+}
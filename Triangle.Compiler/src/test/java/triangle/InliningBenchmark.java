@@ -0,0 +1,114 @@
+/*
+ * @(#)InliningBenchmark.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import triangle.abstractMachine.Instruction;
+import triangle.abstractMachine.TamVm;
+
+/**
+ * Compiles each program in programs/ with and without inlining, runs both on
+ * the instruction engine with the same input, checks that they write the same
+ * output, and compares the number of instructions each dispatches. Counting
+ * dispatches rather than timing the runs shows the calls, returns and
+ * parameter passing removed, whatever the speed of the host.
+ *
+ * <p>
+ * Run with
+ * {@code gradle :Triangle.Compiler:benchmark -PbenchmarkClass=triangle.InliningBenchmark},
+ * optionally giving the programs directory and the largest routine body to
+ * inline with {@code --args}.
+ * </p>
+ */
+public class InliningBenchmark {
+
+	// what the programs read; the lines of q end the transactions of bank.tri,
+	// which otherwise reads forever
+	static final byte[] input = "5\n7\nabc\n3\nq\nq\nq\nq\n".getBytes(StandardCharsets.US_ASCII);
+
+	public static void main(String[] args) throws IOException {
+		var directory = Path.of(args.length > 0 ? args[0] : "../programs");
+		if (!Files.isDirectory(directory)) {
+			directory = Path.of("programs");
+		}
+		List<Path> programs;
+		try (var files = Files.list(directory)) {
+			programs = files.filter(f -> f.toString().endsWith(".tri")).sorted().toList();
+		}
+
+		var plain = new Compiler.CLIOptions();
+		var inlining = new Compiler.CLIOptions();
+		inlining.inline = true;
+		if (args.length > 1) {
+			inlining.inlineSize = Integer.parseInt(args[1]);
+		}
+
+		System.out.printf("%-28s %8s %8s %12s %12s %8s%n", "program", "code", "inlined", "dispatches", "inlined",
+				"saved");
+		long before = 0, after = 0;
+		for (var program : programs) {
+			var plainCode = new Compiler(plain).compile(program).getObjectProgram();
+			var inlinedCode = new Compiler(inlining).compile(program).getObjectProgram();
+			if (plainCode == null || inlinedCode == null) {
+				continue;
+			}
+			var plainRun = new Run(plainCode);
+			var inlinedRun = new Run(inlinedCode);
+			if (plainRun.status != inlinedRun.status || !Arrays.equals(plainRun.output, inlinedRun.output)) {
+				System.out.printf("%-28s the inlined program does not do the same%n", program.getFileName());
+				continue;
+			}
+			before += plainRun.dispatches;
+			after += inlinedRun.dispatches;
+			System.out.printf("%-28s %8d %8d %12d %12d %7.1f%%%n", program.getFileName(), plainCode.length,
+					inlinedCode.length, plainRun.dispatches, inlinedRun.dispatches,
+					saving(plainRun.dispatches, inlinedRun.dispatches));
+		}
+		System.out.printf("%-28s %8s %8s %12d %12d %7.1f%%%n", "total", "", "", before, after, saving(before, after));
+	}
+
+	static double saving(long before, long after) {
+		return before == 0 ? 0 : 100.0 * (before - after) / before;
+	}
+
+	// The outcome of running a program on the instruction engine.
+	static class Run {
+
+		final int status;
+		final byte[] output;
+		final long dispatches;
+
+		Run(Instruction[] program) {
+			var out = new ByteArrayOutputStream();
+			var vm = new TamVm(program, new ByteArrayInputStream(input), out);
+			vm.setEngine(TamVm.instructionEngine);
+			status = vm.run();
+			output = out.toByteArray();
+			dispatches = vm.getDispatchCount();
+		}
+	}
+}
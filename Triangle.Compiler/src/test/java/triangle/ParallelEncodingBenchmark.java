@@ -0,0 +1,121 @@
+/*
+ * @(#)ParallelEncodingBenchmark.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import triangle.abstractMachine.Instruction;
+import triangle.abstractMachine.ObjectFile;
+import triangle.abstractSyntaxTrees.Program;
+import triangle.codeGenerator.Emitter;
+import triangle.codeGenerator.Encoder;
+import triangle.contextualAnalyzer.Checker;
+import triangle.syntacticAnalyzer.Parser;
+import triangle.syntacticAnalyzer.Scanner;
+import triangle.syntacticAnalyzer.SourceFile;
+
+/**
+ * Compares the time to encode a program of many routines one body after
+ * another with the time to encode the bodies in parallel and link them, and
+ * checks that both give the same object program.
+ *
+ * <p>
+ * Run with
+ * {@code gradle :Triangle.Compiler:benchmark -PbenchmarkClass=triangle.ParallelEncodingBenchmark},
+ * optionally giving the number of routines and of statements in each with
+ * {@code --args}.
+ * </p>
+ */
+public class ParallelEncodingBenchmark {
+
+	static final int warmups = 5, rounds = 10;
+
+	public static void main(String[] args) throws IOException {
+		var routines = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		var statements = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		var reporter = new ErrorReporter(true);
+		Program program = new Parser(new Scanner(SourceFile.ofBytes(generate(routines, statements))), reporter)
+				.parseProgram();
+		new Checker(reporter).check(program);
+
+		var pool = ForkJoinPool.commonPool();
+		var sequential = encode(program, null);
+		if (!Arrays.equals(ObjectFile.toBytes(sequential), ObjectFile.toBytes(encode(program, pool)))) {
+			throw new IllegalStateException("the object programs differ");
+		}
+
+		for (var round = 0; round < warmups; round++) {
+			encode(program, null);
+			encode(program, pool);
+		}
+		long oneByOne = Long.MAX_VALUE, parallel = Long.MAX_VALUE;
+		for (var round = 0; round < rounds; round++) {
+			var start = System.nanoTime();
+			encode(program, null);
+			oneByOne = Math.min(oneByOne, System.nanoTime() - start);
+			start = System.nanoTime();
+			encode(program, pool);
+			parallel = Math.min(parallel, System.nanoTime() - start);
+		}
+
+		System.out.printf("%d routines of %d statements, %d instructions, %d threads%n", routines, statements,
+				sequential.length, pool.getParallelism());
+		System.out.printf("best of %d: one by one %.1f ms, in parallel %.1f ms, %.2fx%n", rounds, oneByOne / 1e6,
+				parallel / 1e6, (double) oneByOne / parallel);
+	}
+
+	static Instruction[] encode(Program program, ForkJoinPool pool) {
+		var reporter = new ErrorReporter(true);
+		var emitter = new Emitter(reporter);
+		new Encoder(emitter, reporter, pool).encodeRun(program, false);
+		return emitter.getObjectProgram();
+	}
+
+	// Returns a program of the given number of procedures, each of the given
+	// number of statements and calling the one before, then a call of the last.
+	static byte[] generate(int routines, int statements) {
+		var text = new StringBuilder("let\n  var total: Integer");
+		for (var p = 0; p < routines; p++) {
+			text.append(";\n  proc step").append(p).append(" (var n: Integer) ~\n");
+			text.append("    let var count: Integer; var items: array 4 of Integer in\n    begin\n      count := n");
+			for (var s = 0; s < statements; s++) {
+				switch (s % 4) {
+				case 0:
+					text.append(";\n      count := count + ").append(s);
+					break;
+				case 1:
+					text.append(";\n      if count > ").append(s).append(" then n := n - 1 else items[count // 4] := n");
+					break;
+				case 2:
+					text.append(";\n      while count > 0 do count := count - 2");
+					break;
+				default:
+					text.append(p == 0 ? ";\n      putint(n)" : ";\n      step" + (p - 1) + "(var n)");
+				}
+			}
+			text.append("\n    end");
+		}
+		text.append("\nin\n  step").append(routines - 1).append("(var total)\n");
+		return text.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * @(#)PeepholeBenchmark.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sampullara.cli.Args;
+
+import triangle.optimiser.PeepholeOptimiser;
+
+/**
+ * Compiles each program in programs/, then optimises its object program with
+ * the peephole optimiser, runs both on the instruction engine with the same
+ * input as {@link InliningBenchmark}, checks that they write the same output,
+ * and reports how much smaller the code is and how many fewer instructions
+ * are dispatched.
+ *
+ * <p>
+ * Run with
+ * {@code gradle :Triangle.Compiler:benchmark -PbenchmarkClass=triangle.PeepholeBenchmark},
+ * optionally giving the programs directory, and any options to compile with,
+ * such as {@code --folding}, with {@code --args}.
+ * </p>
+ */
+public class PeepholeBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		var directory = Path.of(args.length > 0 ? args[0] : "../programs");
+		if (!Files.isDirectory(directory)) {
+			directory = Path.of("programs");
+		}
+		List<Path> programs;
+		try (var files = Files.list(directory)) {
+			programs = files.filter(f -> f.toString().endsWith(".tri")).sorted().toList();
+		}
+
+		var options = new Compiler.CLIOptions();
+		Args.parse(options, Arrays.copyOfRange(args, Math.min(1, args.length), args.length));
+
+		System.out.printf("%-28s %8s %8s %8s %12s %12s %8s%n", "program", "code", "peephole", "threaded",
+				"dispatches", "peephole", "saved");
+		long before = 0, after = 0;
+		for (var program : programs) {
+			var code = new Compiler(options).compile(program).getObjectProgram();
+			if (code == null) {
+				continue;
+			}
+			var optimiser = new PeepholeOptimiser();
+			var optimised = optimiser.optimise(code);
+			var run = new InliningBenchmark.Run(code);
+			var optimisedRun = new InliningBenchmark.Run(optimised);
+			if (run.status != optimisedRun.status || !Arrays.equals(run.output, optimisedRun.output)) {
+				System.out.printf("%-28s the optimised program does not do the same%n", program.getFileName());
+				continue;
+			}
+			before += run.dispatches;
+			after += optimisedRun.dispatches;
+			System.out.printf("%-28s %8d %8d %8d %12d %12d %7.1f%%%n", program.getFileName(), code.length,
+					optimised.length, optimiser.getJumpsThreaded(), run.dispatches, optimisedRun.dispatches,
+					InliningBenchmark.saving(run.dispatches, optimisedRun.dispatches));
+		}
+		System.out.printf("%-28s %8s %8s %8s %12d %12d %7.1f%%%n", "total", "", "", "", before, after,
+				InliningBenchmark.saving(before, after));
+	}
+}
@@ -0,0 +1,88 @@
+package triangle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+/**
+ * Tests that the compile server and its client agree on the socket, and that
+ * a program compiled through them gives the same object code as tc.
+ */
+public class TestCompileServer {
+
+    @Test
+    public void testSocketPathOrder() {
+        String saved = System.getProperty("triangle.socket");
+        try {
+            System.clearProperty("triangle.socket");
+            assertEquals(CompileServer.defaultSocketPath(), CompileServer.socketPath(null));
+            System.setProperty("triangle.socket", "/tmp/property.sock");
+            assertEquals(Path.of("/tmp/property.sock"), CompileServer.socketPath(null));
+            assertEquals(Path.of("/tmp/given.sock"), CompileServer.socketPath("/tmp/given.sock"));
+        } finally {
+            restore(saved);
+        }
+    }
+
+    @Test
+    public void testRoundTripThroughProperty() throws Exception {
+        String saved = System.getProperty("triangle.socket");
+        Path directory = Files.createTempDirectory("tc-server");
+        Path socket = directory.resolve("tc.sock");
+        Path objectFile = directory.resolve("obj.tam");
+        Path source = directory.resolve("hi.tri");
+        Thread serving = null;
+        try {
+            Files.write(source, "let var x: Integer in begin x := 6; putint(x * 7) end".getBytes());
+            System.setProperty("triangle.socket", socket.toString());
+
+            // the server is started as from the command line, with no socket
+            // named, so it must take the property
+            serving = new Thread(() -> CompileServer.main(new String[0]));
+            serving.start();
+            for (int wait = 0; wait < 500 && !CompileServer.isListening(socket); wait++) {
+                Thread.sleep(10);
+            }
+            assertTrue(CompileServer.isListening(socket));
+
+            // and the client finds it the same way
+            Path socketPath = CompileServer.socketPath(null);
+            assertEquals(socket, socketPath);
+            CompileClient.Reply reply = CompileClient.compile(socketPath, Path.of(""),
+                    new String[] { source.toString(), "--objectName=" + objectFile });
+            assertEquals(reply.output, 0, reply.status);
+            assertTrue(reply.output, reply.output.contains("Compilation was successful."));
+            byte[] expected = new Compiler(new Compiler.CLIOptions()).compile(source).toObjectFile();
+            assertArrayEquals(expected, Files.readAllBytes(objectFile));
+
+            assertEquals(0, CompileClient.stop(socketPath).status);
+            serving.join(5000);
+            assertFalse(serving.isAlive());
+            assertFalse(Files.exists(socket));
+        } finally {
+            restore(saved);
+            if (serving != null && serving.isAlive()) {
+                CompileClient.stop(socket);
+                serving.join(5000);
+            }
+            Files.deleteIfExists(objectFile);
+            Files.deleteIfExists(source);
+            Files.deleteIfExists(socket);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static void restore(String saved) {
+        if (saved == null) {
+            System.clearProperty("triangle.socket");
+        } else {
+            System.setProperty("triangle.socket", saved);
+        }
+    }
+}
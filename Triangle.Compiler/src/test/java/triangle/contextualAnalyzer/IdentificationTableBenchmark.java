@@ -0,0 +1,104 @@
+/*
+ * @(#)IdentificationTableBenchmark.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.contextualAnalyzer;
+
+import triangle.abstractSyntaxTrees.declarations.Declaration;
+import triangle.abstractSyntaxTrees.declarations.VarDeclaration;
+import triangle.abstractSyntaxTrees.terminals.Identifier;
+import triangle.syntacticAnalyzer.SourcePosition;
+
+/**
+ * Measures how the identification table scales with the number of
+ * declarations, entering and looking them up as the checker does for a
+ * program of 10k, 100k and 1M declarations.
+ *
+ * <p>
+ * Half the declarations are global; the rest are locals of procedures of a
+ * hundred declarations each, every one entered (with its duplicate check)
+ * and then used along with a global. Run with
+ * {@code gradle :Triangle.Compiler:benchmark -PbenchmarkClass=triangle.contextualAnalyzer.IdentificationTableBenchmark}.
+ * </p>
+ */
+public class IdentificationTableBenchmark {
+
+	static final int rounds = 5, procedureSize = 100;
+
+	static final int[] sizes = { 10000, 100000, 1000000 };
+
+	public static void main(String[] args) {
+		// warm up on the smallest size
+		for (var round = 0; round < 10; round++) {
+			run(sizes[0]);
+		}
+
+		System.out.println("declarations      best ms    ns per declaration");
+		for (var size : sizes) {
+			var best = Long.MAX_VALUE;
+			for (var round = 0; round < rounds; round++) {
+				best = Math.min(best, run(size));
+			}
+			System.out.printf("%12d %12.1f %17.1f%n", size, best / 1e6, (double) best / size);
+		}
+		System.out.println("(found " + found + ")");
+	}
+
+	static long found;
+
+	// Returns the time, in ns, to enter and use the given number of
+	// declarations.
+	static long run(int size) {
+		var globals = size / 2;
+		var globalNames = names("g", globals);
+		var localNames = names("l", procedureSize);
+		var position = new SourcePosition();
+
+		var start = System.nanoTime();
+		var table = new IdentificationTable();
+		// the standard environment, at level 0
+		table.enter("Integer", declaration("Integer", position));
+		table.openScope();
+		for (var i = 0; i < globals; i++) {
+			table.enter(globalNames[i], declaration(globalNames[i], position));
+		}
+		for (var entered = globals; entered < size; entered += procedureSize) {
+			table.openScope();
+			for (var i = 0; i < procedureSize; i++) {
+				table.enter(localNames[i], declaration(localNames[i], position));
+				if (table.retrieve(localNames[i]) != null && table.retrieve(globalNames[(entered + i) % globals]) != null) {
+					found++;
+				}
+			}
+			table.closeScope();
+		}
+		table.closeScope();
+		return System.nanoTime() - start;
+	}
+
+	static String[] names(String prefix, int count) {
+		var names = new String[count];
+		for (var i = 0; i < count; i++) {
+			names[i] = (prefix + i).intern();
+		}
+		return names;
+	}
+
+	static Declaration declaration(String name, SourcePosition position) {
+		return new VarDeclaration(new Identifier(name, position), null, position);
+	}
+}
@@ -0,0 +1,75 @@
+package triangle.syntacticAnalyser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import triangle.ErrorReporter;
+import triangle.abstractMachine.Instruction;
+import triangle.abstractMachine.TamVm;
+import triangle.abstractSyntaxTrees.Program;
+import triangle.abstractSyntaxTrees.visitors.ProgramVisitor;
+import triangle.codeGenerator.Emitter;
+import triangle.codeGenerator.Encoder;
+import triangle.contextualAnalyzer.Checker;
+import triangle.syntacticAnalyzer.Parser;
+import triangle.syntacticAnalyzer.Scanner;
+import triangle.syntacticAnalyzer.SourceFile;
+
+/**
+ * Compiles source text, with or without a pass over the checked program, and
+ * runs the object program, for the tests of the optimisers.
+ */
+final class Harness {
+
+    private Harness() {
+    }
+
+    /**
+     * Compiles the source, which must have no errors, running the pass, if it
+     * is not null, between checking and encoding.
+     */
+    static Instruction[] compile(String source, ProgramVisitor<Void, Void> pass) {
+        ErrorReporter reporter = new ErrorReporter(false, null);
+        Instruction[] program = compile(source.getBytes(), pass, reporter);
+        assertTrue(source, reporter.getDiagnostics().isEmpty());
+        return program;
+    }
+
+    /**
+     * Compiles the source as above, leaving any diagnostics in the reporter.
+     */
+    static Instruction[] compile(byte[] source, ProgramVisitor<Void, Void> pass, ErrorReporter reporter) {
+        Program program = new Parser(new Scanner(SourceFile.ofBytes(source)), reporter).parseProgram();
+        new Checker(reporter).check(program);
+        if (pass != null) {
+            program.visit(pass);
+        }
+        Emitter emitter = new Emitter(reporter);
+        new Encoder(emitter, reporter).encodeRun(program, false);
+        return emitter.getObjectProgram();
+    }
+
+    /**
+     * Runs the program, which must halt, with no input.
+     *
+     * @return what the program wrote.
+     */
+    static String run(Instruction[] program) {
+        return run(program, TamVm.halted);
+    }
+
+    /**
+     * Runs the program, which must stop with the given status, with no input.
+     *
+     * @return what the program wrote.
+     */
+    static String run(Instruction[] program, int status) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TamVm vm = new TamVm(program, new ByteArrayInputStream(new byte[0]), output);
+        assertEquals(status, vm.run());
+        return output.toString();
+    }
+}
@@ -0,0 +1,30 @@
+package triangle.syntacticAnalyser;
+
+import java.io.IOException;
+
+/**
+ * The sample programs that the compiler tests share. They are read from the
+ * programs directory, which is configured as a test resource in build.gradle.
+ */
+final class SamplePrograms {
+
+    /** Sample programs that compile without errors. */
+    static final String[] names = { "/hi.tri", "/factorials.tri", "/procedural.tri", "/records.tri", "/every.tri",
+            "/arrays.tri", "/while.tri", "/nesting.tri" };
+
+    /** The sample programs above, and two that have errors. */
+    static final String[] all = { "/hi.tri", "/factorials.tri", "/procedural.tri", "/records.tri", "/every.tri",
+            "/arrays.tri", "/while.tri", "/errors.tri", "/repeatuntil.tri", "/nesting.tri" };
+
+    private SamplePrograms() {
+    }
+
+    /**
+     * @return the source of the named program, such as "/hi.tri".
+     */
+    static byte[] load(String name) throws IOException {
+        try (var in = SamplePrograms.class.getResourceAsStream(name)) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * @(#)ScannerBenchmark.java
+ *
+ * Revisions and updates (c) 2022-2025 Sandy Brownlee. alexander.brownlee@stir.ac.uk
+ *
+ * Original release:
+ *
+ * Copyright (C) 1999, 2003 D.A. Watt and D.F. Brown
+ * Dept. of Computing Science, University of Glasgow, Glasgow G12 8QQ Scotland
+ * and School of Computer and Math Sciences, The Robert Gordon University,
+ * St. Andrew Street, Aberdeen AB25 1HG, Scotland.
+ * All rights reserved.
+ *
+ * This software is provided free for educational use only. It may
+ * not be used for commercial purposes without the prior written permission
+ * of the authors.
+ */
+
+package triangle.syntacticAnalyser;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import triangle.syntacticAnalyzer.Scanner;
+import triangle.syntacticAnalyzer.SourceFile;
+import triangle.syntacticAnalyzer.Token;
+
+/**
+ * Measures how many tokens per second the scanner produces, and the memory
+ * it allocates per token, on a large synthetic source program.
+ *
+ * <p>
+ * The program mixes declarations, reserved words, many distinct identifiers,
+ * literals, operators and comments. Run with
+ * {@code gradle :Triangle.Compiler:benchmark -PbenchmarkClass=triangle.syntacticAnalyser.ScannerBenchmark},
+ * optionally giving the number of statements with {@code --args}.
+ * </p>
+ */
+public class ScannerBenchmark {
+
+	static final int warmups = 5, rounds = 10;
+
+	private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	public static void main(String[] args) {
+		var statements = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		var source = generate(statements);
+
+		var tokens = 0L;
+		for (var round = 0; round < warmups; round++) {
+			tokens = scan(source);
+		}
+
+		var best = Long.MAX_VALUE;
+		var leastBytes = Long.MAX_VALUE;
+		for (var round = 0; round < rounds; round++) {
+			var before = threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+			var start = System.nanoTime();
+			scan(source);
+			best = Math.min(best, System.nanoTime() - start);
+			leastBytes = Math.min(leastBytes, threads.getThreadAllocatedBytes(Thread.currentThread().threadId()) - before);
+		}
+
+		System.out.printf("%d bytes of source, %d tokens%n", source.length, tokens);
+		System.out.printf("best of %d: %.1f ms, %.2f M tokens/s, %.1f bytes allocated per token%n", rounds, best / 1e6,
+				tokens * 1e3 / best, (double) leastBytes / tokens);
+	}
+
+	// Returns the number of tokens in the source, including the end.
+	static long scan(byte[] source) {
+		var scanner = new Scanner(SourceFile.ofBytes(source));
+		var tokens = 1L;
+		while (scanner.scan().getKind() != Token.Kind.EOT) {
+			tokens++;
+		}
+		return tokens;
+	}
+
+	// Returns a program of the given number of statements, in procedures of a
+	// hundred, each with its own local variables.
+	static byte[] generate(int statements) {
+		var text = new StringBuilder("let\n");
+		for (var p = 0; p * 100 < statements; p++) {
+			text.append("  proc step").append(p).append(" (var total: Integer) ~\n");
+			text.append("    let var count").append(p).append(": Integer; const limit").append(p)
+					.append(" ~ ").append(p % 1000).append(" in\n    begin\n");
+			for (var s = p * 100; s < Math.min(statements, (p + 1) * 100); s++) {
+				switch (s % 4) {
+				case 0:
+					text.append("      count").append(p).append(" := count").append(p).append(" + ").append(s % 997)
+							.append(";\n");
+					break;
+				case 1:
+					text.append("      if count").append(p).append(" >= limit").append(p)
+							.append(" then total := total * 2 else total := total - 1;\n");
+					break;
+				case 2:
+					text.append("      while count").append(p).append(" > 0 do count").append(p).append(" := count")
+							.append(p).append(" - 1; ! count down\n");
+					break;
+				default:
+					text.append("      put('x'); putint(total)   ! and show it\n");
+					text.append("      ;\n");
+				}
+			}
+			text.append("      total := total\n    end;\n");
+		}
+		text.append("  var total: Integer\nin\n  putint(total)\n");
+		return text.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+}
@@ -0,0 +1,115 @@
+package triangle.syntacticAnalyser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import triangle.Compilation;
+import triangle.Compiler;
+import triangle.ErrorReporter;
+import triangle.abstractMachine.Instruction;
+import triangle.abstractMachine.ObjectFile;
+import triangle.abstractMachine.TamVm;
+import triangle.abstractSyntaxTrees.Program;
+import triangle.contextualAnalyzer.Checker;
+import triangle.optimiser.AlgebraicSimplifier;
+import triangle.syntacticAnalyzer.Parser;
+import triangle.syntacticAnalyzer.Scanner;
+import triangle.syntacticAnalyzer.SourceFile;
+
+/**
+ * Tests that arithmetic is simplified only where the simpler expression has
+ * the same value, and fails where the original would.
+ */
+public class TestAlgebraicSimplification {
+
+    @Test
+    public void testIdentitiesAndAnnihilators() throws IOException {
+        String source = "let var x: Integer; var b: Boolean"
+                + " in begin x := 6; b := x > 2;"
+                + " putint(x + 0); putint(0 + x); putint(x * 1); putint(x / 1); putint(x - 0);"
+                + " putint(x * 0); putint(x // 1); putint(x - x);"
+                + " if b /\\ true then put('a') else put('b'); if false \\/ b then put('c') else put('d');"
+                + " if b /\\ false then put('e') else put('f'); if \\ \\ b then put('g') else put('h') end";
+        AlgebraicSimplifier simplifier = new AlgebraicSimplifier();
+        Instruction[] simplified = Harness.compile(source, simplifier);
+        assertEquals(12, simplifier.getIdentitiesRemoved());
+        // 0 + x and false \/ b
+        assertEquals(2, simplifier.getOperandsReordered());
+        assertTrue(simplified.length < Harness.compile(source, null).length);
+        assertEquals("66666000acfg", Harness.run(simplified));
+    }
+
+    @Test
+    public void testMultiplicationsReduced() throws IOException {
+        String source = "let var x: Integer; var a: array 2 of Integer; func twice(k: Integer): Integer ~ 2 * k"
+                + " in begin x := 7; a[1] := 3; putint(x * 2); putint(twice(x)); x**; putint(x);"
+                + " putint(a[1] * 2); a[1]**; putint(a[1]); putint(x * 4) end";
+        AlgebraicSimplifier simplifier = new AlgebraicSimplifier();
+        Instruction[] simplified = Harness.compile(source, simplifier);
+        // neither the element of a nor the multiplication by 4
+        assertEquals(3, simplifier.getMultiplicationsReduced());
+        assertEquals(Harness.run(Harness.compile(source, null)), Harness.run(simplified));
+    }
+
+    @Test
+    public void testFailuresKept() throws IOException {
+        String[] sources = {
+                // the doubled value overflows either way
+                "let var x: Integer in begin x := maxint; x**; putint(x) end",
+                "let var x: Integer in begin x := 20000; putint(2 * x) end",
+                // the operand that is annihilated fails
+                "let var x: Integer in begin x := 0; putint((7 / x) * 0) end",
+                "let var x: Integer; func sq(k: Integer): Integer ~ k * k"
+                        + " in begin x := 1000; putint(sq(x) * 0) end" };
+        for (String source : sources) {
+            int status = status(Harness.compile(source, new AlgebraicSimplifier()));
+            assertNotEquals(source, TamVm.halted, status);
+            assertEquals(source, status(Harness.compile(source, null)), status);
+        }
+    }
+
+    @Test
+    public void testNothingSimplified() throws IOException {
+        String source = "let var x: Integer; var y: Integer"
+                + " in begin x := 3; y := 4; putint(x * y + y - x); putint(x / 2); putint(y // 3) end";
+        AlgebraicSimplifier simplifier = new AlgebraicSimplifier();
+        Instruction[] simplified = Harness.compile(source, simplifier);
+        assertEquals(0, simplifier.getIdentitiesRemoved() + simplifier.getMultiplicationsReduced());
+        assertArrayEquals(ObjectFile.toBytes(Harness.compile(source, null)), ObjectFile.toBytes(simplified));
+    }
+
+    @Test
+    public void testErrorsReportedOnly() {
+        Compiler.CLIOptions options = new Compiler.CLIOptions();
+        options.inline = options.propagate = options.simplify = options.hoist = true;
+        Compilation compilation = new Compiler(options).compile("errors.tri",
+                "let var x: Integer in begin x := y + 0; putint(x * 2) end".getBytes());
+        assertFalse(compilation.isSuccessful());
+        assertEquals(1, compilation.getDiagnostics().size());
+    }
+
+    @Test
+    public void testUndeclaredNameNotSimplified() throws IOException {
+        // simplified directly, as the compiler does not get that far
+        ErrorReporter reporter = new ErrorReporter(false, null);
+        Program program = new Parser(new Scanner(SourceFile.ofBytes("putint(y * 2 + 0)".getBytes())), reporter)
+                .parseProgram();
+        new Checker(reporter).check(program);
+        AlgebraicSimplifier simplifier = new AlgebraicSimplifier();
+        program.visit(simplifier);
+        assertEquals(1, simplifier.getIdentitiesRemoved());
+    }
+
+    private static int status(Instruction[] program) {
+        return new TamVm(program, new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream()).run();
+    }
+}
@@ -0,0 +1,179 @@
+package triangle.syntacticAnalyser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import triangle.Compilation;
+import triangle.CompileCache;
+import triangle.Compiler;
+
+/**
+ * Tests the compile cache: a program compiled again is taken from the cache,
+ * with the same object code; a change to the source or to the options is a
+ * miss; damaged entries are recompiled; and the cache stays within its size.
+ */
+public class TestCompileCache {
+
+    @Test
+    public void testHitGivesSameObjectCode() throws Exception {
+        Path directory = Files.createTempDirectory("tc-cache");
+        try {
+            CompileCache cache = new CompileCache(directory, 1 << 20);
+            Compiler compiler = new Compiler(new Compiler.CLIOptions(), cache);
+            Compiler uncached = new Compiler(new Compiler.CLIOptions());
+
+            for (String program : SamplePrograms.names) {
+                byte[] expected = uncached.compile(program, SamplePrograms.load(program)).toObjectFile();
+                assertArrayEquals("miss on " + program, expected,
+                        compiler.compile(program, SamplePrograms.load(program)).toObjectFile());
+                assertArrayEquals("hit on " + program, expected,
+                        compiler.compile(program, SamplePrograms.load(program)).toObjectFile());
+            }
+            assertEquals(SamplePrograms.names.length, cache.getHits());
+            assertEquals(SamplePrograms.names.length, cache.getMisses());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testSourceAndOptionsAreInTheKey() throws Exception {
+        byte[] source = SamplePrograms.load("/hi.tri");
+        Compiler.CLIOptions options = new Compiler.CLIOptions();
+        String key = CompileCache.key(source, options);
+
+        Compiler.CLIOptions reporting = new Compiler.CLIOptions();
+        reporting.showStats = true;
+        reporting.objectName = "other.tam";
+        assertEquals(key, CompileCache.key(source, reporting));
+
+        Compiler.CLIOptions folding = new Compiler.CLIOptions();
+        folding.folding = true;
+        assertNotEquals(key, CompileCache.key(source, folding));
+
+        byte[] changed = source.clone();
+        changed[changed.length - 1] = ' ';
+        assertNotEquals(key, CompileCache.key(changed, options));
+    }
+
+    @Test
+    public void testDamagedEntryIsRecompiled() throws Exception {
+        Path directory = Files.createTempDirectory("tc-cache");
+        try {
+            CompileCache cache = new CompileCache(directory, 1 << 20);
+            Compiler compiler = new Compiler(new Compiler.CLIOptions(), cache);
+            byte[] source = SamplePrograms.load("/factorials.tri");
+            byte[] expected = compiler.compile("factorials.tri", source).toObjectFile();
+
+            Path entry = directory.resolve(CompileCache.key(source, new Compiler.CLIOptions()) + ".tam");
+            byte[] damaged = Files.readAllBytes(entry);
+            damaged[damaged.length / 2] ^= 1;
+            Files.write(entry, damaged);
+
+            assertArrayEquals(expected, compiler.compile("factorials.tri", source).toObjectFile());
+            assertEquals(0, cache.getHits());
+            assertEquals(2, cache.getMisses());
+            assertArrayEquals(expected, compiler.compile("factorials.tri", source).toObjectFile());
+            assertEquals(1, cache.getHits());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testErrorsAreNotCached() throws Exception {
+        Path directory = Files.createTempDirectory("tc-cache");
+        try {
+            CompileCache cache = new CompileCache(directory, 1 << 20);
+            Compiler compiler = new Compiler(new Compiler.CLIOptions(), cache);
+            byte[] source = "let var x: Integer in x := 'a'".getBytes();
+            for (int i = 0; i < 2; i++) {
+                Compilation compilation = compiler.compile("bad.tri", source);
+                assertEquals(1, compilation.getDiagnostics().size());
+            }
+            assertEquals(0, cache.getHits());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAreEvicted() throws Exception {
+        Path directory = Files.createTempDirectory("tc-cache");
+        try {
+            // room for a few small object programs
+            CompileCache cache = new CompileCache(directory, 2000);
+            Compiler compiler = new Compiler(new Compiler.CLIOptions(), cache);
+            for (String program : SamplePrograms.names) {
+                compiler.compile(program, SamplePrograms.load(program));
+            }
+            assertTrue(cache.getEvictions() > 0);
+
+            long size = 0;
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    size += Files.size(file);
+                }
+            }
+            assertTrue(size <= 2000);
+
+            // the last program compiled is the most recently used
+            String last = SamplePrograms.names[SamplePrograms.names.length - 1];
+            compiler.compile(last, SamplePrograms.load(last));
+            assertEquals(1, cache.getHits());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testParallelCompilationsShareTheCache() throws Exception {
+        Path directory = Files.createTempDirectory("tc-cache");
+        try {
+            CompileCache cache = new CompileCache(directory, 1 << 20);
+            Compiler compiler = new Compiler(new Compiler.CLIOptions(), cache);
+            Compiler uncached = new Compiler(new Compiler.CLIOptions());
+
+            var results = new ArrayList<Future<Compilation>>();
+            try (var executor = Executors.newFixedThreadPool(8)) {
+                for (int round = 0; round < 10; round++) {
+                    for (String program : SamplePrograms.names) {
+                        byte[] source = SamplePrograms.load(program);
+                        results.add(executor.submit(() -> compiler.compile(program, source)));
+                    }
+                }
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+                String program = SamplePrograms.names[i % SamplePrograms.names.length];
+                assertArrayEquals("object code of " + program,
+                        uncached.compile(program, SamplePrograms.load(program)).toObjectFile(),
+                        results.get(i).get().toObjectFile());
+            }
+            assertEquals(results.size(), cache.getHits() + cache.getMisses());
+            assertTrue(cache.getHits() > 0);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (var files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
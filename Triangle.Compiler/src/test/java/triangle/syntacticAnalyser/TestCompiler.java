@@ -0,0 +1,67 @@
+package triangle.syntacticAnalyser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import triangle.Compilation;
+import triangle.Compiler;
+
+/**
+ * Tests the in-process compiler API: compilations share nothing, so the same
+ * programs compiled at once on many threads give the same object code as
+ * when they are compiled one at a time.
+ */
+public class TestCompiler {
+
+    private static final int rounds = 20;
+
+    @Test
+    public void testParallelCompilationsMatchSequential() throws Exception {
+        Compiler compiler = new Compiler(new Compiler.CLIOptions());
+
+        var expected = new ArrayList<Compilation>();
+        for (String program : SamplePrograms.all) {
+            expected.add(compiler.compile(program, SamplePrograms.load(program)));
+        }
+
+        var results = new ArrayList<Future<Compilation>>();
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            for (int round = 0; round < rounds; round++) {
+                for (String program : SamplePrograms.all) {
+                    byte[] source = SamplePrograms.load(program);
+                    results.add(executor.submit(() -> compiler.compile(program, source)));
+                }
+            }
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            Compilation want = expected.get(i % SamplePrograms.all.length);
+            Compilation got = results.get(i).get();
+            assertEquals("success of " + want.getSourceName(), want.isSuccessful(), got.isSuccessful());
+            assertEquals("diagnostics of " + want.getSourceName(), want.getDiagnostics(), got.getDiagnostics());
+            if (want.isSuccessful()) {
+                assertArrayEquals("object code of " + want.getSourceName(), want.toObjectFile(), got.toObjectFile());
+            }
+        }
+    }
+
+    @Test
+    public void testErrorsAreReturned() throws Exception {
+        Compilation compilation = new Compiler(new Compiler.CLIOptions()).compile("bad.tri",
+                "let var x: Integer in x := 'a'".getBytes());
+
+        assertFalse(compilation.isSuccessful());
+        assertNull(compilation.getObjectProgram());
+        assertEquals(1, compilation.getDiagnostics().size());
+        assertTrue(compilation.getDiagnostics().get(0).startsWith("ERROR: "));
+    }
+}
@@ -0,0 +1,84 @@
+package triangle.syntacticAnalyser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import triangle.abstractMachine.Instruction;
+import triangle.abstractMachine.ObjectFile;
+import triangle.abstractMachine.TamVm;
+import triangle.optimiser.ConstantPropagator;
+
+/**
+ * Tests that known values are propagated into the expressions that use them,
+ * and that branches never taken are removed, only where that is safe.
+ */
+public class TestConstantPropagation {
+
+    @Test
+    public void testConstantsAndVariables() throws IOException {
+        String source = "let const k ~ 3; var a: Integer; var b: Integer"
+                + " in begin a := k * 2; b := a + 1; putint(b); if b > 6 then put('y') else put('n') end";
+        ConstantPropagator propagator = new ConstantPropagator();
+        byte[] propagated = encode(source, propagator);
+        assertEquals(1, propagator.getBranchesPruned());
+        assertTrue(propagated.length < encode(source, null).length);
+    }
+
+    @Test
+    public void testFixedVariableInRoutine() throws IOException {
+        String source = "let var n: Integer; proc p() ~ putint(n * 2)"
+                + " in begin n := 5; p() end";
+        ConstantPropagator propagator = new ConstantPropagator();
+        encode(source, propagator);
+        // n, and then n * 2, in the body of p
+        assertEquals(2, propagator.getConstantsPropagated());
+    }
+
+    @Test
+    public void testDeadLoops() throws IOException {
+        String source = "let var i: Integer"
+                + " in begin i := 0; while i > 0 do i := i - 1; loop putint(i) while false do i := 1 end";
+        ConstantPropagator propagator = new ConstantPropagator();
+        encode(source, propagator);
+        assertEquals(2, propagator.getBranchesPruned());
+    }
+
+    @Test
+    public void testNothingPropagated() throws IOException {
+        String[] sources = {
+                // n is read by p before it is assigned
+                "let var n: Integer; proc p() ~ putint(n) in begin p(); n := 5; p() end",
+                // n is updated through a var parameter
+                "let var n: Integer; proc set(var x: Integer) ~ x := 9"
+                        + " in begin n := 1; set(var n); putint(n) end",
+                // the arms of the if command disagree, and the loop updates i
+                "let var i: Integer in begin getint(var i);"
+                        + " if i > 0 then i := 1 else i := 2; while i < 5 do i := i + 1; putint(i) end" };
+        for (String source : sources) {
+            ConstantPropagator propagator = new ConstantPropagator();
+            byte[] propagated = encode(source, propagator);
+            assertEquals(source, 0, propagator.getConstantsPropagated());
+            assertEquals(source, 0, propagator.getBranchesPruned());
+            assertArrayEquals(source, encode(source, null), propagated);
+        }
+    }
+
+    @Test
+    public void testOverflowKept() {
+        // maxint may be propagated into the sum, but the sum is not folded
+        String source = "let var i: Integer in begin i := maxint; putint(i + 1) end";
+        ConstantPropagator propagator = new ConstantPropagator();
+        Instruction[] propagated = Harness.compile(source, propagator);
+        assertEquals(0, propagator.getBranchesPruned());
+        assertEquals("", Harness.run(propagated, TamVm.failedOverflow));
+    }
+
+    private static byte[] encode(String source, ConstantPropagator propagator) throws IOException {
+        return ObjectFile.toBytes(Harness.compile(source, propagator));
+    }
+}
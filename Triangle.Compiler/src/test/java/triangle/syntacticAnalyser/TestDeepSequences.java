@@ -0,0 +1,62 @@
+package triangle.syntacticAnalyser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import triangle.Compilation;
+import triangle.Compiler;
+import triangle.abstractSyntaxTrees.commands.Command;
+import triangle.abstractSyntaxTrees.commands.EmptyCommand;
+import triangle.abstractSyntaxTrees.commands.SequentialCommand;
+import triangle.syntacticAnalyzer.SourcePosition;
+
+/**
+ * Tests that long sequences of commands and declarations compile without
+ * deep recursion, and that a sequence is flattened in order.
+ */
+public class TestDeepSequences {
+
+    @Test
+    public void testCommandsInOrder() {
+        SourcePosition position = new SourcePosition();
+        Command a = new EmptyCommand(position), b = new EmptyCommand(position);
+        Command c = new EmptyCommand(position), d = new EmptyCommand(position);
+        SequentialCommand sequence = new SequentialCommand(new SequentialCommand(a, b, position),
+                new SequentialCommand(c, d, position), position);
+        assertEquals(List.of(a, b, c, d), sequence.getCommands());
+    }
+
+    @Test
+    public void testLongSequenceOnSmallStack() throws Exception {
+        StringBuilder text = new StringBuilder("let var x: Integer");
+        for (int i = 0; i < 20000; i++) {
+            text.append("; const k").append(i).append(" ~ ").append(i % 100);
+        }
+        text.append(" in begin x := 0");
+        for (int i = 0; i < 100000; i++) {
+            text.append(i % 2 == 0 ? "; x := x + k" + (i / 5) : "; putint(x)");
+        }
+        text.append(" end");
+
+        Compilation[] compilation = new Compilation[1];
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                compilation[0] = new Compiler(new Compiler.CLIOptions()).compile("deep.tri",
+                        text.toString().getBytes());
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "compile", 256 * 1024);
+        thread.start();
+        thread.join();
+
+        assertNull(failure[0]);
+        assertTrue(compilation[0].isSuccessful());
+    }
+}
@@ -0,0 +1,82 @@
+package triangle.syntacticAnalyser;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import triangle.abstractSyntaxTrees.declarations.Declaration;
+import triangle.abstractSyntaxTrees.declarations.VarDeclaration;
+import triangle.abstractSyntaxTrees.terminals.Identifier;
+import triangle.contextualAnalyzer.IdentificationTable;
+import triangle.syntacticAnalyzer.SourcePosition;
+
+/**
+ * Tests the scope rules of the identification table: inner declarations hide
+ * outer ones until their scope is closed, and a duplicate is only one at the
+ * same level.
+ */
+public class TestIdentificationTable {
+
+    @Test
+    public void testInnerDeclarationsHideOuter() {
+        IdentificationTable table = new IdentificationTable();
+        Declaration outerX = declaration("x");
+        Declaration y = declaration("y");
+        table.enter("x", outerX);
+        table.enter("y", y);
+
+        table.openScope();
+        Declaration innerX = declaration("x");
+        table.enter("x", innerX);
+        assertFalse(innerX.duplicated);
+        assertSame(innerX, table.retrieve("x"));
+        assertSame(y, table.retrieve("y"));
+        assertNull(table.retrieve("y", true));
+
+        table.openScope();
+        Declaration z = declaration("z");
+        table.enter("z", z);
+        assertSame(innerX, table.retrieve("x"));
+        table.closeScope();
+
+        assertNull(table.retrieve("z"));
+        assertSame(innerX, table.retrieve("x", true));
+        table.closeScope();
+
+        assertSame(outerX, table.retrieve("x"));
+        assertSame(y, table.retrieve("y", true));
+        assertNull(table.retrieve("w"));
+    }
+
+    @Test
+    public void testDuplicatesAreAtTheSameLevel() {
+        IdentificationTable table = new IdentificationTable();
+        table.enter("x", declaration("x"));
+        table.openScope();
+        Declaration first = declaration("a");
+        Declaration second = declaration("a");
+        table.enter("a", first);
+        table.enter("a", second);
+        assertFalse(first.duplicated);
+        assertTrue(second.duplicated);
+        assertSame(second, table.retrieve("a"));
+
+        // closing the scope removes both
+        table.closeScope();
+        assertNull(table.retrieve("a"));
+
+        table.openScope();
+        Declaration again = declaration("a");
+        table.enter("a", again);
+        assertFalse(again.duplicated);
+        table.closeScope();
+    }
+
+    private static Declaration declaration(String name) {
+        SourcePosition position = new SourcePosition();
+        return new VarDeclaration(new Identifier(name, position), null, position);
+    }
+}
@@ -0,0 +1,101 @@
+package triangle.syntacticAnalyser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import triangle.abstractMachine.Instruction;
+import triangle.optimiser.Inliner;
+
+/**
+ * Tests that calls of small routines are replaced by their bodies, with the
+ * parameters bound as the call would bind them, and that the inlined program
+ * writes what the original does.
+ */
+public class TestInlining {
+
+    @Test
+    public void testConstAndVarParameters() {
+        String source = "let type Pt ~ record x: Integer, y: Integer end;"
+                + " var a: array 4 of Integer; var p: Pt; var n: Integer;"
+                + " func sq(k: Integer): Integer ~ k * k;"
+                + " func sum(r: Pt): Integer ~ r.x + r.y;"
+                + " proc swap(var u: Integer, var v: Integer) ~ let var t: Integer in begin t := u; u := v; v := t end;"
+                + " proc bump(var k: Integer, by: Integer) ~ k := k + by"
+                + " in begin a := [1, 2, 3, 4]; p := {x ~ 10, y ~ 20}; n := 6;"
+                + " putint(sq(n + 1)); putint(sum(p)); swap(var a[0], var a[3]); putint(a[0]); putint(a[3]);"
+                + " bump(var p.y, sq(2)); putint(p.y); bump(var n, n); putint(n) end";
+        Inliner inliner = new Inliner();
+        Instruction[] inlined = Harness.compile(source, inliner);
+        assertEquals(6, inliner.getCallsInlined());
+        assertEquals(4, inliner.getRoutinesRemoved());
+        assertTrue(inlined.length < Harness.compile(source, null).length);
+        assertEquals("4930412412", Harness.run(inlined));
+        assertEquals(Harness.run(Harness.compile(source, null)), Harness.run(inlined));
+    }
+
+    @Test
+    public void testNestedCalls() {
+        String source = "let var g: Integer; func inc(x: Integer): Integer ~ x + 1;"
+                + " func twice(x: Integer): Integer ~ inc(inc(x)); proc show() ~ putint(twice(g))"
+                + " in begin g := 5; show(); let const c ~ twice(g) in putint(c) end";
+        Inliner inliner = new Inliner();
+        Instruction[] inlined = Harness.compile(source, inliner);
+        // inc twice in twice, then twice in show and in the constant, then show
+        assertEquals(5, inliner.getCallsInlined());
+        assertEquals(3, inliner.getRoutinesRemoved());
+        assertEquals("77", Harness.run(inlined));
+    }
+
+    @Test
+    public void testNotInlined() {
+        String[] sources = {
+                // fact calls itself
+                "let proc fact(n: Integer, var r: Integer) ~"
+                        + " if n <= 1 then r := 1 else begin fact(n - 1, var r); r := r * n end;"
+                        + " var r: Integer in begin fact(5, var r); putint(r) end",
+                // the index of the var parameter may change before the body uses it
+                "let var a: array 3 of Integer; var i: Integer;"
+                        + " proc set(var x: Integer) ~ begin i := i + 1; x := i end"
+                        + " in begin i := 0; set(var a[i]); putint(a[0]); putint(a[1]) end",
+                // apply calls the procedure it is given
+                "let var n: Integer; proc inc(var x: Integer) ~ x := x + 1;"
+                        + " proc apply(proc p(var x: Integer)) ~ p(var n)"
+                        + " in begin n := 1; apply(proc inc); putint(n) end" };
+        String[] outputs = { "120", "10", "2" };
+        for (int i = 0; i < sources.length; i++) {
+            Inliner inliner = new Inliner();
+            Instruction[] inlined = Harness.compile(sources[i], inliner);
+            assertEquals(sources[i], 0, inliner.getCallsInlined());
+            assertEquals(sources[i], outputs[i], Harness.run(inlined));
+        }
+    }
+
+    @Test
+    public void testRoutineStillNamed() {
+        // inc is inlined where it is called, but is still passed to apply
+        String source = "let var n: Integer; proc inc(var x: Integer) ~ x := x + 1;"
+                + " proc apply(proc p(var x: Integer)) ~ begin p(var n); p(var n) end"
+                + " in begin n := 0; inc(var n); apply(proc inc); putint(n) end";
+        Inliner inliner = new Inliner();
+        Instruction[] inlined = Harness.compile(source, inliner);
+        assertEquals(1, inliner.getCallsInlined());
+        assertEquals(0, inliner.getRoutinesRemoved());
+        assertEquals("3", Harness.run(inlined));
+    }
+
+    @Test
+    public void testSizeThreshold() {
+        String source = "let var n: Integer;"
+                + " proc show(k: Integer) ~ begin put('<'); putint(k * k + 1); put('>') end"
+                + " in begin n := 3; show(n); show(n + 1) end";
+        Inliner small = new Inliner(4);
+        Harness.compile(source, small);
+        assertEquals(0, small.getCallsInlined());
+        Inliner large = new Inliner();
+        Instruction[] inlined = Harness.compile(source, large);
+        assertEquals(2, large.getCallsInlined());
+        assertEquals("<10><17>", Harness.run(inlined));
+    }
+}
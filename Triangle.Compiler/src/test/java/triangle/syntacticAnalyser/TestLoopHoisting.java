@@ -0,0 +1,116 @@
+package triangle.syntacticAnalyser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import triangle.ErrorReporter;
+import triangle.abstractMachine.ObjectFile;
+import triangle.optimiser.LoopInvariantHoister;
+
+/**
+ * Tests that loop-invariant code is hoisted out of loops only where doing so
+ * cannot change what the program does.
+ */
+public class TestLoopHoisting {
+
+    @Test
+    public void testWhileToHoist() throws IOException {
+        byte[] source = SamplePrograms.load("/while-to-hoist.tri");
+        Hoisting hoisting = hoist(source);
+        assertEquals(1, hoisting.hoister.getAssignmentsHoisted());
+        assertTrue(hoisting.diagnostics.isEmpty());
+        assertFalse(Arrays.equals(encode(source, null), hoisting.objectCode));
+    }
+
+    @Test
+    public void testInvariantExpression() throws IOException {
+        String source = "let var i: Integer; var n: Integer; var t: Integer"
+                + " in begin i := 0; n := 3; t := 0;"
+                + " while i < 10 do begin t := t + (n * 4); i := i + 1 end; putint(t) end";
+        Hoisting hoisting = hoist(source.getBytes());
+        assertEquals(0, hoisting.hoister.getAssignmentsHoisted());
+        assertEquals(1, hoisting.hoister.getExpressionsHoisted());
+    }
+
+    @Test
+    public void testAssignmentsKept() throws IOException {
+        String[] sources = {
+                // b is updated through a var parameter inside the loop
+                "let var a: Integer; var b: Integer; var c: Integer;"
+                        + " proc inc(var x: Integer) ~ x := x + 1"
+                        + " in begin a := 0; b := 0; c := 2;"
+                        + " while a < 5 do begin a := a + 1; b := c + 2; inc(var b) end; putint(b) end",
+                // c is changed by a procedure called in the loop, so c * 2 is
+                // not invariant either
+                "let var a: Integer; var b: Integer; var c: Integer;"
+                        + " proc bump() ~ c := c + 1"
+                        + " in begin a := 0; c := 2;"
+                        + " while a < 5 do begin a := a + 1; bump(); b := c * 2 end; putint(b) end",
+                // the product may overflow, and must not do so before the put
+                "let var a: Integer; var b: Integer; var c: Integer"
+                        + " in begin a := 0; getint(var c);"
+                        + " while a < 5 do begin put('a'); b := c * 5000; a := a + 1 end; putint(b) end",
+                // b is read before it is assigned in the body
+                "let var a: Integer; var b: Integer; var c: Integer"
+                        + " in begin a := 0; b := 0; c := 2;"
+                        + " while a < 5 do begin putint(b); b := c + 2; a := a + 1 end end" };
+        for (String source : sources) {
+            Hoisting hoisting = hoist(source.getBytes());
+            assertTrue(source, hoisting.diagnostics.isEmpty());
+            assertEquals(source, 0, hoisting.hoister.getAssignmentsHoisted());
+        }
+    }
+
+    @Test
+    public void testNothingHoisted() throws IOException {
+        String source = "let var a: Integer; var b: Integer; var c: Integer;"
+                + " proc bump() ~ c := c + 1"
+                + " in begin a := 0; c := 2;"
+                + " while a < 5 do begin a := a + 1; bump(); b := c * 2 end; putint(b) end";
+        Hoisting hoisting = hoist(source.getBytes());
+        assertEquals(0, hoisting.hoister.getExpressionsHoisted());
+        assertArrayEquals(encode(source.getBytes(), null), hoisting.objectCode);
+    }
+
+    @Test
+    public void testLoopWhile() throws IOException {
+        String source = "let var a: Integer; var b: Integer; var c: Integer"
+                + " in begin a := 0; c := 2;"
+                + " loop begin b := c + 2; a := a + 1 end while a < 5 do put('a'); putint(b) end";
+        Hoisting hoisting = hoist(source.getBytes());
+        assertTrue(hoisting.diagnostics.isEmpty());
+        assertEquals(1, hoisting.hoister.getAssignmentsHoisted());
+    }
+
+    private static class Hoisting {
+        LoopInvariantHoister hoister;
+        byte[] objectCode;
+        List<String> diagnostics;
+    }
+
+    private static Hoisting hoist(byte[] source) throws IOException {
+        Hoisting hoisting = new Hoisting();
+        hoisting.hoister = new LoopInvariantHoister();
+        ErrorReporter reporter = new ErrorReporter(false, null);
+        hoisting.objectCode = encode(source, hoisting.hoister, reporter);
+        hoisting.diagnostics = reporter.getDiagnostics();
+        return hoisting;
+    }
+
+    private static byte[] encode(byte[] source, LoopInvariantHoister hoister) throws IOException {
+        return encode(source, hoister, new ErrorReporter(false, null));
+    }
+
+    private static byte[] encode(byte[] source, LoopInvariantHoister hoister, ErrorReporter reporter)
+            throws IOException {
+        return ObjectFile.toBytes(Harness.compile(source, hoister, reporter));
+    }
+}
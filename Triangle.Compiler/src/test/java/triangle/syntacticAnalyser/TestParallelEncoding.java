@@ -0,0 +1,96 @@
+package triangle.syntacticAnalyser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import triangle.ErrorReporter;
+import triangle.abstractMachine.ObjectFile;
+import triangle.abstractSyntaxTrees.Program;
+import triangle.codeGenerator.Emitter;
+import triangle.codeGenerator.Encoder;
+import triangle.contextualAnalyzer.Checker;
+import triangle.syntacticAnalyzer.Parser;
+import triangle.syntacticAnalyzer.Scanner;
+import triangle.syntacticAnalyzer.SourceFile;
+
+/**
+ * Tests that encoding routine bodies in parallel, and linking them, gives the
+ * same object program and diagnostics as encoding them one after another.
+ */
+public class TestParallelEncoding {
+
+    @Test
+    public void testSameObjectCode() throws IOException {
+        for (String program : SamplePrograms.names) {
+            byte[] source = SamplePrograms.load(program);
+            assertArrayEquals(program, encode(source, null).objectCode, encode(source, pool).objectCode);
+        }
+    }
+
+    @Test
+    public void testNestedAndPassedRoutines() throws IOException {
+        // routines nested in routines, recursion, a routine passed as an
+        // argument, and loops and branches before, between and after them
+        String source = "let var n: Integer;"
+                + " func double(x: Integer): Integer ~ x * 2;"
+                + " proc apply(func f(x: Integer): Integer, var y: Integer) ~ y := f(y);"
+                + " proc outer(var y: Integer) ~"
+                + "   let func fact(k: Integer): Integer ~ if k <= 1 then 1 else k * fact(k - 1);"
+                + "       proc inner(var z: Integer) ~"
+                + "         let proc innermost(var w: Integer) ~ while w > 100 do w := w - 1"
+                + "         in begin innermost(var z); apply(func double, var z) end"
+                + "   in begin y := fact(y); inner(var y) end;"
+                + " func twice(x: Integer): Integer ~ double(double(x))"
+                + " in begin n := 0; while n < 5 do n := n + 1;"
+                + "   if n > 3 then outer(var n) else apply(func twice, var n); putint(twice(n)) end";
+        Encoding sequential = encode(source.getBytes(), null);
+        assertTrue(sequential.diagnostics.isEmpty());
+        assertArrayEquals(sequential.objectCode, encode(source.getBytes(), pool).objectCode);
+    }
+
+    @Test
+    public void testRestrictionsReported() throws IOException {
+        StringBuilder source = new StringBuilder("let ");
+        for (int level = 0; level < 8; level++) {
+            source.append("proc p").append(level).append(" () ~ let ");
+        }
+        source.append("var x: Integer in x := 1");
+        for (int level = 0; level < 8; level++) {
+            source.append(" in p").append(7 - level).append("()");
+        }
+        Encoding sequential = encode(source.toString().getBytes(), null);
+        Encoding parallel = encode(source.toString().getBytes(), pool);
+        assertEquals(1, sequential.diagnostics.size());
+        assertEquals(sequential.diagnostics, parallel.diagnostics);
+        assertArrayEquals(sequential.objectCode, parallel.objectCode);
+    }
+
+    // a pool of its own, so that bodies are encoded in parallel even with a
+    // single processor
+    private static final ForkJoinPool pool = new ForkJoinPool(4);
+
+    private static class Encoding {
+        byte[] objectCode;
+        List<String> diagnostics;
+    }
+
+    private static Encoding encode(byte[] source, ForkJoinPool pool) throws IOException {
+        ErrorReporter reporter = new ErrorReporter(false, null);
+        Program program = new Parser(new Scanner(SourceFile.ofBytes(source)), reporter).parseProgram();
+        new Checker(reporter).check(program);
+        Emitter emitter = new Emitter(reporter);
+        new Encoder(emitter, reporter, pool).encodeRun(program, false);
+
+        Encoding encoding = new Encoding();
+        encoding.objectCode = ObjectFile.toBytes(emitter.getObjectProgram());
+        encoding.diagnostics = reporter.getDiagnostics();
+        return encoding;
+    }
+}
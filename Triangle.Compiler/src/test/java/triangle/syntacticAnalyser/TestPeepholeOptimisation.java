@@ -0,0 +1,120 @@
+package triangle.syntacticAnalyser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import triangle.abstractMachine.Instruction;
+import triangle.abstractMachine.OpCode;
+import triangle.abstractMachine.Primitive;
+import triangle.abstractMachine.Register;
+import triangle.optimiser.PeepholeOptimiser;
+
+/**
+ * Tests that the peephole optimiser removes the sequences it should, keeps
+ * every code address pointing at the same code, and leaves what the program
+ * does unchanged.
+ */
+public class TestPeepholeOptimisation {
+
+    @Test
+    public void testSequencesRemoved() {
+        Instruction[] program = {
+                instruction(OpCode.PUSH, Register.CB, 0, 0),
+                instruction(OpCode.JUMP, Register.CB, 0, 2),
+                instruction(OpCode.LOADL, Register.CB, 0, 5),
+                instruction(OpCode.LOADL, Register.CB, 0, 0),
+                instruction(OpCode.CALL, Register.PB, 0, Primitive.ADD.ordinal()),
+                instruction(OpCode.POP, Register.CB, 1, 0),
+                instruction(OpCode.LOAD, Register.SB, 1, 0),
+                instruction(OpCode.STORE, Register.SB, 1, 0),
+                instruction(OpCode.CALL, Register.PB, 0, Primitive.PUTINT.ordinal()),
+                instruction(OpCode.HALT, Register.CB, 0, 0) };
+        PeepholeOptimiser optimiser = new PeepholeOptimiser();
+        Instruction[] optimised = optimiser.optimise(program);
+        assertEquals(3, optimised.length);
+        assertEquals(7, optimiser.getInstructionsRemoved());
+        assertEquals(OpCode.LOADL, optimised[0].getOpCode());
+        assertEquals(OpCode.HALT, optimised[2].getOpCode());
+        assertEquals("5", Harness.run(optimised));
+    }
+
+    @Test
+    public void testJumpsThreaded() {
+        Instruction[] program = {
+                instruction(OpCode.LOADL, Register.CB, 0, 0),
+                instruction(OpCode.JUMPIF, Register.CB, 0, 3),
+                instruction(OpCode.JUMP, Register.CB, 0, 6),
+                instruction(OpCode.LOADL, Register.CB, 0, 2),
+                instruction(OpCode.CALL, Register.PB, 0, Primitive.PUTINT.ordinal()),
+                instruction(OpCode.JUMP, Register.CB, 0, 8),
+                instruction(OpCode.LOADL, Register.CB, 0, 1),
+                instruction(OpCode.CALL, Register.PB, 0, Primitive.PUTINT.ordinal()),
+                instruction(OpCode.JUMP, Register.CB, 0, 9),
+                instruction(OpCode.HALT, Register.CB, 0, 0) };
+        PeepholeOptimiser optimiser = new PeepholeOptimiser();
+        Instruction[] optimised = optimiser.optimise(program);
+        // both jumps that end at HALT become HALTs, and the JUMPIF over the
+        // JUMP becomes a JUMPIF(1) to where the JUMP went
+        assertEquals(2, optimiser.getJumpsThreaded());
+        assertEquals(8, optimised.length);
+        assertEquals(OpCode.HALT, optimised[4].getOpCode());
+        assertEquals(OpCode.JUMPIF, optimised[1].getOpCode());
+        assertEquals(1, optimised[1].getLength());
+        assertEquals(5, optimised[1].getOperand());
+        assertEquals("2", Harness.run(optimised));
+    }
+
+    @Test
+    public void testJumpIfOnlyOverTruthValue() {
+        // b is pushed over a stale 5 and tested without being assigned, as in
+        // if b then (empty) else putint(7); putint(1)
+        Instruction[] program = {
+                instruction(OpCode.LOADL, Register.CB, 0, 5),
+                instruction(OpCode.POP, Register.CB, 0, 1),
+                instruction(OpCode.PUSH, Register.CB, 0, 1),
+                instruction(OpCode.LOAD, Register.SB, 1, 0),
+                instruction(OpCode.JUMPIF, Register.CB, 0, 6),
+                instruction(OpCode.JUMP, Register.CB, 0, 8),
+                instruction(OpCode.LOADL, Register.CB, 0, 7),
+                instruction(OpCode.CALL, Register.PB, 0, Primitive.PUTINT.ordinal()),
+                instruction(OpCode.LOADL, Register.CB, 0, 1),
+                instruction(OpCode.CALL, Register.PB, 0, Primitive.PUTINT.ordinal()),
+                instruction(OpCode.HALT, Register.CB, 0, 0) };
+        Instruction[] optimised = new PeepholeOptimiser().optimise(program);
+        assertEquals(program.length, optimised.length);
+        assertEquals("1", Harness.run(program));
+        assertEquals("1", Harness.run(optimised));
+
+        // once b is negated the word tested is a truth value
+        program[3] = instruction(OpCode.CALL, Register.PB, 0, Primitive.NOT.ordinal());
+        program[2] = instruction(OpCode.LOAD, Register.SB, 1, 0);
+        optimised = new PeepholeOptimiser().optimise(program);
+        assertEquals(program.length - 1, optimised.length);
+        assertEquals(Harness.run(program), Harness.run(optimised));
+    }
+
+    @Test
+    public void testProgramsUnchanged() {
+        String[] sources = {
+                "let var i: Integer; var n: Integer"
+                        + " in begin i := 0; n := 0; while i < 10 do begin if i > 4 then n := n + i else n := n;"
+                        + " i := i + 1 end; putint(n) end",
+                "let func f(x: Integer): Integer ~ if x < 2 then 1 else x * f(x - 1);"
+                        + " proc show(func g(x: Integer): Integer) ~ putint(g(5))"
+                        + " in begin show(func f); if f(3) = 6 then put('y') else put('n') end",
+                "let var a: array 3 of Integer; var b: Boolean"
+                        + " in begin a := [4, 5, 6]; b := a[0] < a[2]; if b then putint(a[0] + a[2]) else end" };
+        for (String source : sources) {
+            Instruction[] program = Harness.compile(source, null);
+            Instruction[] optimised = new PeepholeOptimiser().optimise(program);
+            assertTrue(source, optimised.length < program.length);
+            assertEquals(source, Harness.run(program), Harness.run(optimised));
+        }
+    }
+
+    private static Instruction instruction(OpCode op, Register register, int length, int operand) {
+        return new Instruction(op, register, length, operand);
+    }
+}
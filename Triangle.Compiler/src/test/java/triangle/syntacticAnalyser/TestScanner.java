@@ -6,6 +6,10 @@ import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
 import org.junit.Test;
 import org.junit.function.ThrowingRunnable;
 
@@ -47,6 +51,43 @@ public class TestScanner {
 	}
 	
 	
+	/* the same text gives the same errors, at the same lines, however it is read */
+
+	@Test
+	public void testSourcesAgree() throws Exception {
+		byte[] bytes = "let\n  var x: Integer\nin\n  x := )\n".getBytes();
+		Path path = Files.createTempFile("scanner", ".tri");
+		try {
+			Files.write(path, bytes);
+			assertEquals(List.of("ERROR: \")\" cannot start an expression 4..5"), errors(SourceFile.ofBytes(bytes)));
+			assertEquals(errors(SourceFile.ofBytes(bytes)), errors(SourceFile.ofPath(path.toString())));
+		} finally {
+			Files.delete(path);
+		}
+		assertEquals(List.of(), errors(SourceFile.fromResource("/factorials.tri")));
+	}
+
+	@Test
+	public void testNearReservedWords() {
+		// the same lengths and first letters as reserved words, but identifiers
+		byte[] bytes = ("let var iff: Integer; var dO: Integer; var type1: Integer; var tyre: Integer;"
+				+ " var recurd: Integer; var within: Integer in iff := dO + type1 + tyre + recurd + within").getBytes();
+		assertEquals(List.of(), errors(SourceFile.ofBytes(bytes)));
+	}
+
+	@Test
+	public void testMissingSources() {
+		assertEquals(null, SourceFile.ofPath("no-such-file.tri"));
+		assertEquals(null, SourceFile.fromResource("/no-such-file.tri"));
+	}
+
+	private static List<String> errors(SourceFile source) {
+		ErrorReporter reporter = new ErrorReporter(false, null);
+		new Parser(new Scanner(source), reporter).parseProgram();
+		return reporter.getDiagnostics();
+	}
+	
+	
 	/* these tests all try to compile example programs... */
 	
 	@Test
@@ -0,0 +1,96 @@
+package triangle.syntacticAnalyser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import triangle.Compilation;
+import triangle.Compiler;
+import triangle.ErrorReporter;
+import triangle.abstractSyntaxTrees.Program;
+import triangle.abstractSyntaxTrees.commands.LetCommand;
+import triangle.abstractSyntaxTrees.declarations.SequentialDeclaration;
+import triangle.abstractSyntaxTrees.declarations.VarDeclaration;
+import triangle.contextualAnalyzer.Checker;
+import triangle.syntacticAnalyzer.Parser;
+import triangle.syntacticAnalyzer.Scanner;
+import triangle.syntacticAnalyzer.SourceFile;
+
+/**
+ * Tests that the checker keeps one instance of each array and record type,
+ * and that types are still compared by structure.
+ */
+public class TestTypeInterning {
+
+    @Test
+    public void testEqualStructuresAreOneType() {
+        Program program = check("let type A ~ record x: Integer, y: array 3 of Char end;"
+                + " var a: A; var b: record x: Integer, y: array 3 of Char end;"
+                + " var c: record y: Integer, x: array 3 of Char end in a := b");
+
+        SequentialDeclaration declarations = (SequentialDeclaration) ((LetCommand) program.C).D;
+        SequentialDeclaration rest = (SequentialDeclaration) declarations.D1;
+        VarDeclaration a = (VarDeclaration) ((SequentialDeclaration) rest.D1).D2;
+        VarDeclaration b = (VarDeclaration) rest.D2;
+        VarDeclaration c = (VarDeclaration) declarations.D2;
+
+        assertSame(a.T, b.T);
+        assertNotSame(a.T, c.T);
+        assertTrue(a.T.isInterned());
+        assertEquals(a.T.hashCode(), b.T.hashCode());
+        assertEquals(4, a.T.getSize());
+    }
+
+    @Test
+    public void testStructuralCompatibility() {
+        assertTrue(compile("let type A ~ record x: Integer, y: Char end; type B ~ record x: Integer, y: Char end;"
+                + " var a: A; var b: B in begin a := b; b := {x ~ 1, y ~ 'c'} end").isSuccessful());
+        assertTrue(compile("let var a: array 2 of record x: Integer, y: Char end;"
+                + " var b: array 2 of record x: Integer, y: Char end"
+                + " in begin a := b; a := [{x ~ 1, y ~ 'a'}, {x ~ 2, y ~ 'b'}] end").isSuccessful());
+
+        assertFalse(compile("let var a: record x: Integer, y: Char end; var b: record y: Integer, x: Char end"
+                + " in a := b").isSuccessful());
+        assertFalse(compile("let var a: array 2 of Integer; var b: array 3 of Integer in a := b").isSuccessful());
+        assertFalse(compile("let var a: record x: Integer, y: Integer end in a := [1, 2]").isSuccessful());
+    }
+
+    @Test
+    public void testErrorTypeMatchesAnyComponent() {
+        // only the undeclared type is reported, not the assignment
+        Compilation array = compile("let var a: array 3 of Foo; var b: array 3 of Integer in a := b");
+        assertEquals(1, array.getDiagnostics().size());
+        assertTrue(array.getDiagnostics().get(0).contains("Foo"));
+        Compilation record = compile("let var a: record x: Foo end; var b: record x: Integer end in a := b");
+        assertEquals(1, record.getDiagnostics().size());
+        assertTrue(record.getDiagnostics().get(0).contains("Foo"));
+    }
+
+    @Test
+    public void testFieldOffsetsAreNotShared() throws Exception {
+        // q has the same fields as the end of p, at different offsets
+        Compilation shared = compile("let type Q ~ record b: Integer, c: Char end;"
+                + " type P ~ record a: Boolean, b: Integer, c: Char end; var q: Q; var p: P"
+                + " in begin q.c := 'x'; p.c := 'y'; p := {a ~ true, b ~ 1, c ~ 'z'}; put(p.c) end");
+        Compilation distinct = compile("let type Q ~ record b: Integer, c: Char end;"
+                + " type P ~ record a: Boolean, b2: Integer, c2: Char end; var q: Q; var p: P"
+                + " in begin q.c := 'x'; p.c2 := 'y'; p := {a ~ true, b2 ~ 1, c2 ~ 'z'}; put(p.c2) end");
+        assertArrayEquals(distinct.toObjectFile(), shared.toObjectFile());
+    }
+
+    private static Compilation compile(String text) {
+        return new Compiler(new Compiler.CLIOptions()).compile("types.tri", text.getBytes());
+    }
+
+    private static Program check(String text) {
+        ErrorReporter reporter = new ErrorReporter(true);
+        Program program = new Parser(new Scanner(SourceFile.ofBytes(text.getBytes())), reporter).parseProgram();
+        new Checker(reporter).check(program);
+        return program;
+    }
+}